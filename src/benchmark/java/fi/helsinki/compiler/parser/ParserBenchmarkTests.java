@@ -0,0 +1,60 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.tokenizer.Token;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+    Coarse benchmark comparing the precedence climbing Parser with PrecedenceChainParser, the original parser with one
+    method per precedence level, on arithmetic similar to generated code. It is only run by the benchmark task.
+ */
+@Tag("benchmark")
+public class ParserBenchmarkTests {
+
+    @Test
+    public void testArithmetic() throws ParserException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            builder.append("x").append(i % 10).append(" = ((a + b * ").append(i)
+                    .append(") - (c / (d + 1)) % 7) * -(e - f + g * h);\n");
+        }
+        builder.append(nestedArithmetic(400)).append(";\n");
+        List<Token> tokens = new Tokenizer().tokenize(builder.toString(), "Testfile.dl");
+        assertEquals(AstPrinter.print(new PrecedenceChainParser(tokens).parse()),
+                AstPrinter.print(new Parser(tokens).parse()));
+
+        long chainTime = Long.MAX_VALUE;
+        long climbingTime = Long.MAX_VALUE;
+        for (int i = 0; i < 60; i++) {
+            long start = System.nanoTime();
+            new PrecedenceChainParser(tokens).parse();
+            long chain = System.nanoTime() - start;
+            start = System.nanoTime();
+            new Parser(tokens).parse();
+            long climbing = System.nanoTime() - start;
+            // The first runs are left out as a warm up
+            if (i >= 30) {
+                chainTime = Math.min(chainTime, chain);
+                climbingTime = Math.min(climbingTime, climbing);
+            }
+        }
+        System.err.printf("Parser: %d tokens, precedence chain %.2f ms, precedence climbing %.2f ms%n", tokens.size(),
+                chainTime / 1e6, climbingTime / 1e6);
+    }
+
+    private String nestedArithmetic(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("(").append(i).append(i % 2 == 0 ? " + " : " * ");
+        }
+        builder.append("1");
+        builder.append(")".repeat(depth));
+        return builder.toString();
+    }
+}
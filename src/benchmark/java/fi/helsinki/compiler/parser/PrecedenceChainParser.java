@@ -0,0 +1,420 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.tokenizer.Token;
+import fi.helsinki.compiler.tokenizer.TokenKind;
+import fi.helsinki.compiler.tokenizer.TokenStream;
+import fi.helsinki.compiler.tokenizer.TokenType;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+    The recursive descent parser with one method per precedence level, as it was before precedence climbing. Pinned
+    in the benchmark sources as the baseline of ParserBenchmarkTests.
+ */
+class PrecedenceChainParser {
+
+    private final TokenStream tokens;
+
+    PrecedenceChainParser(List<Token> tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    PrecedenceChainParser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    private Token peek() {
+        return tokens.peek();
+    }
+
+    private Token lookBack() {
+        return tokens.lookBack();
+    }
+
+    private Token consume(TokenKind... expected) throws ParserException {
+        Token token = peek();
+        if (expected.length > 0 && !isNext(expected)) {
+            String commaSeparated = Arrays.stream(expected).map(TokenKind::getText)
+                    .collect(Collectors.joining(", "));
+            throw new ParserException(token.getTokenLocation() + ": expected one of: " + commaSeparated);
+        }
+        return tokens.advance();
+    }
+
+    private IntLiteral parseIntegerLiteral() throws ParserException {
+        if (peek().getTokenType() != TokenType.INTEGER_LITERAL) {
+            throw new ParserException(peek().getTokenLocation() + ": expected an integer literal");
+        }
+        Token token = consume();
+        return new IntLiteral(Long.parseUnsignedLong(token.getText()), token.getTokenLocation());
+    }
+
+    private FunctionCall parseFunctionCall(Token functionNameToken) throws ParserException {
+        consume(TokenKind.LEFT_PARENTHESIS);
+        List<Expression> parameters = new ArrayList<>();
+        while (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+            parameters.add(parseExpression());
+            if (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                consume(TokenKind.COMMA);
+            }
+        }
+        consume(TokenKind.RIGHT_PARENTHESIS);
+        return new FunctionCall(functionNameToken.getText(), parameters, functionNameToken.getTokenLocation());
+    }
+
+    private Expression parseIdentifier() throws ParserException {
+        if (peek().getTokenType() != TokenType.IDENTIFIER) {
+            throw new ParserException(peek().getTokenLocation() + ": expected an identifier");
+        }
+        Token token = consume();
+        Token nextToken = peek();
+        if (nextToken.getKind() == TokenKind.LEFT_PARENTHESIS) {
+            return parseFunctionCall(token);
+        }
+        return new Identifier(token.getText(), token.getTokenLocation());
+    }
+
+    private Expression parseFactor() throws ParserException {
+        Token token = peek();
+        if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_PARENTHESIS)) {
+            return parseParenthesized();
+        }
+        if (checkNextToken(TokenType.INTEGER_LITERAL)) {
+            return parseIntegerLiteral();
+        }
+        if (checkNextToken(TokenType.IDENTIFIER)) {
+            return parseIdentifier();
+        }
+        if (checkNextToken(TokenType.KEYWORD, TokenKind.IF)) {
+            return parseIfBlock();
+        }
+        if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+            return parseBlock();
+        }
+        if (checkNextToken(TokenType.BOOLEAN_LITERAL, TokenKind.TRUE) ||
+                checkNextToken(TokenType.BOOLEAN_LITERAL, TokenKind.FALSE)) {
+            Token booleanToken = consume();
+            return new BooleanLiteral(Boolean.valueOf(booleanToken.getText()), booleanToken.getTokenLocation());
+        }
+        if (checkNextToken(TokenType.KEYWORD, TokenKind.BREAK) ||
+                checkNextToken(TokenType.KEYWORD, TokenKind.RETURN) ||
+                checkNextToken(TokenType.KEYWORD, TokenKind.CONTINUE)) {
+            return parseFlowControl();
+        }
+        throw new ParserException("Invalid token: " + token.getText() + token.getTokenLocation() +
+                ": expected an integer literal or an identifier");
+    }
+
+    private Expression parseParenthesized() throws ParserException {
+        consume(TokenKind.LEFT_PARENTHESIS);
+        Expression expression = parseExpression();
+        consume(TokenKind.RIGHT_PARENTHESIS);
+        return expression;
+    }
+
+    private Expression parseUnaryAndNot() throws ParserException {
+        Expression unary;
+        while (isNext(TokenKind.MINUS, TokenKind.NOT)) {
+            Token operatorToken =  consume();
+            Expression right = parseUnaryAndNot();
+            unary = new UnaryOp(operatorToken, right, operatorToken.getTokenLocation());
+            return unary;
+        }
+        return parseFactor();
+    }
+
+    private Expression parseTerm() throws ParserException {
+        Expression left = parseUnaryAndNot();
+        while (isNext(TokenKind.MULTIPLY, TokenKind.DIVIDE, TokenKind.MODULUS)) {
+            Token operatorToken =  consume();
+            Expression right = parseUnaryAndNot();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseIfBlock() throws ParserException {
+        Token ifToken = consume(TokenKind.IF);
+        Expression condition = parseExpression();
+        consume(TokenKind.THEN);
+        Expression thenBlock;
+        if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+            thenBlock = parseBlock();
+        } else {
+            thenBlock = parseExpression();
+        }
+        if (peek().getTokenType() == TokenType.KEYWORD && isNext(TokenKind.ELSE)) {
+            consume(TokenKind.ELSE);
+            Expression elseBlock;
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+                elseBlock = parseBlock();
+            } else {
+                elseBlock = parseExpression();
+            }
+            return new ConditionalOp(condition, thenBlock, elseBlock, ifToken.getTokenLocation());
+        }
+        return new ConditionalOp(condition, thenBlock, null, ifToken.getTokenLocation());
+    }
+
+    private Expression parseWhileBlock() throws ParserException {
+        Token whileToken = consume(TokenKind.WHILE);
+        Expression condition = parseExpression();
+        consume(TokenKind.DO);
+        Expression body;
+        if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+            body = parseBlock();
+        } else {
+            body = parseExpression();
+        }
+        return new WhileOp(condition, body, whileToken.getTokenLocation());
+    }
+
+    private Expression parseAddition() throws ParserException {
+        Expression left = parseTerm();
+        while (isNext(TokenKind.PLUS, TokenKind.MINUS)) {
+            Token operatorToken = consume();
+            Expression right = parseTerm();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseThan() throws ParserException {
+        Expression left = parseAddition();
+        while (isNext(TokenKind.LESS_THAN, TokenKind.LESS_THAN_OR_EQUAL,
+                TokenKind.GREATER_THAN, TokenKind.GREATER_THAN_OR_EQUAL)) {
+            Token operatorToken = consume();
+            Expression right = parseAddition();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseEquality() throws ParserException {
+        Expression left = parseThan();
+        while (isNext(TokenKind.EQUALS, TokenKind.NOT_EQUALS)) {
+            Token operatorToken = consume();
+            Expression right = parseThan();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseAnd() throws ParserException {
+        Expression left = parseEquality();
+        while (isNext(TokenKind.AND)) {
+            Token operatorToken = consume();
+            Expression right = parseEquality();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseOr() throws ParserException {
+        Expression left = parseAnd();
+        while (isNext(TokenKind.OR)) {
+            Token operatorToken = consume();
+            Expression right = parseAnd();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseExpression() throws ParserException {
+        Expression left = parseOr();
+        while (isNext(TokenKind.ASSIGN)) {
+            Token operatorToken = consume();
+            Expression right = parseExpression();
+            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        }
+        return left;
+    }
+
+    private Expression parseVariableDefinition() throws ParserException {
+        consume(TokenKind.VAR);
+        String varName = consume().getText();
+        if (isNext(TokenKind.COLON)) {
+            consume(TokenKind.COLON);
+            String type = consume().getText();
+            Token equalToken = consume(TokenKind.ASSIGN);
+            Expression value = parseExpression();
+            return new VariableDef(varName, type, value, equalToken.getTokenLocation());
+        }
+        Token equalToken = consume(TokenKind.ASSIGN);
+        Expression value = parseExpression();
+        return new VariableDef(varName, value, equalToken.getTokenLocation());
+    }
+
+    Expression parseInternal() throws ParserException {
+        if (tokens.isEmpty()) {
+            throw new ParserException("Cannot parse empty token list");
+        }
+        Expression expression = parseExpression();
+        if (!tokens.isAtEnd()) {
+            throw new ParserException("Parsing failed. Invalid tokens found: " +
+                    Arrays.toString(tokens.remainingTokens().toArray()));
+        }
+        return expression;
+    }
+
+    private Expression parseFlowControl() throws ParserException {
+        Token token = consume();
+        if (token.getKind() == TokenKind.CONTINUE) {
+            return new Continue(token.getTokenLocation());
+        } else if (token.getKind() == TokenKind.RETURN) {
+            Expression value = parseExpression();
+            return new Return(value, token.getTokenLocation());
+        } else {
+            return new Break(token.getTokenLocation());
+        }
+    }
+
+    private Expression parseFunctionDefinition() throws ParserException {
+        consume(TokenKind.FUN);
+        String functionName = consume().getText();
+        consume(TokenKind.LEFT_PARENTHESIS);
+        List<FunctionArgumentDefinition> functionArgs = new ArrayList<>();
+        while (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+            String argName = consume().getText();
+            consume(TokenKind.COLON);
+            String argType = consume().getText();
+            if (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                consume(TokenKind.COMMA);
+            }
+            functionArgs.add(new FunctionArgumentDefinition(argName, argType, peek().getTokenLocation()));
+        }
+        consume(TokenKind.RIGHT_PARENTHESIS);
+        consume(TokenKind.COLON);
+        String returnType = consume().getText();
+        Block block = (Block) parseBlock();
+        return new FunctionDefinition(functionName, functionArgs, returnType, block, block.getLocation());
+    }
+
+    private Expression parseBlock() throws ParserException {
+        Token blockToken = consume(TokenKind.LEFT_BRACE);
+        List<Expression> expressionList = new ArrayList<>();
+        Block block = new Block(expressionList, blockToken.getTokenLocation());
+        while (!checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
+            if (checkNextToken(TokenType.KEYWORD, TokenKind.IF)) {
+                Expression ifExpression = parseIfBlock();
+                block.addExpression(ifExpression);
+            } else if (checkNextToken(TokenType.IDENTIFIER) ||
+                    checkNextToken(TokenType.STRING_LITERAL) ||
+                    checkNextToken(TokenType.INTEGER_LITERAL) ||
+                    checkNextToken(TokenType.BOOLEAN_LITERAL)) {
+                Expression expression = parseExpression();
+                block.addExpression(expression);
+            } else if (checkNextToken(TokenType.OPERATOR, TokenKind.MINUS) ||
+                    checkNextToken(TokenType.OPERATOR, TokenKind.NOT)) {
+                Expression expression = parseExpression();
+                block.addExpression(expression);
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.WHILE)) {
+                block.addExpression(parseWhileBlock());
+            } else if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+                Expression childBlock = parseBlock();
+                block.addExpression(childBlock);
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.VAR)) {
+                block.addExpression(parseVariableDefinition());
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.BREAK) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.RETURN) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.CONTINUE)) {
+                block.addExpression(parseFlowControl());
+            }
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                Token uniToken = consume(TokenKind.SEMICOLON);
+                if (checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
+                    block.addExpression(new Unit(uniToken.getTokenLocation()));
+                }
+            } else if (!checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE) &&
+                    !checkNextToken(TokenType.END) &&
+                    !(lookBack().getKind() == TokenKind.RIGHT_BRACE)) {
+                throw new ParserException("Parsing failed. Invalid tokens found. Expected ';', but found " + peek());
+            }
+        }
+        consume(TokenKind.RIGHT_BRACE);
+        if (checkNextToken(TokenType.OPERATOR)) {
+            BinaryOp binaryOp = new BinaryOp(block, consume(), parseExpression(), block.getLocation());
+            return binaryOp;
+        }
+        return block;
+    }
+
+    public Block parse() throws ParserException {
+        if (tokens.isEmpty()) {
+            throw new ParserException("Cannot parse empty token list");
+        }
+        Block block = new Block(new ArrayList<>(), peek().getTokenLocation());
+        while (!checkNextToken(TokenType.END)) {
+            if (checkNextToken(TokenType.KEYWORD, TokenKind.IF)) {
+                Expression ifExpression = parseIfBlock();
+                block.addExpression(ifExpression);
+            } else if (checkNextToken(TokenType.IDENTIFIER) ||
+                    checkNextToken(TokenType.STRING_LITERAL) ||
+                    checkNextToken(TokenType.INTEGER_LITERAL) ||
+                    checkNextToken(TokenType.BOOLEAN_LITERAL) ||
+                    checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_PARENTHESIS)) {
+                Expression expression = parseExpression();
+                block.addExpression(expression);
+            } else if (checkNextToken(TokenType.OPERATOR, TokenKind.MINUS) ||
+                    checkNextToken(TokenType.OPERATOR, TokenKind.NOT)) {
+                Expression expression = parseExpression();
+                block.addExpression(expression);
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.WHILE)) {
+                block.addExpression(parseWhileBlock());
+            } else if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+                Expression childBlock = parseBlock();
+                block.addExpression(childBlock);
+            } else if (checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
+                consume(TokenKind.RIGHT_BRACE);
+                return block;
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.VAR)) {
+                block.addExpression(parseVariableDefinition());
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.BREAK) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.RETURN) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.CONTINUE)) {
+                block.addExpression(parseFlowControl());
+            } else if (checkNextToken(TokenType.KEYWORD, TokenKind.FUN)) {
+                block.addExpression(parseFunctionDefinition());
+            }
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                consume(TokenKind.SEMICOLON);
+                if (checkNextToken(TokenType.END)) {
+                    block.addExpression(new Unit(peek().getTokenLocation()));
+                }
+            } else if (peek().getTokenType() != TokenType.END && !(lookBack().getKind() == TokenKind.RIGHT_BRACE)) {
+                throw new ParserException("Parsing failed. Invalid tokens found. Expected ';', but found " + peek());
+            }
+        }
+        if (!tokens.isAtEnd()) {
+            throw new ParserException("Parsing failed. Invalid tokens found: " +
+                    Arrays.toString(tokens.remainingTokens().toArray()));
+        }
+        if (block.getExpressionList().size() == 1 && block.getExpressionList().get(0) instanceof Block) {
+            return (Block) block.getExpressionList().get(0);
+        }
+        return block;
+    }
+
+    private boolean checkNextToken(TokenType tokenType) {
+        return peek().getTokenType() == tokenType;
+    }
+
+    private boolean checkNextToken(TokenType tokenType, TokenKind kind) {
+        return peek().getTokenType() == tokenType && peek().getKind() == kind;
+    }
+
+    private boolean isNext(TokenKind... kinds) {
+        TokenKind kind = peek().getKind();
+        for (TokenKind expected : kinds) {
+            if (kind == expected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,407 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.types.*;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.tokenizer.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+
+/*
+    The type checker as it was before the canonical types in Types, allocating a type for every node and comparing
+    types by their type strings. Pinned in the benchmark sources as the baseline of TypeCheckerBenchmarkTests, so it
+    is neither part of the compiler nor run by the tests.
+ */
+class AllocatingTypeChecker {
+
+    /*
+        Checks the expression with an explicit stack of frames instead of recursion, so that the nesting depth of the
+        program is not limited by the Java stack. Each frame keeps the state of one node: the step it has reached and
+        the types of the children checked so far.
+     */
+    private Optional<Type> checkType(Expression expression, SymbolTable symbolTable) throws TypeCheckerException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression, symbolTable));
+        Optional<Type> childType = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next = step(frame, childType);
+            if (next != null) {
+                stack.push(next);
+                childType = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.type;
+                }
+                childType = frame.type;
+            }
+        }
+    }
+
+    /*
+        Advances the frame by one step. Returns the frame of a child to check next, or null once the type of the
+        frame is known.
+     */
+    private Frame step(Frame frame, Optional<Type> childType) throws TypeCheckerException {
+        SymbolTable symbolTable = frame.symbolTable;
+        switch (frame.expression) {
+            case IntLiteral literal: {
+                Type intType = new IntType();
+                literal.setType(intType);
+                return frame.done(Optional.of(intType));
+            }
+            case BooleanLiteral bool: {
+                Type boolType = new BooleanType();
+                bool.setType(boolType);
+                return frame.done(Optional.of(boolType));
+            }
+            case VariableDef variableDef: {
+                String key = variableDef.getName();
+                if (frame.state == 0) {
+                    if (symbolTable.hasTypeLocally(key)) {
+                        throw new TypeCheckerException("Variable already declared in this scope: " + variableDef.getName());
+                    }
+                    return frame.visit(1, variableDef.getValue(), symbolTable);
+                }
+                Optional<Type> valueType = childType;
+                Optional<String> definedTypeStr = variableDef.getDefinedType();
+                if (definedTypeStr.isPresent()) {
+                    Type definedType;
+                    if (definedTypeStr.get().equals("Int")) {
+                        definedType = new IntType();
+                    } else {
+                        definedType = new BooleanType();
+                    }
+                    if (!definedType.equals(valueType.get())) {
+                        throw new TypeCheckerException("Mismatching types found: " + definedType + ", " + valueType);
+                    }
+                }
+                symbolTable.putType(key, valueType.get());
+                variableDef.setType(valueType.get());
+                return frame.done(Optional.of(new UnitType()));
+            }
+            case Identifier identifier: {
+                Type identifierType = symbolTable.getType(identifier.getName());
+                identifier.setType(identifierType);
+                return frame.done(Optional.of(identifierType));
+            }
+            case BinaryOp binaryOp: {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, binaryOp.getLeft(), symbolTable);
+                    case 1:
+                        frame.leftType = childType;
+                        return frame.visit(2, binaryOp.getRight(), symbolTable);
+                    case 2:
+                        if (!binaryOp.getOperator().getText().equals("=")) {
+                            return frame.done(checkBinaryOp(binaryOp, frame.leftType, childType));
+                        }
+                        if (binaryOp.getLeft() instanceof Identifier identifier) {
+                            frame.expectedType = symbolTable.getType(identifier.getName());
+                            return frame.visit(3, binaryOp.getRight(), symbolTable);
+                        } else {
+                            throw new TypeCheckerException("Only identifiers are allowed");
+                        }
+                    default:
+                        Type identifierType = frame.expectedType;
+                        if (identifierType.getClass() == childType.get().getClass()) {
+                            binaryOp.setType(identifierType);
+                            return frame.done(Optional.of(identifierType));
+                        }
+                        throw new TypeCheckerException("Expected type " + identifierType);
+                }
+            }
+            case FunctionCall functionCall: {
+                List<Expression> parameters = functionCall.getParameters();
+                if (frame.state == 0) {
+                    frame.paramTypes = new ArrayList<>(parameters.size());
+                    frame.state = 1;
+                } else {
+                    Optional<Type> paramType = childType;
+                    if (paramType.isEmpty()) {
+                        throw new TypeCheckerException("Invalid parameter type " + paramType
+                                + " for function " + functionCall.getFunctionName());
+                    }
+                    parameters.get(frame.index - 1).setType(paramType.get());
+                    frame.paramTypes.add(paramType.get());
+                }
+                if (frame.index < parameters.size()) {
+                    return frame.visit(1, parameters.get(frame.index++), symbolTable);
+                }
+                List<Type> paramTypes = frame.paramTypes;
+                FunctionType functionType = (FunctionType) symbolTable.getType(functionCall.getFunctionName());
+                List<Type> expectedParamTypes = functionType.getParameterTypes();
+                if (paramTypes.size() != functionType.getParameterTypes().size()) {
+                    throw new TypeCheckerException("Mismatching parameters provided to the function" +
+                            functionCall.getFunctionName());
+                }
+                for (int i = 0; i < paramTypes.size(); i++) {
+                    if (!paramTypes.get(i).equals(expectedParamTypes.get(i))) {
+                        throw new TypeCheckerException("Expected type of " + expectedParamTypes.get(i) +
+                                ". Instead found " + paramTypes.get(i));
+                    }
+                }
+                functionCall.setType(functionType.getReturnType());
+                return frame.done(Optional.of(functionType.getReturnType()));
+            }
+            case ConditionalOp conditionalOp: {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, conditionalOp.getCondition(), symbolTable);
+                    case 1:
+                        if (childType.get() instanceof BooleanType) {
+                            return frame.visit(2, conditionalOp.getThenBlock(), symbolTable);
+                        } else {
+                            throw new TypeCheckerException("Expected a Boolean type for the conditional type.");
+                        }
+                    case 2:
+                        if (conditionalOp.getElseBlock() != null) {
+                            frame.leftType = childType;
+                            return frame.visit(3, conditionalOp.getElseBlock(), symbolTable);
+                        }
+                        conditionalOp.setType(new UnitType());
+                        return frame.done(childType);
+                    default:
+                        Optional<Type> thenType = frame.leftType;
+                        Optional<Type> elseType = childType;
+                        if (thenType.get().equals(elseType.get())) {
+                            conditionalOp.setType(thenType.get());
+                            return frame.done(thenType);
+                        } else {
+                            throw new TypeCheckerException("Types does not match in the conditional blocks: "
+                                    + thenType.get().getTypeStr() + " ," + elseType.get().getTypeStr());
+                        }
+                }
+            }
+            case FunctionDefinition functionDefinition: {
+                if (frame.state == 0) {
+                    SymbolTable localSymbolTable = new SymbolTable(symbolTable);
+                    List<Type> argTypes = new ArrayList<>();
+                    for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                        Type argType;
+                        if (argument.getArgType().equals("Int")) {
+                            argType = new IntType();
+                        } else {
+                            argType = new BooleanType();
+                        }
+                        argument.setType(argType);
+                        argTypes.add(argType);
+                        localSymbolTable.putType(argument.getName(), argType);
+                    }
+                    Type returnType;
+                    if (functionDefinition.getReturnType().equals("Int")) {
+                        returnType = new IntType();
+                    } else if (functionDefinition.getReturnType().equals("Bool")) {
+                        returnType = new BooleanType();
+                    } else {
+                        returnType = new UnitType();
+                    }
+                    frame.expectedType = returnType;
+                    frame.functionType = new FunctionType(functionDefinition.getFunctionName(), returnType,
+                            argTypes.toArray(new Type[]{}));
+                    functionDefinition.setType(frame.functionType);
+                    return frame.visit(1, functionDefinition.getBlock(), localSymbolTable);
+                }
+                Type returnType = frame.expectedType;
+                Optional<Type> bodyType = childType;
+                if (!returnType.getTypeStr().equals(bodyType.get().getTypeStr())) {
+                    throw new TypeCheckerException("Type mismatch for function, return type: " + returnType + ", actual return type: " + bodyType);
+                }
+                symbolTable.putType(functionDefinition.getFunctionName(), frame.functionType);
+                return frame.done(Optional.of(returnType));
+            }
+            case WhileOp whileOp: {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, whileOp.getCondition(), symbolTable);
+                    case 1:
+                        if (childType.get() instanceof BooleanType) {
+                            return frame.visit(2, whileOp.getBody(), symbolTable);
+                        } else {
+                            throw new TypeCheckerException("Expected a Boolean type for the conditional type.");
+                        }
+                    default:
+                        return frame.done(childType);
+                }
+            }
+            case UnaryOp unaryOp: {
+                if (frame.state == 0) {
+                    return frame.visit(1, unaryOp.getExpression(), symbolTable);
+                }
+                Optional<Type> operandType = childType;
+                if (unaryOp.getOperator().getText().equals("-") && operandType.get() instanceof IntType) {
+                    Type intType = new IntType();
+                    unaryOp.setType(intType);
+                    return frame.done(Optional.of(intType));
+                } else if (unaryOp.getOperator().getText().equals("not") && operandType.get() instanceof BooleanType) {
+                    Type boolType = new BooleanType();
+                    unaryOp.setType(boolType);
+                    return frame.done(Optional.of(boolType));
+                }
+                throw new TypeCheckerException("Invalid unary operation");
+            }
+            case Block block: {
+                List<Expression> expressionList = block.getExpressionList();
+                if (frame.state == 0) {
+                    handleFunctionDefinitions(expressionList, symbolTable);
+                    frame.localSymbolTable = new SymbolTable(symbolTable);
+                    frame.state = 1;
+                } else {
+                    Optional<Type> expressionType = childType;
+                    if (expressionType.isPresent() && expressionType.get() instanceof ReturnType returnType) {
+                        return frame.done(Optional.of(returnType.getActualReturnType()));
+                    }
+                    if (frame.state == 2) {
+                        return frame.done(expressionType);
+                    }
+                }
+                if (frame.index < expressionList.size() - 1) {
+                    return frame.visit(1, expressionList.get(frame.index++), frame.localSymbolTable);
+                }
+                if (!(expressionList.getLast() instanceof Unit)) {
+                    return frame.visit(2, expressionList.getLast(), frame.localSymbolTable);
+                }
+                return frame.done(Optional.of(new UnitType()));
+            }
+            case Break breakOp: {
+                UnitType unitType = new UnitType();
+                breakOp.setType(unitType);
+                return frame.done(Optional.of(unitType));
+            }
+            case Continue continueOp: {
+                UnitType unitType = new UnitType();
+                continueOp.setType(unitType);
+                return frame.done(Optional.of(unitType));
+            }
+            case Return returnExp: {
+                if (frame.state == 0) {
+                    return frame.visit(1, returnExp.getValue(), symbolTable);
+                }
+                Optional<Type> valueType = childType;
+                returnExp.setType(valueType.get());
+                return frame.done(Optional.of(new ReturnType(valueType.get())));
+            }
+            default: {
+                throw new TypeCheckerException("Invalid type found: " + frame.expression.getLocation());
+            }
+        }
+    }
+
+    private Optional<Type> checkBinaryOp(BinaryOp binaryOp, Optional<Type> leftType, Optional<Type> rightType)
+            throws TypeCheckerException {
+        Token operator = binaryOp.getOperator();
+        return switch (operator.getText()) {
+            case "==": {}
+            case "!=": {
+                if (leftType.get().getClass() == rightType.get().getClass()) {
+                    Type boolType = new BooleanType();
+                    binaryOp.setType(boolType);
+                    yield Optional.of(boolType);
+                }
+                throw new TypeCheckerException("Mismatching types found for equality operators: "
+                        + leftType.get() + ", " + rightType.get());
+            }
+            default: {
+                if (leftType.isPresent() && rightType.isPresent()) {
+                    if (leftType.get() instanceof IntType && rightType.get() instanceof IntType) {
+                        if ("+,-,*,%,/".contains(operator.getText())) {
+                            Type intType = new IntType();
+                            binaryOp.setType(intType);
+                            yield Optional.of(intType);
+                        }
+                        Type boolType = new BooleanType();
+                        binaryOp.setType(boolType);
+                        yield Optional.of(boolType);
+                    } else if (operator.getText().equals("and") || operator.getText().equals("or")) {
+                        if (leftType.get() instanceof BooleanType && rightType.get() instanceof BooleanType) {
+                            Type booleanType = new BooleanType();
+                            binaryOp.setType(booleanType);
+                            yield Optional.of(booleanType);
+                        } else {
+                            throw new TypeCheckerException("Expected a Boolean type for '" + operator.getText()
+                                    + "' operator. Instead found " + leftType + ", " + rightType);
+                        }
+                    } else {
+                        throw new TypeCheckerException("Expected an Int type for '" + operator.getText()
+                                + "' operator. Instead found " + leftType + ", " + rightType);
+                    }
+                } else {
+                    throw new TypeCheckerException("Expected an Int type for '" +
+                            operator.getText() + "' operator");
+                }
+            }
+        };
+    }
+
+    private void handleFunctionDefinitions(List<Expression> expressionList, SymbolTable symbolTable) {
+        for (Expression expression : expressionList) {
+            if (expression instanceof FunctionDefinition functionDefinition) {
+                List<Type> argTypes = new ArrayList<>();
+                for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                    Type argType;
+                    if (argument.getArgType().equals("Int")) {
+                        argType = new IntType();
+                    } else {
+                        argType = new BooleanType();
+                    }
+                    argument.setType(argType);
+                    argTypes.add(argType);
+                    symbolTable.putType(argument.getName(), argType);
+                }
+                Type returnType;
+                if (functionDefinition.getReturnType().equals("Int")) {
+                    returnType = new IntType();
+                } else if (functionDefinition.getReturnType().equals("Bool")) {
+                    returnType = new BooleanType();
+                } else {
+                    returnType = new UnitType();
+                }
+                FunctionType functionType = new FunctionType(functionDefinition.getFunctionName(), returnType, argTypes.toArray(new Type[]{}));
+                functionDefinition.setType(functionType);
+                symbolTable.putType(functionDefinition.getFunctionName(), functionType);
+            }
+        }
+    }
+
+    public Optional<Type> checkType(Expression expression) throws TypeCheckerException {
+        SymbolTable symbolTable = new SymbolTable(null);
+        symbolTable.putType("print_int", new FunctionType("print_int", new UnitType(), new IntType()));
+        symbolTable.putType("print_bool", new FunctionType("print_bool", new UnitType(), new BooleanType()));
+        symbolTable.putType("read_int", new FunctionType("read_int", new IntType()));
+        return checkType(expression, symbolTable);
+    }
+
+    private static class Frame {
+        private final Expression expression;
+        private final SymbolTable symbolTable;
+        private int state;
+        private int index;
+        private Optional<Type> leftType;
+        private Type expectedType;
+        private FunctionType functionType;
+        private List<Type> paramTypes;
+        private SymbolTable localSymbolTable;
+        private Optional<Type> type;
+
+        Frame(Expression expression, SymbolTable symbolTable) {
+            this.expression = expression;
+            this.symbolTable = symbolTable;
+        }
+
+        Frame visit(int nextState, Expression child, SymbolTable childSymbolTable) {
+            state = nextState;
+            return new Frame(child, childSymbolTable);
+        }
+
+        Frame done(Optional<Type> type) {
+            this.type = type;
+            return null;
+        }
+    }
+}
@@ -16,13 +16,12 @@ public class SymbolTable {
     }
 
     public Type getType(String typeName) throws TypeCheckerException {
-        if (symbols.containsKey(typeName)) {
-            return symbols.get(typeName);
+        for (SymbolTable symbolTable = this; symbolTable != null; symbolTable = symbolTable.parent) {
+            if (symbolTable.symbols.containsKey(typeName)) {
+                return symbolTable.symbols.get(typeName);
+            }
         }
-        if (parent == null) {
-            throw new TypeCheckerException("Type '" + typeName + "' not found in the context");
-        }
-        return parent.getType(typeName);
+        throw new TypeCheckerException("Type '" + typeName + "' not found in the context");
     }
 
     public boolean hasTypeLocally(String key) {
@@ -30,13 +29,12 @@ public class SymbolTable {
     }
 
     public Optional<SymbolTable> getTypeOwner(String typeName) {
-        if (symbols.containsKey(typeName)) {
-            return Optional.of(this);
-        }
-        if (parent == null) {
-            return Optional.empty();
+        for (SymbolTable symbolTable = this; symbolTable != null; symbolTable = symbolTable.parent) {
+            if (symbolTable.symbols.containsKey(typeName)) {
+                return Optional.of(symbolTable);
+            }
         }
-        return parent.getTypeOwner(typeName);
+        return Optional.empty();
     }
 
     public void putType(String key, Type type) {
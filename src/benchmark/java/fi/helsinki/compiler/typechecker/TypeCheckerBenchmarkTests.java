@@ -0,0 +1,91 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.ResolverException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.resolver.Resolver;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/*
+    Coarse benchmark of the type checker on a large generated program. Prints the time and the allocated bytes of a
+    check next to those of AllocatingTypeChecker, the checker as it was before the canonical types. The current
+    checker resolves the names of the program before checking it, which the baseline does not, so the time of the
+    Resolver alone is printed too.
+ */
+@Tag("benchmark")
+public class TypeCheckerBenchmarkTests {
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    @Test
+    public void testLargeProgram() throws ParserException, TypeCheckerException, ResolverException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        Block program = largeProgram(2_000);
+        assertEquals("Boolean", new AllocatingTypeChecker().checkType(program).get().getTypeStr());
+        assertSame(Types.BOOLEAN, new TypeChecker().checkType(program).get());
+
+        long[] baseline = measure(() -> new AllocatingTypeChecker().checkType(program));
+        long[] current = measure(() -> new TypeChecker().checkType(program));
+        long[] resolver = measure(() -> new Resolver().resolve(program));
+        System.err.printf("Type checker: %d functions, baseline %.2f ms, %d KiB, current %.2f ms, %d KiB, "
+                        + "of which resolving %.2f ms, %d KiB%n", 2_000, baseline[0] / 1e6, baseline[1] / 1024,
+                current[0] / 1e6, current[1] / 1024, resolver[0] / 1e6, resolver[1] / 1024);
+    }
+
+    /*
+        Runs the check a number of times, and returns the best time and the fewest bytes allocated by one run.
+     */
+    private long[] measure(Check check) throws TypeCheckerException, ResolverException {
+        long threadId = Thread.currentThread().threadId();
+        long bestTime = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 40; i++) {
+            long bytes = threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            check.run();
+            long time = System.nanoTime() - start;
+            bytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+            // The first runs are left out as a warm up
+            if (i >= 20) {
+                bestTime = Math.min(bestTime, time);
+                bestBytes = Math.min(bestBytes, bytes);
+            }
+        }
+        return new long[]{bestTime, bestBytes};
+    }
+
+    private interface Check {
+        void run() throws TypeCheckerException, ResolverException;
+    }
+
+    private Block largeProgram(int functions) throws ParserException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            builder.append("fun f").append(i).append("(a: Int, b: Bool): Int {\n")
+                    .append("    var c = a * 2 + 1;\n")
+                    .append("    if b and c > 3 then c else -c\n")
+                    .append("}\n")
+                    .append("var v").append(i).append(" = f").append(i).append("(").append(i)
+                    .append(", true) + (3 * ").append(i).append(" - 1) % 7;\n")
+                    .append("print_bool(v").append(i).append(" == 2 or not (v").append(i).append(" < 10));\n");
+        }
+        builder.append("v0 == 1");
+        return new Parser(new Tokenizer().tokenize(builder.toString(), "Testfile.dl")).parse();
+    }
+}
@@ -3,6 +3,7 @@ package fi.helsinki.compiler;
 import fi.helsinki.compiler.assemblygen.Assembler;
 import fi.helsinki.compiler.assemblygen.AssemblyGenerator;
 import fi.helsinki.compiler.common.CommonStatics;
+import fi.helsinki.compiler.common.Diagnostic;
 import fi.helsinki.compiler.common.expressions.Expression;
 import fi.helsinki.compiler.exceptions.CompilationException;
 import fi.helsinki.compiler.exceptions.IRGenerationException;
@@ -11,7 +12,9 @@ import fi.helsinki.compiler.exceptions.TypeCheckerException;
 import fi.helsinki.compiler.irgenerator.IRGenerator;
 import fi.helsinki.compiler.irgenerator.instructions.Instruction;
 import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.SourceInput;
 import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.typechecker.TypeCheckCache;
 import fi.helsinki.compiler.typechecker.TypeChecker;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -19,11 +22,15 @@ import org.json.simple.parser.JSONParser;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class Compiler {
+
+    // Shared by the compilations of the server, which often get programs with mostly the same functions
+    private static final TypeCheckCache TYPE_CHECK_CACHE = new TypeCheckCache(4096);
+
     public static void main(String[] args) throws Exception {
         String command = null;
         String inputFile = null;
@@ -51,11 +58,11 @@ public class Compiler {
             throw new CompilationException("Command argument missing");
         }
         if (command.equals("compile")) {
-            String sourceCode = readSourceCode(inputFile);
+            SourceInput sourceInput = readSourceCode(inputFile);
             if (outputFile == null) {
                 throw new CompilationException("Output file flag --output=... required");
             }
-            startCompilation(sourceCode, outputFile);
+            startCompilation(sourceInput.asCharSequence(), outputFile);
         } else if (command.equals("serve")) {
             CompilerServer compilerServer = new CompilerServer(host, port);
             compilerServer.startServer();
@@ -138,13 +145,24 @@ public class Compiler {
         }
     }
 
-    private static byte[] startCompilation(String sourceCode, String output) throws ParserException,
+    private static byte[] startCompilation(CharSequence sourceCode, String output) throws ParserException,
             TypeCheckerException, IRGenerationException, ClassNotFoundException, IllegalAccessException,
             IOException, InterruptedException {
-        Parser parser = new Parser(new Tokenizer().tokenize(sourceCode, "TestFile.dl"));
-        TypeChecker typeChecker = new TypeChecker();
-        Expression expression = parser.parse();
-        typeChecker.checkType(expression);
+        Parser parser = new Parser(new Tokenizer().compileStream(sourceCode, "TestFile.dl"));
+        TypeChecker typeChecker = new TypeChecker(TYPE_CHECK_CACHE);
+        Expression expression = parser.parseWithRecovery();
+        // Every syntax and type error is reported at once so that they can all be fixed before compiling again
+        typeChecker.checkTypeWithRecovery(expression);
+        if (!parser.getDiagnostics().isEmpty()) {
+            List<Diagnostic> diagnostics = new ArrayList<>(parser.getDiagnostics());
+            diagnostics.addAll(typeChecker.getDiagnostics());
+            throw new ParserException(diagnostics.stream().map(Diagnostic::toString)
+                    .collect(Collectors.joining("; ")));
+        }
+        if (!typeChecker.getDiagnostics().isEmpty()) {
+            throw new TypeCheckerException(typeChecker.getDiagnostics().stream().map(Diagnostic::toString)
+                    .collect(Collectors.joining("; ")));
+        }
         List<Instruction> instructions = new IRGenerator(new CommonStatics()).generateIR(expression);
         if (output == null) {
             return new Assembler().assembleAndGetExecutable(new AssemblyGenerator().generateAssembly(instructions),
@@ -156,12 +174,11 @@ public class Compiler {
         }
     }
 
-    private static String readSourceCode(String inputFilePath) throws IOException {
+    private static SourceInput readSourceCode(String inputFilePath) throws IOException {
         if (inputFilePath != null) {
-            return Files.readString(Path.of(inputFilePath));
+            return SourceInput.fromFile(Path.of(inputFilePath));
         } else {
-            Scanner stdScanner = new Scanner(System.in);
-            return stdScanner.next();
+            return SourceInput.fromStream(System.in);
         }
     }
 }
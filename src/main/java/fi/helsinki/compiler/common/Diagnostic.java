@@ -0,0 +1,28 @@
+package fi.helsinki.compiler.common;
+
+/*
+    An error found in the source code by a pass that keeps going after the first error.
+ */
+public class Diagnostic {
+
+    private final String message;
+    private final Location location;
+
+    public Diagnostic(String message, Location location) {
+        this.message = message;
+        this.location = location;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return location + ": " + message;
+    }
+}
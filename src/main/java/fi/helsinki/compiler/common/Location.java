@@ -23,6 +23,18 @@ public class Location {
         return column;
     }
 
+    /*
+        Compact form of the line and column used where many locations are kept, e.g. in tokens. The file is kept
+        apart by the owner of the packed position, usually as a reference shared by every location in the file.
+     */
+    public static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    public static Location unpack(String file, long packedPosition) {
+        return new Location(file, (int) (packedPosition >>> 32), (int) packedPosition);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Location location &&
@@ -26,6 +26,10 @@ public class BinaryOp extends Expression {
         return operatorToken;
     }
 
+    public void setOperator(Token operator) {
+        this.operatorToken = operator;
+    }
+
     public Expression getRight() {
         return right;
     }
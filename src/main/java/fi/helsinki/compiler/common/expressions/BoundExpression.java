@@ -0,0 +1,41 @@
+package fi.helsinki.compiler.common.expressions;
+
+import fi.helsinki.compiler.common.Location;
+
+/*
+    An expression that declares or refers to a variable or function by name. The Resolver binds it either to a slot of
+    the frame at the given function nesting depth, where 0 is the frame of the top level code, or to a global when the
+    depth is GLOBAL, so that the later passes can keep their values in arrays instead of looking names up by string.
+ */
+public abstract class BoundExpression extends Expression {
+
+    public static final int GLOBAL = -1;
+    // The slot of a name the Resolver could not find when resolving with recovery
+    public static final int UNRESOLVED = -1;
+
+    private int depth = GLOBAL;
+    private int slot = UNRESOLVED;
+
+    public BoundExpression(Location location) {
+        super(location);
+    }
+
+    public abstract String getName();
+
+    public void bind(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public boolean isGlobal() {
+        return depth == GLOBAL;
+    }
+}
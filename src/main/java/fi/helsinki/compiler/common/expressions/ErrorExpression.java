@@ -0,0 +1,20 @@
+package fi.helsinki.compiler.common.expressions;
+
+import fi.helsinki.compiler.common.Location;
+
+/*
+    Stands in the AST for a statement that could not be parsed. Only built when the parser recovers from errors.
+ */
+public class ErrorExpression extends Expression {
+
+    private final String message;
+
+    public ErrorExpression(String message, Location location) {
+        super(location);
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -2,7 +2,7 @@ package fi.helsinki.compiler.common.expressions;
 
 import fi.helsinki.compiler.common.Location;
 import fi.helsinki.compiler.common.types.Type;
-import fi.helsinki.compiler.common.types.UnitType;
+import fi.helsinki.compiler.common.types.Types;
 
 /*
  Base interface for AST nodes representing expressions.
@@ -10,7 +10,7 @@ import fi.helsinki.compiler.common.types.UnitType;
 public abstract class Expression {
 
     private Location location;
-    private Type type = new UnitType(); // Default type is assigned as UnitType before the type checking
+    private Type type = Types.UNIT; // Default type is assigned as UnitType before the type checking
 
     public Expression(Location location) {
         this.location = location;
@@ -20,6 +20,10 @@ public abstract class Expression {
         return location;
     }
 
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
     public Type getType() {
         return type;
     }
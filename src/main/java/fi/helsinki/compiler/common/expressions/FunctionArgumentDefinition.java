@@ -2,7 +2,7 @@ package fi.helsinki.compiler.common.expressions;
 
 import fi.helsinki.compiler.common.Location;
 
-public class FunctionArgumentDefinition extends Expression {
+public class FunctionArgumentDefinition extends BoundExpression {
     private final String name;
     private final String argType;
 
@@ -12,6 +12,7 @@ public class FunctionArgumentDefinition extends Expression {
         this.argType = type;
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -4,7 +4,7 @@ import fi.helsinki.compiler.common.Location;
 
 import java.util.List;
 
-public class FunctionCall extends Expression {
+public class FunctionCall extends BoundExpression {
     private String functionName;
     private List<Expression> parameters;
 
@@ -21,4 +21,9 @@ public class FunctionCall extends Expression {
     public String getFunctionName() {
         return functionName;
     }
+
+    @Override
+    public String getName() {
+        return functionName;
+    }
 }
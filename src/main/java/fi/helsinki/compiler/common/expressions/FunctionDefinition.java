@@ -5,12 +5,13 @@ import fi.helsinki.compiler.common.Location;
 import java.util.ArrayList;
 import java.util.List;
 
-public class FunctionDefinition extends Expression {
+public class FunctionDefinition extends BoundExpression {
 
     private String functionName;
     private List<FunctionArgumentDefinition> arguments;
     private String returnType;
     private Block block;
+    private int frameSize;
 
     public FunctionDefinition(String functionName, List<FunctionArgumentDefinition> arguments, String returnType,
                               Block block, Location location) {
@@ -37,6 +38,22 @@ public class FunctionDefinition extends Expression {
         return block;
     }
 
+    @Override
+    public String getName() {
+        return functionName;
+    }
+
+    /*
+        Number of slots the frame of the function needs for its arguments and local variables, set by the Resolver.
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
     @Override
     public Location getLocation() {
         return super.getLocation();
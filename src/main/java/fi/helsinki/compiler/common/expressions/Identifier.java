@@ -2,7 +2,7 @@ package fi.helsinki.compiler.common.expressions;
 
 import fi.helsinki.compiler.common.Location;
 
-public class Identifier extends Expression {
+public class Identifier extends BoundExpression {
 
     private String name;
 
@@ -11,6 +11,7 @@ public class Identifier extends Expression {
         this.name = name;
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -21,4 +21,8 @@ public class UnaryOp extends Expression {
     public Token getOperator() {
         return operator;
     }
+
+    public void setOperator(Token operator) {
+        this.operator = operator;
+    }
 }
@@ -4,7 +4,7 @@ import fi.helsinki.compiler.common.Location;
 
 import java.util.Optional;
 
-public class VariableDef extends Expression {
+public class VariableDef extends BoundExpression {
 
     private String name;
     private Optional<String> definedType;
@@ -24,6 +24,7 @@ public class VariableDef extends Expression {
         this.value = value;
     }
 
+    @Override
     public String getName() {
         return name;
     }
@@ -0,0 +1,12 @@
+package fi.helsinki.compiler.common.types;
+
+/*
+    The type of an expression with a type error, given when the type checker keeps going after errors. Expressions
+    using a value of this type get it too without reporting errors of their own.
+ */
+public class ErrorType extends Type {
+    @Override
+    public String getTypeStr() {
+        return "Error";
+    }
+}
@@ -1,11 +1,20 @@
 package fi.helsinki.compiler.common.types;
 
+/*
+    Types built with their constructors compare by their type string. The passes use the canonical instances in Types
+    instead, which are equal only to themselves.
+ */
 public abstract class Type {
     public abstract String getTypeStr();
 
     @Override
     public boolean equals(Object obj) {
-        return ((Type) obj).getTypeStr().equals(getTypeStr());
+        return this == obj || (obj instanceof Type type && type.getTypeStr().equals(getTypeStr()));
+    }
+
+    @Override
+    public int hashCode() {
+        return getTypeStr().hashCode();
     }
 
     @Override
@@ -0,0 +1,108 @@
+package fi.helsinki.compiler.common.types;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Canonical type instances. Every type without parameters has a single instance, and function and return types are
+    hash-consed by their signature in an instance of Types, so two types taken from the same instance are equal
+    exactly when they are the same object and the passes can compare them with ==. Each compilation owns its own
+    instance, so the function types of a program are dropped with it.
+ */
+public final class Types {
+
+    public static final IntType INT = new IntType();
+    public static final BooleanType BOOLEAN = new BooleanType();
+    public static final UnitType UNIT = new UnitType();
+    public static final ErrorType ERROR = new ErrorType();
+
+    public static final AdditionType ADDITION = new AdditionType();
+    public static final SubtractionType SUBTRACTION = new SubtractionType();
+    public static final MultiplicationType MULTIPLICATION = new MultiplicationType();
+    public static final DivisionType DIVISION = new DivisionType();
+    public static final ModulusType MODULUS = new ModulusType();
+    public static final EqualityType EQUALITY = new EqualityType();
+    public static final InequalityType INEQUALITY = new InequalityType();
+    public static final LessThanType LESS_THAN = new LessThanType();
+    public static final LessThanOrEqualType LESS_THAN_OR_EQUAL = new LessThanOrEqualType();
+    public static final GreaterThanType GREATER_THAN = new GreaterThanType();
+    public static final GreaterThanOrEqualType GREATER_THAN_OR_EQUAL = new GreaterThanOrEqualType();
+    public static final AndType AND = new AndType();
+    public static final OrType OR = new OrType();
+    public static final NegationType NEGATION = new NegationType();
+    public static final NotType NOT = new NotType();
+
+    private final Map<String, FunctionType[]> functionTypes = new ConcurrentHashMap<>();
+    private final Map<Type, ReturnType> returnTypes = new ConcurrentHashMap<>();
+
+    /*
+        Returns the canonical instance of the type with the same type string, or the type itself for function and
+        return types, which are canonical only when they come from function and returning.
+     */
+    public static Type canonical(Type type) {
+        if (type == null) {
+            return null;
+        }
+        return switch (type.getTypeStr()) {
+            case "Int" -> INT;
+            case "Boolean" -> BOOLEAN;
+            case "Unit" -> UNIT;
+            case "Error" -> ERROR;
+            default -> type;
+        };
+    }
+
+    public FunctionType function(String functionName, Type returnType, Type... parameterTypes) {
+        Type canonicalReturn = canonical(returnType);
+        Type[] canonicalParameters = new Type[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            canonicalParameters[i] = canonical(parameterTypes[i]);
+        }
+        FunctionType functionType = find(functionTypes.get(functionName), canonicalReturn, canonicalParameters);
+        if (functionType != null) {
+            return functionType;
+        }
+        synchronized (functionTypes) {
+            FunctionType[] overloads = functionTypes.get(functionName);
+            functionType = find(overloads, canonicalReturn, canonicalParameters);
+            if (functionType == null) {
+                functionType = new FunctionType(functionName, canonicalReturn, canonicalParameters);
+                int count = overloads == null ? 0 : overloads.length;
+                FunctionType[] extended = overloads == null ? new FunctionType[1] : Arrays.copyOf(overloads, count + 1);
+                extended[count] = functionType;
+                functionTypes.put(functionName, extended);
+            }
+            return functionType;
+        }
+    }
+
+    public ReturnType returning(Type actualReturnType) {
+        return returnTypes.computeIfAbsent(canonical(actualReturnType), ReturnType::new);
+    }
+
+    /*
+        Function types are looked up by name first, which is usually enough to tell them apart, and then compared by
+        the identity of their canonical return and parameter types.
+     */
+    private static FunctionType find(FunctionType[] overloads, Type returnType, Type[] parameterTypes) {
+        if (overloads == null) {
+            return null;
+        }
+        for (FunctionType functionType : overloads) {
+            List<Type> parameters = functionType.getParameterTypes();
+            if (functionType.getReturnType() != returnType || parameters.size() != parameterTypes.length) {
+                continue;
+            }
+            boolean same = true;
+            for (int i = 0; i < parameterTypes.length && same; i++) {
+                same = parameters.get(i) == parameterTypes[i];
+            }
+            if (same) {
+                return functionType;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,7 @@
+package fi.helsinki.compiler.exceptions;
+
+public class IRInterpreterException extends Exception {
+    public IRInterpreterException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package fi.helsinki.compiler.exceptions;
+
+public class ResolverException extends Exception {
+
+    public ResolverException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package fi.helsinki.compiler.exceptions;
+
+public class VirtualMachineException extends Exception {
+    public VirtualMachineException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,569 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.expressions.FunctionDefinition;
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ResolverException;
+import fi.helsinki.compiler.resolver.Resolver;
+
+import java.util.List;
+
+/*
+    Compiles a program once into a tree of closures which can then be run many times. Everything the Interpreter
+    looks up again each time it evaluates a node is decided here when the closure of the node is created: the kind of
+    the node, its operator, the slot of its variable and the branches of a conditional. Running a node is a single
+    call going straight to the closures of its operands, with no dispatch on the kind of the node or on the name of
+    the operator.
+    Values are never boxed while the program runs. Every closure returns a long, an Int as itself and a Bool as 1 or 0,
+    and the variables are kept in a long array. The type of each node is worked out here instead, from the literals,
+    the operators and the values the variables were defined with, and only the final value of the program is boxed.
+    A call to a function defined in the program pushes its arguments onto one long array shared by all the calls,
+    where they become the first slots of its frame, and pops the frame when it returns. No maps or arrays are created
+    for a call. A function calling itself as the last thing it does, in a return or in the tail position of its body,
+    instead replaces its arguments in its own frame and runs its body again, so such a recursion uses no stack at all.
+    The closures call each other recursively, so unlike with the Interpreter the nesting depth of the program and the
+    depth of the recursion are limited by the Java stack. A CompiledProgram runs on a thread with a large stack so that
+    the limit is far beyond what a program is likely to need.
+ */
+public class ClosureCompiler {
+
+    // The types of the values in the slots of the top level frame and of the frame of the function being compiled,
+    // as of the node being compiled. There is no function frame outside of the functions.
+    private Type[] slotTypes;
+    private Type[] functionSlotTypes;
+    // The functions defined in the program by their global slots, and the one being compiled
+    private UserFunction[] functions;
+    private UserFunction currentFunction;
+    // The loops around the node being compiled in the current function, which a break or continue may leave
+    private int loopDepth;
+
+    public CompiledProgram compile(Expression expression) throws InterpreterException {
+        Resolver resolver = new Resolver();
+        try {
+            resolver.resolve(expression);
+        } catch (ResolverException e) {
+            throw new InterpreterException(e.getMessage());
+        }
+        slotTypes = new Type[resolver.getFrameSize()];
+        functionSlotTypes = null;
+        loopDepth = 0;
+        functions = new UserFunction[resolver.getGlobals().size()];
+        // The functions are known before any of them is compiled, so that they can be called before their definitions
+        if (expression instanceof Block block) {
+            for (Expression child : block.getExpressionList()) {
+                if (child instanceof FunctionDefinition functionDefinition) {
+                    Type[] argumentTypes = new Type[functionDefinition.getArguments().size()];
+                    for (int i = 0; i < argumentTypes.length; i++) {
+                        argumentTypes[i] = typeOf(functionDefinition.getArguments().get(i).getArgType());
+                    }
+                    functions[functionDefinition.getSlot()] = new UserFunction(argumentTypes,
+                            typeOf(functionDefinition.getReturnType()));
+                }
+            }
+        }
+        Compiled root = compileNode(expression);
+        return new CompiledProgram(root.node(), root.type(), resolver.getFrameSize());
+    }
+
+    private Compiled compileNode(Expression expression) throws InterpreterException {
+        switch (expression) {
+            case IntLiteral intLiteral: {
+                long value = intLiteral.getValue();
+                return new Compiled(context -> value, Types.INT);
+            }
+            case BooleanLiteral bool: {
+                long value = bool.getValue() ? 1 : 0;
+                return new Compiled(context -> value, Types.BOOLEAN);
+            }
+            case Identifier identifier: {
+                Type type = identifier.isGlobal() ? null : slotTypes(identifier)[identifier.getSlot()];
+                if (type == null) {
+                    throw new InterpreterException("Invalid type found: " + expression);
+                }
+                int slot = identifier.getSlot();
+                if (identifier.getDepth() == 0) {
+                    return new Compiled(context -> context.stack[slot], type);
+                }
+                return new Compiled(context -> context.stack[context.base + slot], type);
+            }
+            case VariableDef variableDef: {
+                int slot = variableDef.getSlot();
+                Compiled compiled = compileNode(variableDef.getValue());
+                Node value = compiled.node();
+                // The slot may have been used by a variable of another type in a block which has ended
+                slotTypes(variableDef)[slot] = compiled.type();
+                // The value is computed before the stack is read, as a call made for it may have grown the stack
+                if (variableDef.getDepth() == 0) {
+                    return new Compiled(context -> {
+                        long result = value.execute(context);
+                        context.stack[slot] = result;
+                        return 0;
+                    }, Types.UNIT);
+                }
+                return new Compiled(context -> {
+                    long result = value.execute(context);
+                    context.stack[context.base + slot] = result;
+                    return 0;
+                }, Types.UNIT);
+            }
+            case UnaryOp unaryOp: {
+                if (unaryOp.getOperator().getText().equals("-")) {
+                    Node operand = compileOperand(unaryOp.getExpression(), Types.INT);
+                    return new Compiled(context -> -operand.execute(context), Types.INT);
+                }
+                Node operand = compileOperand(unaryOp.getExpression(), Types.BOOLEAN);
+                return new Compiled(context -> operand.execute(context) ^ 1, Types.BOOLEAN);
+            }
+            case BinaryOp binaryOp: {
+                return compileBinaryOp(binaryOp);
+            }
+            case ConditionalOp conditionalOp: {
+                Node condition = compileCondition(conditionalOp.getCondition());
+                Compiled thenBlock = compileNode(conditionalOp.getThenBlock());
+                Node thenNode = thenBlock.node();
+                if (conditionalOp.getElseBlock() == null) {
+                    return new Compiled(context -> {
+                        if (condition.execute(context) != 0) {
+                            thenNode.execute(context);
+                        }
+                        return 0;
+                    }, Types.UNIT);
+                }
+                Compiled elseBlock = compileNode(conditionalOp.getElseBlock());
+                Node elseNode = elseBlock.node();
+                Type type = thenBlock.type() == elseBlock.type() ? thenBlock.type() : Types.UNIT;
+                return new Compiled(context -> condition.execute(context) != 0
+                        ? thenNode.execute(context) : elseNode.execute(context), type);
+            }
+            case WhileOp whileOp: {
+                Node condition = compileCondition(whileOp.getCondition());
+                loopDepth += 1;
+                Node body = compileNode(whileOp.getBody()).node();
+                loopDepth -= 1;
+                return new Compiled(context -> {
+                    while (condition.execute(context) != 0) {
+                        try {
+                            body.execute(context);
+                        } catch (LoopSignal signal) {
+                            if (signal == LoopSignal.BREAK) {
+                                break;
+                            }
+                        }
+                    }
+                    return 0;
+                }, Types.UNIT);
+            }
+            case Break breakOp: {
+                checkInLoop("break");
+                return new Compiled(context -> {
+                    throw LoopSignal.BREAK;
+                }, Types.UNIT);
+            }
+            case Continue continueOp: {
+                checkInLoop("continue");
+                return new Compiled(context -> {
+                    throw LoopSignal.CONTINUE;
+                }, Types.UNIT);
+            }
+            case Block block: {
+                return compileBlock(block);
+            }
+            case FunctionCall functionCall: {
+                return compileFunctionCall(functionCall);
+            }
+            case FunctionDefinition functionDefinition: {
+                compileFunction(functionDefinition);
+                return new Compiled(context -> 0, Types.UNIT);
+            }
+            case Return returnOp: {
+                if (functionSlotTypes == null) {
+                    throw new InterpreterException("Found return outside of a function");
+                }
+                Node value = isSelfCall(returnOp.getValue())
+                        ? compileSelfCall((FunctionCall) returnOp.getValue()).node()
+                        : compileNode(returnOp.getValue()).node();
+                return new Compiled(context -> {
+                    context.returnValue = value.execute(context);
+                    throw ReturnSignal.RETURN;
+                }, Types.UNIT);
+            }
+            default: {
+                throw new InterpreterException("Invalid type found: " + expression);
+            }
+        }
+    }
+
+    private Compiled compileBlock(Block block) throws InterpreterException {
+        List<Expression> expressionList = block.getExpressionList();
+        // A block ending in a semicolon has no value
+        boolean hasValue = !(expressionList.getLast() instanceof Unit);
+        int count = hasValue ? expressionList.size() : expressionList.size() - 1;
+        Node[] nodes = new Node[count];
+        Type type = Types.UNIT;
+        for (int i = 0; i < count; i++) {
+            Compiled compiled = compileNode(expressionList.get(i));
+            nodes[i] = compiled.node();
+            type = compiled.type();
+        }
+        if (!hasValue) {
+            type = Types.UNIT;
+        }
+        if (count == 0) {
+            return new Compiled(context -> 0, type);
+        }
+        Node last = nodes[count - 1];
+        if (count == 1) {
+            return new Compiled(last, type);
+        }
+        return new Compiled(context -> {
+            for (int i = 0; i < count - 1; i++) {
+                nodes[i].execute(context);
+            }
+            return last.execute(context);
+        }, type);
+    }
+
+    private void compileFunction(FunctionDefinition functionDefinition) throws InterpreterException {
+        UserFunction function = functions[functionDefinition.getSlot()];
+        functionSlotTypes = new Type[functionDefinition.getFrameSize()];
+        for (int i = 0; i < function.argumentTypes.length; i++) {
+            functionSlotTypes[functionDefinition.getArguments().get(i).getSlot()] = function.argumentTypes[i];
+        }
+        currentFunction = function;
+        // A break or continue in the function cannot leave a loop of the code calling it
+        int outerLoopDepth = loopDepth;
+        loopDepth = 0;
+        function.body = compileTail(functionDefinition.getBlock()).node();
+        function.frameSize = functionDefinition.getFrameSize();
+        loopDepth = outerLoopDepth;
+        functionSlotTypes = null;
+        currentFunction = null;
+    }
+
+    private void checkInLoop(String keyword) throws InterpreterException {
+        if (loopDepth == 0) {
+            throw new InterpreterException("Found " + keyword + " outside of a loop");
+        }
+    }
+
+    /*
+        Compiles an expression whose value is the value of the function being compiled. The expressions in its tail
+        positions are compiled in the same way, and calls of the function itself found there become self calls.
+     */
+    private Compiled compileTail(Expression expression) throws InterpreterException {
+        if (isSelfCall(expression)) {
+            return compileSelfCall((FunctionCall) expression);
+        }
+        if (expression instanceof Return returnOp) {
+            // A return of the value of the body needs no signal
+            Compiled value = compileTail(returnOp.getValue());
+            return new Compiled(value.node(), Types.UNIT);
+        }
+        if (expression instanceof ConditionalOp conditionalOp && conditionalOp.getElseBlock() != null) {
+            Node condition = compileCondition(conditionalOp.getCondition());
+            Compiled thenBlock = compileTail(conditionalOp.getThenBlock());
+            Compiled elseBlock = compileTail(conditionalOp.getElseBlock());
+            Node thenNode = thenBlock.node();
+            Node elseNode = elseBlock.node();
+            Type type = thenBlock.type() == elseBlock.type() ? thenBlock.type() : Types.UNIT;
+            return new Compiled(context -> condition.execute(context) != 0
+                    ? thenNode.execute(context) : elseNode.execute(context), type);
+        }
+        if (expression instanceof Block block) {
+            List<Expression> expressionList = block.getExpressionList();
+            // The last expression is in the tail position if it gives the block its value, or if it is a return
+            int last = expressionList.size() - 1;
+            if (expressionList.get(last) instanceof Unit && last > 0
+                    && expressionList.get(last - 1) instanceof Return) {
+                last -= 1;
+            } else if (expressionList.get(last) instanceof Unit) {
+                return compileBlock(block);
+            }
+            Node[] nodes = new Node[last];
+            for (int i = 0; i < last; i++) {
+                nodes[i] = compileNode(expressionList.get(i)).node();
+            }
+            Compiled tail = compileTail(expressionList.get(last));
+            Node tailNode = tail.node();
+            Type type = expressionList.getLast() instanceof Unit ? Types.UNIT : tail.type();
+            return new Compiled(context -> {
+                for (Node node : nodes) {
+                    node.execute(context);
+                }
+                return tailNode.execute(context);
+            }, type);
+        }
+        return compileNode(expression);
+    }
+
+    private boolean isSelfCall(Expression expression) {
+        return currentFunction != null && expression instanceof FunctionCall functionCall && functionCall.isGlobal()
+                && functions[functionCall.getSlot()] == currentFunction;
+    }
+
+    /*
+        A call of the function being run, made as the last thing it does. The arguments are pushed above the frame
+        like for any call and then moved to its first slots, where the body run again will find them. The call returns
+        the caller to its loop in UserFunction.call.
+     */
+    private Compiled compileSelfCall(FunctionCall functionCall) throws InterpreterException {
+        UserFunction function = currentFunction;
+        List<Expression> parameters = functionCall.getParameters();
+        if (parameters.size() != function.argumentTypes.length) {
+            throw new InterpreterException("Function provided with an invalid value");
+        }
+        Node[] arguments = new Node[parameters.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compileOperand(parameters.get(i), function.argumentTypes[i],
+                    "Function provided with an invalid value");
+        }
+        int count = arguments.length;
+        return new Compiled(context -> {
+            int top = context.top;
+            for (Node argument : arguments) {
+                context.push(argument.execute(context));
+            }
+            System.arraycopy(context.stack, top, context.stack, context.base, count);
+            context.top = top;
+            context.tailCall = true;
+            return 0;
+        }, function.returnType);
+    }
+
+    /*
+        The built-in functions read from and write straight to the input and the output of the run.
+     */
+    private Compiled compileFunctionCall(FunctionCall functionCall) throws InterpreterException {
+        List<Expression> parameters = functionCall.getParameters();
+        if (!functionCall.isGlobal()) {
+            throw new InterpreterException("Invalid type found: " + functionCall);
+        }
+        if (functionCall.getSlot() >= Resolver.BUILT_IN_FUNCTIONS.size()) {
+            UserFunction function = functions[functionCall.getSlot()];
+            if (function == null || parameters.size() != function.argumentTypes.length) {
+                throw new InterpreterException("Function provided with an invalid value");
+            }
+            Node[] arguments = new Node[parameters.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = compileOperand(parameters.get(i), function.argumentTypes[i],
+                        "Function provided with an invalid value");
+            }
+            return new Compiled(context -> function.call(context, arguments), function.returnType);
+        }
+        if (functionCall.getSlot() == 2) {
+            if (!parameters.isEmpty()) {
+                throw new InterpreterException("Invalid input type found");
+            }
+            return new Compiled(context -> context.input.readInt(), Types.INT);
+        }
+        if (parameters.size() != 1) {
+            throw new InterpreterException("Invalid input type found");
+        }
+        if (functionCall.getSlot() == 0) {
+            Node value = compileOperand(parameters.getFirst(), Types.INT, "Invalid input type found");
+            return new Compiled(context -> {
+                context.output.printInt(value.execute(context));
+                return 0;
+            }, Types.UNIT);
+        }
+        Node value = compileOperand(parameters.getFirst(), Types.BOOLEAN, "Invalid input type found");
+        return new Compiled(context -> {
+            context.output.printBool(value.execute(context) != 0);
+            return 0;
+        }, Types.UNIT);
+    }
+
+    private Compiled compileBinaryOp(BinaryOp binaryOp) throws InterpreterException {
+        String operator = binaryOp.getOperator().getText();
+        if (operator.equals("=")) {
+            if (!(binaryOp.getLeft() instanceof Identifier identifier)) {
+                throw new InterpreterException("Expected an identifier: " + binaryOp.getLeft());
+            }
+            Type type = identifier.isGlobal() ? null : slotTypes(identifier)[identifier.getSlot()];
+            if (type == null) {
+                throw new InterpreterException("Invalid type found: " + identifier);
+            }
+            int slot = identifier.getSlot();
+            // The values are not boxed, so a value of another type would be read back as one of the variable's type
+            Node valueNode = compileOperand(binaryOp.getRight(), type);
+            if (identifier.getDepth() == 0) {
+                return new Compiled(context -> {
+                    long result = valueNode.execute(context);
+                    return context.stack[slot] = result;
+                }, type);
+            }
+            return new Compiled(context -> {
+                long result = valueNode.execute(context);
+                return context.stack[context.base + slot] = result;
+            }, type);
+        }
+        if (operator.equals("==") || operator.equals("!=")) {
+            Compiled left = compileNode(binaryOp.getLeft());
+            Compiled right = compileNode(binaryOp.getRight());
+            Node leftNode = left.node();
+            Node rightNode = right.node();
+            if (left.type() != right.type() || left.type() == Types.UNIT) {
+                // Values of different types, or without a value, are never equal
+                long result = operator.equals("==") ? 0 : 1;
+                return new Compiled(context -> {
+                    leftNode.execute(context);
+                    rightNode.execute(context);
+                    return result;
+                }, Types.BOOLEAN);
+            }
+            if (operator.equals("==")) {
+                return new Compiled(context -> leftNode.execute(context) == rightNode.execute(context) ? 1 : 0,
+                        Types.BOOLEAN);
+            }
+            return new Compiled(context -> leftNode.execute(context) != rightNode.execute(context) ? 1 : 0,
+                    Types.BOOLEAN);
+        }
+        if (operator.equals("and") || operator.equals("or")) {
+            Node left = compileOperand(binaryOp.getLeft(), Types.BOOLEAN);
+            Node right = compileOperand(binaryOp.getRight(), Types.BOOLEAN);
+            if (operator.equals("and")) {
+                return new Compiled(context -> left.execute(context) != 0 ? right.execute(context) : 0,
+                        Types.BOOLEAN);
+            }
+            return new Compiled(context -> left.execute(context) != 0 ? 1 : right.execute(context), Types.BOOLEAN);
+        }
+        Node left = compileOperand(binaryOp.getLeft(), Types.INT);
+        Node right = compileOperand(binaryOp.getRight(), Types.INT);
+        return switch (operator) {
+            case "+" -> new Compiled(context -> left.execute(context) + right.execute(context), Types.INT);
+            case "-" -> new Compiled(context -> left.execute(context) - right.execute(context), Types.INT);
+            case "*" -> new Compiled(context -> left.execute(context) * right.execute(context), Types.INT);
+            case "/" -> new Compiled(context -> left.execute(context) / divisor(right.execute(context)), Types.INT);
+            case "%" -> new Compiled(context -> left.execute(context) % divisor(right.execute(context)), Types.INT);
+            case "<" -> new Compiled(context -> left.execute(context) < right.execute(context) ? 1 : 0, Types.BOOLEAN);
+            case "<=" -> new Compiled(context -> left.execute(context) <= right.execute(context) ? 1 : 0,
+                    Types.BOOLEAN);
+            case ">" -> new Compiled(context -> left.execute(context) > right.execute(context) ? 1 : 0, Types.BOOLEAN);
+            case ">=" -> new Compiled(context -> left.execute(context) >= right.execute(context) ? 1 : 0,
+                    Types.BOOLEAN);
+            default -> throw new InterpreterException("Invalid operator found: " + operator);
+        };
+    }
+
+    private static long divisor(long value) throws InterpreterException {
+        if (value == 0) {
+            throw new InterpreterException("Division by zero");
+        }
+        return value;
+    }
+
+    private Node compileOperand(Expression expression, Type expectedType) throws InterpreterException {
+        return compileOperand(expression, expectedType, null);
+    }
+
+    private Node compileOperand(Expression expression, Type expectedType, String message) throws InterpreterException {
+        Compiled compiled = compileNode(expression);
+        if (compiled.type() != expectedType) {
+            throw new InterpreterException(message != null ? message : "Expected " + article(expectedType) + " "
+                    + typeName(expectedType) + " value. Instead found: " + typeName(compiled.type()));
+        }
+        return compiled.node();
+    }
+
+    private Node compileCondition(Expression expression) throws InterpreterException {
+        return compileOperand(expression, Types.BOOLEAN, "Expected a conditional value.");
+    }
+
+    private Type[] slotTypes(BoundExpression expression) {
+        return expression.getDepth() == 0 ? slotTypes : functionSlotTypes;
+    }
+
+    private static Type typeOf(String typeName) {
+        return switch (typeName) {
+            case "Int" -> Types.INT;
+            case "Bool" -> Types.BOOLEAN;
+            default -> Types.UNIT;
+        };
+    }
+
+    private static String typeName(Type type) {
+        if (type == Types.INT) {
+            return "Int";
+        }
+        return type == Types.BOOLEAN ? "Boolean" : "Unit";
+    }
+
+    private static String article(Type type) {
+        return type == Types.INT ? "an" : "a";
+    }
+
+    private record Compiled(Node node, Type type) {
+    }
+
+    /*
+        A function defined in the program. The body is compiled when the definition is reached, after the calls
+        compiled before it were given the function.
+     */
+    private static class UserFunction {
+        private final Type[] argumentTypes;
+        private final Type returnType;
+        private Node body;
+        private int frameSize;
+
+        UserFunction(Type[] argumentTypes, Type returnType) {
+            this.argumentTypes = argumentTypes;
+            this.returnType = returnType;
+        }
+
+        /*
+            Each argument is pushed as soon as it is evaluated, so that calls made while evaluating the next ones
+            place their frames above it. The pushed arguments then become the first slots of the frame.
+         */
+        long call(Context context, Node[] arguments) throws InterpreterException {
+            int callerBase = context.base;
+            int callerTop = context.top;
+            for (Node argument : arguments) {
+                context.push(argument.execute(context));
+            }
+            context.enter(callerTop, frameSize);
+            try {
+                while (true) {
+                    long value;
+                    try {
+                        value = body.execute(context);
+                    } catch (ReturnSignal signal) {
+                        value = context.returnValue;
+                    }
+                    if (!context.tailCall) {
+                        return value;
+                    }
+                    // A self call left its arguments in the frame
+                    context.tailCall = false;
+                }
+            } finally {
+                context.base = callerBase;
+                context.top = callerTop;
+            }
+        }
+    }
+
+    /*
+        Thrown by return to the function being run, with the value left in the context.
+     */
+    private static class ReturnSignal extends RuntimeException {
+        private static final ReturnSignal RETURN = new ReturnSignal();
+
+        private ReturnSignal() {
+            super(null, null, false, false);
+        }
+    }
+
+    /*
+        Thrown by break and continue to the innermost loop. There is no stack trace to fill in, so throwing one is cheap.
+     */
+    private static class LoopSignal extends RuntimeException {
+        private static final LoopSignal BREAK = new LoopSignal();
+        private static final LoopSignal CONTINUE = new LoopSignal();
+
+        private LoopSignal() {
+            super(null, null, false, false);
+        }
+    }
+}
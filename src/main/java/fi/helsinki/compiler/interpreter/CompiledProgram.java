@@ -0,0 +1,84 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+    A program compiled by the ClosureCompiler. Can be run any number of times, each run starting from a fresh stack.
+    A call which is not in a tail position nests the closures of the called function on the Java stack, so each run is
+    made on a thread of its own with a stack large enough for hundreds of thousands of such calls.
+ */
+public class CompiledProgram {
+
+    // Only reserved when the thread starts, the pages are used as the calls reach them
+    private static final long STACK_SIZE = 128L << 20;
+
+    private final Node root;
+    private final Type resultType;
+    private final int frameSize;
+
+    CompiledProgram(Node root, Type resultType, int frameSize) {
+        this.root = root;
+        this.resultType = resultType;
+        this.frameSize = frameSize;
+    }
+
+    /*
+        Runs the program and returns its value, or null if it has none. The value is the only one boxed during the run.
+     */
+    public Value run() throws InterpreterException {
+        return run(System.in, System.out);
+    }
+
+    public Value run(OutputStream out) throws InterpreterException {
+        return run(System.in, out);
+    }
+
+    /*
+        Runs the program reading from and printing to the given streams, in large blocks and the rest of the output
+        once the run ends.
+     */
+    public Value run(InputStream in, OutputStream out) throws InterpreterException {
+        OutputSink output = new OutputSink(out);
+        Context context = new Context(new InputReader(in, output), output, frameSize);
+        long[] value = new long[1];
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                value[0] = root.execute(context);
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "compiled-program", STACK_SIZE);
+        try {
+            thread.start();
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterpreterException("Interrupted while running the program");
+        } finally {
+            output.flush();
+        }
+        switch (failure[0]) {
+            case null -> {
+            }
+            case StackOverflowError error -> throw new InterpreterException("Maximum recursion depth exceeded");
+            case InterpreterException e -> throw e;
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new IllegalStateException(failure[0]);
+        }
+        if (resultType == Types.INT) {
+            return new IntValue(value[0]);
+        }
+        if (resultType == Types.BOOLEAN) {
+            return new BooleanValue(value[0] != 0);
+        }
+        return null;
+    }
+}
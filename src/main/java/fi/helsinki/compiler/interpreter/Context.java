@@ -0,0 +1,46 @@
+package fi.helsinki.compiler.interpreter;
+
+import java.util.Arrays;
+
+/*
+    The state of one run of a compiled program. The frames of the calls are kept on one stack of unboxed values, the
+    top level frame at its bottom and the frame of the function being run between base and top. Slots are indexed by
+    the Resolver: from the bottom for the top level variables and from base for the variables of functions. The
+    program reads from the input and prints to the output of the run.
+ */
+class Context {
+    final InputReader input;
+    final OutputSink output;
+    long[] stack;
+    int base;
+    int top;
+    // The value of the last return, read by the call it returns from
+    long returnValue;
+    // Set by a self call in a tail position, which the call being run then makes by running its body again
+    boolean tailCall;
+
+    Context(InputReader input, OutputSink output, int frameSize) {
+        this.input = input;
+        this.output = output;
+        stack = new long[Math.max(256, frameSize)];
+        top = frameSize;
+    }
+
+    void push(long value) {
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = value;
+    }
+
+    /*
+        Makes the frame starting at base, where the arguments were pushed, the frame being run.
+     */
+    void enter(int base, int frameSize) {
+        this.base = base;
+        top = base + frameSize;
+        if (top > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top));
+        }
+    }
+}
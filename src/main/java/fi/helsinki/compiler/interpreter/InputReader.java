@@ -0,0 +1,92 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.exceptions.InterpreterException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+    Where read_int reads from during a run. The input is read in large blocks and the integers are parsed straight
+    from the bytes, following the read_int of the generated assembly: a line is read up to its newline or the end of
+    the input, a minus sign flips the sign of the integer, and anything other than a digit is skipped. It is an error
+    only if the input has already ended.
+    The reader may read past the line it needs, so the same input should not be read by anything else during the run.
+ */
+public class InputReader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final OutputSink output;
+    private final int bufferSize;
+    // Created by the first read, so that a run which reads nothing does not allocate it
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    public InputReader(InputStream in) {
+        this(in, null);
+    }
+
+    /*
+        A reader which flushes the output before it waits for more input, so that a prompt printed before read_int is
+        seen before the program stops to read.
+     */
+    public InputReader(InputStream in, OutputSink output) {
+        this(in, output, DEFAULT_BUFFER_SIZE);
+    }
+
+    public InputReader(InputStream in, OutputSink output, int bufferSize) {
+        this.in = in;
+        this.output = output;
+        this.bufferSize = Math.max(bufferSize, 1);
+    }
+
+    public long readInt() throws InterpreterException {
+        long value = 0;
+        boolean negative = false;
+        boolean read = false;
+        while (position < limit || fill()) {
+            read = true;
+            byte b = buffer[position++];
+            if (b == '\n') {
+                break;
+            }
+            if (b == '-') {
+                negative = !negative;
+            } else if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            }
+        }
+        if (!read) {
+            throw new InterpreterException("read_int() failed to read input");
+        }
+        return negative ? -value : value;
+    }
+
+    /*
+        Reads the next block of the input. Returns false at the end of the input.
+     */
+    private boolean fill() throws InterpreterException {
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+        }
+        if (output != null) {
+            output.flush();
+        }
+        try {
+            int count;
+            do {
+                count = in.read(buffer, 0, buffer.length);
+            } while (count == 0);
+            if (count < 0) {
+                return false;
+            }
+            position = 0;
+            limit = count;
+            return true;
+        } catch (IOException e) {
+            throw new InterpreterException("read_int() failed to read input: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+
+import java.util.*;
+
+/*
+    A profile of the runs of an Interpreter created with it. Counts how many times each node of the program is
+    evaluated, and how many times each function is called and the time spent in it. Every evaluation of a node is a
+    step, and a run is stopped once it has taken more steps than the budget, so a program looping forever cannot hang
+    the interpreter. The budget applies to each run on its own, while the counts add up over all the runs made with
+    the same instrumentation.
+    An Interpreter without instrumentation skips all of this in its loop.
+ */
+public class Instrumentation {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final long stepBudget;
+    private long steps;
+    // The steps taken by the current run
+    private long runSteps;
+    private final Map<Expression, NodeProfile> nodes = new IdentityHashMap<>();
+    private final Map<String, FunctionProfile> functions = new LinkedHashMap<>();
+
+    public Instrumentation() {
+        this(UNLIMITED);
+    }
+
+    public Instrumentation(long stepBudget) {
+        this.stepBudget = stepBudget;
+    }
+
+    /*
+        Starts a run with the whole budget left.
+     */
+    void startRun() {
+        runSteps = 0;
+    }
+
+    /*
+        Counts an evaluation of the node, failing if it takes the run over its budget.
+     */
+    void enter(Expression expression) throws InterpreterException {
+        steps += 1;
+        runSteps += 1;
+        if (runSteps > stepBudget) {
+            throw new InterpreterException("Step budget of " + stepBudget + " exceeded");
+        }
+        NodeProfile node = nodes.get(expression);
+        if (node == null) {
+            node = new NodeProfile(expression);
+            nodes.put(expression, node);
+        }
+        node.count += 1;
+    }
+
+    /*
+        Counts a call of the function, taking the given time. The time is that of the step invoking the function, from
+        looking it up to its return, and leaves out the evaluation of its arguments.
+     */
+    void called(String function, long nanos) {
+        FunctionProfile profile = functions.computeIfAbsent(function, FunctionProfile::new);
+        profile.calls += 1;
+        profile.nanos += nanos;
+    }
+
+    /*
+        The steps taken by all the runs.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getNodeCount(Expression expression) {
+        NodeProfile node = nodes.get(expression);
+        return node == null ? 0 : node.count;
+    }
+
+    /*
+        The functions called so far, in the order they were first called.
+     */
+    public Collection<FunctionProfile> getFunctions() {
+        return Collections.unmodifiableCollection(functions.values());
+    }
+
+    public FunctionProfile getFunction(String name) {
+        return functions.get(name);
+    }
+
+    /*
+        The nodes evaluated the most times, most evaluated first.
+     */
+    public List<NodeProfile> getHotNodes(int count) {
+        List<NodeProfile> hotNodes = new ArrayList<>(nodes.values());
+        hotNodes.sort(Comparator.comparingLong(NodeProfile::getCount).reversed());
+        return hotNodes.subList(0, Math.min(count, hotNodes.size()));
+    }
+
+    /*
+        The hot nodes one per line, each with its count, its kind and its location.
+     */
+    public String dumpHotNodes(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (NodeProfile node : getHotNodes(count)) {
+            builder.append(node).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public static class NodeProfile {
+        private final Expression expression;
+        private long count;
+
+        private NodeProfile(Expression expression) {
+            this.expression = expression;
+        }
+
+        public Expression getExpression() {
+            return expression;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return count + " " + expression.getClass().getSimpleName() + " at " + expression.getLocation();
+        }
+    }
+
+    public static class FunctionProfile {
+        private final String name;
+        private long calls;
+        private long nanos;
+
+        private FunctionProfile(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /*
+            Time spent in the calls of the function, in nanoseconds, without the time spent evaluating their
+            arguments.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + calls + " calls, " + nanos / 1000 + " us";
+        }
+    }
+}
@@ -7,145 +7,302 @@ import fi.helsinki.compiler.interpreter.functions.PrintIntFunction;
 import fi.helsinki.compiler.interpreter.functions.ReadIntFunction;
 import fi.helsinki.compiler.interpreter.operators.*;
 import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ResolverException;
+import fi.helsinki.compiler.resolver.Resolver;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
 
 public class Interpreter {
 
-    public Optional<Value> interpret(Expression expression, SymTab symTab) throws InterpreterException {
-        switch (expression) {
+    private static final Map<String, Operator> OPERATORS = Map.ofEntries(
+            Map.entry("+", new AdditionOp()),
+            Map.entry("-", new SubtractionOp()),
+            Map.entry("*", new MultiplicationOp()),
+            Map.entry("/", new DivisionOp()),
+            Map.entry("%", new ModulusOp()),
+            Map.entry("and", new AndOp()),
+            Map.entry("or", new OrOp()),
+            Map.entry(">=", new GreaterThanOrEqualOp()),
+            Map.entry(">", new GreaterThanOp()),
+            Map.entry("<", new LessThanOp()),
+            Map.entry("<=", new LessThanOrEqualOp()),
+            Map.entry("!=", new InequalityOp()),
+            Map.entry("==", new EqualityOp()));
+    private static final Operator NEGATION = new NegationOp();
+    private static final Operator NOT = new NotOp();
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final Instrumentation instrumentation;
+    private Value[] globals;
+    // The frames of the functions being evaluated by their nesting depth, the top level code being at depth 0
+    private Value[][] frames;
+
+    /*
+        An interpreter reading from the System.in and printing to the System.out of the time it runs a program.
+     */
+    public Interpreter() {
+        this(null, null);
+    }
+
+    public Interpreter(OutputStream out) {
+        this(null, out);
+    }
+
+    /*
+        An interpreter reading from and printing to the given streams, either of which may be null for the System
+        one. The input is read and the output written in large blocks, the rest of the output once the program ends.
+     */
+    public Interpreter(InputStream in, OutputStream out) {
+        this(in, out, null);
+    }
+
+    /*
+        An interpreter profiling its runs with the instrumentation, which also limits the steps a run may take. Without
+        instrumentation nothing is counted.
+     */
+    public Interpreter(InputStream in, OutputStream out, Instrumentation instrumentation) {
+        this.in = in;
+        this.out = out;
+        this.instrumentation = instrumentation;
+    }
+
+    /*
+        Evaluates the expression with an explicit stack of frames instead of recursion, so that the nesting depth of
+        the program is not limited by the Java stack. Each frame keeps the state of one node: the step it has reached
+        and the values of the children evaluated so far. The names of the expression must have been resolved.
+        With instrumentation, every node is counted as it is entered and the function calls are timed.
+     */
+    private Optional<Value> interpret(Expression expression) throws InterpreterException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        if (instrumentation != null) {
+            instrumentation.enter(expression);
+        }
+        stack.push(new Frame(expression));
+        Optional<Value> childValue = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next = instrumentation == null ? step(frame, childValue) : stepInstrumented(frame, childValue);
+            if (next != null) {
+                if (instrumentation != null) {
+                    instrumentation.enter(next.expression);
+                }
+                stack.push(next);
+                childValue = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.value;
+                }
+                childValue = frame.value;
+            }
+        }
+    }
+
+    /*
+        Advances the frame by one step like step, timing the step of a function call which invokes the function. The
+        arguments have been evaluated in steps of their own by then, so their time is not included.
+     */
+    private Frame stepInstrumented(Frame frame, Optional<Value> childValue) throws InterpreterException {
+        if (!(frame.expression instanceof FunctionCall functionCall)) {
+            return step(frame, childValue);
+        }
+        long start = System.nanoTime();
+        Frame next = step(frame, childValue);
+        if (next == null) {
+            instrumentation.called(functionCall.getName(), System.nanoTime() - start);
+        }
+        return next;
+    }
+
+    /*
+        Advances the frame by one step. Returns the frame of a child to evaluate next, or null once the value of the
+        frame is known.
+     */
+    private Frame step(Frame frame, Optional<Value> childValue) throws InterpreterException {
+        switch (frame.expression) {
             case IntLiteral intLiteral: {
-                return Optional.of(new IntValue(intLiteral.getValue()));
+                return frame.done(Optional.of(new IntValue(intLiteral.getValue())));
             }
             case BooleanLiteral bool: {
-                return Optional.of(new BooleanValue(bool.getValue()));
+                return frame.done(Optional.of(new BooleanValue(bool.getValue())));
             }
             case UnaryOp unaryOp: {
-                if (unaryOp.getOperator().getText().equals("-")) {
-                    return Optional.of(((Operator) symTab.getValue("negOp"))
-                            .operate(unaryOp.getExpression(), null, symTab));
-                } else {
-                    return Optional.of(((Operator) symTab.getValue("notOp"))
-                            .operate(unaryOp.getExpression(), null, symTab));
+                if (frame.state == 0) {
+                    if (unaryOp.getOperator().getText().equals("-")) {
+                        frame.operator = NEGATION;
+                    } else {
+                        frame.operator = NOT;
+                    }
+                    return frame.visit(1, unaryOp.getExpression());
                 }
+                return frame.done(Optional.of(frame.operator.operate(childValue, Optional.empty())));
             }
             case BinaryOp binaryOp: {
-                return switch (binaryOp.getOperator().getText()) {
-                    case "=" -> {
-                        if (binaryOp.getLeft() instanceof Identifier identifier) {
-                            Optional<Value> value = interpret(binaryOp.getRight(), symTab);
-                            Optional<SymTab> symbolOwner = symTab.getSymbolOwner(identifier.getName());
-                            if (symbolOwner.isEmpty()) {
-                                throw new InterpreterException("Unknown identifier: " + identifier);
-                            } else {
-                                symbolOwner.get().putValue(identifier.getName(), value.get());
+                if (binaryOp.getOperator().getText().equals("=")) {
+                    if (!(binaryOp.getLeft() instanceof Identifier identifier)) {
+                        throw new InterpreterException("Expected an identifier: " + binaryOp.getLeft());
+                    }
+                    if (frame.state == 0) {
+                        return frame.visit(1, binaryOp.getRight());
+                    }
+                    store(identifier, childValue.get());
+                    return frame.done(childValue);
+                }
+                switch (frame.state) {
+                    case 0:
+                        frame.operator = OPERATORS.get(binaryOp.getOperator().getText());
+                        return frame.visit(1, binaryOp.getLeft());
+                    case 1:
+                        Value shortCircuitValue = frame.operator.shortCircuit(childValue);
+                        if (shortCircuitValue != null) {
+                            return frame.done(Optional.of(shortCircuitValue));
+                        }
+                        frame.leftValue = childValue;
+                        return frame.visit(2, binaryOp.getRight());
+                    default:
+                        return frame.done(Optional.of(frame.operator.operate(frame.leftValue, childValue)));
+                }
+            }
+            case ConditionalOp conditionalOp: {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, conditionalOp.getCondition());
+                    case 1:
+                        if (childValue.get() instanceof BooleanValue booleanValue) {
+                            if (booleanValue.getValue()) {
+                                return frame.visit(2, conditionalOp.getThenBlock());
                             }
-                            yield value;
+                            if (conditionalOp.getElseBlock() != null) {
+                                return frame.visit(2, conditionalOp.getElseBlock());
+                            }
+                            return frame.done(Optional.empty());
                         } else {
-                            throw new InterpreterException("Expected an identifier: " + binaryOp.getLeft());
+                            throw new InterpreterException("Expected a conditional value.");
                         }
-                    }
-                    default ->
-                        Optional.of(((Operator) symTab.getValue(binaryOp.getOperator().getText()))
-                                .operate(binaryOp.getLeft(), binaryOp.getRight(), symTab));
-                };
+                    default:
+                        return frame.done(childValue);
+                }
             }
-            case ConditionalOp conditionalOp: {
-                Optional<Value> condition = interpret(conditionalOp.getCondition(), symTab);
-                if (condition.get() instanceof BooleanValue booleanValue) {
+            case WhileOp whileOp: {
+                if (frame.state == 0) {
+                    return frame.visit(1, whileOp.getCondition());
+                }
+                if (childValue.get() instanceof BooleanValue booleanValue) {
                     if (booleanValue.getValue()) {
-                        return interpret(conditionalOp.getThenBlock(), symTab);
-                    }
-                    if (conditionalOp.getElseBlock() != null) {
-                        return interpret(conditionalOp.getElseBlock(), symTab);
+                        return frame.visit(0, whileOp.getBody());
+                    } else {
+                        return frame.done(Optional.empty());
                     }
-                    return Optional.empty();
                 } else {
                     throw new InterpreterException("Expected a conditional value.");
                 }
             }
-            case WhileOp whileOp: {
-                while (true) {
-                    Optional<Value> condition = interpret(whileOp.getCondition(), symTab);
-                    if (condition.get() instanceof BooleanValue booleanValue) {
-                        if (booleanValue.getValue()) {
-                            interpret(whileOp.getBody(), symTab);
-                        } else {
-                            return Optional.empty();
-                        }
-                    } else {
-                        throw new InterpreterException("Expected a conditional value.");
-                    }
+            case VariableDef variableDef: {
+                if (frame.state == 0) {
+                    return frame.visit(1, variableDef.getValue());
                 }
+                store(variableDef, childValue.get());
+                return frame.done(Optional.empty());
             }
-            case VariableDef variableDef:
-                String key = variableDef.getName();
-                if (symTab.hasValueLocally(key)) {
-                    throw new InterpreterException("Variable already declared in this scope: " + variableDef.getName());
-                }
-                Optional<Value> value = interpret(variableDef.getValue(), symTab);
-                symTab.putValue(key, value.get());
-                return Optional.empty();
             case Identifier identifier:
-                return Optional.of(symTab.getValue(identifier.getName()));
+                return frame.done(Optional.of(load(identifier)));
             case Block block: {
-                SymTab localSymTab = new SymTab(symTab);
                 List<Expression> expressionList = block.getExpressionList();
-                for (int i = 0; i < expressionList.size() - 1; i++) {
-                    interpret(expressionList.get(i), localSymTab);
+                if (frame.state == 0) {
+                    frame.state = 1;
+                } else if (frame.state == 2) {
+                    return frame.done(childValue);
+                }
+                if (frame.index < expressionList.size() - 1) {
+                    return frame.visit(1, expressionList.get(frame.index++));
                 }
                 if (!(expressionList.getLast() instanceof Unit)) {
-                    return interpret(expressionList.getLast(), localSymTab);
+                    return frame.visit(2, expressionList.getLast());
                 }
-                return Optional.empty();
+                return frame.done(Optional.empty());
             }
             case FunctionCall functionCall: {
                 List<Expression> parameters = functionCall.getParameters();
-                List<Value> paramValues = new ArrayList<>();
-                for (Expression parameter: parameters) {
-                    Optional<Value> paramValue = interpret(parameter, symTab);
-                    if (paramValue.isEmpty()) {
+                if (frame.state == 0) {
+                    frame.paramValues = new ArrayList<>(parameters.size());
+                } else {
+                    if (childValue.isEmpty()) {
                         throw new InterpreterException("Function provided with an invalid value");
                     }
-                    paramValues.add(paramValue.get());
+                    frame.paramValues.add(childValue.get());
                 }
-                FunctionDefinition functionDefinition = (FunctionDefinition) symTab.getValue(functionCall.getFunctionName());
-                return Optional.ofNullable(functionDefinition.invoke(paramValues.toArray(new Value[]{})));
+                if (frame.index < parameters.size()) {
+                    return frame.visit(1, parameters.get(frame.index++));
+                }
+                FunctionDefinition functionDefinition = (FunctionDefinition) load(functionCall);
+                return frame.done(Optional.ofNullable(functionDefinition.invoke(frame.paramValues.toArray(new Value[]{}))));
             }
             default: {
-                throw new InterpreterException("Invalid type found: " + expression);
+                throw new InterpreterException("Invalid type found: " + frame.expression);
             }
         }
     }
 
     public Value interpretAST(Expression expression) throws InterpreterException {
-        SymTab globalSymTab = getGlobalSymTab();
-        Optional<Value> value = interpret(expression, globalSymTab);
-        return value.orElse(null);
+        Resolver resolver = new Resolver();
+        try {
+            resolver.resolve(expression);
+        } catch (ResolverException e) {
+            throw new InterpreterException(e.getMessage());
+        }
+        globals = new Value[resolver.getGlobals().size()];
+        OutputSink output = new OutputSink(out != null ? out : System.out);
+        globals[0] = new PrintIntFunction(output);
+        globals[1] = new PrintBoolFunction(output);
+        globals[2] = new ReadIntFunction(new InputReader(in != null ? in : System.in, output));
+        frames = new Value[][]{new Value[resolver.getFrameSize()]};
+        if (instrumentation != null) {
+            instrumentation.startRun();
+        }
+        try {
+            Optional<Value> value = interpret(expression);
+            return value.orElse(null);
+        } finally {
+            output.flush();
+        }
     }
 
-    private SymTab getGlobalSymTab() {
-        SymTab globalSymTab = new SymTab(null);
-        globalSymTab.putValue("print_int", new PrintIntFunction());
-        globalSymTab.putValue("print_bool", new PrintBoolFunction());
-        globalSymTab.putValue("read_int", new ReadIntFunction());
-        globalSymTab.putValue("+", new AdditionOp());
-        globalSymTab.putValue("-", new SubtractionOp());
-        globalSymTab.putValue("*", new MultiplicationOp());
-        globalSymTab.putValue("/", new DivisionOp());
-        globalSymTab.putValue("%", new ModulusOp());
-        globalSymTab.putValue("and", new AndOp());
-        globalSymTab.putValue("or", new OrOp());
-        globalSymTab.putValue("notOp", new NotOp());
-        globalSymTab.putValue("negOp", new NegationOp());
-        globalSymTab.putValue(">=", new GreaterThanOrEqualOp());
-        globalSymTab.putValue(">", new GreaterThanOp());
-        globalSymTab.putValue("<", new LessThanOp());
-        globalSymTab.putValue("<=", new LessThanOrEqualOp());
-        globalSymTab.putValue("!=", new InequalityOp());
-        globalSymTab.putValue("==", new EqualityOp());
-        return globalSymTab;
+    private Value load(BoundExpression expression) {
+        return expression.isGlobal() ? globals[expression.getSlot()] : frames[expression.getDepth()][expression.getSlot()];
+    }
+
+    private void store(BoundExpression expression, Value value) {
+        if (expression.isGlobal()) {
+            globals[expression.getSlot()] = value;
+        } else {
+            frames[expression.getDepth()][expression.getSlot()] = value;
+        }
+    }
+
+    private static class Frame {
+        private final Expression expression;
+        private int state;
+        private int index;
+        private Operator operator;
+        private Optional<Value> leftValue;
+        private List<Value> paramValues;
+        private Optional<Value> value;
+
+        Frame(Expression expression) {
+            this.expression = expression;
+        }
+
+        Frame visit(int nextState, Expression child) {
+            state = nextState;
+            return new Frame(child);
+        }
+
+        Frame done(Optional<Value> value) {
+            this.value = value;
+            return null;
+        }
     }
 }
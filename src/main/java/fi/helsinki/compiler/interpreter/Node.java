@@ -0,0 +1,13 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.exceptions.InterpreterException;
+
+/*
+    A node of a program compiled by the ClosureCompiler, with everything it needs bound when it was compiled. Returns
+    its value unboxed: an Int as itself, a Bool as 1 or 0, and 0 for the nodes without a value. The type of the value
+    is known to the compiler, not to the node.
+ */
+@FunctionalInterface
+interface Node {
+    long execute(Context context) throws InterpreterException;
+}
@@ -0,0 +1,96 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.exceptions.InterpreterException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+    Where the print functions of a run write to. The printed lines are formatted straight into a byte buffer, digit by
+    digit for the integers, and the buffer is written to the stream only when it is full and when the run ends. A
+    program printing in a loop then makes a few large writes instead of a synchronized write for every line.
+ */
+public class OutputSink {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    // Long.MIN_VALUE has 19 digits, and takes a sign and a newline as well
+    private static final int MAX_LINE_LENGTH = 21;
+    private static final byte[] TRUE_LINE = "true\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE_LINE = "false\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final int bufferSize;
+    // Created by the first print, so that a run which prints nothing does not allocate it
+    private byte[] buffer;
+    private int position;
+
+    public OutputSink(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public OutputSink(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.bufferSize = Math.max(bufferSize, MAX_LINE_LENGTH);
+    }
+
+    public void printInt(long value) throws InterpreterException {
+        reserve(MAX_LINE_LENGTH);
+        // The digits are taken from the negative of the value, which Long.MIN_VALUE has as well
+        long negative = value < 0 ? value : -value;
+        if (value < 0) {
+            buffer[position++] = '-';
+        }
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            digits += 1;
+        }
+        int end = position + digits;
+        int index = end;
+        do {
+            buffer[--index] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        } while (negative != 0);
+        buffer[end] = '\n';
+        position = end + 1;
+    }
+
+    public void printBool(boolean value) throws InterpreterException {
+        byte[] line = value ? TRUE_LINE : FALSE_LINE;
+        reserve(line.length);
+        System.arraycopy(line, 0, buffer, position, line.length);
+        position += line.length;
+    }
+
+    /*
+        Writes out everything printed so far.
+     */
+    public void flush() throws InterpreterException {
+        writeBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new InterpreterException("Could not write the output: " + e.getMessage());
+        }
+    }
+
+    private void reserve(int length) throws InterpreterException {
+        if (buffer == null) {
+            buffer = new byte[bufferSize];
+        } else if (buffer.length - position < length) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() throws InterpreterException {
+        if (position == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            throw new InterpreterException("Could not write the output: " + e.getMessage());
+        }
+        position = 0;
+    }
+}
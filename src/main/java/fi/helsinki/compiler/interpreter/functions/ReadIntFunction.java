@@ -2,24 +2,27 @@ package fi.helsinki.compiler.interpreter.functions;
 
 import fi.helsinki.compiler.exceptions.InterpreterException;
 import fi.helsinki.compiler.interpreter.FunctionDefinition;
+import fi.helsinki.compiler.interpreter.InputReader;
 import fi.helsinki.compiler.interpreter.IntValue;
 import fi.helsinki.compiler.interpreter.Value;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.Scanner;
-import java.util.stream.Collectors;
-
 public class ReadIntFunction extends FunctionDefinition {
 
+    private final InputReader input;
+
+    public ReadIntFunction(InputReader input) {
+        this.input = input;
+    }
+
     public Value invoke(Value... values) throws InterpreterException {
-        Scanner scanner = new Scanner(System.in);
-        String input = scanner.nextLine();
-        return new IntValue(Long.valueOf(input.replace("\n", "")));
+        if (values.length > 0) {
+            throw new InterpreterException("Invalid input type found");
+        }
+        return new IntValue(input.readInt());
     }
 
     @Override
     public String getType() {
-        return "PrintIntFunction";
+        return "ReadIntFunction";
     }
 }
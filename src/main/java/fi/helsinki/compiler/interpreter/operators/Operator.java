@@ -1,10 +1,21 @@
 package fi.helsinki.compiler.interpreter.operators;
 
-import fi.helsinki.compiler.interpreter.SymTab;
 import fi.helsinki.compiler.interpreter.Value;
 import fi.helsinki.compiler.exceptions.InterpreterException;
-import fi.helsinki.compiler.common.expressions.Expression;
+
+import java.util.Optional;
 
 public abstract class Operator extends Value {
-    public abstract Value operate(Expression value1, Expression value2, SymTab symTab) throws InterpreterException;
+    /*
+        Applies the operator to already evaluated operands. Unary operators receive their operand as the left value.
+     */
+    public abstract Value operate(Optional<Value> leftValue, Optional<Value> rightValue) throws InterpreterException;
+
+    /*
+        Returns the result of the operator if it is decided by the left operand alone, in which case the right operand
+        is not evaluated. Returns null otherwise.
+     */
+    public Value shortCircuit(Optional<Value> leftValue) throws InterpreterException {
+        return null;
+    }
 }
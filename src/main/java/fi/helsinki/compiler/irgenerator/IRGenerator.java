@@ -5,7 +5,9 @@ import fi.helsinki.compiler.common.expressions.*;
 import fi.helsinki.compiler.common.Location;
 import fi.helsinki.compiler.common.types.*;
 import fi.helsinki.compiler.exceptions.IRGenerationException;
+import fi.helsinki.compiler.exceptions.ResolverException;
 import fi.helsinki.compiler.irgenerator.instructions.*;
+import fi.helsinki.compiler.resolver.Resolver;
 import fi.helsinki.compiler.tokenizer.Token;
 
 import java.util.*;
@@ -13,9 +15,12 @@ import java.util.*;
 public class IRGenerator {
 
     private Map<IRVariable, Type> variableTypeMap;
+    private Map<String, IRVariable> predefinedVariables = new HashMap<>();
+    private IRVariable[] globals;
     private List<Instruction> instructions = new ArrayList<>();;
     private List<Instruction> functionDefinitions = new ArrayList<>();
     private CommonStatics commonStatics;
+    private final Types types = new Types();
     private Stack<Label> whileStartLabelStack = new Stack<>();
     private Stack<Label> whileEndLabelStack = new Stack<>();
 
@@ -26,40 +31,51 @@ public class IRGenerator {
     }
 
     private void setPredefinedVariableTypes() {
-        createVariable(new AdditionType());
-        createVariable(new GreaterThanType());
-        createVariable(new GreaterThanOrEqualType());
-        createVariable(new LessThanOrEqualType());
-        createVariable(new LessThanType());
-        createVariable(new SubtractionType());
-        createVariable(new MultiplicationType());
-        createVariable(new DivisionType());
-        createVariable(new ModulusType());
-        createVariable(new FunctionType("print_int", new UnitType(), new IntType()));
-        createVariable(new FunctionType("print_bool", new UnitType(), new BooleanType()));
-        createVariable(new FunctionType("read_int", new IntType(), new UnitType()));
+        createPredefinedVariable(Types.ADDITION);
+        createPredefinedVariable(Types.GREATER_THAN);
+        createPredefinedVariable(Types.GREATER_THAN_OR_EQUAL);
+        createPredefinedVariable(Types.LESS_THAN_OR_EQUAL);
+        createPredefinedVariable(Types.LESS_THAN);
+        createPredefinedVariable(Types.SUBTRACTION);
+        createPredefinedVariable(Types.MULTIPLICATION);
+        createPredefinedVariable(Types.DIVISION);
+        createPredefinedVariable(Types.MODULUS);
+        createPredefinedVariable(types.function("print_int", Types.UNIT, Types.INT));
+        createPredefinedVariable(types.function("print_bool", Types.UNIT, Types.BOOLEAN));
+        createPredefinedVariable(types.function("read_int", Types.INT, Types.UNIT));
+    }
+
+    private void createPredefinedVariable(Type type) {
+        predefinedVariables.put(type.getTypeStr(), createVariable(type));
     }
 
     public List<Instruction> generateIR(Expression rootExpression) throws IRGenerationException {
-        SymbolTable rootSymbolTable = new SymbolTable(null);
-        if (rootExpression instanceof Block block) {
-            handleFunctionDefinitions(block.getExpressionList(), rootSymbolTable);
+        Resolver resolver = new Resolver();
+        try {
+            resolver.resolve(rootExpression);
+        } catch (ResolverException e) {
+            throw new IRGenerationException(e.getMessage());
         }
-        for (IRVariable key: variableTypeMap.keySet()) {
-            rootSymbolTable.putVariable(key.getType().getTypeStr(), key);
+        globals = new IRVariable[resolver.getGlobals().size()];
+        for (int i = 0; i < Resolver.BUILT_IN_FUNCTIONS.size(); i++) {
+            globals[i] = predefinedVariables.get(Resolver.BUILT_IN_FUNCTIONS.get(i));
+        }
+        if (rootExpression instanceof Block block) {
+            handleFunctionDefinitions(block.getExpressionList());
         }
-        IRVariable finalResult = visit(rootExpression, rootSymbolTable, instructions);
+        IRVariable finalResult = visit(rootExpression, new IRVariable[][]{new IRVariable[resolver.getFrameSize()]},
+                instructions);
         if (variableTypeMap.get(finalResult) instanceof IntType) {
-            instructions.add(new Call(createVariable(new FunctionType("print_int", new UnitType(), new IntType())),
-                    new IRVariable[]{finalResult}, createVariable(new UnitType()), rootExpression.getLocation()));
+            instructions.add(new Call(createVariable(types.function("print_int", Types.UNIT, Types.INT)),
+                    new IRVariable[]{finalResult}, createVariable(Types.UNIT), rootExpression.getLocation()));
         } else if (variableTypeMap.get(finalResult) instanceof BooleanType) {
-            instructions.add(new Call(createVariable(new FunctionType("print_bool", new UnitType(), new BooleanType())),
-                    new IRVariable[]{finalResult}, createVariable(new UnitType()), rootExpression.getLocation()));
+            instructions.add(new Call(createVariable(types.function("print_bool", Types.UNIT, Types.BOOLEAN)),
+                    new IRVariable[]{finalResult}, createVariable(Types.UNIT), rootExpression.getLocation()));
         }
         if (!functionDefinitions.isEmpty()) {
             List<Instruction> moduleInstructions = new ArrayList<>();
             moduleInstructions.addAll(functionDefinitions);
-//            instructions.add(new ReturnIns(new IRVariable("None", new UnitType()), rootExpression.getLocation()));
+//            instructions.add(new ReturnIns(new IRVariable("None", Types.UNIT), rootExpression.getLocation()));
             FunctionDefinitionIns mainFunctionDefIns = new FunctionDefinitionIns("main", instructions,
                     new ArrayList<>(), rootExpression.getLocation());
             moduleInstructions.add(mainFunctionDefIns);
@@ -68,223 +84,299 @@ public class IRGenerator {
         return instructions;
     }
 
-    private void handleFunctionDefinitions(List<Expression> expressionList, SymbolTable rootSymbolTable) {
+    private void handleFunctionDefinitions(List<Expression> expressionList) {
         for (Expression expression : expressionList) {
             if (expression instanceof FunctionDefinition functionDefinition) {
                 IRVariable functionVariable = new IRVariable(functionDefinition.getFunctionName(), functionDefinition.getType());
-                rootSymbolTable.putVariable(functionDefinition.getFunctionName(), functionVariable);
+                globals[functionDefinition.getSlot()] = functionVariable;
             }
         }
     }
 
-    private IRVariable visit(Expression expression, SymbolTable symbolTable, 
+    private IRVariable getVariable(BoundExpression expression, IRVariable[][] frames) {
+        return expression.isGlobal() ? globals[expression.getSlot()] : frames[expression.getDepth()][expression.getSlot()];
+    }
+
+    /*
+        Generates the instructions of the expression with an explicit stack of frames instead of recursion, so that
+        the nesting depth of the program is not limited by the Java stack. Each frame keeps the state of one node: the
+        step it has reached and the variables and labels created so far. Variables and labels are created in the same
+        order as a recursive visit would create them. The variables are kept in the frames of the functions they are
+        declared in, indexed by the depth and slot the Resolver bound them to.
+     */
+    private IRVariable visit(Expression expression, IRVariable[][] frames,
                              List<Instruction> instructionList) throws IRGenerationException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression, frames, instructionList));
+        IRVariable childVariable = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next = step(frame, childVariable);
+            if (next != null) {
+                stack.push(next);
+                childVariable = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.result;
+                }
+                childVariable = frame.result;
+            }
+        }
+    }
+
+    /*
+        Advances the frame by one step. Returns the frame of a child to visit next, or null once the result variable
+        of the frame is known.
+     */
+    private Frame step(Frame frame, IRVariable childVariable) throws IRGenerationException {
+        Expression expression = frame.expression;
+        IRVariable[][] frames = frame.frames;
+        List<Instruction> instructionList = frame.instructionList;
         Location location = expression.getLocation();
         switch (expression) {
             case IntLiteral intLiteral: {
-                IRVariable variable = createVariable(new IntType());
+                IRVariable variable = createVariable(Types.INT);
                 Instruction instruction = new LoadIntConst(intLiteral.getValue(), variable, location);
                 instructionList.add(instruction);
-                return variable;
+                return frame.done(variable);
             }
             case BooleanLiteral booleanLiteral: {
-                IRVariable variable = createVariable(new BooleanType());
+                IRVariable variable = createVariable(Types.BOOLEAN);
                 Instruction instruction = new LoadBoolConst(booleanLiteral.getValue(), variable, location);
                 instructionList.add(instruction);
-                return variable;
+                return frame.done(variable);
             }
             case Identifier identifier: {
-                return symbolTable.getVariable(identifier.getName());
+                return frame.done(getVariable(identifier, frames));
             }
             case UnaryOp unaryOp: {
-                IRVariable variable = visit(unaryOp.getExpression(), symbolTable, instructionList);
+                if (frame.state == 0) {
+                    return frame.visit(1, unaryOp.getExpression(), frames, instructionList);
+                }
+                IRVariable variable = childVariable;
                 IRVariable resultVariable = createVariable(unaryOp.getType());
                 IRVariable operatorVariable;
                 if (unaryOp.getOperator().getText().equals("-")) {
-                    operatorVariable = createVariable(new NegationType());
+                    operatorVariable = createVariable(Types.NEGATION);
                 } else {
-                    operatorVariable = createVariable(new NotType());
+                    operatorVariable = createVariable(Types.NOT);
                 }
                 instructionList.add(new Call(operatorVariable, new IRVariable[]{variable}, resultVariable, unaryOp.getLocation()));
-                return resultVariable;
+                return frame.done(resultVariable);
             }
             case BinaryOp binaryOp: {
                 Token operator = binaryOp.getOperator();
                 if (operator.getText().equals("=")) {
-                    IRVariable variable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                    IRVariable identifier = symbolTable.getVariable(((Identifier) binaryOp.getLeft()).getName());
+                    if (frame.state == 0) {
+                        return frame.visit(1, binaryOp.getRight(), frames, instructionList);
+                    }
+                    IRVariable variable = childVariable;
+                    IRVariable identifier = getVariable((Identifier) binaryOp.getLeft(), frames);
                     instructionList.add(new Copy(variable, identifier, binaryOp.getLeft().getLocation()));
-                    return identifier;
-                }
-                if (operator.getText().equals("and")) {
-                    IRVariable leftVariable = visit(binaryOp.getLeft(), symbolTable, instructionList);
-                    Label andRightLabel = new Label(commonStatics, "and_right", binaryOp.getLeft().getLocation());
-                    Label andSkipLabel = new Label(commonStatics, "and_skip", binaryOp.getLeft().getLocation());
-                    Label andEndLabel = new Label(commonStatics, "and_end", binaryOp.getLocation());
-                    instructionList.add(new CondJump(leftVariable, andRightLabel, andSkipLabel, binaryOp.getLocation()));
-                    instructionList.add(andRightLabel);
-                    IRVariable rightVariable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                    IRVariable resultVariable = createVariable(binaryOp.getType());
-                    instructionList.add(new Copy(rightVariable, resultVariable, binaryOp.getLocation()));
-                    instructionList.add(new Jump(andEndLabel, binaryOp.getLocation()));
-                    instructionList.add(andSkipLabel);
-                    instructionList.add(new LoadBoolConst(false, resultVariable, binaryOp.getLocation()));
-                    instructionList.add(new Jump(andEndLabel, binaryOp.getLocation()));
-                    instructionList.add(andEndLabel);
-                    return resultVariable;
+                    return frame.done(identifier);
                 }
-                if (operator.getText().equals("or")) {
-                    IRVariable leftVariable = visit(binaryOp.getLeft(), symbolTable, instructionList);
-                    Label orRightLabel = new Label(commonStatics, "or_right", binaryOp.getLeft().getLocation());
-                    Label orSkipLabel = new Label(commonStatics, "or_skip", binaryOp.getLeft().getLocation());
-                    Label orEndLabel = new Label(commonStatics, "or_end", binaryOp.getLocation());
-                    instructionList.add(new CondJump(leftVariable, orSkipLabel, orRightLabel, binaryOp.getLocation()));
-                    instructionList.add(orRightLabel);
-                    IRVariable rightVariable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                    IRVariable resultVariable = createVariable(binaryOp.getType());
-                    instructionList.add(new Copy(rightVariable, resultVariable, binaryOp.getLocation()));
-                    instructionList.add(new Jump(orEndLabel, binaryOp.getLocation()));
-                    instructionList.add(orSkipLabel);
-                    instructionList.add(new LoadBoolConst(true, resultVariable, binaryOp.getLocation()));
-                    instructionList.add(new Jump(orEndLabel, binaryOp.getLocation()));
-                    instructionList.add(orEndLabel);
-                    return resultVariable;
-                }
-                if (operator.getText().equals("!=")) {
-                    IRVariable leftVariable = visit(binaryOp.getLeft(), symbolTable, instructionList);
-                    IRVariable rightVariable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                    IRVariable resultVariable = createVariable(binaryOp.getType());
-                    instructionList.add(new Call(createVariable(new InequalityType()), new IRVariable[]{leftVariable,
-                            rightVariable}, resultVariable, binaryOp.getLocation()));
-                    return resultVariable;
+                if (operator.getText().equals("and") || operator.getText().equals("or")) {
+                    boolean isAnd = operator.getText().equals("and");
+                    switch (frame.state) {
+                        case 0:
+                            return frame.visit(1, binaryOp.getLeft(), frames, instructionList);
+                        case 1:
+                            IRVariable leftVariable = childVariable;
+                            Label rightLabel = new Label(commonStatics, isAnd ? "and_right" : "or_right",
+                                    binaryOp.getLeft().getLocation());
+                            frame.label = new Label(commonStatics, isAnd ? "and_skip" : "or_skip",
+                                    binaryOp.getLeft().getLocation());
+                            frame.endLabel = new Label(commonStatics, isAnd ? "and_end" : "or_end", binaryOp.getLocation());
+                            if (isAnd) {
+                                instructionList.add(new CondJump(leftVariable, rightLabel, frame.label, binaryOp.getLocation()));
+                            } else {
+                                instructionList.add(new CondJump(leftVariable, frame.label, rightLabel, binaryOp.getLocation()));
+                            }
+                            instructionList.add(rightLabel);
+                            return frame.visit(2, binaryOp.getRight(), frames, instructionList);
+                        default:
+                            IRVariable rightVariable = childVariable;
+                            IRVariable resultVariable = createVariable(binaryOp.getType());
+                            instructionList.add(new Copy(rightVariable, resultVariable, binaryOp.getLocation()));
+                            instructionList.add(new Jump(frame.endLabel, binaryOp.getLocation()));
+                            instructionList.add(frame.label);
+                            instructionList.add(new LoadBoolConst(!isAnd, resultVariable, binaryOp.getLocation()));
+                            instructionList.add(new Jump(frame.endLabel, binaryOp.getLocation()));
+                            instructionList.add(frame.endLabel);
+                            return frame.done(resultVariable);
+                    }
                 }
-                if (operator.getText().equals("==")) {
-                    IRVariable leftVariable = visit(binaryOp.getLeft(), symbolTable, instructionList);
-                    IRVariable rightVariable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                    IRVariable resultVariable = createVariable(binaryOp.getType());
-                    instructionList.add(new Call(createVariable(new EqualityType()), new IRVariable[]{leftVariable,
-                            rightVariable}, resultVariable, binaryOp.getLocation()));
-                    return resultVariable;
+                switch (frame.state) {
+                    case 0:
+                        if (!operator.getText().equals("!=") && !operator.getText().equals("==")) {
+                            frame.variable = predefinedVariables.get(operator.getText());
+                        }
+                        return frame.visit(1, binaryOp.getLeft(), frames, instructionList);
+                    case 1:
+                        frame.leftVariable = childVariable;
+                        return frame.visit(2, binaryOp.getRight(), frames, instructionList);
+                    default:
+                        IRVariable leftVariable = frame.leftVariable;
+                        IRVariable rightVariable = childVariable;
+                        IRVariable resultVariable = createVariable(binaryOp.getType());
+                        if (operator.getText().equals("!=")) {
+                            instructionList.add(new Call(createVariable(Types.INEQUALITY), new IRVariable[]{leftVariable,
+                                    rightVariable}, resultVariable, binaryOp.getLocation()));
+                        } else if (operator.getText().equals("==")) {
+                            instructionList.add(new Call(createVariable(Types.EQUALITY), new IRVariable[]{leftVariable,
+                                    rightVariable}, resultVariable, binaryOp.getLocation()));
+                        } else {
+                            instructionList.add(new Call(frame.variable, new IRVariable[]{leftVariable, rightVariable},
+                                    resultVariable, location));
+                        }
+                        return frame.done(resultVariable);
                 }
-                IRVariable operatorVariable = symbolTable.getVariable(operator.getText());
-                IRVariable leftVariable = visit(binaryOp.getLeft(), symbolTable, instructionList);
-                IRVariable rightVariable = visit(binaryOp.getRight(), symbolTable, instructionList);
-                IRVariable result = createVariable(binaryOp.getType());
-                instructionList.add(new Call(operatorVariable, new IRVariable[]{leftVariable, rightVariable}, result, location));
-                return result;
             }
             case Block block: {
-                SymbolTable localSymbolTable = new SymbolTable(symbolTable);
                 List<Expression> expressionList = block.getExpressionList();
-                for (int i = 0; i < expressionList.size() - 1; i++) {
-                    visit(expressionList.get(i), localSymbolTable, instructionList);
+                if (frame.state == 0) {
+                    frame.state = 1;
+                } else if (frame.state == 2) {
+                    return frame.done(childVariable);
+                }
+                if (frame.index < expressionList.size() - 1) {
+                    return frame.visit(1, expressionList.get(frame.index++), frames, instructionList);
                 }
                 if (!(expressionList.getLast() instanceof Unit)) {
-                    return visit(expressionList.getLast(), localSymbolTable, instructionList);
+                    return frame.visit(2, expressionList.getLast(), frames, instructionList);
                 }
-                return createVariable(new UnitType());
+                return frame.done(createVariable(Types.UNIT));
             }
             case ConditionalOp conditionalOp: {
                 if (conditionalOp.getElseBlock() != null) {
-                    Label thenLabel = new Label(commonStatics, "then", conditionalOp.getThenBlock().getLocation());
-                    Label elseLabel = new Label(commonStatics, "else", location);
-                    Label endLabel = new Label(commonStatics, "end", location);
-                    IRVariable conditionVariable = visit(conditionalOp.getCondition(), symbolTable, instructionList);
-                    instructionList.add(new CondJump(conditionVariable, thenLabel, elseLabel, location));
-                    instructionList.add(thenLabel);
-                    Type finalType;
-                    if (conditionalOp.getThenBlock() instanceof Block) {
-                        List<Expression> expressionList = ((Block) conditionalOp.getThenBlock()).getExpressionList();
-                        finalType = !expressionList.isEmpty() ? expressionList.get(expressionList.size() - 1).getType() : new UnitType();
-                    } else {
-                        finalType = conditionalOp.getThenBlock().getType();
+                    switch (frame.state) {
+                        case 0:
+                            frame.startLabel = new Label(commonStatics, "then", conditionalOp.getThenBlock().getLocation());
+                            frame.label = new Label(commonStatics, "else", location);
+                            frame.endLabel = new Label(commonStatics, "end", location);
+                            return frame.visit(1, conditionalOp.getCondition(), frames, instructionList);
+                        case 1:
+                            instructionList.add(new CondJump(childVariable, frame.startLabel, frame.label, location));
+                            instructionList.add(frame.startLabel);
+                            Type finalType;
+                            if (conditionalOp.getThenBlock() instanceof Block) {
+                                List<Expression> expressionList = ((Block) conditionalOp.getThenBlock()).getExpressionList();
+                                finalType = !expressionList.isEmpty() ? expressionList.get(expressionList.size() - 1).getType() : Types.UNIT;
+                            } else {
+                                finalType = conditionalOp.getThenBlock().getType();
+                            }
+                            frame.variable = createVariable(finalType);
+                            return frame.visit(2, conditionalOp.getThenBlock(), frames, instructionList);
+                        case 2:
+                            instructionList.add(new Copy(childVariable, frame.variable, location));
+                            instructionList.add(new Jump(frame.endLabel, location));
+                            instructionList.add(frame.label);
+                            return frame.visit(3, conditionalOp.getElseBlock(), frames, instructionList);
+                        default:
+                            instructionList.add(new Copy(childVariable, frame.variable, location));
+                            instructionList.add(frame.endLabel);
+                            return frame.done(frame.variable);
                     }
-                    IRVariable outputVariable = createVariable(finalType);
-                    IRVariable thenVariable = visit(conditionalOp.getThenBlock(), symbolTable, instructionList);
-                    instructionList.add(new Copy(thenVariable, outputVariable, location));
-                    instructionList.add(new Jump(endLabel, location));
-                    instructionList.add(elseLabel);
-                    IRVariable elseVariable = visit(conditionalOp.getElseBlock(), symbolTable, instructionList);
-                    instructionList.add(new Copy(elseVariable, outputVariable, location));
-                    instructionList.add(endLabel);
-                    return outputVariable;
                 } else {
-                    Label thenLabel = new Label(commonStatics, "then", conditionalOp.getThenBlock().getLocation());
-                    Label endLabel = new Label(commonStatics, "end", location);
-                    IRVariable conditionVariable = visit(conditionalOp.getCondition(), symbolTable, instructionList);
-                    instructionList.add(new CondJump(conditionVariable, thenLabel, endLabel, location));
-                    instructionList.add(thenLabel);
-                    visit(conditionalOp.getThenBlock(), symbolTable, instructionList);
-                    instructionList.add(endLabel);
-                    return createVariable(new UnitType());
+                    switch (frame.state) {
+                        case 0:
+                            frame.startLabel = new Label(commonStatics, "then", conditionalOp.getThenBlock().getLocation());
+                            frame.endLabel = new Label(commonStatics, "end", location);
+                            return frame.visit(1, conditionalOp.getCondition(), frames, instructionList);
+                        case 1:
+                            instructionList.add(new CondJump(childVariable, frame.startLabel, frame.endLabel, location));
+                            instructionList.add(frame.startLabel);
+                            return frame.visit(2, conditionalOp.getThenBlock(), frames, instructionList);
+                        default:
+                            instructionList.add(frame.endLabel);
+                            return frame.done(createVariable(Types.UNIT));
+                    }
                 }
             }
             case WhileOp whileOp: {
-                Label doLabel = new Label(commonStatics, "do", whileOp.getCondition().getLocation());
-                Label endLabel = new Label(commonStatics, "end", whileOp.getLocation());
-                whileEndLabelStack.push(endLabel);
-                Label startLabel = new Label(commonStatics, "while_start", whileOp.getLocation());
-                whileStartLabelStack.push(startLabel);
-                instructionList.add(startLabel);
-                IRVariable condition = visit(whileOp.getCondition(), symbolTable, instructionList);
-                instructionList.add(new CondJump(condition, doLabel, endLabel, whileOp.getBody().getLocation()));
-                instructionList.add(doLabel);
-                visit(whileOp.getBody(), symbolTable, instructionList);
-                instructionList.add(new Jump(startLabel, whileOp.getBody().getLocation()));
-                instructionList.add(endLabel);
-                return createVariable(new UnitType());
+                switch (frame.state) {
+                    case 0:
+                        frame.label = new Label(commonStatics, "do", whileOp.getCondition().getLocation());
+                        frame.endLabel = new Label(commonStatics, "end", whileOp.getLocation());
+                        whileEndLabelStack.push(frame.endLabel);
+                        frame.startLabel = new Label(commonStatics, "while_start", whileOp.getLocation());
+                        whileStartLabelStack.push(frame.startLabel);
+                        instructionList.add(frame.startLabel);
+                        return frame.visit(1, whileOp.getCondition(), frames, instructionList);
+                    case 1:
+                        instructionList.add(new CondJump(childVariable, frame.label, frame.endLabel,
+                                whileOp.getBody().getLocation()));
+                        instructionList.add(frame.label);
+                        return frame.visit(2, whileOp.getBody(), frames, instructionList);
+                    default:
+                        instructionList.add(new Jump(frame.startLabel, whileOp.getBody().getLocation()));
+                        instructionList.add(frame.endLabel);
+                        return frame.done(createVariable(Types.UNIT));
+                }
             }
             case VariableDef variableDef: {
-                IRVariable rightSide = visit(variableDef.getValue(), symbolTable, instructionList);
+                if (frame.state == 0) {
+                    return frame.visit(1, variableDef.getValue(), frames, instructionList);
+                }
+                IRVariable rightSide = childVariable;
                 IRVariable leftSide = createVariable(variableDef.getType());
-                symbolTable.putVariable(variableDef.getName(), leftSide);
+                frames[variableDef.getDepth()][variableDef.getSlot()] = leftSide;
                 instructionList.add(new Copy(rightSide, leftSide, variableDef.getLocation()));
-                return createVariable(new UnitType());
+                return frame.done(createVariable(Types.UNIT));
             }
             case FunctionCall functionCall: {
                 List<Expression> parameters = functionCall.getParameters();
-                List<IRVariable> params = new ArrayList<>();
-                for (Expression parameter: parameters) {
-                    params.add(visit(parameter, symbolTable, instructionList));
+                if (frame.state == 0) {
+                    frame.params = new ArrayList<>(parameters.size());
+                    frame.state = 1;
+                } else {
+                    frame.params.add(childVariable);
+                }
+                if (frame.index < parameters.size()) {
+                    return frame.visit(1, parameters.get(frame.index++), frames, instructionList);
                 }
-                IRVariable functionVariable = symbolTable.getVariable(functionCall.getFunctionName());
+                IRVariable functionVariable = getVariable(functionCall, frames);
                 IRVariable resultVariable = createVariable(functionCall.getType());
-                instructionList.add(new Call(functionVariable, params.toArray(new IRVariable[]{}),
+                instructionList.add(new Call(functionVariable, frame.params.toArray(new IRVariable[]{}),
                         resultVariable, functionCall.getLocation()));
-                return resultVariable;
+                return frame.done(resultVariable);
             }
             case Break breakOp: {
                 Jump jumpIns = new Jump(whileEndLabelStack.pop(), breakOp.getLocation());
                 instructionList.add(jumpIns);
-                return createVariable(new UnitType());
+                return frame.done(createVariable(Types.UNIT));
             }
             case Continue continueOp: {
                 Jump jumpIns = new Jump(whileStartLabelStack.pop(), continueOp.getLocation());
                 instructionList.add(jumpIns);
-                return createVariable(new UnitType());
+                return frame.done(createVariable(Types.UNIT));
             }
             case FunctionDefinition functionDefinition: {
-                SymbolTable localSymbolTable = new SymbolTable(symbolTable);
-                List<IRVariable> parameterVariables = new ArrayList<>();
-                for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
-                    IRVariable variable = new IRVariable(argument.getName(), argument.getType());
-                    localSymbolTable.putVariable(argument.getName(), variable);
-                    parameterVariables.add(variable);
+                if (frame.state == 0) {
+                    IRVariable[][] functionFrames = Arrays.copyOf(frames, frames.length + 1);
+                    functionFrames[frames.length] = new IRVariable[functionDefinition.getFrameSize()];
+                    frame.params = new ArrayList<>();
+                    for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                        IRVariable variable = new IRVariable(argument.getName(), argument.getType());
+                        functionFrames[argument.getDepth()][argument.getSlot()] = variable;
+                        frame.params.add(variable);
+                    }
+                    frame.functionInstructions = new ArrayList<>();
+                    return frame.visit(1, functionDefinition.getBlock(), functionFrames, frame.functionInstructions);
                 }
-                List<Instruction> functionInstructions = new ArrayList<>();
-                visit(functionDefinition.getBlock(), localSymbolTable, functionInstructions);
                 FunctionDefinitionIns funcDefInstruction = new FunctionDefinitionIns(functionDefinition.getFunctionName(),
-                        functionInstructions, parameterVariables, functionDefinition.getLocation());
+                        frame.functionInstructions, frame.params, functionDefinition.getLocation());
                 functionDefinitions.add(funcDefInstruction);
-//                IRVariable functionVariable = new IRVariable(functionDefinition.getFunctionName(), functionDefinition.getType());
-//                symbolTable.putVariable(functionDefinition.getFunctionName(), functionVariable);
-//                return functionVariable;
-                return symbolTable.getVariable(functionDefinition.getFunctionName());
+                return frame.done(globals[functionDefinition.getSlot()]);
             }
             case Return returnDef: {
-                IRVariable valueVariable = visit(returnDef.getValue(), symbolTable, instructionList);
+                if (frame.state == 0) {
+                    return frame.visit(1, returnDef.getValue(), frames, instructionList);
+                }
+                IRVariable valueVariable = childVariable;
                 instructionList.add(new ReturnIns(valueVariable, returnDef.getLocation()));
-                return valueVariable;
+                return frame.done(valueVariable);
             }
             default: {
                 throw new IRGenerationException("Invalid Expression found");
@@ -297,4 +389,37 @@ public class IRGenerator {
         variableTypeMap.put(variable, type);
         return variable;
     }
+
+    private static class Frame {
+        private final Expression expression;
+        private final IRVariable[][] frames;
+        private final List<Instruction> instructionList;
+        private int state;
+        private int index;
+        private IRVariable variable;
+        private IRVariable leftVariable;
+        private Label startLabel;
+        private Label label;
+        private Label endLabel;
+        private List<IRVariable> params;
+        private List<Instruction> functionInstructions;
+        private IRVariable result;
+
+        Frame(Expression expression, IRVariable[][] frames, List<Instruction> instructionList) {
+            this.expression = expression;
+            this.frames = frames;
+            this.instructionList = instructionList;
+        }
+
+        Frame visit(int nextState, Expression child, IRVariable[][] childFrames,
+                    List<Instruction> childInstructionList) {
+            state = nextState;
+            return new Frame(child, childFrames, childInstructionList);
+        }
+
+        Frame done(IRVariable result) {
+            this.result = result;
+            return null;
+        }
+    }
 }
@@ -0,0 +1,364 @@
+package fi.helsinki.compiler.irinterpreter;
+
+import fi.helsinki.compiler.exceptions.IRInterpreterException;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.interpreter.InputReader;
+import fi.helsinki.compiler.irgenerator.IRVariable;
+import fi.helsinki.compiler.irgenerator.instructions.*;
+
+import java.io.PrintStream;
+import java.util.*;
+
+import static fi.helsinki.compiler.irinterpreter.IROpcodes.*;
+
+/*
+    Runs the IR instructions of a program, giving the output the generated assembly would give, so it can be used to
+    check the assembly backend against. Each function is first lowered to a flat int array: a label becomes the index
+    of the instruction it marks and an IRVariable becomes a register, which is a slot in one long array shared by all
+    the calls. As in the assembly every function has registers of its own, its parameters come first, and booleans are
+    1 and 0. The call stack is kept in arrays, so deep recursion does not use the Java stack.
+ */
+public class IRInterpreter {
+
+    private static final Map<String, Integer> INTRINSICS = Map.ofEntries(
+            Map.entry("+", ADD),
+            Map.entry("-", SUB),
+            Map.entry("*", MUL),
+            Map.entry("/", DIV),
+            Map.entry("%", MOD),
+            Map.entry("==", EQ),
+            Map.entry("!=", NE),
+            Map.entry("<", LT),
+            Map.entry("<=", LE),
+            Map.entry(">", GT),
+            Map.entry(">=", GE),
+            Map.entry("unary_-", NEG),
+            Map.entry("unary_not", NOT),
+            Map.entry("print_int", PRINT_INT),
+            Map.entry("print_bool", PRINT_BOOL),
+            Map.entry("read_int", READ_INT));
+
+    private final PrintStream out;
+    private InputReader input;
+
+    /*
+        An interpreter printing to the System.out of the time it runs a program.
+     */
+    public IRInterpreter() {
+        this(null);
+    }
+
+    public IRInterpreter(PrintStream out) {
+        this.out = out;
+    }
+
+    /*
+        Runs the instructions returned by the IRGenerator: either the instructions of the main function, or the
+        definitions of all the functions including main. Returns the value main returns, which is 0 unless it returns
+        one explicitly.
+     */
+    public long run(List<Instruction> instructions) throws IRInterpreterException {
+        List<FunctionDefinitionIns> definitions = new ArrayList<>();
+        if (!instructions.isEmpty() && instructions.getFirst() instanceof FunctionDefinitionIns) {
+            for (Instruction instruction : instructions) {
+                definitions.add((FunctionDefinitionIns) instruction);
+            }
+        } else {
+            definitions.add(new FunctionDefinitionIns("main", instructions, new ArrayList<>(), null));
+        }
+        Map<String, Integer> functionIndexes = new HashMap<>();
+        for (int i = 0; i < definitions.size(); i++) {
+            functionIndexes.put(definitions.get(i).getFunctionName(), i);
+        }
+        Integer main = functionIndexes.get("main");
+        if (main == null) {
+            throw new IRInterpreterException("No main function found");
+        }
+        LoweredFunction[] functions = new LoweredFunction[definitions.size()];
+        for (int i = 0; i < functions.length; i++) {
+            functions[i] = lower(definitions.get(i), functionIndexes);
+        }
+        return execute(functions, main);
+    }
+
+    private LoweredFunction lower(FunctionDefinitionIns definition,
+                                  Map<String, Integer> functionIndexes) throws IRInterpreterException {
+        List<Instruction> instructions = definition.getFunctionInstructions();
+        Map<IRVariable, Integer> registers = new HashMap<>();
+        for (IRVariable parameter : definition.getParameterVariables()) {
+            registers.put(parameter, registers.size());
+        }
+        // The labels are placed first, so that jumps forward can be resolved while the code is written
+        Map<String, Integer> labelIndexes = new HashMap<>();
+        int size = 0;
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof Label label) {
+                labelIndexes.put(label.getLabelName(), size);
+            } else {
+                size += sizeOf(instruction);
+            }
+        }
+        int[] code = new int[size + 1];
+        List<Long> constants = new ArrayList<>();
+        int pc = 0;
+        for (Instruction instruction : instructions) {
+            switch (instruction) {
+                case Label label: {
+                    break;
+                }
+                case LoadIntConst loadIntConst: {
+                    code[pc++] = CONST;
+                    code[pc++] = register(registers, loadIntConst.getDestination());
+                    code[pc++] = constants.size();
+                    constants.add(loadIntConst.getValue());
+                    break;
+                }
+                case LoadBoolConst loadBoolConst: {
+                    code[pc++] = CONST;
+                    code[pc++] = register(registers, loadBoolConst.getDestination());
+                    code[pc++] = constants.size();
+                    constants.add(loadBoolConst.getValue() ? 1L : 0L);
+                    break;
+                }
+                case Copy copy: {
+                    code[pc++] = COPY;
+                    code[pc++] = register(registers, copy.getDestination());
+                    code[pc++] = register(registers, copy.getSource());
+                    break;
+                }
+                case Jump jump: {
+                    code[pc++] = JUMP;
+                    code[pc++] = labelIndex(labelIndexes, jump.getLabel());
+                    break;
+                }
+                case CondJump condJump: {
+                    code[pc++] = COND_JUMP;
+                    code[pc++] = register(registers, condJump.getCondition());
+                    code[pc++] = labelIndex(labelIndexes, condJump.getThenLabel());
+                    code[pc++] = labelIndex(labelIndexes, condJump.getElseLabel());
+                    break;
+                }
+                case ReturnIns returnIns: {
+                    code[pc++] = RETURN;
+                    code[pc++] = register(registers, returnIns.getValue());
+                    break;
+                }
+                case Call call: {
+                    IRVariable[] arguments = call.getArguments();
+                    Integer intrinsic = INTRINSICS.get(call.getFunction().getType().getTypeStr());
+                    if (intrinsic != null) {
+                        code[pc++] = intrinsic;
+                        code[pc++] = register(registers, call.getDestination());
+                        for (IRVariable argument : arguments) {
+                            code[pc++] = register(registers, argument);
+                        }
+                        break;
+                    }
+                    Integer function = functionIndexes.get(call.getFunction().getName());
+                    if (function == null) {
+                        throw new IRInterpreterException("Unknown function: " + call.getFunction().getName());
+                    }
+                    code[pc++] = CALL;
+                    code[pc++] = register(registers, call.getDestination());
+                    code[pc++] = function;
+                    code[pc++] = arguments.length;
+                    for (IRVariable argument : arguments) {
+                        code[pc++] = register(registers, argument);
+                    }
+                    break;
+                }
+                default: {
+                    throw new IRInterpreterException("Invalid instruction found: " + instruction);
+                }
+            }
+        }
+        code[pc] = RETURN_ZERO;
+        long[] constantArray = new long[constants.size()];
+        for (int i = 0; i < constantArray.length; i++) {
+            constantArray[i] = constants.get(i);
+        }
+        return new LoweredFunction(definition.getFunctionName(), code, constantArray,
+                definition.getParameterVariables().size(), registers.size());
+    }
+
+    private static int sizeOf(Instruction instruction) {
+        return switch (instruction) {
+            case LoadIntConst loadIntConst -> 3;
+            case LoadBoolConst loadBoolConst -> 3;
+            case Copy copy -> 3;
+            case Jump jump -> 2;
+            case CondJump condJump -> 4;
+            case ReturnIns returnIns -> 2;
+            case Call call -> INTRINSICS.containsKey(call.getFunction().getType().getTypeStr())
+                    ? 2 + call.getArguments().length : 4 + call.getArguments().length;
+            default -> 0;
+        };
+    }
+
+    private static int register(Map<IRVariable, Integer> registers, IRVariable variable) {
+        return registers.computeIfAbsent(variable, key -> registers.size());
+    }
+
+    private static int labelIndex(Map<String, Integer> labelIndexes, Label label) throws IRInterpreterException {
+        Integer index = labelIndexes.get(label.getLabelName());
+        if (index == null) {
+            throw new IRInterpreterException("Label not found: " + label.getLabelName());
+        }
+        return index;
+    }
+
+    /*
+        Runs the lowered functions from main. The registers of a call start where the registers of its caller end;
+        the call stack arrays keep the function, the return address, the start of the registers and the register to
+        put the returned value in for each caller.
+     */
+    private long execute(LoweredFunction[] functions, int main) throws IRInterpreterException {
+        PrintStream out = this.out != null ? this.out : System.out;
+        input = null;
+        LoweredFunction function = functions[main];
+        int[] code = function.code;
+        long[] constants = function.constants;
+        long[] registers = new long[Math.max(256, function.registerCount)];
+        int[] callerFunctions = new int[64];
+        int[] returnAddresses = new int[64];
+        int[] callerBases = new int[64];
+        int[] resultRegisters = new int[64];
+        int calls = 0;
+        int current = main;
+        int base = 0;
+        int pc = 0;
+        while (true) {
+            long value;
+            switch (code[pc]) {
+                case CONST -> {
+                    registers[base + code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    continue;
+                }
+                case COPY -> {
+                    registers[base + code[pc + 1]] = registers[base + code[pc + 2]];
+                    pc += 3;
+                    continue;
+                }
+                case JUMP -> {
+                    pc = code[pc + 1];
+                    continue;
+                }
+                case COND_JUMP -> {
+                    pc = registers[base + code[pc + 1]] != 0 ? code[pc + 2] : code[pc + 3];
+                    continue;
+                }
+                case ADD -> value = registers[base + code[pc + 2]] + registers[base + code[pc + 3]];
+                case SUB -> value = registers[base + code[pc + 2]] - registers[base + code[pc + 3]];
+                case MUL -> value = registers[base + code[pc + 2]] * registers[base + code[pc + 3]];
+                case DIV -> value = registers[base + code[pc + 2]] / divisor(registers[base + code[pc + 3]]);
+                case MOD -> value = registers[base + code[pc + 2]] % divisor(registers[base + code[pc + 3]]);
+                case EQ -> value = registers[base + code[pc + 2]] == registers[base + code[pc + 3]] ? 1 : 0;
+                case NE -> value = registers[base + code[pc + 2]] != registers[base + code[pc + 3]] ? 1 : 0;
+                case LT -> value = registers[base + code[pc + 2]] < registers[base + code[pc + 3]] ? 1 : 0;
+                case LE -> value = registers[base + code[pc + 2]] <= registers[base + code[pc + 3]] ? 1 : 0;
+                case GT -> value = registers[base + code[pc + 2]] > registers[base + code[pc + 3]] ? 1 : 0;
+                case GE -> value = registers[base + code[pc + 2]] >= registers[base + code[pc + 3]] ? 1 : 0;
+                case NEG -> {
+                    registers[base + code[pc + 1]] = -registers[base + code[pc + 2]];
+                    pc += 3;
+                    continue;
+                }
+                case NOT -> {
+                    registers[base + code[pc + 1]] = registers[base + code[pc + 2]] ^ 1;
+                    pc += 3;
+                    continue;
+                }
+                case PRINT_INT -> {
+                    out.println(registers[base + code[pc + 2]]);
+                    registers[base + code[pc + 1]] = 0;
+                    pc += 3;
+                    continue;
+                }
+                case PRINT_BOOL -> {
+                    out.println(registers[base + code[pc + 2]] != 0);
+                    registers[base + code[pc + 1]] = 0;
+                    pc += 3;
+                    continue;
+                }
+                case READ_INT -> {
+                    registers[base + code[pc + 1]] = readInt();
+                    pc += 2;
+                    continue;
+                }
+                case CALL -> {
+                    LoweredFunction callee = functions[code[pc + 2]];
+                    int argumentCount = code[pc + 3];
+                    int calleeBase = base + function.registerCount;
+                    if (calleeBase + callee.registerCount > registers.length) {
+                        registers = Arrays.copyOf(registers,
+                                Math.max(registers.length * 2, calleeBase + callee.registerCount));
+                    }
+                    if (calls == returnAddresses.length) {
+                        callerFunctions = Arrays.copyOf(callerFunctions, calls * 2);
+                        returnAddresses = Arrays.copyOf(returnAddresses, calls * 2);
+                        callerBases = Arrays.copyOf(callerBases, calls * 2);
+                        resultRegisters = Arrays.copyOf(resultRegisters, calls * 2);
+                    }
+                    for (int i = 0; i < argumentCount; i++) {
+                        registers[calleeBase + i] = registers[base + code[pc + 4 + i]];
+                    }
+                    Arrays.fill(registers, calleeBase + argumentCount, calleeBase + callee.registerCount, 0);
+                    callerFunctions[calls] = current;
+                    returnAddresses[calls] = pc + 4 + argumentCount;
+                    callerBases[calls] = base;
+                    resultRegisters[calls] = base + code[pc + 1];
+                    calls += 1;
+                    current = code[pc + 2];
+                    function = callee;
+                    code = callee.code;
+                    constants = callee.constants;
+                    base = calleeBase;
+                    pc = 0;
+                    continue;
+                }
+                case RETURN, RETURN_ZERO -> {
+                    long result = code[pc] == RETURN ? registers[base + code[pc + 1]] : 0;
+                    if (calls == 0) {
+                        return result;
+                    }
+                    calls -= 1;
+                    registers[resultRegisters[calls]] = result;
+                    current = callerFunctions[calls];
+                    function = functions[current];
+                    code = function.code;
+                    constants = function.constants;
+                    base = callerBases[calls];
+                    pc = returnAddresses[calls];
+                    continue;
+                }
+                default -> throw new IRInterpreterException("Invalid opcode " + code[pc] + " at " + pc + " in "
+                        + function.name);
+            }
+            // The binary operations all write the value they compute to their destination register
+            registers[base + code[pc + 1]] = value;
+            pc += 4;
+        }
+    }
+
+    private static long divisor(long value) throws IRInterpreterException {
+        if (value == 0) {
+            throw new IRInterpreterException("Division by zero");
+        }
+        return value;
+    }
+
+    /*
+        Reads as the read_int of the generated assembly does, with one buffered reader for the whole run.
+     */
+    private long readInt() throws IRInterpreterException {
+        try {
+            if (input == null) {
+                input = new InputReader(System.in);
+            }
+            return input.readInt();
+        } catch (InterpreterException e) {
+            throw new IRInterpreterException(e.getMessage());
+        }
+    }
+}
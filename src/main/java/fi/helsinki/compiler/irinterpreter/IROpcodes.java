@@ -0,0 +1,46 @@
+package fi.helsinki.compiler.irinterpreter;
+
+/*
+    The instructions of a lowered function. Each instruction is an opcode followed by its operands in the int array of
+    the function: register numbers, instruction indexes of jump targets, and indexes into the constants of the
+    function. The destination register comes first.
+ */
+final class IROpcodes {
+
+    // dst, constant
+    static final int CONST = 0;
+    // dst, src
+    static final int COPY = 1;
+    // target
+    static final int JUMP = 2;
+    // condition, then target, else target
+    static final int COND_JUMP = 3;
+    // dst, left, right
+    static final int ADD = 4;
+    static final int SUB = 5;
+    static final int MUL = 6;
+    static final int DIV = 7;
+    static final int MOD = 8;
+    static final int EQ = 9;
+    static final int NE = 10;
+    static final int LT = 11;
+    static final int LE = 12;
+    static final int GT = 13;
+    static final int GE = 14;
+    // dst, operand
+    static final int NEG = 15;
+    static final int NOT = 16;
+    static final int PRINT_INT = 17;
+    static final int PRINT_BOOL = 18;
+    // dst
+    static final int READ_INT = 19;
+    // dst, function, argument count, argument registers
+    static final int CALL = 20;
+    // src
+    static final int RETURN = 21;
+    // Ends a function falling off its last instruction, which returns 0 like the generated assembly
+    static final int RETURN_ZERO = 22;
+
+    private IROpcodes() {
+    }
+}
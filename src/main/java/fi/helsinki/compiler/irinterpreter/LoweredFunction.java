@@ -0,0 +1,22 @@
+package fi.helsinki.compiler.irinterpreter;
+
+/*
+    The instructions of a function lowered to a flat array, with the labels replaced by the indexes of the instructions
+    they mark and the IRVariables by register numbers. The parameters of the function are its first registers.
+ */
+class LoweredFunction {
+
+    final String name;
+    final int[] code;
+    final long[] constants;
+    final int parameterCount;
+    final int registerCount;
+
+    LoweredFunction(String name, int[] code, long[] constants, int parameterCount, int registerCount) {
+        this.name = name;
+        this.code = code;
+        this.constants = constants;
+        this.parameterCount = parameterCount;
+        this.registerCount = registerCount;
+    }
+}
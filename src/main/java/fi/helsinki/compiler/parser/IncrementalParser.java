@@ -0,0 +1,238 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.Location;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TokenizeException;
+import fi.helsinki.compiler.tokenizer.Token;
+import fi.helsinki.compiler.tokenizer.TokenizedSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/*
+    Parses a source with recovery and keeps its top level expressions and function definitions together with the
+    span of tokens each of them was parsed from. An item only depends on its own tokens and the token following it,
+    so after an edit the items whose tokens and following token were not touched by it are taken over from the
+    previous parse, and only the items intersecting the edit are parsed again. Items with syntax errors are always
+    parsed again.
+    The items after an edit are moved to their new locations in place, which means the trees returned before an edit
+    share nodes with the current one and should not be used after it.
+ */
+public class IncrementalParser {
+
+    private TokenizedSource source;
+    private List<Item> items;
+    private Block program;
+    private List<Diagnostic> diagnostics;
+    private int reparsedItems;
+
+    public IncrementalParser(String source, String filename) throws TokenizeException, ParserException {
+        parse(TokenizedSource.tokenize(source, filename), new ItemTable(List.of(), null, null));
+    }
+
+    /*
+        Applies an edit replacing removedLength characters at offset with insertedText and returns the parsed
+        program, the same as parsing the edited source from scratch with Parser.parseWithRecovery. If the edited
+        source cannot be tokenized or parsed at all, the exception is thrown and the edit is not applied.
+     */
+    public Block edit(int offset, int removedLength, String insertedText) throws TokenizeException, ParserException {
+        TokenizedSource edited = source.edit(offset, removedLength, insertedText);
+        parse(edited, new ItemTable(items, source, edited));
+        return program;
+    }
+
+    public Block getProgram() {
+        return program;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public TokenizedSource getSource() {
+        return source;
+    }
+
+    /*
+        Number of top level items parsed for the last result, for the first parse the number of items.
+     */
+    public int getReparsedItems() {
+        return reparsedItems;
+    }
+
+    private void parse(TokenizedSource tokenized, ItemTable itemTable) throws ParserException {
+        Parser parser = new Parser(tokenized.getTokens());
+        Block parsed = parser.parseIncrementally(itemTable);
+        source = tokenized;
+        items = itemTable.parsed;
+        program = parsed;
+        diagnostics = parser.getDiagnostics();
+        reparsedItems = itemTable.parsed.size() - itemTable.reusedItems;
+    }
+
+    /*
+        A top level item and the tokens it was parsed from, from start up to but not including end.
+     */
+    static final class Item {
+        private final Expression expression;
+        private final int start;
+        private final int end;
+
+        Item(Expression expression, int start, int end) {
+            this.expression = expression;
+            this.start = start;
+            this.end = end;
+        }
+
+        Expression getExpression() {
+            return expression;
+        }
+
+        int getStart() {
+            return start;
+        }
+
+        int getEnd() {
+            return end;
+        }
+    }
+
+    /*
+        The items of the previous parse offered to the Parser, and the items of the current one.
+        The tokens of the edited source are made of three parts: the tokens kept from the start of the previous source,
+        the rescanned tokens, and the last tokens of the previous source shifted by the edit. An item can be reused if
+        it is in the kept part together with its following token, or if it is in the shifted part.
+     */
+    static final class ItemTable {
+        private final List<Item> previous;
+        private final TokenizedSource previousSource;
+        private final TokenizedSource editedSource;
+        private final List<Item> parsed = new ArrayList<>();
+        private int nextPrevious;
+        private int reusedItems;
+
+        ItemTable(List<Item> previous, TokenizedSource previousSource, TokenizedSource editedSource) {
+            this.previous = previous;
+            this.previousSource = previousSource;
+            this.editedSource = editedSource;
+        }
+
+        /*
+            Returns an item of the previous parse that parses the same as the tokens from tokenIndex onwards, moved to
+            its new location, or null if there is none. The parser asks for increasing token indexes.
+         */
+        Item reuse(int tokenIndex) {
+            if (previous.isEmpty()) {
+                return null;
+            }
+            int kept = editedSource.getKeptTokens();
+            if (tokenIndex < kept) {
+                Item item = findPrevious(tokenIndex);
+                if (item == null || item.end >= kept) {
+                    return null;
+                }
+                reusedItems += 1;
+                return item;
+            }
+            if (tokenIndex < kept + editedSource.getRescannedTokens()) {
+                return null;
+            }
+            int tokenShift = editedSource.getTokens().size() - previousSource.getTokens().size();
+            Item item = findPrevious(tokenIndex - tokenShift);
+            if (item == null) {
+                return null;
+            }
+            Location oldLocation = previousSource.getTokens().get(item.start).getTokenLocation();
+            Location newLocation = editedSource.getTokens().get(tokenIndex).getTokenLocation();
+            relocate(item.expression, oldLocation.getLine(), newLocation.getLine() - oldLocation.getLine(),
+                    newLocation.getColumn() - oldLocation.getColumn());
+            reusedItems += 1;
+            return new Item(item.expression, tokenIndex, item.end + tokenShift);
+        }
+
+        void parsed(Expression expression, int start, int end) {
+            parsed.add(new Item(expression, start, end));
+        }
+
+        private Item findPrevious(int start) {
+            while (nextPrevious < previous.size() && previous.get(nextPrevious).start < start) {
+                nextPrevious += 1;
+            }
+            if (nextPrevious < previous.size() && previous.get(nextPrevious).start == start) {
+                return previous.get(nextPrevious);
+            }
+            return null;
+        }
+    }
+
+    /*
+        Moves every node of a tree the way TokenizedSource moves its tokens: all of them by lineShift lines, and the
+        ones on the given line also by columnShift columns.
+     */
+    private static void relocate(Expression root, int line, int lineShift, int columnShift) {
+        if (lineShift == 0 && columnShift == 0) {
+            return;
+        }
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Expression expression = stack.pop();
+            expression.setLocation(move(expression.getLocation(), line, lineShift, columnShift));
+            if (expression instanceof BinaryOp binaryOp) {
+                binaryOp.setOperator(move(binaryOp.getOperator(), line, lineShift, columnShift));
+                push(stack, binaryOp.getLeft());
+                push(stack, binaryOp.getRight());
+            } else if (expression instanceof UnaryOp unaryOp) {
+                unaryOp.setOperator(move(unaryOp.getOperator(), line, lineShift, columnShift));
+                push(stack, unaryOp.getExpression());
+            } else if (expression instanceof FunctionCall functionCall) {
+                pushAll(stack, functionCall.getParameters());
+            } else if (expression instanceof Block block) {
+                pushAll(stack, block.getExpressionList());
+            } else if (expression instanceof ConditionalOp conditionalOp) {
+                push(stack, conditionalOp.getCondition());
+                push(stack, conditionalOp.getThenBlock());
+                push(stack, conditionalOp.getElseBlock());
+            } else if (expression instanceof WhileOp whileOp) {
+                push(stack, whileOp.getCondition());
+                push(stack, whileOp.getBody());
+            } else if (expression instanceof VariableDef variableDef) {
+                push(stack, variableDef.getValue());
+            } else if (expression instanceof Return returnExpression) {
+                push(stack, returnExpression.getValue());
+            } else if (expression instanceof FunctionDefinition functionDefinition) {
+                pushAll(stack, functionDefinition.getArguments());
+                push(stack, functionDefinition.getBlock());
+            }
+        }
+    }
+
+    private static void push(Deque<Expression> stack, Expression expression) {
+        if (expression != null) {
+            stack.push(expression);
+        }
+    }
+
+    private static void pushAll(Deque<Expression> stack, List<? extends Expression> expressions) {
+        for (Expression expression : expressions) {
+            push(stack, expression);
+        }
+    }
+
+    private static Location move(Location location, int line, int lineShift, int columnShift) {
+        if (location == null) {
+            return null;
+        }
+        int column = location.getLine() == line ? location.getColumn() + columnShift : location.getColumn();
+        return new Location(location.getFile(), location.getLine() + lineShift, column);
+    }
+
+    private static Token move(Token token, int line, int lineShift, int columnShift) {
+        return new Token(token.getText(), token.getTokenType(),
+                move(token.getTokenLocation(), line, lineShift, columnShift));
+    }
+}
@@ -1,9 +1,13 @@
 package fi.helsinki.compiler.parser;
 
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.Location;
 import fi.helsinki.compiler.common.expressions.Expression;
 import fi.helsinki.compiler.common.expressions.*;
 import fi.helsinki.compiler.exceptions.ParserException;
 import fi.helsinki.compiler.tokenizer.Token;
+import fi.helsinki.compiler.tokenizer.TokenKind;
+import fi.helsinki.compiler.tokenizer.TokenStream;
 import fi.helsinki.compiler.tokenizer.TokenType;
 
 import java.util.*;
@@ -11,37 +15,54 @@ import java.util.stream.Collectors;
 
 public class Parser {
 
-    private final List<Token> tokens;
-    private int tokenPosition;
+    private static final int ASSIGNMENT_PRECEDENCE = 1;
+    private static final Map<TokenKind, Integer> BINARY_PRECEDENCE = new EnumMap<>(TokenKind.class);
+
+    static {
+        BINARY_PRECEDENCE.put(TokenKind.ASSIGN, ASSIGNMENT_PRECEDENCE);
+        BINARY_PRECEDENCE.put(TokenKind.OR, 2);
+        BINARY_PRECEDENCE.put(TokenKind.AND, 3);
+        BINARY_PRECEDENCE.put(TokenKind.EQUALS, 4);
+        BINARY_PRECEDENCE.put(TokenKind.NOT_EQUALS, 4);
+        BINARY_PRECEDENCE.put(TokenKind.LESS_THAN, 5);
+        BINARY_PRECEDENCE.put(TokenKind.LESS_THAN_OR_EQUAL, 5);
+        BINARY_PRECEDENCE.put(TokenKind.GREATER_THAN, 5);
+        BINARY_PRECEDENCE.put(TokenKind.GREATER_THAN_OR_EQUAL, 5);
+        BINARY_PRECEDENCE.put(TokenKind.PLUS, 6);
+        BINARY_PRECEDENCE.put(TokenKind.MINUS, 6);
+        BINARY_PRECEDENCE.put(TokenKind.MULTIPLY, 7);
+        BINARY_PRECEDENCE.put(TokenKind.DIVIDE, 7);
+        BINARY_PRECEDENCE.put(TokenKind.MODULUS, 7);
+    }
+
+    private final TokenStream tokens;
+    private List<Diagnostic> diagnostics;
+    private IncrementalParser.ItemTable topLevelItems;
 
     public Parser(List<Token> tokens) {
+        this(TokenStream.of(tokens));
+    }
+
+    public Parser(TokenStream tokens) {
         this.tokens = tokens;
-        this.tokenPosition = 0;
     }
 
     private Token peek() {
-        if (tokenPosition == tokens.size()) {
-            return new Token("", TokenType.END, tokens.getLast().getTokenLocation());
-        }
-        return tokens.get(tokenPosition);
+        return tokens.peek();
     }
 
     private Token lookBack() {
-        if (tokenPosition == 0) {
-            return new Token("", TokenType.START, tokens.getFirst().getTokenLocation());
-        }
-        return tokens.get(tokenPosition - 1);
+        return tokens.lookBack();
     }
 
-    private Token consume(String... expected) throws ParserException {
+    private Token consume(TokenKind... expected) throws ParserException {
         Token token = peek();
-        if (expected.length > 0 && Arrays.stream(expected).noneMatch(token.getText()::equals)) {
-            String commaSeparated = Arrays.stream(expected).map(Objects::toString)
+        if (expected.length > 0 && !isNext(expected)) {
+            String commaSeparated = Arrays.stream(expected).map(TokenKind::getText)
                     .collect(Collectors.joining(", "));
             throw new ParserException(token.getTokenLocation() + ": expected one of: " + commaSeparated);
         }
-        tokenPosition += 1;
-        return token;
+        return tokens.advance();
     }
 
     private IntLiteral parseIntegerLiteral() throws ParserException {
@@ -52,353 +73,670 @@ public class Parser {
         return new IntLiteral(Long.parseUnsignedLong(token.getText()), token.getTokenLocation());
     }
 
-    private FunctionCall parseFunctionCall(Token functionNameToken) throws ParserException {
-        consume("(");
-        List<Expression> parameters = new ArrayList<>();
-        while (!peek().getText().equals(")")) {
-            parameters.add(parseExpression());
-            if (!peek().getText().equals(")")) {
-                consume(",");
+    /*
+        Runs a frame and the frames of its children on an explicit stack instead of the Java stack, so that the nesting
+        depth of the parsed program is not limited by the thread stack size. A frame returns the frame of a child
+        construct to parse next, or null once its own result is known; the result is then handed back to the frame
+        below it.
+     */
+    private Expression run(Frame root) throws ParserException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(root);
+        Expression child = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next;
+            try {
+                next = frame.step(child);
+            } catch (ParserException e) {
+                recover(stack, e);
+                child = null;
+                continue;
+            }
+            if (next != null) {
+                stack.push(next);
+                child = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.result;
+                }
+                child = frame.result;
             }
         }
-        consume(")");
-        return new FunctionCall(functionNameToken.getText(), parameters, functionNameToken.getTokenLocation());
     }
 
-    private Expression parseIdentifier() throws ParserException {
-        if (peek().getTokenType() != TokenType.IDENTIFIER) {
-            throw new ParserException(peek().getTokenLocation() + ": expected an identifier");
+    /*
+        Without diagnostics to collect, rethrows the error. Otherwise records it and resumes at the innermost block
+        that is parsing statements: the frames above it are dropped, the tokens up to the next ';' or '}' of that block
+        are skipped and the statement being parsed is replaced by an ErrorExpression.
+     */
+    private void recover(Deque<Frame> stack, ParserException exception) throws ParserException {
+        if (diagnostics == null) {
+            throw exception;
+        }
+        Location location = peek().getTokenLocation();
+        while (!stack.isEmpty() && !stack.peek().isParsingStatements()) {
+            stack.pop();
+        }
+        if (stack.isEmpty()) {
+            throw exception;
+        }
+        report(exception.getMessage(), location);
+        skipToStatementEnd();
+        stack.peek().resumeAfterError(new ErrorExpression(exception.getMessage(), location));
+    }
+
+    private void skipToStatementEnd() throws ParserException {
+        int depth = 0;
+        while (!checkNextToken(TokenType.END)) {
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+                depth += 1;
+            } else if (checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
+                if (depth == 0) {
+                    return;
+                }
+                depth -= 1;
+            } else if (depth == 0 && checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                return;
+            }
+            consume();
         }
-        Token token = consume();
-        Token nextToken = peek();
-        if (nextToken.getText().equals("(")) {
-            return parseFunctionCall(token);
+    }
+
+    /*
+        Adds a diagnostic unless one was already reported at the same location, as a single mistake can make
+        several frames fail at the same token.
+     */
+    private void report(String message, Location location) {
+        if (!diagnostics.isEmpty() && location != null) {
+            Location previous = diagnostics.getLast().getLocation();
+            if (previous != null && previous.getLine() == location.getLine()
+                    && previous.getColumn() == location.getColumn()) {
+                return;
+            }
         }
-        return new Identifier(token.getText(), token.getTokenLocation());
+        diagnostics.add(new Diagnostic(message, location));
     }
 
-    private Expression parseFactor() throws ParserException {
-        Token token = peek();
-        if (checkNextToken(TokenType.PUNCTUATION, Optional.of("("))) {
-            return parseParenthesized();
+    private Expression parseExpression() throws ParserException {
+        return run(new ExpressionFrame(ASSIGNMENT_PRECEDENCE));
+    }
+
+    private Frame blockOrExpression() {
+        if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+            return new BlockFrame();
         }
-        if (checkNextToken(TokenType.INTEGER_LITERAL, Optional.empty())) {
-            return parseIntegerLiteral();
+        return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+    }
+
+    /*
+        Returns the frame of the statement starting at the next token, or null if no statement starts there.
+     */
+    private Frame statement(boolean topLevel) {
+        if (checkNextToken(TokenType.KEYWORD, TokenKind.IF)) {
+            return new IfFrame();
+        } else if (checkNextToken(TokenType.IDENTIFIER) ||
+                checkNextToken(TokenType.STRING_LITERAL) ||
+                checkNextToken(TokenType.INTEGER_LITERAL) ||
+                checkNextToken(TokenType.BOOLEAN_LITERAL) ||
+                (topLevel && checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_PARENTHESIS))) {
+            return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+        } else if (checkNextToken(TokenType.OPERATOR, TokenKind.MINUS) ||
+                checkNextToken(TokenType.OPERATOR, TokenKind.NOT)) {
+            return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+        } else if (checkNextToken(TokenType.KEYWORD, TokenKind.WHILE)) {
+            return new WhileFrame();
+        } else if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+            return new BlockFrame();
+        } else if (checkNextToken(TokenType.KEYWORD, TokenKind.VAR)) {
+            return new VariableDefinitionFrame();
+        } else if (checkNextToken(TokenType.KEYWORD, TokenKind.BREAK) ||
+                checkNextToken(TokenType.KEYWORD, TokenKind.RETURN) ||
+                checkNextToken(TokenType.KEYWORD, TokenKind.CONTINUE)) {
+            return new FlowControlFrame();
+        } else if (topLevel && checkNextToken(TokenType.KEYWORD, TokenKind.FUN)) {
+            return new FunctionDefinitionFrame();
+        }
+        return null;
+    }
+
+    Expression parseInternal() throws ParserException {
+        if (tokens.isEmpty()) {
+            throw new ParserException("Cannot parse empty token list");
         }
-        if (checkNextToken(TokenType.IDENTIFIER, Optional.empty())) {
-            return parseIdentifier();
+        Expression expression = parseExpression();
+        if (!tokens.isAtEnd()) {
+            throw new ParserException("Parsing failed. Invalid tokens found: " +
+                    Arrays.toString(tokens.remainingTokens().toArray()));
         }
-        if (checkNextToken(TokenType.KEYWORD, Optional.of("if"))) {
-            return parseIfBlock();
+        return expression;
+    }
+
+    public Block parse() throws ParserException {
+        if (tokens.isEmpty()) {
+            throw new ParserException("Cannot parse empty token list");
         }
-        if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-            return parseBlock();
+        return (Block) run(new ProgramFrame());
+    }
+
+    /*
+        Parses the whole program even if it has syntax errors. Every error is added to the diagnostics and the
+        statement it occurred in is replaced by an ErrorExpression in the returned AST.
+     */
+    public Block parseWithRecovery() throws ParserException {
+        diagnostics = new ArrayList<>();
+        return parse();
+    }
+
+    /*
+        Parses with recovery like parseWithRecovery, taking over the top level items of an earlier parse that the item
+        table offers instead of parsing them again. Every top level item parsed without errors is added to the table.
+     */
+    Block parseIncrementally(IncrementalParser.ItemTable items) throws ParserException {
+        topLevelItems = items;
+        return parseWithRecovery();
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? List.of() : Collections.unmodifiableList(diagnostics);
+    }
+
+    /*
+        The parsing state of one construct. step is called first with a null child, and then again with the result
+        of every child frame it returns.
+     */
+    private abstract static class Frame {
+        // State of a frame parsing statements that has just been given an ErrorExpression
+        static final int RECOVERED = -1;
+
+        int state;
+        Expression result;
+
+        abstract Frame step(Expression child) throws ParserException;
+
+        Frame done(Expression result) {
+            this.result = result;
+            return null;
         }
-        if (checkNextToken(TokenType.BOOLEAN_LITERAL, Optional.of("true")) ||
-                checkNextToken(TokenType.BOOLEAN_LITERAL, Optional.of("false"))) {
-            Token booleanToken = consume();
-            return new BooleanLiteral(Boolean.valueOf(booleanToken.getText()), booleanToken.getTokenLocation());
+
+        boolean isParsingStatements() {
+            return false;
         }
-        if (checkNextToken(TokenType.KEYWORD, Optional.of("break")) ||
-                checkNextToken(TokenType.KEYWORD, Optional.of("return")) ||
-                checkNextToken(TokenType.KEYWORD, Optional.of("continue"))) {
-            return parseFlowControl();
+
+        void resumeAfterError(ErrorExpression error) {
+            throw new IllegalStateException("Cannot resume " + getClass().getSimpleName());
         }
-        throw new ParserException("Invalid token: " + token.getText() + token.getTokenLocation() +
-                ": expected an integer literal or an identifier");
     }
 
-    private Expression parseParenthesized() throws ParserException {
-        consume("(");
-        Expression expression = parseExpression();
-        consume(")");
-        return expression;
-    }
+    /*
+        Precedence climbing over BINARY_PRECEDENCE. The operand is parsed first, then operators binding at least as
+        tightly as minimumPrecedence are folded in, parsing their right hand side with a higher minimum precedence for
+        left associative operators and the same one for the right associative '='.
+        Prefix '-' and 'not' operators apply to the operand only, and literals and identifiers are parsed in place
+        without a frame of their own.
+     */
+    private class ExpressionFrame extends Frame {
+        private static final int OPERAND = 1;
+        private static final int PARENTHESIZED = 2;
+        private static final int RIGHT_OPERAND = 3;
+
+        private final int minimumPrecedence;
+        private List<Token> unaryOperators;
+        private Expression left;
+        private Token operatorToken;
 
-    private Expression parseUnaryAndNot() throws ParserException {
-        Expression unary;
-        while (Arrays.asList("-", "not").contains(peek().getText())) {
-            Token operatorToken =  consume();
-            Expression right = parseUnaryAndNot();
-            unary = new UnaryOp(operatorToken, right, operatorToken.getTokenLocation());
-            return unary;
+        ExpressionFrame(int minimumPrecedence) {
+            this.minimumPrecedence = minimumPrecedence;
         }
-        return parseFactor();
-    }
 
-    private Expression parseTerm() throws ParserException {
-        Expression left = parseUnaryAndNot();
-        while (Arrays.asList("*", "/", "%").contains(peek().getText())) {
-            Token operatorToken =  consume();
-            Expression right = parseUnaryAndNot();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        @Override
+        Frame step(Expression child) throws ParserException {
+            switch (state) {
+                case 0: {
+                    while (isNext(TokenKind.MINUS, TokenKind.NOT)) {
+                        if (unaryOperators == null) {
+                            unaryOperators = new ArrayList<>();
+                        }
+                        unaryOperators.add(consume());
+                    }
+                    Frame factor = parseFactor();
+                    if (factor != null) {
+                        return factor;
+                    }
+                    break;
+                }
+                case OPERAND:
+                    left = child;
+                    break;
+                case PARENTHESIZED:
+                    consume(TokenKind.RIGHT_PARENTHESIS);
+                    left = child;
+                    break;
+                default:
+                    left = new BinaryOp(left, operatorToken, child, operatorToken.getTokenLocation());
+                    return foldOperators();
+            }
+            if (unaryOperators != null) {
+                for (int i = unaryOperators.size() - 1; i >= 0; i--) {
+                    Token unaryToken = unaryOperators.get(i);
+                    left = new UnaryOp(unaryToken, left, unaryToken.getTokenLocation());
+                }
+            }
+            return foldOperators();
+        }
+
+        /*
+            Parses a factor in place and stores it in left, or returns the frame of a factor that contains other
+            expressions.
+         */
+        private Frame parseFactor() throws ParserException {
+            Token token = peek();
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_PARENTHESIS)) {
+                consume(TokenKind.LEFT_PARENTHESIS);
+                state = PARENTHESIZED;
+                return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+            }
+            if (checkNextToken(TokenType.INTEGER_LITERAL)) {
+                left = parseIntegerLiteral();
+                return null;
+            }
+            if (checkNextToken(TokenType.IDENTIFIER)) {
+                Token identifierToken = consume();
+                if (peek().getKind() == TokenKind.LEFT_PARENTHESIS) {
+                    state = OPERAND;
+                    return new FunctionCallFrame(identifierToken);
+                }
+                left = new Identifier(identifierToken.getText(), identifierToken.getTokenLocation());
+                return null;
+            }
+            if (checkNextToken(TokenType.KEYWORD, TokenKind.IF)) {
+                state = OPERAND;
+                return new IfFrame();
+            }
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.LEFT_BRACE)) {
+                state = OPERAND;
+                return new BlockFrame();
+            }
+            if (checkNextToken(TokenType.BOOLEAN_LITERAL, TokenKind.TRUE) ||
+                    checkNextToken(TokenType.BOOLEAN_LITERAL, TokenKind.FALSE)) {
+                Token booleanToken = consume();
+                left = new BooleanLiteral(Boolean.valueOf(booleanToken.getText()), booleanToken.getTokenLocation());
+                return null;
+            }
+            if (checkNextToken(TokenType.KEYWORD, TokenKind.BREAK) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.RETURN) ||
+                    checkNextToken(TokenType.KEYWORD, TokenKind.CONTINUE)) {
+                state = OPERAND;
+                return new FlowControlFrame();
+            }
+            throw new ParserException("Invalid token: " + token.getText() + token.getTokenLocation() +
+                    ": expected an integer literal or an identifier");
+        }
+
+        private Frame foldOperators() throws ParserException {
+            Integer precedence = BINARY_PRECEDENCE.get(peek().getKind());
+            if (precedence == null || precedence < minimumPrecedence) {
+                return done(left);
+            }
+            operatorToken = consume();
+            int rightPrecedence = operatorToken.getKind() == TokenKind.ASSIGN ? precedence : precedence + 1;
+            state = RIGHT_OPERAND;
+            return new ExpressionFrame(rightPrecedence);
         }
-        return left;
     }
 
-    private Expression parseIfBlock() throws ParserException {
-        Token ifToken = consume("if");
-        Expression condition = parseExpression();
-        consume("then");
-        Expression thenBlock;
-        if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-            thenBlock = parseBlock();
-        } else {
-            thenBlock = parseExpression();
+    private class FunctionCallFrame extends Frame {
+        private final Token functionNameToken;
+        private final List<Expression> parameters = new ArrayList<>();
+
+        FunctionCallFrame(Token functionNameToken) {
+            this.functionNameToken = functionNameToken;
         }
-        if (peek().getTokenType() == TokenType.KEYWORD && peek().getText().equals("else")) {
-            consume("else");
-            Expression elseBlock;
-            if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-                elseBlock = parseBlock();
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            if (state == 0) {
+                consume(TokenKind.LEFT_PARENTHESIS);
+                state = 1;
             } else {
-                elseBlock = parseExpression();
+                parameters.add(child);
+                if (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                    consume(TokenKind.COMMA);
+                }
+            }
+            if (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
             }
-            return new ConditionalOp(condition, thenBlock, elseBlock, ifToken.getTokenLocation());
+            consume(TokenKind.RIGHT_PARENTHESIS);
+            return done(new FunctionCall(functionNameToken.getText(), parameters, functionNameToken.getTokenLocation()));
         }
-        return new ConditionalOp(condition, thenBlock, null, ifToken.getTokenLocation());
     }
 
-    private Expression parseWhileBlock() throws ParserException {
-        Token whileToken = consume("while");
-        Expression condition = parseExpression();
-        consume("do");
-        Expression body;
-        if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-            body = parseBlock();
-        } else {
-            body = parseExpression();
+    private class IfFrame extends Frame {
+        private Token ifToken;
+        private Expression condition;
+        private Expression thenBlock;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            switch (state) {
+                case 0:
+                    ifToken = consume(TokenKind.IF);
+                    state = 1;
+                    return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+                case 1:
+                    condition = child;
+                    consume(TokenKind.THEN);
+                    state = 2;
+                    return blockOrExpression();
+                case 2:
+                    thenBlock = child;
+                    if (peek().getTokenType() == TokenType.KEYWORD && isNext(TokenKind.ELSE)) {
+                        consume(TokenKind.ELSE);
+                        state = 3;
+                        return blockOrExpression();
+                    }
+                    return done(new ConditionalOp(condition, thenBlock, null, ifToken.getTokenLocation()));
+                default:
+                    return done(new ConditionalOp(condition, thenBlock, child, ifToken.getTokenLocation()));
+            }
         }
-        return new WhileOp(condition, body, whileToken.getTokenLocation());
     }
 
-    private Expression parseAddition() throws ParserException {
-        Expression left = parseTerm();
-        while (Arrays.asList("+", "-").contains(peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseTerm();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+    private class WhileFrame extends Frame {
+        private Token whileToken;
+        private Expression condition;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            switch (state) {
+                case 0:
+                    whileToken = consume(TokenKind.WHILE);
+                    state = 1;
+                    return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+                case 1:
+                    condition = child;
+                    consume(TokenKind.DO);
+                    state = 2;
+                    return blockOrExpression();
+                default:
+                    return done(new WhileOp(condition, child, whileToken.getTokenLocation()));
+            }
         }
-        return left;
     }
 
-    private Expression parseThan() throws ParserException {
-        Expression left = parseAddition();
-        while (Arrays.asList("<", "<=", ">", ">=").contains(peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseAddition();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+    private class VariableDefinitionFrame extends Frame {
+        private String varName;
+        private String type;
+        private Token equalToken;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            if (state == 0) {
+                consume(TokenKind.VAR);
+                varName = consume().getText();
+                if (isNext(TokenKind.COLON)) {
+                    consume(TokenKind.COLON);
+                    type = consume().getText();
+                }
+                equalToken = consume(TokenKind.ASSIGN);
+                state = 1;
+                return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+            }
+            if (type != null) {
+                return done(new VariableDef(varName, type, child, equalToken.getTokenLocation()));
+            }
+            return done(new VariableDef(varName, child, equalToken.getTokenLocation()));
         }
-        return left;
     }
 
-    private Expression parseEquality() throws ParserException {
-        Expression left = parseThan();
-        while (Arrays.asList("==", "!=").contains(peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseThan();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+    private class FlowControlFrame extends Frame {
+        private Token token;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            if (state == 0) {
+                token = consume();
+                if (token.getKind() == TokenKind.CONTINUE) {
+                    return done(new Continue(token.getTokenLocation()));
+                } else if (token.getKind() == TokenKind.RETURN) {
+                    state = 1;
+                    return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+                } else {
+                    return done(new Break(token.getTokenLocation()));
+                }
+            }
+            return done(new Return(child, token.getTokenLocation()));
         }
-        return left;
     }
 
-    private Expression parseAnd() throws ParserException {
-        Expression left = parseEquality();
-        while (Objects.equals("and", peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseEquality();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+    private class FunctionDefinitionFrame extends Frame {
+        private String functionName;
+        private List<FunctionArgumentDefinition> functionArgs;
+        private String returnType;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            if (state == 0) {
+                consume(TokenKind.FUN);
+                functionName = consume().getText();
+                consume(TokenKind.LEFT_PARENTHESIS);
+                functionArgs = new ArrayList<>();
+                while (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                    String argName = consume().getText();
+                    consume(TokenKind.COLON);
+                    String argType = consume().getText();
+                    if (!isNext(TokenKind.RIGHT_PARENTHESIS)) {
+                        consume(TokenKind.COMMA);
+                    }
+                    functionArgs.add(new FunctionArgumentDefinition(argName, argType, peek().getTokenLocation()));
+                }
+                consume(TokenKind.RIGHT_PARENTHESIS);
+                consume(TokenKind.COLON);
+                returnType = consume().getText();
+                state = 1;
+                return new BlockFrame(true);
+            }
+            Block block = (Block) child;
+            return done(new FunctionDefinition(functionName, functionArgs, returnType, block, block.getLocation()));
         }
-        return left;
     }
 
-    private Expression parseOr() throws ParserException {
-        Expression left = parseAnd();
-        while (Objects.equals("or", peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseAnd();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+    /*
+        A block in braces. A binary operator right after the closing brace makes the block the left operand of a
+        BinaryOp.
+     */
+    private class BlockFrame extends Frame {
+        private final boolean functionBody;
+        private Block block;
+        private Token operatorToken;
+
+        BlockFrame() {
+            this(false);
         }
-        return left;
-    }
 
-    private Expression parseExpression() throws ParserException {
-        Expression left = parseOr();
-        while (Objects.equals("=", peek().getText())) {
-            Token operatorToken = consume();
-            Expression right = parseExpression();
-            left = new BinaryOp(left, operatorToken, right, operatorToken.getTokenLocation());
+        /*
+            The body of a function definition is never an operand, so no operator is taken after it.
+         */
+        BlockFrame(boolean functionBody) {
+            this.functionBody = functionBody;
         }
-        return left;
-    }
 
-    private Expression parseVariableDefinition() throws ParserException {
-        consume("var");
-        String varName = consume().getText();
-        if (peek().getText().equals(":")) {
-            consume(":");
-            String type = consume().getText();
-            Token equalToken = consume("=");
-            Expression value = parseExpression();
-            return new VariableDef(varName, type, value, equalToken.getTokenLocation());
+        @Override
+        Frame step(Expression child) throws ParserException {
+            switch (state) {
+                case 0:
+                    Token blockToken = consume(TokenKind.LEFT_BRACE);
+                    block = new Block(new ArrayList<>(), blockToken.getTokenLocation());
+                    state = 1;
+                    break;
+                case 1:
+                    block.addExpression(child);
+                    checkSeparator();
+                    break;
+                case RECOVERED:
+                    state = 1;
+                    break;
+                default:
+                    return done(new BinaryOp(block, operatorToken, child, block.getLocation()));
+            }
+            while (!checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE) && !checkNextToken(TokenType.END)) {
+                Frame statement = statement(false);
+                if (statement != null) {
+                    return statement;
+                }
+                if (!checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                    checkSeparator();
+                    throw new ParserException("Parsing failed. Unexpected token: " + peek());
+                }
+                checkSeparator();
+            }
+            if (diagnostics != null && checkNextToken(TokenType.END)) {
+                // The block is closed at the end of the input so that the statements parsed so far are kept
+                report(peek().getTokenLocation() + ": expected one of: " + TokenKind.RIGHT_BRACE.getText(),
+                        peek().getTokenLocation());
+                return done(block);
+            }
+            consume(TokenKind.RIGHT_BRACE);
+            if (!functionBody && checkNextToken(TokenType.OPERATOR)) {
+                operatorToken = consume();
+                state = 2;
+                return new ExpressionFrame(ASSIGNMENT_PRECEDENCE);
+            }
+            return done(block);
         }
-        Token equalToken = consume("=");
-        Expression value = parseExpression();
-        return new VariableDef(varName, value, equalToken.getTokenLocation());
-    }
 
-    Expression parseInternal() throws ParserException {
-        if (tokens.isEmpty()) {
-            throw new ParserException("Cannot parse empty token list");
+        @Override
+        boolean isParsingStatements() {
+            return state == 1 || state == RECOVERED;
         }
-        Expression expression = parseExpression();
-        if (tokenPosition < tokens.size()) {
-            throw new ParserException("Parsing failed. Invalid tokens found: " +
-                    Arrays.toString(tokens.subList(tokenPosition, tokens.size()).toArray()));
+
+        @Override
+        void resumeAfterError(ErrorExpression error) {
+            block.addExpression(error);
+            state = RECOVERED;
         }
-        return expression;
-    }
 
-    private Expression parseFlowControl() throws ParserException {
-        Token token = consume();
-        if (token.getText().equals("continue")) {
-            return new Continue(token.getTokenLocation());
-        } else if (token.getText().equals("return")) {
-            Expression value = parseExpression();
-            return new Return(value, token.getTokenLocation());
-        } else {
-            return new Break(token.getTokenLocation());
-        }
-    }
-
-    private Expression parseFunctionDefinition() throws ParserException {
-        consume("fun");
-        String functionName = consume().getText();
-        consume("(");
-        List<FunctionArgumentDefinition> functionArgs = new ArrayList<>();
-        while (!peek().getText().equals(")")) {
-            String argName = consume().getText();
-            consume(":");
-            String argType = consume().getText();
-            if (!peek().getText().equals(")")) {
-                consume(",");
-            }
-            functionArgs.add(new FunctionArgumentDefinition(argName, argType, peek().getTokenLocation()));
-        }
-        consume(")");
-        consume(":");
-        String returnType = consume().getText();
-        Block block = (Block) parseBlock();
-        return new FunctionDefinition(functionName, functionArgs, returnType, block, block.getLocation());
-    }
-
-    private Expression parseBlock() throws ParserException {
-        Token blockToken = consume("{");
-        List<Expression> expressionList = new ArrayList<>();
-        Block block = new Block(expressionList, blockToken.getTokenLocation());
-        while (!checkNextToken(TokenType.PUNCTUATION, Optional.of("}"))) {
-            if (checkNextToken(TokenType.KEYWORD, Optional.of("if"))) {
-                Expression ifExpression = parseIfBlock();
-                block.addExpression(ifExpression);
-            } else if (checkNextToken(TokenType.IDENTIFIER, Optional.empty()) ||
-                    checkNextToken(TokenType.STRING_LITERAL, Optional.empty()) ||
-                    checkNextToken(TokenType.INTEGER_LITERAL, Optional.empty()) ||
-                    checkNextToken(TokenType.BOOLEAN_LITERAL, Optional.empty())) {
-                Expression expression = parseExpression();
-                block.addExpression(expression);
-            } else if (checkNextToken(TokenType.OPERATOR, Optional.of("-")) ||
-                    checkNextToken(TokenType.OPERATOR, Optional.of("not"))) {
-                Expression expression = parseExpression();
-                block.addExpression(expression);
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("while"))) {
-                block.addExpression(parseWhileBlock());
-            } else if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-                Expression childBlock = parseBlock();
-                block.addExpression(childBlock);
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("var"))) {
-                block.addExpression(parseVariableDefinition());
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("break")) ||
-                    checkNextToken(TokenType.KEYWORD, Optional.of("return")) ||
-                    checkNextToken(TokenType.KEYWORD, Optional.of("continue"))) {
-                block.addExpression(parseFlowControl());
-            }
-            if (checkNextToken(TokenType.PUNCTUATION, Optional.of(";"))) {
-                Token uniToken = consume(";");
-                if (checkNextToken(TokenType.PUNCTUATION, Optional.of("}"))) {
+        private void checkSeparator() throws ParserException {
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                Token uniToken = consume(TokenKind.SEMICOLON);
+                if (checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
                     block.addExpression(new Unit(uniToken.getTokenLocation()));
                 }
-            } else if (!checkNextToken(TokenType.PUNCTUATION, Optional.of("}")) &&
-                    !checkNextToken(TokenType.END, Optional.empty()) &&
-                    !lookBack().getText().equals("}")) {
+            } else if (!checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE) &&
+                    !checkNextToken(TokenType.END) &&
+                    !(lookBack().getKind() == TokenKind.RIGHT_BRACE)) {
                 throw new ParserException("Parsing failed. Invalid tokens found. Expected ';', but found " + peek());
             }
         }
-        consume("}");
-        if (checkNextToken(TokenType.OPERATOR, Optional.empty())) {
-            BinaryOp binaryOp = new BinaryOp(block, consume(), parseExpression(), block.getLocation());
-            return binaryOp;
-        }
-        return block;
     }
 
-    public Block parse() throws ParserException {
-        if (tokens.isEmpty()) {
-            throw new ParserException("Cannot parse empty token list");
+    /*
+        The top level statements of the program. A single top level block is returned as the program itself.
+     */
+    private class ProgramFrame extends Frame {
+        private Block block;
+        private int itemStart;
+        private int itemDiagnostics;
+
+        @Override
+        Frame step(Expression child) throws ParserException {
+            if (state == 0) {
+                block = new Block(new ArrayList<>(), peek().getTokenLocation());
+                state = 1;
+            } else if (state == RECOVERED) {
+                state = 1;
+            } else {
+                addItem(child);
+            }
+            while (!checkNextToken(TokenType.END)) {
+                if (checkNextToken(TokenType.PUNCTUATION, TokenKind.RIGHT_BRACE)) {
+                    if (diagnostics == null) {
+                        consume(TokenKind.RIGHT_BRACE);
+                        return done(block);
+                    }
+                    report("Parsing failed. Unmatched '}' found: " + peek(), peek().getTokenLocation());
+                    consume(TokenKind.RIGHT_BRACE);
+                    continue;
+                }
+                Frame statement = statement(true);
+                if (statement != null && topLevelItems != null) {
+                    itemStart = (int) tokens.getPosition();
+                    itemDiagnostics = diagnostics.size();
+                    IncrementalParser.Item item = topLevelItems.reuse(itemStart);
+                    if (item != null) {
+                        tokens.skip(item.getEnd() - item.getStart());
+                        addItem(item.getExpression());
+                        continue;
+                    }
+                }
+                if (statement != null) {
+                    return statement;
+                }
+                if (!checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                    checkSeparator();
+                    throw new ParserException("Parsing failed. Unexpected token: " + peek());
+                }
+                checkSeparator();
+            }
+            if (!tokens.isAtEnd()) {
+                throw new ParserException("Parsing failed. Invalid tokens found: " +
+                        Arrays.toString(tokens.remainingTokens().toArray()));
+            }
+            if (block.getExpressionList().size() == 1 && block.getExpressionList().get(0) instanceof Block) {
+                return done(block.getExpressionList().get(0));
+            }
+            return done(block);
         }
-        Block block = new Block(new ArrayList<>(), peek().getTokenLocation());
-        while (!checkNextToken(TokenType.END, Optional.empty())) {
-            if (checkNextToken(TokenType.KEYWORD, Optional.of("if"))) {
-                Expression ifExpression = parseIfBlock();
-                block.addExpression(ifExpression);
-            } else if (checkNextToken(TokenType.IDENTIFIER, Optional.empty()) ||
-                    checkNextToken(TokenType.STRING_LITERAL, Optional.empty()) ||
-                    checkNextToken(TokenType.INTEGER_LITERAL, Optional.empty()) ||
-                    checkNextToken(TokenType.BOOLEAN_LITERAL, Optional.empty()) ||
-                    checkNextToken(TokenType.PUNCTUATION, Optional.of("("))) {
-                Expression expression = parseExpression();
-                block.addExpression(expression);
-            } else if (checkNextToken(TokenType.OPERATOR, Optional.of("-")) ||
-                    checkNextToken(TokenType.OPERATOR, Optional.of("not"))) {
-                Expression expression = parseExpression();
-                block.addExpression(expression);
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("while"))) {
-                block.addExpression(parseWhileBlock());
-            } else if (checkNextToken(TokenType.PUNCTUATION, Optional.of("{"))) {
-                Expression childBlock = parseBlock();
-                block.addExpression(childBlock);
-            } else if (checkNextToken(TokenType.PUNCTUATION, Optional.of("}"))) {
-                consume("}");
-                return block;
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("var"))) {
-                block.addExpression(parseVariableDefinition());
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("break")) ||
-                    checkNextToken(TokenType.KEYWORD, Optional.of("return")) ||
-                    checkNextToken(TokenType.KEYWORD, Optional.of("continue"))) {
-                block.addExpression(parseFlowControl());
-            } else if (checkNextToken(TokenType.KEYWORD, Optional.of("fun"))) {
-                block.addExpression(parseFunctionDefinition());
-            }
-            if (checkNextToken(TokenType.PUNCTUATION, Optional.of(";"))) {
-                consume(";");
-                if (checkNextToken(TokenType.END, Optional.empty())) {
+
+        @Override
+        boolean isParsingStatements() {
+            return state == 1 || state == RECOVERED;
+        }
+
+        @Override
+        void resumeAfterError(ErrorExpression error) {
+            block.addExpression(error);
+            state = RECOVERED;
+        }
+
+        private void addItem(Expression item) throws ParserException {
+            if (topLevelItems != null && diagnostics.size() == itemDiagnostics) {
+                topLevelItems.parsed(item, itemStart, (int) tokens.getPosition());
+            }
+            block.addExpression(item);
+            checkSeparator();
+        }
+
+        private void checkSeparator() throws ParserException {
+            if (checkNextToken(TokenType.PUNCTUATION, TokenKind.SEMICOLON)) {
+                consume(TokenKind.SEMICOLON);
+                if (checkNextToken(TokenType.END)) {
                     block.addExpression(new Unit(peek().getTokenLocation()));
                 }
-            } else if (peek().getTokenType() != TokenType.END && !lookBack().getText().equals("}")) {
+            } else if (peek().getTokenType() != TokenType.END && !(lookBack().getKind() == TokenKind.RIGHT_BRACE)) {
                 throw new ParserException("Parsing failed. Invalid tokens found. Expected ';', but found " + peek());
             }
         }
-        if (tokenPosition < tokens.size()) {
-            throw new ParserException("Parsing failed. Invalid tokens found: " +
-                    Arrays.toString(tokens.subList(tokenPosition, tokens.size()).toArray()));
-        }
-        if (block.getExpressionList().size() == 1 && block.getExpressionList().get(0) instanceof Block) {
-            return (Block) block.getExpressionList().get(0);
-        }
-        return block;
     }
 
-    private boolean checkNextToken(TokenType tokenType, Optional<String> text) {
-        return peek().getTokenType() == tokenType && (text.isEmpty() || peek().getText().equals(text.get()));
+    private boolean checkNextToken(TokenType tokenType) {
+        return peek().getTokenType() == tokenType;
+    }
+
+    private boolean checkNextToken(TokenType tokenType, TokenKind kind) {
+        return peek().getTokenType() == tokenType && peek().getKind() == kind;
+    }
+
+    private boolean isNext(TokenKind... kinds) {
+        TokenKind kind = peek().getKind();
+        for (TokenKind expected : kinds) {
+            if (kind == expected) {
+                return true;
+            }
+        }
+        return false;
     }
 
 }
@@ -0,0 +1,312 @@
+package fi.helsinki.compiler.resolver;
+
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.exceptions.ResolverException;
+
+import java.util.*;
+
+/*
+    Binds every name of a program to where its value lives, so that the type checker, the interpreter and the IR
+    generator can keep their variables in arrays instead of chains of maps.
+    The built-in functions and the functions defined at the top level are globals, numbered in that order. Variables
+    and function arguments get a slot in the frame of the function they are declared in, or in the frame of the top
+    level code at depth 0. The variables of a block only live until the end of the block, so the slots of sibling
+    blocks are shared and a frame is as large as the most variables alive at once.
+    Each name keeps a stack of its visible declarations, so looking a name up does not depend on how deep the scope
+    it is used in is nested.
+ */
+public class Resolver {
+
+    public static final List<String> BUILT_IN_FUNCTIONS = List.of("print_int", "print_bool", "read_int");
+
+    private static final int GLOBAL_SCOPE = 0;
+
+    // The innermost visible declaration of each name, which links to the one it shadows
+    private final Map<String, Declaration> declarations = new HashMap<>();
+    // The names declared by the enclosing scopes, undeclared when their scope ends
+    private final List<String> declaredNames = new ArrayList<>();
+    private final Set<FunctionDefinition> topLevelFunctions = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<String> globals = new ArrayList<>();
+    private List<Diagnostic> diagnostics;
+    private Frame[] stack = new Frame[16];
+    private int scopeCounter;
+    private int scope;
+    private int depth;
+    private int nextSlot;
+    private int frameSize;
+
+    /*
+        Resolves the names of a program, which is expected to be the whole program so that the functions defined at
+        its top level can be called before their definitions.
+     */
+    public void resolve(Expression root) throws ResolverException {
+        diagnostics = null;
+        resolveProgram(root);
+    }
+
+    /*
+        Resolves the names of the whole program even if some of them are unknown or declared twice. Every error is
+        added to the diagnostics, an unknown name is left with the UNRESOLVED slot, and a name declared twice in a
+        scope shadows the earlier one.
+     */
+    public void resolveWithRecovery(Expression root) throws ResolverException {
+        diagnostics = new ArrayList<>();
+        resolveProgram(root);
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? List.of() : Collections.unmodifiableList(diagnostics);
+    }
+
+    private void resolveProgram(Expression root) throws ResolverException {
+        declarations.clear();
+        declaredNames.clear();
+        topLevelFunctions.clear();
+        globals.clear();
+        scopeCounter = GLOBAL_SCOPE;
+        scope = GLOBAL_SCOPE;
+        for (String builtIn : BUILT_IN_FUNCTIONS) {
+            declareGlobal(builtIn, null);
+        }
+        if (root instanceof Block block) {
+            for (Expression expression : block.getExpressionList()) {
+                if (expression instanceof FunctionDefinition functionDefinition) {
+                    functionDefinition.bind(BoundExpression.GLOBAL,
+                            declareGlobal(functionDefinition.getFunctionName(), functionDefinition));
+                    topLevelFunctions.add(functionDefinition);
+                }
+            }
+        }
+        scope = ++scopeCounter;
+        depth = 0;
+        nextSlot = 0;
+        frameSize = 0;
+        walk(root);
+    }
+
+    /*
+        Names of the globals by their index.
+     */
+    public List<String> getGlobals() {
+        return globals;
+    }
+
+    /*
+        Number of slots the frame of the top level code needs.
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /*
+        Walks the tree with an explicit stack of frames instead of recursion, so that the nesting depth of the program
+        is not limited by the Java stack. The frames are reused from one node to the next, since the walk only needs
+        to remember where it is in each node.
+     */
+    private void walk(Expression root) throws ResolverException {
+        int top = 0;
+        frame(top).reset(root);
+        while (top >= 0) {
+            Expression next = step(stack[top]);
+            if (next != null) {
+                frame(++top).reset(next);
+            } else {
+                top -= 1;
+            }
+        }
+    }
+
+    private Frame frame(int index) {
+        if (index == stack.length) {
+            stack = Arrays.copyOf(stack, index * 2);
+        }
+        if (stack[index] == null) {
+            stack[index] = new Frame();
+        }
+        return stack[index];
+    }
+
+    /*
+        Advances the frame by one step. Returns the child to resolve next, or null once the frame is done.
+     */
+    private Expression step(Frame frame) throws ResolverException {
+        int index = frame.index++;
+        switch (frame.expression) {
+            case Literal literal: {
+                return null;
+            }
+            case Unit unit: {
+                return null;
+            }
+            case Break breakOp: {
+                return null;
+            }
+            case Continue continueOp: {
+                return null;
+            }
+            case ErrorExpression errorExpression: {
+                return null;
+            }
+            case Identifier identifier: {
+                bindReference(identifier);
+                return null;
+            }
+            case UnaryOp unaryOp: {
+                return index == 0 ? unaryOp.getExpression() : null;
+            }
+            case BinaryOp binaryOp: {
+                return index == 0 ? binaryOp.getLeft() : index == 1 ? binaryOp.getRight() : null;
+            }
+            case ConditionalOp conditionalOp: {
+                return switch (index) {
+                    case 0 -> conditionalOp.getCondition();
+                    case 1 -> conditionalOp.getThenBlock();
+                    // The else block is missing from an if-then
+                    case 2 -> conditionalOp.getElseBlock();
+                    default -> null;
+                };
+            }
+            case WhileOp whileOp: {
+                return index == 0 ? whileOp.getCondition() : index == 1 ? whileOp.getBody() : null;
+            }
+            case Return returnOp: {
+                return index == 0 ? returnOp.getValue() : null;
+            }
+            case VariableDef variableDef: {
+                // The value is resolved before the variable is declared, so it still sees the shadowed variable
+                if (index == 0) {
+                    return variableDef.getValue();
+                }
+                declareLocal(variableDef);
+                return null;
+            }
+            case FunctionCall functionCall: {
+                if (index == 0) {
+                    bindReference(functionCall);
+                }
+                List<Expression> parameters = functionCall.getParameters();
+                return index < parameters.size() ? parameters.get(index) : null;
+            }
+            case Block block: {
+                List<Expression> expressionList = block.getExpressionList();
+                if (index == 0) {
+                    enterScope(frame);
+                }
+                if (index < expressionList.size()) {
+                    return expressionList.get(index);
+                }
+                exitScope(frame);
+                return null;
+            }
+            case FunctionDefinition functionDefinition: {
+                if (index == 0) {
+                    if (!topLevelFunctions.contains(functionDefinition)) {
+                        throw new ResolverException("Functions can only be defined at the top level: "
+                                + functionDefinition.getFunctionName());
+                    }
+                    enterScope(frame);
+                    frame.savedDepth = depth;
+                    frame.savedFrameSize = frameSize;
+                    depth += 1;
+                    nextSlot = 0;
+                    frameSize = 0;
+                    for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                        declareLocal(argument);
+                    }
+                    return functionDefinition.getBlock();
+                }
+                exitScope(frame);
+                functionDefinition.setFrameSize(frameSize);
+                depth = frame.savedDepth;
+                frameSize = frame.savedFrameSize;
+                return null;
+            }
+            default: {
+                throw new ResolverException("Invalid expression found: " + frame.expression.getLocation());
+            }
+        }
+    }
+
+    private int declareGlobal(String name, Expression expression) throws ResolverException {
+        declare(name, expression, GLOBAL_SCOPE, BoundExpression.GLOBAL, globals.size());
+        globals.add(name);
+        return globals.size() - 1;
+    }
+
+    private void declareLocal(BoundExpression expression) throws ResolverException {
+        int slot = nextSlot++;
+        frameSize = Math.max(frameSize, nextSlot);
+        declare(expression.getName(), expression, scope, depth, slot);
+        declaredNames.add(expression.getName());
+        expression.bind(depth, slot);
+    }
+
+    private void declare(String name, Expression expression, int scope, int depth, int slot)
+            throws ResolverException {
+        Declaration shadowed = declarations.get(name);
+        if (shadowed != null && shadowed.scope == scope) {
+            error(expression, "Variable already declared in this scope: " + name);
+        }
+        declarations.put(name, new Declaration(scope, depth, slot, shadowed));
+    }
+
+    private void bindReference(BoundExpression expression) throws ResolverException {
+        Declaration declaration = declarations.get(expression.getName());
+        if (declaration == null) {
+            error(expression, "Name '" + expression.getName() + "' not found in the context");
+            expression.bind(BoundExpression.GLOBAL, BoundExpression.UNRESOLVED);
+            return;
+        }
+        expression.bind(declaration.depth, declaration.slot);
+    }
+
+    /*
+        Reports an error at the expression. Throws it unless resolving with recovery.
+     */
+    private void error(Expression expression, String message) throws ResolverException {
+        if (diagnostics == null) {
+            throw new ResolverException(message);
+        }
+        diagnostics.add(new Diagnostic(message, expression == null ? null : expression.getLocation()));
+    }
+
+    private void enterScope(Frame frame) {
+        frame.savedScope = scope;
+        frame.savedSlot = nextSlot;
+        frame.savedNames = declaredNames.size();
+        scope = ++scopeCounter;
+    }
+
+    private void exitScope(Frame frame) {
+        while (declaredNames.size() > frame.savedNames) {
+            String name = declaredNames.removeLast();
+            Declaration shadowed = declarations.get(name).shadowed;
+            if (shadowed != null) {
+                declarations.put(name, shadowed);
+            } else {
+                declarations.remove(name);
+            }
+        }
+        scope = frame.savedScope;
+        nextSlot = frame.savedSlot;
+    }
+
+    private record Declaration(int scope, int depth, int slot, Declaration shadowed) {
+    }
+
+    private static class Frame {
+        private Expression expression;
+        private int index;
+        private int savedScope;
+        private int savedSlot;
+        private int savedNames;
+        private int savedDepth;
+        private int savedFrameSize;
+
+        void reset(Expression expression) {
+            this.expression = expression;
+            this.index = 0;
+        }
+    }
+}
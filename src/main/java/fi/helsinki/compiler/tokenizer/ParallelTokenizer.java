@@ -0,0 +1,132 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.exceptions.TokenizeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+    Tokenizes a source in chunks on a ForkJoinPool. No token, comment or string can continue past a '\n', so chunks
+    are split right after one. A '\n' preceded by '\r' is not used as a split point, because the scanner treats a
+    "\r\n" at the end of its input like the end of the file.
+    The newlines of every chunk are counted first so that each chunk is scanned with its real starting line, and the
+    token lists are then joined in order. The result, including the error reported for an invalid source, is the same
+    as with a single TokenScanner.
+ */
+class ParallelTokenizer {
+
+    static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    ParallelTokenizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    List<Token> tokenize(CharSequence sourceCode, String filename, int chunkCount) throws TokenizeException {
+        int[] boundaries = splitPoints(sourceCode, chunkCount);
+        int chunks = boundaries.length - 1;
+
+        List<ForkJoinTask<Integer>> lineCounts = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int start = boundaries[i];
+            int end = boundaries[i + 1];
+            lineCounts.add(pool.submit(() -> countNewlines(sourceCode, start, end)));
+        }
+        List<ForkJoinTask<ChunkResult>> results = new ArrayList<>(chunks);
+        int line = 0;
+        for (int i = 0; i < chunks; i++) {
+            int start = boundaries[i];
+            int end = boundaries[i + 1];
+            int startLine = line;
+            results.add(pool.submit(() -> scanChunk(sourceCode, filename, start, end, startLine)));
+            line += lineCounts.get(i).join();
+        }
+
+        List<ChunkResult> chunkResults = new ArrayList<>(chunks);
+        int tokenCount = 0;
+        for (ForkJoinTask<ChunkResult> result : results) {
+            ChunkResult chunkResult = result.join();
+            chunkResults.add(chunkResult);
+            if (chunkResult.error != null) {
+                // Every earlier chunk was valid, so this is the first error a sequential scan would find
+                throw chunkResult.error;
+            }
+            tokenCount += chunkResult.tokens.size();
+        }
+        List<Token> tokens = new ArrayList<>(tokenCount);
+        for (ChunkResult chunkResult : chunkResults) {
+            tokens.addAll(chunkResult.tokens);
+        }
+        return tokens;
+    }
+
+    /*
+        Returns the chunk boundaries, starting with 0 and ending with the length of the source. Fewer chunks are
+        returned if the source has no suitable newlines near the requested split points.
+     */
+    static int[] splitPoints(CharSequence sourceCode, int chunkCount) {
+        int length = sourceCode.length();
+        int[] boundaries = new int[chunkCount + 1];
+        int count = 1;
+        for (int i = 1; i < chunkCount; i++) {
+            int split = nextSplitPoint(sourceCode, Math.max((int) ((long) length * i / chunkCount),
+                    boundaries[count - 1]));
+            if (split >= length) {
+                break;
+            }
+            if (split > boundaries[count - 1]) {
+                boundaries[count++] = split;
+            }
+        }
+        boundaries[count++] = length;
+        int[] result = new int[count];
+        System.arraycopy(boundaries, 0, result, 0, count);
+        return result;
+    }
+
+    private static int nextSplitPoint(CharSequence sourceCode, int from) {
+        for (int i = Math.max(from, 1); i < sourceCode.length(); i++) {
+            if (sourceCode.charAt(i - 1) == '\n' && (i < 2 || sourceCode.charAt(i - 2) != '\r')) {
+                return i;
+            }
+        }
+        return sourceCode.length();
+    }
+
+    private static int countNewlines(CharSequence sourceCode, int start, int end) {
+        int newlines = 0;
+        for (int i = start; i < end; i++) {
+            if (sourceCode.charAt(i) == '\n') {
+                newlines += 1;
+            }
+        }
+        return newlines;
+    }
+
+    private static ChunkResult scanChunk(CharSequence sourceCode, String filename, int start, int end, int line) {
+        List<Token> tokens = new ArrayList<>();
+        try {
+            TokenScanner scanner = new TokenScanner(sourceCode, filename, start, end, line, 0);
+            Token token;
+            while ((token = scanner.nextToken()) != null) {
+                tokens.add(token);
+            }
+        } catch (TokenizeException e) {
+            return new ChunkResult(tokens, e);
+        }
+        return new ChunkResult(tokens, null);
+    }
+
+    private static class ChunkResult {
+        private final List<Token> tokens;
+        private final TokenizeException error;
+
+        ChunkResult(List<Token> tokens, TokenizeException error) {
+            this.tokens = tokens;
+            this.error = error;
+        }
+    }
+}
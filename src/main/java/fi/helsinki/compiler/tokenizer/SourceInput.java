@@ -0,0 +1,112 @@
+package fi.helsinki.compiler.tokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+    Raw bytes of a source file. Files are memory mapped and streams are read fully into a growing buffer, so the
+    source is never copied into a UTF-16 string. Sources containing only ASCII are tokenized straight from the bytes.
+ */
+public final class SourceInput {
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final ByteBuffer bytes;
+
+    private SourceInput(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    public static SourceInput of(byte[] bytes) {
+        return new SourceInput(ByteBuffer.wrap(bytes));
+    }
+
+    public static SourceInput fromFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new SourceInput(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /*
+        Reads the stream until its end. Unlike Scanner.next() this keeps the whitespace of the source.
+     */
+    public static SourceInput fromStream(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return new SourceInput(ByteBuffer.wrap(buffer, 0, length).slice());
+    }
+
+    public int size() {
+        return bytes.limit();
+    }
+
+    /*
+        Returns the source as characters. ASCII sources are viewed in place, anything else is decoded as UTF-8 so that
+        the tokenizer sees the same characters as it would for a string read with Files.readString.
+     */
+    public CharSequence asCharSequence() {
+        for (int i = 0; i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) {
+                return StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+            }
+        }
+        return new AsciiCharSequence(bytes, 0, bytes.limit());
+    }
+
+    /*
+        Character view over a range of ASCII bytes.
+     */
+    static final class AsciiCharSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiCharSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Invalid range: " + start + " - " + end);
+            }
+            return new AsciiCharSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] text = new byte[length];
+            bytes.get(offset, text);
+            return new String(text, StandardCharsets.US_ASCII);
+        }
+    }
+}
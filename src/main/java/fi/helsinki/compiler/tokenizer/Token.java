@@ -2,25 +2,82 @@ package fi.helsinki.compiler.tokenizer;
 
 import fi.helsinki.compiler.common.Location;
 
+/*
+    Tokens read by the TokenScanner keep their location in the packed form from Location.pack, next to the file name
+    shared by all the tokens of the file, and only create a Location object when asked for it. Tokens created with a
+    Location keep that Location as it was given. Tokens of a fixed kind share the interned text of their TokenKind.
+ */
 public class Token {
-    private String text;
-    private TokenType tokenType;
-    private Location location;
+    private static final long NO_POSITION = Long.MIN_VALUE;
+
+    private final String text;
+    private final TokenKind kind;
+    private final TokenType tokenType;
+    private final String file;
+    private final long position;
+    private final Location location;
 
     public Token(String text, TokenType tokenType, Location location) {
+        this.kind = TokenKind.of(text);
+        this.text = kind != null ? kind.getText() : text;
+        this.tokenType = tokenType;
+        this.file = location == null ? null : location.getFile();
+        this.position = location == null ? NO_POSITION : Location.pack(location.getLine(), location.getColumn());
+        this.location = location;
+    }
+
+    Token(String text, TokenKind kind, TokenType tokenType, String file, long position) {
+        this(text, kind, tokenType, file, position, null);
+    }
+
+    private Token(String text, TokenKind kind, TokenType tokenType, String file, long position, Location location) {
         this.text = text;
+        this.kind = kind;
         this.tokenType = tokenType;
+        this.file = file;
+        this.position = position;
         this.location = location;
     }
 
+    /*
+        Creates an empty START or END marker token at the location of the given token.
+     */
+    static Token marker(TokenType tokenType, Token locationToken) {
+        if (locationToken == null) {
+            return new Token("", null, tokenType, null, NO_POSITION);
+        }
+        return new Token("", null, tokenType, locationToken.file, locationToken.position, locationToken.location);
+    }
+
+    long getPackedPosition() {
+        return position;
+    }
+
+    /*
+        Returns a copy of the token moved to the given packed position in the same file.
+     */
+    Token withPackedPosition(long packedPosition) {
+        return new Token(text, kind, tokenType, file, packedPosition);
+    }
+
     public Location getTokenLocation() {
-        return location;
+        if (location != null || position == NO_POSITION) {
+            return location;
+        }
+        return Location.unpack(file, position);
     }
 
     public TokenType getTokenType() {
         return tokenType;
     }
 
+    /*
+        Returns the fixed kind spelled by the token text, or null for other identifiers, literals and marker tokens.
+     */
+    public TokenKind getKind() {
+        return kind;
+    }
+
     public String getText() {
         return text;
     }
@@ -35,6 +92,6 @@ public class Token {
 
     @Override
     public String toString() {
-        return String.format("Text: %s, Type: %s, Location: %s", this.getText(), this.tokenType, this.location);
+        return String.format("Text: %s, Type: %s, Location: %s", this.getText(), this.tokenType, getTokenLocation());
     }
 }
@@ -0,0 +1,109 @@
+package fi.helsinki.compiler.tokenizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Interning table for the fixed lexemes of the language. Tokens with one of these texts share the text instance
+    held here, and can be compared by kind instead of by string. The kind is derived from the text alone, so an
+    identifier token spelled 'not' has the kind NOT.
+ */
+public enum TokenKind {
+    IF("if"),
+    WHILE("while"),
+    FUNCTION("function"),
+    VAR("var"),
+    DO("do"),
+    THEN("then"),
+    ELSE("else"),
+    FUN("fun"),
+    UNIT("Unit"),
+    BREAK("break"),
+    CONTINUE("continue"),
+    RETURN("return"),
+    TRUE("true"),
+    FALSE("false"),
+    OR("or"),
+    AND("and"),
+    NOT("not"),
+    EQUALS("=="),
+    NOT_EQUALS("!="),
+    ASSIGN("="),
+    LESS_THAN_OR_EQUAL("<="),
+    GREATER_THAN_OR_EQUAL(">="),
+    LESS_THAN("<"),
+    GREATER_THAN(">"),
+    PLUS("+"),
+    MINUS("-"),
+    MULTIPLY("*"),
+    DIVIDE("/"),
+    MODULUS("%"),
+    LEFT_BRACE("{"),
+    RIGHT_BRACE("}"),
+    LEFT_PARENTHESIS("("),
+    RIGHT_PARENTHESIS(")"),
+    COMMA(","),
+    SEMICOLON(";"),
+    COLON(":");
+
+    private static final Map<String, TokenKind> KINDS_BY_TEXT = new HashMap<>();
+    private static final TokenKind[][] KINDS_BY_FIRST_CHAR = new TokenKind[128][];
+
+    static {
+        for (TokenKind kind : values()) {
+            KINDS_BY_TEXT.put(kind.text, kind);
+            char first = kind.text.charAt(0);
+            TokenKind[] candidates = KINDS_BY_FIRST_CHAR[first];
+            if (candidates == null) {
+                candidates = new TokenKind[0];
+            }
+            candidates = Arrays.copyOf(candidates, candidates.length + 1);
+            candidates[candidates.length - 1] = kind;
+            KINDS_BY_FIRST_CHAR[first] = candidates;
+        }
+    }
+
+    private final String text;
+
+    TokenKind(String text) {
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /*
+        Returns the kind spelled by the given text, or null if the text is not a fixed lexeme.
+     */
+    public static TokenKind of(String text) {
+        return text == null ? null : KINDS_BY_TEXT.get(text);
+    }
+
+    /*
+        Same as of(String) for a range of a character sequence, without creating a string for the range.
+     */
+    public static TokenKind of(CharSequence source, int start, int end) {
+        char first = source.charAt(start);
+        if (first >= KINDS_BY_FIRST_CHAR.length || KINDS_BY_FIRST_CHAR[first] == null) {
+            return null;
+        }
+        int length = end - start;
+        for (TokenKind kind : KINDS_BY_FIRST_CHAR[first]) {
+            if (kind.text.length() == length && matches(kind.text, source, start)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String text, CharSequence source, int start) {
+        for (int i = 1; i < text.length(); i++) {
+            if (source.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.common.Location;
+import fi.helsinki.compiler.exceptions.TokenizeException;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/*
+    Hand written scanner which walks the source once with an index based cursor. Every position is dispatched on
+    the class of its first character and the token is then completed by scanning forward, so no intermediate strings
+    are created for whitespace or comments and the whole input is tokenized in linear time.
+    The accepted language is the same as the one accepted by the original regex based tokenizer.
+ */
+public class TokenScanner implements TokenSource {
+
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte DIGIT = 3;
+    private static final byte WORD = 4;
+    private static final byte OPERATOR = 5;
+    private static final byte PUNCTUATION = 6;
+    private static final byte QUOTE = 7;
+    private static final byte HASH = 8;
+    private static final byte SLASH = 9;
+
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    private static final Set<TokenKind> KEYWORDS = EnumSet.of(TokenKind.IF, TokenKind.WHILE, TokenKind.FUNCTION,
+            TokenKind.VAR, TokenKind.DO, TokenKind.THEN, TokenKind.ELSE, TokenKind.FUN, TokenKind.UNIT);
+    private static final Set<TokenKind> FLOW_CONTROL_KEYWORDS = EnumSet.of(TokenKind.BREAK, TokenKind.CONTINUE,
+            TokenKind.RETURN);
+    private static final String FLOW_CONTROL_TERMINATORS = " \n;)+-*/}%";
+
+    static {
+        CHAR_CLASSES[' '] = SPACE;
+        CHAR_CLASSES['\t'] = SPACE;
+        CHAR_CLASSES['\n'] = NEWLINE;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASSES[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASSES[c] = WORD;
+            CHAR_CLASSES[Character.toUpperCase(c)] = WORD;
+        }
+        CHAR_CLASSES['_'] = WORD;
+        CHAR_CLASSES['|'] = WORD;
+        for (char c : "=!<>+-*%".toCharArray()) {
+            CHAR_CLASSES[c] = OPERATOR;
+        }
+        for (char c : "{}(),;:".toCharArray()) {
+            CHAR_CLASSES[c] = PUNCTUATION;
+        }
+        CHAR_CLASSES['"'] = QUOTE;
+        CHAR_CLASSES['#'] = HASH;
+        CHAR_CLASSES['/'] = SLASH;
+    }
+
+    private final CharSequence source;
+    private final String filename;
+    private final int end;
+    private int position;
+    private int line;
+    private int column;
+
+    public TokenScanner(CharSequence source, String filename) {
+        this(source, filename, 0, source.length(), 0, 0);
+    }
+
+    public TokenScanner(CharSequence source, String filename, int start, int end, int line, int column) {
+        this.source = source;
+        this.filename = filename;
+        this.position = start;
+        this.end = end;
+        this.line = line;
+        this.column = column;
+    }
+
+    /*
+        Returns the next token or null once the end of the input is reached.
+     */
+    @Override
+    public Token nextToken() throws TokenizeException {
+        while (position < end) {
+            char c = source.charAt(position);
+            switch (classOf(c)) {
+                case SPACE: {
+                    position += 1;
+                    column += 1;
+                    break;
+                }
+                case NEWLINE: {
+                    position += 1;
+                    line += 1;
+                    column = 0;
+                    break;
+                }
+                case HASH: {
+                    if (!skipComment(1)) {
+                        throw invalidToken(c);
+                    }
+                    break;
+                }
+                case SLASH: {
+                    if (position + 1 < end && source.charAt(position + 1) == '/' && skipComment(2)) {
+                        break;
+                    }
+                    return createToken(position + 1, TokenType.OPERATOR);
+                }
+                case DIGIT: {
+                    int tokenEnd = position + 1;
+                    while (tokenEnd < end && classOf(source.charAt(tokenEnd)) == DIGIT) {
+                        tokenEnd += 1;
+                    }
+                    return createToken(tokenEnd, TokenType.INTEGER_LITERAL);
+                }
+                case WORD: {
+                    return scanWord();
+                }
+                case OPERATOR: {
+                    return scanOperator(c);
+                }
+                case PUNCTUATION: {
+                    return createToken(position + 1, TokenType.PUNCTUATION);
+                }
+                case QUOTE: {
+                    return scanStringLiteral();
+                }
+                default: {
+                    throw invalidToken(c);
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    private Token scanWord() {
+        int wordEnd = position + 1;
+        while (wordEnd < end && isWordPart(source.charAt(wordEnd))) {
+            wordEnd += 1;
+        }
+        if (startsWith(TokenKind.TRUE.getText())) {
+            return createToken(TokenKind.TRUE, position + 4, TokenType.BOOLEAN_LITERAL);
+        }
+        if (startsWith(TokenKind.FALSE.getText())) {
+            return createToken(TokenKind.FALSE, position + 5, TokenType.BOOLEAN_LITERAL);
+        }
+        TokenKind kind = TokenKind.of(source, position, wordEnd);
+        if (KEYWORDS.contains(kind) && endsKeyword(wordEnd)) {
+            return createToken(kind, wordEnd, TokenType.KEYWORD);
+        }
+        if (FLOW_CONTROL_KEYWORDS.contains(kind) && endsFlowControl(wordEnd)) {
+            return createToken(kind, wordEnd, TokenType.KEYWORD);
+        }
+        if ((kind == TokenKind.OR || kind == TokenKind.AND) && wordEnd < end && source.charAt(wordEnd) == ' ') {
+            return createToken(kind, wordEnd, TokenType.OPERATOR);
+        }
+        if (kind == TokenKind.VAR) {
+            // 'var' is only accepted as a keyword or as the prefix of a longer identifier
+            throw invalidToken(source.charAt(position));
+        }
+        if (kind != null) {
+            return createToken(kind, wordEnd, TokenType.IDENTIFIER);
+        }
+        return createToken(source.subSequence(position, wordEnd).toString(), null, wordEnd, TokenType.IDENTIFIER);
+    }
+
+    private Token scanOperator(char c) {
+        boolean followedByEquals = position + 1 < end && source.charAt(position + 1) == '=';
+        switch (c) {
+            case '=':
+            case '<':
+            case '>': {
+                return createToken(position + (followedByEquals ? 2 : 1), TokenType.OPERATOR);
+            }
+            case '!': {
+                if (followedByEquals) {
+                    return createToken(position + 2, TokenType.OPERATOR);
+                }
+                throw invalidToken(c);
+            }
+            default: {
+                return createToken(position + 1, TokenType.OPERATOR);
+            }
+        }
+    }
+
+    private Token scanStringLiteral() {
+        for (int i = position + 1; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                return createToken(i + 1, TokenType.STRING_LITERAL);
+            }
+            if (isLineTerminator(c)) {
+                break;
+            }
+        }
+        throw invalidToken(source.charAt(position));
+    }
+
+    /*
+        Skips a comment running until the next newline. Comments containing any other line terminator are rejected
+        unless it is the final character of the input.
+     */
+    private boolean skipComment(int prefixLength) {
+        int i = position + prefixLength;
+        while (true) {
+            if (i < end && source.charAt(i) == '\n') {
+                i += 1;
+                break;
+            }
+            if (i == end || isFinalLineTerminator(i)) {
+                break;
+            }
+            if (isLineTerminator(source.charAt(i))) {
+                return false;
+            }
+            i += 1;
+        }
+        position = i;
+        line += 1;
+        column = 0;
+        return true;
+    }
+
+    private boolean endsKeyword(int index) {
+        if (index == end) {
+            return true;
+        }
+        char c = source.charAt(index);
+        return c == ' ' || c == '\n' || isFinalLineTerminator(index);
+    }
+
+    private boolean endsFlowControl(int index) {
+        return index == end || FLOW_CONTROL_TERMINATORS.indexOf(source.charAt(index)) >= 0
+                || isFinalLineTerminator(index);
+    }
+
+    /*
+        Mirrors the behaviour of '$' in a non multiline regex, which also matches in front of a line terminator
+        that is the last thing in the input.
+     */
+    private boolean isFinalLineTerminator(int index) {
+        if (index == end - 2) {
+            return source.charAt(index) == '\r' && source.charAt(index + 1) == '\n';
+        }
+        if (index == end - 1) {
+            char c = source.charAt(index);
+            if (c == '\n') {
+                return index == 0 || source.charAt(index - 1) != '\r';
+            }
+            return isLineTerminator(c);
+        }
+        return false;
+    }
+
+    private boolean startsWith(String literal) {
+        if (position + literal.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(position + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Token createToken(int tokenEnd, TokenType tokenType) {
+        TokenKind kind = TokenKind.of(source, position, tokenEnd);
+        if (kind != null) {
+            return createToken(kind, tokenEnd, tokenType);
+        }
+        return createToken(source.subSequence(position, tokenEnd).toString(), null, tokenEnd, tokenType);
+    }
+
+    private Token createToken(TokenKind kind, int tokenEnd, TokenType tokenType) {
+        return createToken(kind.getText(), kind, tokenEnd, tokenType);
+    }
+
+    private Token createToken(String text, TokenKind kind, int tokenEnd, TokenType tokenType) {
+        Token token = new Token(text, kind, tokenType, filename, Location.pack(line, column));
+        column += tokenEnd - position;
+        position = tokenEnd;
+        return token;
+    }
+
+    private TokenizeException invalidToken(char c) {
+        return new TokenizeException("Found invalid token: '" + c + "' at line: " + line + " and column: " + column);
+    }
+
+    private static byte classOf(char c) {
+        return c < CHAR_CLASSES.length ? CHAR_CLASSES[c] : OTHER;
+    }
+
+    private static boolean isWordPart(char c) {
+        byte charClass = classOf(c);
+        return charClass == WORD || charClass == DIGIT;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
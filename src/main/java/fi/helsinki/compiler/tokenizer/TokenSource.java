@@ -0,0 +1,14 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.exceptions.TokenizeException;
+
+/*
+    Producer of tokens which are pulled one at a time by a TokenStream.
+ */
+public interface TokenSource {
+
+    /*
+        Returns the next token or null once there are no more tokens.
+     */
+    Token nextToken() throws TokenizeException;
+}
@@ -0,0 +1,150 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.exceptions.TokenizeException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+    Sequential view over the tokens of a TokenSource with a bounded window around the current position.
+    Tokens are pulled from the source only when they come into the lookahead window, and are dropped once they fall
+    out of the lookback window, so the memory used is independent of the size of the input.
+ */
+public class TokenStream {
+
+    public static final int MAX_LOOKAHEAD = 2;
+    public static final int MAX_LOOKBACK = 1;
+
+    private final TokenSource source;
+    private final Token[] window = new Token[MAX_LOOKAHEAD + MAX_LOOKBACK];
+    private long position;
+    private long fetched;
+    private boolean exhausted;
+    private Token firstToken;
+    private Token lastToken;
+    private Token endToken;
+
+    public TokenStream(TokenSource source) {
+        this.source = source;
+    }
+
+    public static TokenStream of(List<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        return new TokenStream(() -> iterator.hasNext() ? iterator.next() : null);
+    }
+
+    /*
+        Returns the current token, or an END token located at the last token once the input is consumed.
+     */
+    public Token peek() throws TokenizeException {
+        return peek(0);
+    }
+
+    public Token peek(int ahead) throws TokenizeException {
+        if (ahead < 0 || ahead >= MAX_LOOKAHEAD) {
+            throw new IllegalArgumentException("Lookahead must be between 0 and " + (MAX_LOOKAHEAD - 1));
+        }
+        long index = position + ahead;
+        fill(index);
+        if (index >= fetched) {
+            if (endToken == null) {
+                endToken = Token.marker(TokenType.END, lastToken);
+            }
+            return endToken;
+        }
+        return window[slot(index)];
+    }
+
+    /*
+        Returns the previously consumed token, or a START token located at the first token at the beginning.
+     */
+    public Token lookBack() throws TokenizeException {
+        if (position == 0) {
+            fill(0);
+            return Token.marker(TokenType.START, firstToken);
+        }
+        return window[slot(position - 1)];
+    }
+
+    /*
+        Returns the current token and moves past it. The position never moves beyond the end of the input.
+     */
+    public Token advance() throws TokenizeException {
+        Token token = peek();
+        if (token.getTokenType() != TokenType.END) {
+            position += 1;
+        }
+        return token;
+    }
+
+    /*
+        Number of tokens consumed so far.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /*
+        Consumes the given number of tokens without looking at them, stopping at the end of the input.
+     */
+    public void skip(long count) throws TokenizeException {
+        for (long i = 0; i < count && peek().getTokenType() != TokenType.END; i++) {
+            position += 1;
+        }
+    }
+
+    public boolean isEmpty() throws TokenizeException {
+        fill(0);
+        return firstToken == null;
+    }
+
+    public boolean isAtEnd() throws TokenizeException {
+        fill(position);
+        return position >= fetched;
+    }
+
+    /*
+        Drains the input and returns all the tokens from the current position onwards. Meant for error reporting.
+     */
+    public List<Token> remainingTokens() throws TokenizeException {
+        List<Token> remaining = new ArrayList<>();
+        for (long i = position; i < fetched; i++) {
+            remaining.add(window[slot(i)]);
+        }
+        while (!exhausted) {
+            Token token = pull();
+            if (token != null) {
+                remaining.add(token);
+            }
+        }
+        return remaining;
+    }
+
+    private void fill(long index) {
+        while (fetched <= index && !exhausted) {
+            Token token = pull();
+            if (token != null) {
+                window[slot(fetched)] = token;
+                fetched += 1;
+            }
+        }
+    }
+
+    private Token pull() {
+        Token token = source.nextToken();
+        if (token == null) {
+            exhausted = true;
+            return null;
+        }
+        if (firstToken == null) {
+            firstToken = token;
+        }
+        lastToken = token;
+        return token;
+    }
+
+    private int slot(long index) {
+        return (int) (index % window.length);
+    }
+}
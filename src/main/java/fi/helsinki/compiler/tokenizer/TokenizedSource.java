@@ -0,0 +1,478 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.common.Location;
+import fi.helsinki.compiler.exceptions.TokenizeException;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Source text together with its tokens and the offset of every token, which allows re-tokenizing only the part of
+    the source damaged by an edit.
+    An edit is re-scanned starting from the end of the last token that cannot have been affected by it. Scanning stops
+    as soon as a new token starts, after the inserted text, at the offset where an old token started. The rest of the
+    source is the same from that point, so the remaining old tokens are reused.
+    The source is kept in blocks of around BLOCK_SIZE characters, split in front of a token. A block holds its text
+    and its tokens, which are located relative to the start of the block, so a block does not change when an edit
+    before it moves it. An edit only rebuilds the blocks it touches and copies the array of blocks, and the edited
+    text is read through the old blocks while it is re-scanned. Tokens are moved to their place in the whole source
+    when they are asked for, a block at a time, and reused as long as the block stays in the same place.
+ */
+public class TokenizedSource {
+
+    /*
+        A token may be classified differently depending on at most this many characters following it, e.g. a keyword
+        followed by a final "\r\n".
+     */
+    private static final int LOOKAHEAD = 2;
+    private static final int BLOCK_SIZE = 4096;
+
+    private final String filename;
+    private final Block[] blocks;
+    // The first token, the offset, and the line and column of the start of every block, with the totals at the end
+    private final int[] firstTokens;
+    private final int[] startOffsets;
+    private final int[] startLines;
+    private final int[] startColumns;
+    private final int keptTokens;
+    private final int rescannedTokens;
+    private final List<Token> tokens = new TokenList();
+
+    private TokenizedSource(String filename, Block[] blocks, int keptTokens, int rescannedTokens) {
+        this.filename = filename;
+        this.blocks = blocks;
+        this.firstTokens = new int[blocks.length + 1];
+        this.startOffsets = new int[blocks.length + 1];
+        this.startLines = new int[blocks.length + 1];
+        this.startColumns = new int[blocks.length + 1];
+        for (int i = 0; i < blocks.length; i++) {
+            Block block = blocks[i];
+            firstTokens[i + 1] = firstTokens[i] + block.tokens.length;
+            startOffsets[i + 1] = startOffsets[i] + block.text.length();
+            startLines[i + 1] = startLines[i] + block.lines;
+            startColumns[i + 1] = block.lines == 0 ? startColumns[i] + block.text.length() : block.lastLineLength;
+        }
+        this.keptTokens = keptTokens;
+        this.rescannedTokens = rescannedTokens;
+    }
+
+    public static TokenizedSource tokenize(String source, String filename) throws TokenizeException {
+        TokenScanner scanner = new TokenScanner(source, filename);
+        List<Token> tokens = new ArrayList<>();
+        int[] offsets = new int[16];
+        Token token;
+        while ((token = scanner.nextToken()) != null) {
+            offsets = add(offsets, tokens.size(), scanner.getPosition() - token.getText().length());
+            tokens.add(token);
+        }
+        Block[] blocks = split(source, tokens, offsets).toArray(new Block[0]);
+        return new TokenizedSource(filename, blocks, 0, tokens.size());
+    }
+
+    /*
+        Applies an edit replacing removedLength characters at offset with insertedText and returns the tokenized result.
+        Gives the same tokens as tokenizing the edited source from scratch. This source stays as it was.
+     */
+    public TokenizedSource edit(int offset, int removedLength, String insertedText) throws TokenizeException {
+        int length = startOffsets[blocks.length];
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new IndexOutOfBoundsException("Invalid edit range: " + offset + " - " + (offset + removedLength)
+                    + " in a source of length " + length);
+        }
+        int shift = insertedText.length() - removedLength;
+        EditedText editedText = new EditedText(offset, removedLength, insertedText);
+
+        int kept = firstAffectedToken(offset);
+        TokenScanner scanner;
+        int scanStart = 0;
+        if (kept == 0) {
+            scanner = new TokenScanner(editedText, filename);
+        } else {
+            scanStart = endOf(kept - 1);
+            long position = positionOf(kept - 1);
+            scanner = new TokenScanner(editedText, filename, scanStart, editedText.length(), lineOf(position),
+                    columnOf(position) + tokenText(kept - 1).length());
+        }
+
+        List<Token> rescanned = new ArrayList<>();
+        int[] rescannedOffsets = new int[16];
+        int resync = firstTokens[blocks.length];
+        long resyncPosition = 0;
+        int oldIndex = kept;
+        Token token;
+        while ((token = scanner.nextToken()) != null) {
+            int newOffset = scanner.getPosition() - token.getText().length();
+            if (newOffset >= offset + insertedText.length()) {
+                int oldOffset = newOffset - shift;
+                while (oldIndex < firstTokens[blocks.length] && getOffset(oldIndex) < oldOffset) {
+                    oldIndex += 1;
+                }
+                if (oldIndex < firstTokens[blocks.length] && getOffset(oldIndex) == oldOffset) {
+                    resync = oldIndex;
+                    resyncPosition = token.getPackedPosition();
+                    break;
+                }
+            }
+            rescannedOffsets = add(rescannedOffsets, rescanned.size(), newOffset);
+            rescanned.add(token);
+        }
+        int oldEnd = resync < firstTokens[blocks.length] ? getOffset(resync) : length;
+
+        // The blocks from first to last are rebuilt. They are widened so that the rebuilt part is not much shorter
+        // than a block, which keeps a run of edits from leaving many small blocks behind.
+        int first = blockAt(scanStart);
+        int last = Math.max(first, blockAt(oldEnd - 1));
+        while (startOffsets[last + 1] - startOffsets[first] + shift < BLOCK_SIZE / 2
+                && (first > 0 || last < blocks.length - 1)) {
+            if (last < blocks.length - 1) {
+                last += 1;
+            } else {
+                first -= 1;
+            }
+        }
+        int start = startOffsets[first];
+        int end = startOffsets[last + 1];
+        int baseLine = startLines[first];
+        int baseColumn = startColumns[first];
+
+        StringBuilder text = new StringBuilder(end - start + shift);
+        appendText(text, start, offset);
+        text.append(insertedText);
+        appendText(text, offset + removedLength, end);
+        List<Token> middleTokens = new ArrayList<>();
+        int[] middleOffsets = new int[16];
+        for (int i = firstTokens[first]; i < kept; i++) {
+            middleOffsets = add(middleOffsets, middleTokens.size(), getOffset(i) - start);
+            middleTokens.add(moved(i, positionOf(i), baseLine, baseColumn));
+        }
+        for (int i = 0; i < rescanned.size(); i++) {
+            Token rescannedToken = rescanned.get(i);
+            middleOffsets = add(middleOffsets, middleTokens.size(), rescannedOffsets[i] - start);
+            middleTokens.add(relative(rescannedToken, rescannedToken.getPackedPosition(), baseLine, baseColumn));
+        }
+        if (resync < firstTokens[last + 1]) {
+            // The old token at resync is the same as the one found by the scanner, which gives the line and column
+            // shift for the tokens on its line and the line shift for the rest
+            long oldPosition = positionOf(resync);
+            int resyncLine = lineOf(oldPosition);
+            int lineShift = lineOf(resyncPosition) - resyncLine;
+            int columnShift = columnOf(resyncPosition) - columnOf(oldPosition);
+            for (int i = resync; i < firstTokens[last + 1]; i++) {
+                long position = positionOf(i);
+                int line = lineOf(position);
+                int column = line == resyncLine ? columnOf(position) + columnShift : columnOf(position);
+                middleOffsets = add(middleOffsets, middleTokens.size(), getOffset(i) + shift - start);
+                middleTokens.add(moved(i, Location.pack(line + lineShift, column), baseLine, baseColumn));
+            }
+        }
+
+        List<Block> middle = split(text.toString(), middleTokens, middleOffsets);
+        Block[] newBlocks = new Block[blocks.length - (last + 1 - first) + middle.size()];
+        System.arraycopy(blocks, 0, newBlocks, 0, first);
+        for (int i = 0; i < middle.size(); i++) {
+            newBlocks[first + i] = middle.get(i);
+        }
+        System.arraycopy(blocks, last + 1, newBlocks, first + middle.size(), blocks.length - last - 1);
+        return new TokenizedSource(filename, newBlocks, kept, rescanned.size());
+    }
+
+    /*
+        Builds the whole source text, which takes time linear in its length.
+     */
+    public String getSource() {
+        StringBuilder builder = new StringBuilder(startOffsets[blocks.length]);
+        for (Block block : blocks) {
+            builder.append(block.text);
+        }
+        return builder.toString();
+    }
+
+    /*
+        The tokens, located in the whole source. The list is a view over the blocks.
+     */
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    public int getOffset(int tokenIndex) {
+        if (tokenIndex < 0 || tokenIndex >= firstTokens[blocks.length]) {
+            throw new IndexOutOfBoundsException(tokenIndex);
+        }
+        int block = blockOfToken(tokenIndex);
+        return startOffsets[block] + blocks[block].offsets[tokenIndex - firstTokens[block]];
+    }
+
+    /*
+        Number of leading tokens taken over unchanged from the source before the edit, 0 for a full tokenization.
+     */
+    public int getKeptTokens() {
+        return keptTokens;
+    }
+
+    /*
+        Number of tokens scanned to produce this result, for a full tokenization the number of tokens. The tokens
+        after the kept and the rescanned ones are the last tokens of the source before the edit, moved by the edit.
+     */
+    public int getRescannedTokens() {
+        return rescannedTokens;
+    }
+
+    /*
+        Splits a text with its tokens into blocks. The tokens and offsets are relative to the start of the text.
+     */
+    private static List<Block> split(String text, List<Token> tokens, int[] offsets) {
+        List<Block> split = new ArrayList<>();
+        int blockStart = 0;
+        int firstToken = 0;
+        for (int i = 1; i < tokens.size(); i++) {
+            if (offsets[i] - blockStart >= BLOCK_SIZE) {
+                split.add(block(text, blockStart, offsets[i], tokens, offsets, firstToken, i));
+                blockStart = offsets[i];
+                firstToken = i;
+            }
+        }
+        split.add(block(text, blockStart, text.length(), tokens, offsets, firstToken, tokens.size()));
+        return split;
+    }
+
+    private static Block block(String text, int start, int end, List<Token> tokens, int[] offsets, int firstToken,
+                               int endToken) {
+        long base = start == 0 ? 0 : tokens.get(firstToken).getPackedPosition();
+        Token[] blockTokens = new Token[endToken - firstToken];
+        int[] blockOffsets = new int[blockTokens.length];
+        for (int i = firstToken; i < endToken; i++) {
+            Token token = tokens.get(i);
+            blockTokens[i - firstToken] = relative(token, token.getPackedPosition(), lineOf(base), columnOf(base));
+            blockOffsets[i - firstToken] = offsets[i] - start;
+        }
+        return new Block(text.substring(start, end), blockTokens, blockOffsets);
+    }
+
+    /*
+        Returns the token with the given position, in the whole source, made relative to the given start of a block.
+     */
+    private static Token relative(Token token, long position, int line, int column) {
+        int tokenLine = lineOf(position) - line;
+        int tokenColumn = tokenLine == 0 ? columnOf(position) - column : columnOf(position);
+        long relativePosition = Location.pack(tokenLine, tokenColumn);
+        return relativePosition == token.getPackedPosition() ? token : token.withPackedPosition(relativePosition);
+    }
+
+    private Token moved(int tokenIndex, long position, int line, int column) {
+        int block = blockOfToken(tokenIndex);
+        return relative(blocks[block].tokens[tokenIndex - firstTokens[block]], position, line, column);
+    }
+
+    /*
+        Position of the token in the whole source, without creating the located token.
+     */
+    private long positionOf(int tokenIndex) {
+        int block = blockOfToken(tokenIndex);
+        long position = blocks[block].tokens[tokenIndex - firstTokens[block]].getPackedPosition();
+        int line = lineOf(position);
+        int column = line == 0 ? startColumns[block] + columnOf(position) : columnOf(position);
+        return Location.pack(startLines[block] + line, column);
+    }
+
+    private String tokenText(int tokenIndex) {
+        int block = blockOfToken(tokenIndex);
+        return blocks[block].tokens[tokenIndex - firstTokens[block]].getText();
+    }
+
+    /*
+        Binary search for the first token which ends too close to the offset to be unaffected by an edit there.
+     */
+    private int firstAffectedToken(int offset) {
+        int low = 0;
+        int high = firstTokens[blocks.length];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endOf(middle) + LOOKAHEAD < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int endOf(int tokenIndex) {
+        return getOffset(tokenIndex) + tokenText(tokenIndex).length();
+    }
+
+    /*
+        The last block starting at or before the offset. Blocks without text are skipped unless they are at the end.
+     */
+    private int blockAt(int offset) {
+        return lastAtOrBefore(startOffsets, offset);
+    }
+
+    /*
+        The block holding the token. Blocks without tokens are skipped in the same way.
+     */
+    private int blockOfToken(int tokenIndex) {
+        return lastAtOrBefore(firstTokens, tokenIndex);
+    }
+
+    private int lastAtOrBefore(int[] starts, int value) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private void appendText(StringBuilder builder, int from, int to) {
+        for (int block = blockAt(from); block < blocks.length && startOffsets[block] < to; block++) {
+            int start = startOffsets[block];
+            builder.append(blocks[block].text, Math.max(from, start) - start,
+                    Math.min(to, startOffsets[block + 1]) - start);
+        }
+    }
+
+    private char sourceCharAt(int offset) {
+        int block = blockAt(offset);
+        return blocks[block].text.charAt(offset - startOffsets[block]);
+    }
+
+    private static int[] add(int[] offsets, int index, int offset) {
+        if (index == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[index] = offset;
+        return offsets;
+    }
+
+    private static int lineOf(long packedPosition) {
+        return (int) (packedPosition >>> 32);
+    }
+
+    private static int columnOf(long packedPosition) {
+        return (int) packedPosition;
+    }
+
+    /*
+        Part of the source with its tokens. The line of a token is counted from the first line of the block, and the
+        column of a token on that first line from the start of the block.
+     */
+    private static final class Block {
+        private final String text;
+        private final Token[] tokens;
+        private final int[] offsets;
+        private final int lines;
+        private final int lastLineLength;
+        // Not synchronized, threads racing on it at worst move the same tokens twice
+        private Located located;
+
+        Block(String text, Token[] tokens, int[] offsets) {
+            this.text = text;
+            this.tokens = tokens;
+            this.offsets = offsets;
+            int lines = 0;
+            int lastLineStart = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    lines += 1;
+                    lastLineStart = i + 1;
+                }
+            }
+            this.lines = lines;
+            this.lastLineLength = text.length() - lastLineStart;
+        }
+
+        /*
+            The tokens moved to a block starting at the given line and column.
+         */
+        Token[] locate(int line, int column) {
+            if (line == 0 && column == 0) {
+                return tokens;
+            }
+            Located current = located;
+            if (current == null || current.line != line || current.column != column) {
+                Token[] moved = new Token[tokens.length];
+                for (int i = 0; i < tokens.length; i++) {
+                    long position = tokens[i].getPackedPosition();
+                    int tokenLine = lineOf(position);
+                    int tokenColumn = tokenLine == 0 ? column + columnOf(position) : columnOf(position);
+                    moved[i] = tokens[i].withPackedPosition(Location.pack(line + tokenLine, tokenColumn));
+                }
+                current = new Located(line, column, moved);
+                located = current;
+            }
+            return current.tokens;
+        }
+    }
+
+    private record Located(int line, int column, Token[] tokens) {
+    }
+
+    private final class TokenList extends AbstractList<Token> {
+
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= firstTokens[blocks.length]) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            int block = blockOfToken(index);
+            return blocks[block].locate(startLines[block], startColumns[block])[index - firstTokens[block]];
+        }
+
+        @Override
+        public int size() {
+            return firstTokens[blocks.length];
+        }
+    }
+
+    /*
+        The source after an edit, read through the blocks of the source before it.
+     */
+    private final class EditedText implements CharSequence {
+        private final int offset;
+        private final int removedLength;
+        private final String insertedText;
+
+        EditedText(int offset, int removedLength, String insertedText) {
+            this.offset = offset;
+            this.removedLength = removedLength;
+            this.insertedText = insertedText;
+        }
+
+        @Override
+        public int length() {
+            return startOffsets[blocks.length] - removedLength + insertedText.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < offset) {
+                return sourceCharAt(index);
+            }
+            if (index < offset + insertedText.length()) {
+                return insertedText.charAt(index - offset);
+            }
+            return sourceCharAt(index - insertedText.length() + removedLength);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            StringBuilder builder = new StringBuilder(end - start);
+            for (int i = start; i < end; i++) {
+                builder.append(charAt(i));
+            }
+            return builder;
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.types.Type;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongUnaryOperator;
+
+/*
+    The node types of function bodies that passed the type checker, keyed by a structural hash of the function. The
+    hash covers the signature of the function, every node of its body, and the types of the functions and top level
+    variables the body refers to, so a body is only found again when checking it would give the same types.
+    Two bodies may still share a hash, so the hash of every node is kept with the types and compared before they
+    are reused.
+    The function and return types are kept as copies belonging to no compilation, and the checker finding them
+    interns them again in its own Types, so the types of one compilation are never seen by another one.
+    Holds at most capacity bodies and evicts the least recently used one. A cache can be shared by type checkers
+    running on different threads.
+ */
+public class TypeCheckCache {
+
+    private final Map<Long, Entry> entries;
+    private final LongUnaryOperator keyFunction;
+    private long hits;
+    private long misses;
+    private long collisions;
+
+    public TypeCheckCache(int capacity) {
+        this(capacity, LongUnaryOperator.identity());
+    }
+
+    /*
+        A cache keying the bodies by the given function of their hash, so that tests can make them collide.
+     */
+    TypeCheckCache(int capacity, LongUnaryOperator keyFunction) {
+        this.keyFunction = keyFunction;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /*
+        Returns the types of the nodes of the body in pre-order, or null if the body has not been checked. The shape
+        holds the hash of each node of the body in pre-order, and must be the same as the one the types were put with.
+     */
+    synchronized Type[] get(long hash, long[] shape) {
+        Entry entry = entries.get(keyFunction.applyAsLong(hash));
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        if (entry.types().length != shape.length || !Arrays.equals(entry.shape(), shape)) {
+            collisions += 1;
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.types();
+    }
+
+    synchronized void put(long hash, long[] shape, Type[] types) {
+        if (types.length != shape.length) {
+            throw new IllegalArgumentException("Expected a type for each of the " + shape.length + " nodes, found "
+                    + types.length);
+        }
+        entries.put(keyFunction.applyAsLong(hash), new Entry(shape, types));
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getCollisions() {
+        return collisions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry(long[] shape, Type[] types) {
+    }
+}
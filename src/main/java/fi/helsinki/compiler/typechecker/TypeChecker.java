@@ -1,292 +1,784 @@
 package fi.helsinki.compiler.typechecker;
 
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.Location;
 import fi.helsinki.compiler.common.expressions.Expression;
 import fi.helsinki.compiler.common.expressions.*;
 import fi.helsinki.compiler.common.types.*;
+import fi.helsinki.compiler.exceptions.ResolverException;
 import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.resolver.Resolver;
 import fi.helsinki.compiler.tokenizer.Token;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class TypeChecker {
 
-    private Optional<Type> checkType(Expression expression, SymbolTable symbolTable) throws TypeCheckerException {
-        if (expression instanceof Block block) {
-            handleFunctionDefinitions(block.getExpressionList(), symbolTable);
+    private static final Optional<Type> INT_TYPE = Optional.of(Types.INT);
+    private static final Optional<Type> BOOLEAN_TYPE = Optional.of(Types.BOOLEAN);
+    private static final Optional<Type> UNIT_TYPE = Optional.of(Types.UNIT);
+    private static final Optional<Type> ERROR_TYPE = Optional.of(Types.ERROR);
+
+    private final TypeCheckCache cache;
+    private final Types types = new Types();
+    private Type[] globals;
+    // When set, the bodies of the function definitions are collected here instead of being checked in place
+    private List<FunctionBody> deferredBodies;
+    // When set, the type errors are collected here instead of being thrown
+    private List<Diagnostic> diagnostics;
+
+    public TypeChecker() {
+        this(null);
+    }
+
+    /*
+        A type checker which skips the function bodies found in the cache, and adds the bodies it checks to it.
+     */
+    public TypeChecker(TypeCheckCache cache) {
+        this.cache = cache;
+    }
+
+    /*
+        Checks the expression with an explicit stack of frames instead of recursion, so that the nesting depth of the
+        program is not limited by the Java stack. Each frame keeps the state of one node: the step it has reached and
+        the types of the children checked so far. The types of the variables are kept in the frames of the functions
+        they are declared in, indexed by the depth and slot the Resolver bound them to.
+     */
+    private Optional<Type> checkType(Expression expression, Type[][] frames) throws TypeCheckerException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression, frames));
+        Optional<Type> childType = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next = step(frame, childType);
+            if (next != null) {
+                stack.push(next);
+                childType = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.type;
+                }
+                childType = frame.type;
+            }
         }
-        switch (expression) {
+    }
+
+    /*
+        Advances the frame by one step. Returns the frame of a child to check next, or null once the type of the
+        frame is known.
+     */
+    private Frame step(Frame frame, Optional<Type> childType) throws TypeCheckerException {
+        Type[][] frames = frame.frames;
+        switch (frame.expression) {
             case IntLiteral literal: {
-                Type intType = new IntType();
-                literal.setType(intType);
-                return Optional.of(intType);
+                literal.setType(Types.INT);
+                return frame.done(INT_TYPE);
             }
             case BooleanLiteral bool: {
-                Type boolType = new BooleanType();
-                bool.setType(boolType);
-                return Optional.of(boolType);
+                bool.setType(Types.BOOLEAN);
+                return frame.done(BOOLEAN_TYPE);
             }
             case VariableDef variableDef: {
-                String key = variableDef.getName();
-                if (symbolTable.hasTypeLocally(key)) {
-                    throw new TypeCheckerException("Variable already declared in this scope: " + variableDef.getName());
+                if (frame.state == 0) {
+                    return frame.visit(1, variableDef.getValue(), frames);
                 }
-                Optional<Type> valueType = checkType(variableDef.getValue(), symbolTable);
+                Optional<Type> valueType = childType;
+                Type variableType = valueType.get();
                 Optional<String> definedTypeStr = variableDef.getDefinedType();
                 if (definedTypeStr.isPresent()) {
                     Type definedType;
                     if (definedTypeStr.get().equals("Int")) {
-                        definedType = new IntType();
+                        definedType = Types.INT;
                     } else {
-                        definedType = new BooleanType();
+                        definedType = Types.BOOLEAN;
                     }
-                    if (!definedType.equals(valueType.get())) {
-                        throw new TypeCheckerException("Mismatching types found: " + definedType + ", " + valueType);
+                    if (definedType != valueType.get() && !isError(valueType)) {
+                        error(variableDef, "Mismatching types found: " + definedType + ", " + valueType);
                     }
+                    // The uses of the variable are checked against the declared type even if the value is invalid
+                    variableType = definedType;
                 }
-                symbolTable.putType(key, valueType.get());
-                variableDef.setType(valueType.get());
-                return Optional.of(new UnitType());
+                frames[variableDef.getDepth()][variableDef.getSlot()] = variableType;
+                variableDef.setType(variableType);
+                return frame.done(UNIT_TYPE);
             }
             case Identifier identifier: {
-                Type identifierType = symbolTable.getType(identifier.getName());
+                Type identifierType = getType(identifier, frames);
                 identifier.setType(identifierType);
-                return Optional.of(identifierType);
+                return frame.done(Optional.of(identifierType));
             }
             case BinaryOp binaryOp: {
-                Optional<Type> leftType = checkType(binaryOp.getLeft(), symbolTable);
-                Optional<Type> rightType = checkType(binaryOp.getRight(), symbolTable);
-                Token operator = binaryOp.getOperator();
-                return switch (operator.getText()) {
-                    case "=": {
-                        if (binaryOp.getLeft() instanceof Identifier identifier) {
-                            Type identifierType = symbolTable.getType(identifier.getName());
-                            Optional<Type> assignedType = checkType(binaryOp.getRight(), symbolTable);
-                            if (identifierType.getClass() == assignedType.get().getClass()) {
-                                binaryOp.setType(identifierType);
-                                yield Optional.of(identifierType);
-                            }
-                            throw new TypeCheckerException("Expected type " + identifierType);
-                        } else {
-                            throw new TypeCheckerException("Only identifiers are allowed");
-                        }
+                if (binaryOp.getOperator().getText().equals("=")) {
+                    // The target is not visited as an expression, so the value is the only child checked
+                    if (frame.state == 0) {
+                        return frame.visit(1, binaryOp.getRight(), frames);
                     }
-                    case "==": {}
-                    case "!=": {
-                        if (leftType.get().getClass() == rightType.get().getClass()) {
-                            Type boolType = new BooleanType();
-                            binaryOp.setType(boolType);
-                            yield Optional.of(boolType);
-                        }
-                        throw new TypeCheckerException("Mismatching types found for equality operators: "
-                                + leftType.get() + ", " + rightType.get());
+                    if (!(binaryOp.getLeft() instanceof Identifier identifier)) {
+                        return frame.done(error(binaryOp, "Only identifiers are allowed"));
                     }
-                    default: {
-                        if (leftType.isPresent() && rightType.isPresent()) {
-                            if (leftType.get() instanceof IntType && rightType.get() instanceof IntType) {
-                                if ("+,-,*,%,/".contains(operator.getText())) {
-                                    Type intType = new IntType();
-                                    binaryOp.setType(intType);
-                                    yield Optional.of(intType);
-                                }
-                                Type boolType = new BooleanType();
-                                binaryOp.setType(boolType);
-                                yield Optional.of(boolType);
-                            } else if (operator.getText().equals("and") || operator.getText().equals("or")) {
-                                if (leftType.get() instanceof BooleanType && rightType.get() instanceof BooleanType) {
-                                    Type booleanType = new BooleanType();
-                                    binaryOp.setType(booleanType);
-                                    yield Optional.of(booleanType);
-                                } else {
-                                    throw new TypeCheckerException("Expected a Boolean type for '" + operator.getText()
-                                            + "' operator. Instead found " + leftType + ", " + rightType);
-                                }
-                            } else {
-                                throw new TypeCheckerException("Expected an Int type for '" + operator.getText()
-                                        + "' operator. Instead found " + leftType + ", " + rightType);
-                            }
-                        } else {
-                            throw new TypeCheckerException("Expected an Int type for '" +
-                                    operator.getText() + "' operator");
-                        }
+                    Type identifierType = getType(identifier, frames);
+                    identifier.setType(identifierType);
+                    if (identifierType.getClass() != childType.get().getClass() && identifierType != Types.ERROR
+                            && !isError(childType)) {
+                        error(binaryOp, "Expected type " + identifierType);
                     }
-                };
+                    binaryOp.setType(identifierType);
+                    return frame.done(Optional.of(identifierType));
+                }
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, binaryOp.getLeft(), frames);
+                    case 1:
+                        frame.leftType = childType;
+                        return frame.visit(2, binaryOp.getRight(), frames);
+                    default:
+                        if (isError(frame.leftType) || isError(childType)) {
+                            binaryOp.setType(Types.ERROR);
+                            return frame.done(ERROR_TYPE);
+                        }
+                        return frame.done(checkBinaryOp(binaryOp, frame.leftType, childType));
+                }
             }
             case FunctionCall functionCall: {
                 List<Expression> parameters = functionCall.getParameters();
-                List<Type> paramTypes = new ArrayList<>();
-                for (Expression parameter: parameters) {
-                    Optional<Type> paramType = checkType(parameter, symbolTable);
+                if (frame.state == 0) {
+                    frame.paramTypes = new ArrayList<>(parameters.size());
+                    frame.state = 1;
+                } else {
+                    Optional<Type> paramType = childType;
                     if (paramType.isEmpty()) {
-                        throw new TypeCheckerException("Invalid parameter type " + paramType
+                        error(functionCall, "Invalid parameter type " + paramType
                                 + " for function " + functionCall.getFunctionName());
+                        paramType = ERROR_TYPE;
                     }
-                    parameter.setType(paramType.get());
-                    paramTypes.add(paramType.get());
+                    parameters.get(frame.index - 1).setType(paramType.get());
+                    frame.paramTypes.add(paramType.get());
+                }
+                if (frame.index < parameters.size()) {
+                    return frame.visit(1, parameters.get(frame.index++), frames);
+                }
+                List<Type> paramTypes = frame.paramTypes;
+                if (!(getType(functionCall, frames) instanceof FunctionType functionType)) {
+                    // An unknown name has been reported by the Resolver already
+                    if (getType(functionCall, frames) != Types.ERROR) {
+                        error(functionCall, "Not a function: " + functionCall.getFunctionName());
+                    }
+                    functionCall.setType(Types.ERROR);
+                    return frame.done(ERROR_TYPE);
                 }
-                FunctionType functionType = (FunctionType) symbolTable.getType(functionCall.getFunctionName());
                 List<Type> expectedParamTypes = functionType.getParameterTypes();
                 if (paramTypes.size() != functionType.getParameterTypes().size()) {
-                    throw new TypeCheckerException("Mismatching parameters provided to the function" +
+                    error(functionCall, "Mismatching parameters provided to the function" +
                             functionCall.getFunctionName());
-                }
-                for (int i = 0; i < paramTypes.size(); i++) {
-                    if (!paramTypes.get(i).equals(expectedParamTypes.get(i))) {
-                        throw new TypeCheckerException("Expected type of " + expectedParamTypes.get(i) +
-                                ". Instead found " + paramTypes.get(i));
+                } else {
+                    for (int i = 0; i < paramTypes.size(); i++) {
+                        if (paramTypes.get(i) != expectedParamTypes.get(i) && paramTypes.get(i) != Types.ERROR) {
+                            error(parameters.get(i), "Expected type of " + expectedParamTypes.get(i) +
+                                    ". Instead found " + paramTypes.get(i));
+                        }
                     }
                 }
+                // The call has the return type of the function even with invalid parameters
                 functionCall.setType(functionType.getReturnType());
-                return Optional.of(functionType.getReturnType());
+                return frame.done(Optional.of(functionType.getReturnType()));
             }
             case ConditionalOp conditionalOp: {
-                Optional<Type> type = checkType(conditionalOp.getCondition(), symbolTable);
-                if (type.get() instanceof BooleanType) {
-                    Optional<Type> thenType = checkType(conditionalOp.getThenBlock(), symbolTable);
-                    if (conditionalOp.getElseBlock() != null) {
-                        Optional<Type> elseType = checkType(conditionalOp.getElseBlock(), symbolTable);
-                        if (thenType.get().equals(elseType.get())) {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, conditionalOp.getCondition(), frames);
+                    case 1:
+                        if (childType.get() != Types.BOOLEAN && !isError(childType)) {
+                            error(conditionalOp.getCondition(), "Expected a Boolean type for the conditional type.");
+                        }
+                        return frame.visit(2, conditionalOp.getThenBlock(), frames);
+                    case 2:
+                        if (conditionalOp.getElseBlock() != null) {
+                            frame.leftType = childType;
+                            return frame.visit(3, conditionalOp.getElseBlock(), frames);
+                        }
+                        conditionalOp.setType(Types.UNIT);
+                        return frame.done(childType);
+                    default:
+                        Optional<Type> thenType = frame.leftType;
+                        Optional<Type> elseType = childType;
+                        if (thenType.get() == elseType.get()) {
                             conditionalOp.setType(thenType.get());
-                            return thenType;
+                            return frame.done(thenType);
+                        } else if (isError(thenType) || isError(elseType)) {
+                            conditionalOp.setType(Types.ERROR);
+                            return frame.done(ERROR_TYPE);
                         } else {
-                            throw new TypeCheckerException("Types does not match in the conditional blocks: "
-                                    + thenType.get().getTypeStr() + " ," + elseType.get().getTypeStr());
+                            conditionalOp.setType(Types.ERROR);
+                            return frame.done(error(conditionalOp, "Types does not match in the conditional blocks: "
+                                    + thenType.get().getTypeStr() + " ," + elseType.get().getTypeStr()));
                         }
-                    } else {
-                        conditionalOp.setType(new UnitType());
-                        return thenType;
-                    }
-                } else {
-                    throw new TypeCheckerException("Expected a Boolean type for the conditional type.");
                 }
             }
             case FunctionDefinition functionDefinition: {
-                SymbolTable localSymbolTable = new SymbolTable(symbolTable);
-                List<Type> argTypes = new ArrayList<>();
-                for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
-                    Type argType;
-                    if (argument.getArgType().equals("Int")) {
-                        argType = new IntType();
+                if (frame.state == 0) {
+                    Type[][] functionFrames = Arrays.copyOf(frames, frames.length + 1);
+                    functionFrames[frames.length] = new Type[functionDefinition.getFrameSize()];
+                    List<Type> argTypes = new ArrayList<>();
+                    for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                        Type argType;
+                        if (argument.getArgType().equals("Int")) {
+                            argType = Types.INT;
+                        } else {
+                            argType = Types.BOOLEAN;
+                        }
+                        argument.setType(argType);
+                        argTypes.add(argType);
+                        functionFrames[argument.getDepth()][argument.getSlot()] = argType;
+                    }
+                    Type returnType;
+                    if (functionDefinition.getReturnType().equals("Int")) {
+                        returnType = Types.INT;
+                    } else if (functionDefinition.getReturnType().equals("Bool")) {
+                        returnType = Types.BOOLEAN;
                     } else {
-                        argType = new BooleanType();
+                        returnType = Types.UNIT;
                     }
-                    argument.setType(argType);
-                    argTypes.add(argType);
-                    localSymbolTable.putType(argument.getName(), argType);
-                }
-                Type returnType;
-                if (functionDefinition.getReturnType().equals("Int")) {
-                    returnType = new IntType();
-                } else if (functionDefinition.getReturnType().equals("Bool")) {
-                    returnType = new BooleanType();
-                } else {
-                    returnType = new UnitType();
-                }
-                FunctionType functionType = new FunctionType(functionDefinition.getFunctionName(), returnType, argTypes.toArray(new Type[]{}));
-                functionDefinition.setType(functionType);
-                Optional<Type> bodyType = checkType(functionDefinition.getBlock(), localSymbolTable);
-                if (!returnType.getTypeStr().equals(bodyType.get().getTypeStr())) {
-                    throw new TypeCheckerException("Type mismatch for function, return type: " + returnType + ", actual return type: " + bodyType);
+                    frame.expectedType = returnType;
+                    frame.functionType = types.function(functionDefinition.getFunctionName(), returnType,
+                            argTypes.toArray(new Type[]{}));
+                    functionDefinition.setType(frame.functionType);
+                    if (deferredBodies != null) {
+                        deferredBodies.add(new FunctionBody(functionDefinition, functionFrames, returnType));
+                        return frame.done(Optional.of(returnType));
+                    }
+                    if (cache != null) {
+                        checkBody(new FunctionBody(functionDefinition, functionFrames, returnType));
+                        return frame.done(Optional.of(returnType));
+                    }
+                    return frame.visit(1, functionDefinition.getBlock(), functionFrames);
                 }
-                symbolTable.putType(functionDefinition.getFunctionName(), functionType);
-                return Optional.of(returnType);
+                checkReturnType(functionDefinition, frame.expectedType, childType);
+                return frame.done(Optional.of(frame.expectedType));
             }
             case WhileOp whileOp: {
-                Optional<Type> condition = checkType(whileOp.getCondition(), symbolTable);
-                if (condition.get() instanceof BooleanType) {
-                    return checkType(whileOp.getBody(), symbolTable);
-                } else {
-                    throw new TypeCheckerException("Expected a Boolean type for the conditional type.");
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, whileOp.getCondition(), frames);
+                    case 1:
+                        if (childType.get() != Types.BOOLEAN && !isError(childType)) {
+                            error(whileOp.getCondition(), "Expected a Boolean type for the conditional type.");
+                        }
+                        return frame.visit(2, whileOp.getBody(), frames);
+                    default:
+                        return frame.done(childType);
                 }
             }
             case UnaryOp unaryOp: {
-                Optional<Type> operandType = checkType(unaryOp.getExpression(), symbolTable);
-                if (unaryOp.getOperator().getText().equals("-") && operandType.get() instanceof IntType) {
-                    Type intType = new IntType();
-                    unaryOp.setType(intType);
-                    return Optional.of(intType);
-                } else if (unaryOp.getOperator().getText().equals("not") && operandType.get() instanceof BooleanType) {
-                    Type boolType = new BooleanType();
-                    unaryOp.setType(boolType);
-                    return Optional.of(boolType);
+                if (frame.state == 0) {
+                    return frame.visit(1, unaryOp.getExpression(), frames);
+                }
+                Optional<Type> operandType = childType;
+                if (unaryOp.getOperator().getText().equals("-") && operandType.get() == Types.INT) {
+                    unaryOp.setType(Types.INT);
+                    return frame.done(INT_TYPE);
+                } else if (unaryOp.getOperator().getText().equals("not") && operandType.get() == Types.BOOLEAN) {
+                    unaryOp.setType(Types.BOOLEAN);
+                    return frame.done(BOOLEAN_TYPE);
                 }
-                throw new TypeCheckerException("Invalid unary operation");
+                unaryOp.setType(Types.ERROR);
+                return frame.done(isError(operandType) ? ERROR_TYPE : error(unaryOp, "Invalid unary operation"));
             }
             case Block block: {
-                SymbolTable localSymbolTable = new SymbolTable(symbolTable);
                 List<Expression> expressionList = block.getExpressionList();
-                for (int i = 0; i < expressionList.size() - 1; i++) {
-                    Optional<Type> expressionType = checkType(expressionList.get(i), localSymbolTable);
+                if (frame.state == 0) {
+                    handleFunctionDefinitions(expressionList);
+                    frame.state = 1;
+                } else {
+                    Optional<Type> expressionType = childType;
                     if (expressionType.isPresent() && expressionType.get() instanceof ReturnType returnType) {
-                        return Optional.of(returnType.getActualReturnType());
+                        return frame.done(Optional.of(returnType.getActualReturnType()));
+                    }
+                    if (frame.state == 2) {
+                        return frame.done(expressionType);
                     }
                 }
+                if (frame.index < expressionList.size() - 1) {
+                    return frame.visit(1, expressionList.get(frame.index++), frames);
+                }
                 if (!(expressionList.getLast() instanceof Unit)) {
-                    Optional<Type> expressionType = checkType(expressionList.getLast(), localSymbolTable);
-                    if (expressionType.isPresent() && expressionType.get() instanceof ReturnType returnType) {
-                        return Optional.of(returnType.getActualReturnType());
-                    }
-                    return expressionType;
+                    return frame.visit(2, expressionList.getLast(), frames);
                 }
-                return Optional.of(new UnitType());
+                return frame.done(UNIT_TYPE);
             }
             case Break breakOp: {
-                UnitType unitType = new UnitType();
-                breakOp.setType(unitType);
-                return Optional.of(unitType);
+                breakOp.setType(Types.UNIT);
+                return frame.done(UNIT_TYPE);
             }
             case Continue continueOp: {
-                UnitType unitType = new UnitType();
-                continueOp.setType(unitType);
-                return Optional.of(unitType);
+                continueOp.setType(Types.UNIT);
+                return frame.done(UNIT_TYPE);
             }
             case Return returnExp: {
-                Optional<Type> valueType = checkType(returnExp.getValue(), symbolTable);
+                if (frame.state == 0) {
+                    return frame.visit(1, returnExp.getValue(), frames);
+                }
+                Optional<Type> valueType = childType;
                 returnExp.setType(valueType.get());
-                return Optional.of(new ReturnType(valueType.get()));
+                return frame.done(Optional.of(types.returning(valueType.get())));
+            }
+            case ErrorExpression errorExpression: {
+                // Only found in programs parsed with recovery, whose syntax errors the parser has reported already
+                if (diagnostics != null) {
+                    errorExpression.setType(Types.ERROR);
+                    return frame.done(ERROR_TYPE);
+                }
+                throw new TypeCheckerException("Invalid type found: " + frame.expression.getLocation());
             }
             default: {
-                throw new TypeCheckerException("Invalid type found: " + expression.getLocation());
+                throw new TypeCheckerException("Invalid type found: " + frame.expression.getLocation());
             }
         }
     }
 
-    private void handleFunctionDefinitions(List<Expression> expressionList, SymbolTable symbolTable) {
+    /*
+        Reports a type error found at the expression. Throws it unless checking with recovery, in which case it is
+        added to the diagnostics and the error type is returned for the expression.
+     */
+    private Optional<Type> error(Expression expression, String message) throws TypeCheckerException {
+        if (diagnostics == null) {
+            throw new TypeCheckerException(message);
+        }
+        diagnostics.add(new Diagnostic(message, expression.getLocation()));
+        return ERROR_TYPE;
+    }
+
+    private static boolean isError(Optional<Type> type) {
+        return type.isPresent() && type.get() == Types.ERROR;
+    }
+
+    private Optional<Type> checkBinaryOp(BinaryOp binaryOp, Optional<Type> leftType, Optional<Type> rightType)
+            throws TypeCheckerException {
+        Token operator = binaryOp.getOperator();
+        return switch (operator.getText()) {
+            case "==": {}
+            case "!=": {
+                if (leftType.get().getClass() == rightType.get().getClass()) {
+                    binaryOp.setType(Types.BOOLEAN);
+                    yield BOOLEAN_TYPE;
+                }
+                binaryOp.setType(Types.ERROR);
+                yield error(binaryOp, "Mismatching types found for equality operators: "
+                        + leftType.get() + ", " + rightType.get());
+            }
+            default: {
+                if (leftType.isPresent() && rightType.isPresent()) {
+                    if (leftType.get() == Types.INT && rightType.get() == Types.INT) {
+                        if ("+,-,*,%,/".contains(operator.getText())) {
+                            binaryOp.setType(Types.INT);
+                            yield INT_TYPE;
+                        }
+                        binaryOp.setType(Types.BOOLEAN);
+                        yield BOOLEAN_TYPE;
+                    } else if (operator.getText().equals("and") || operator.getText().equals("or")) {
+                        if (leftType.get() == Types.BOOLEAN && rightType.get() == Types.BOOLEAN) {
+                            binaryOp.setType(Types.BOOLEAN);
+                            yield BOOLEAN_TYPE;
+                        } else {
+                            binaryOp.setType(Types.ERROR);
+                            yield error(binaryOp, "Expected a Boolean type for '" + operator.getText()
+                                    + "' operator. Instead found " + leftType + ", " + rightType);
+                        }
+                    } else {
+                        binaryOp.setType(Types.ERROR);
+                        yield error(binaryOp, "Expected an Int type for '" + operator.getText()
+                                + "' operator. Instead found " + leftType + ", " + rightType);
+                    }
+                } else {
+                    binaryOp.setType(Types.ERROR);
+                    yield error(binaryOp, "Expected an Int type for '" + operator.getText() + "' operator");
+                }
+            }
+        };
+    }
+
+    private void checkReturnType(FunctionDefinition definition, Type returnType, Optional<Type> bodyType)
+            throws TypeCheckerException {
+        if (returnType != bodyType.get() && !isError(bodyType)) {
+            error(definition, "Type mismatch for function, return type: " + returnType + ", actual return type: " + bodyType);
+        }
+    }
+
+    private void handleFunctionDefinitions(List<Expression> expressionList) {
         for (Expression expression : expressionList) {
             if (expression instanceof FunctionDefinition functionDefinition) {
                 List<Type> argTypes = new ArrayList<>();
                 for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
                     Type argType;
                     if (argument.getArgType().equals("Int")) {
-                        argType = new IntType();
+                        argType = Types.INT;
                     } else {
-                        argType = new BooleanType();
+                        argType = Types.BOOLEAN;
                     }
                     argument.setType(argType);
                     argTypes.add(argType);
-                    symbolTable.putType(argument.getName(), argType);
                 }
                 Type returnType;
                 if (functionDefinition.getReturnType().equals("Int")) {
-                    returnType = new IntType();
+                    returnType = Types.INT;
                 } else if (functionDefinition.getReturnType().equals("Bool")) {
-                    returnType = new BooleanType();
+                    returnType = Types.BOOLEAN;
                 } else {
-                    returnType = new UnitType();
+                    returnType = Types.UNIT;
                 }
-                FunctionType functionType = new FunctionType(functionDefinition.getFunctionName(), returnType, argTypes.toArray(new Type[]{}));
+                FunctionType functionType = types.function(functionDefinition.getFunctionName(), returnType, argTypes.toArray(new Type[]{}));
                 functionDefinition.setType(functionType);
-                symbolTable.putType(functionDefinition.getFunctionName(), functionType);
+                globals[functionDefinition.getSlot()] = functionType;
             }
         }
     }
 
     public Optional<Type> checkType(Expression expression) throws TypeCheckerException {
-        SymbolTable symbolTable = new SymbolTable(null);
-        symbolTable.putType("print_int", new FunctionType("print_int", new UnitType(), new IntType()));
-        symbolTable.putType("print_bool", new FunctionType("print_bool", new UnitType(), new BooleanType()));
-        symbolTable.putType("read_int", new FunctionType("read_int", new IntType()));
-        return checkType(expression, symbolTable);
+        diagnostics = null;
+        return checkType(expression, resolve(expression));
+    }
+
+    /*
+        Checks the whole program even if it has errors, visiting each node once. Every name and type error is added
+        to the diagnostics with its location, and the node it is found in gets the error type. A node with an operand
+        of the error type gets the error type too without reporting anything, so one mistake is reported once.
+        Also accepts the ErrorExpressions of a program parsed with recovery.
+     */
+    public Optional<Type> checkTypeWithRecovery(Expression expression) throws TypeCheckerException {
+        diagnostics = new ArrayList<>();
+        Optional<Type> type = checkType(expression, resolve(expression));
+        // The errors of the Resolver come first, so they are put in source order with the others
+        diagnostics.sort(Comparator.comparing(Diagnostic::getLocation, Comparator.nullsLast(
+                Comparator.comparingInt(Location::getLine).thenComparingInt(Location::getColumn))));
+        return type;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics == null ? List.of() : diagnostics;
+    }
+
+    /*
+        Checks the top level code first, and then the bodies of the functions on the given pool. The signatures of all
+        functions are known before any body is checked, and a body only depends on them, on its arguments and on the
+        variables of the top level code declared before the function, whose types are known by then.
+        Gives the same result as checkType, and reports the same error when there are several: the error of the first
+        function body that fails, unless the top level code fails before reaching that function.
+     */
+    public Optional<Type> checkTypeParallel(Expression expression, ForkJoinPool pool) throws TypeCheckerException {
+        diagnostics = null;
+        Type[][] frames = resolve(expression);
+        List<FunctionBody> bodies = new ArrayList<>();
+        Optional<Type> type = null;
+        TypeCheckerException topLevelError = null;
+        deferredBodies = bodies;
+        try {
+            type = checkType(expression, frames);
+        } catch (TypeCheckerException e) {
+            // Only the functions before the error were collected, and one of them may fail first
+            topLevelError = e;
+        } finally {
+            deferredBodies = null;
+        }
+
+        int chunks = Math.min(pool.getParallelism() * 4, bodies.size());
+        List<ForkJoinTask<TypeCheckerException>> results = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            List<FunctionBody> chunk = bodies.subList(bodies.size() * i / chunks, bodies.size() * (i + 1) / chunks);
+            results.add(pool.submit(() -> checkBodies(chunk)));
+        }
+        for (ForkJoinTask<TypeCheckerException> result : results) {
+            TypeCheckerException error = result.join();
+            if (error != null) {
+                // Every earlier function body was valid, so this is the first error a sequential check would find
+                throw error;
+            }
+        }
+        if (topLevelError != null) {
+            throw topLevelError;
+        }
+        return type;
+    }
+
+    /*
+        Checks the function bodies in order and returns the error of the first one that fails, or null.
+     */
+    private TypeCheckerException checkBodies(List<FunctionBody> bodies) {
+        for (FunctionBody body : bodies) {
+            try {
+                checkBody(body);
+            } catch (TypeCheckerException e) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /*
+        Checks a function body, or takes the types of its nodes from the cache if the same body has been checked
+        before. Bodies with errors are not cached.
+     */
+    private void checkBody(FunctionBody body) throws TypeCheckerException {
+        Block block = body.definition().getBlock();
+        if (cache == null) {
+            checkReturnType(body.definition(), body.returnType(), checkType(block, body.frames()));
+            return;
+        }
+        List<Expression> nodes = new ArrayList<>();
+        collectNodes(block, nodes);
+        long[] shape = new long[nodes.size()];
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = hashNode(nodes.get(i), body.frames());
+        }
+        long hash = hashBody(body, shape);
+        Type[] cachedTypes = cache.get(hash, shape);
+        if (cachedTypes != null) {
+            for (int i = 0; i < cachedTypes.length; i++) {
+                nodes.get(i).setType(intern(cachedTypes[i]));
+            }
+            return;
+        }
+        int errors = diagnostics == null ? 0 : diagnostics.size();
+        checkReturnType(body.definition(), body.returnType(), checkType(block, body.frames()));
+        if (diagnostics != null && diagnostics.size() > errors) {
+            return;
+        }
+        cachedTypes = new Type[nodes.size()];
+        for (int i = 0; i < cachedTypes.length; i++) {
+            cachedTypes[i] = detach(nodes.get(i).getType());
+        }
+        cache.put(hash, shape, cachedTypes);
+    }
+
+    /*
+        A copy of the type which belongs to no compilation, for the cache. The function and return types interned by
+        the types of this checker are not kept past it.
+     */
+    private static Type detach(Type type) {
+        return switch (type) {
+            case null -> null;
+            case FunctionType functionType -> {
+                List<Type> parameterTypes = functionType.getParameterTypes();
+                Type[] detached = new Type[parameterTypes.size()];
+                for (int i = 0; i < detached.length; i++) {
+                    detached[i] = detach(parameterTypes.get(i));
+                }
+                yield new FunctionType(functionType.getFunctionName(), detach(functionType.getReturnType()), detached);
+            }
+            case ReturnType returnType -> new ReturnType(detach(returnType.getActualReturnType()));
+            default -> type;
+        };
+    }
+
+    /*
+        The instance of a type taken from the cache in the types of this checker.
+     */
+    private Type intern(Type type) {
+        return switch (type) {
+            case null -> null;
+            case FunctionType functionType -> {
+                List<Type> parameterTypes = functionType.getParameterTypes();
+                Type[] interned = new Type[parameterTypes.size()];
+                for (int i = 0; i < interned.length; i++) {
+                    interned[i] = intern(parameterTypes.get(i));
+                }
+                yield types.function(functionType.getFunctionName(), intern(functionType.getReturnType()), interned);
+            }
+            case ReturnType returnType -> types.returning(intern(returnType.getActualReturnType()));
+            default -> type;
+        };
+    }
+
+    /*
+        Hashes the signature of the function and the hashes of the nodes of its body in pre-order.
+     */
+    private static long hashBody(FunctionBody body, long[] shape) {
+        FunctionDefinition definition = body.definition();
+        long hash = mix(0, definition.getFunctionName());
+        hash = mix(hash, hashType(definition.getType()));
+        for (FunctionArgumentDefinition argument : definition.getArguments()) {
+            hash = mix(hash, argument.getName());
+        }
+        for (long node : shape) {
+            hash = mix(hash, node);
+        }
+        return hash;
+    }
+
+    /*
+        Collects the nodes of the body in pre-order.
+     */
+    private static void collectNodes(Block block, List<Expression> nodes) {
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(block);
+        while (!stack.isEmpty()) {
+            Expression expression = stack.pop();
+            nodes.add(expression);
+            // The children are pushed last first, so that they are popped in order
+            switch (expression) {
+                case BinaryOp binaryOp -> {
+                    stack.push(binaryOp.getRight());
+                    stack.push(binaryOp.getLeft());
+                }
+                case UnaryOp unaryOp -> stack.push(unaryOp.getExpression());
+                case FunctionCall functionCall -> pushAll(stack, functionCall.getParameters());
+                case Block child -> pushAll(stack, child.getExpressionList());
+                case ConditionalOp conditionalOp -> {
+                    if (conditionalOp.getElseBlock() != null) {
+                        stack.push(conditionalOp.getElseBlock());
+                    }
+                    stack.push(conditionalOp.getThenBlock());
+                    stack.push(conditionalOp.getCondition());
+                }
+                case WhileOp whileOp -> {
+                    stack.push(whileOp.getBody());
+                    stack.push(whileOp.getCondition());
+                }
+                case VariableDef variableDef -> stack.push(variableDef.getValue());
+                case Return returnOp -> {
+                    if (returnOp.getValue() != null) {
+                        stack.push(returnOp.getValue());
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    /*
+        Hashes the kind of the node and what it holds besides its children: the operator, the value, the number of
+        children, or the name. A name bound outside of the function is hashed by the type it has at this point
+        instead of by where it lives.
+     */
+    private long hashNode(Expression expression, Type[][] frames) {
+        return switch (expression) {
+            case IntLiteral literal -> mix(mix(0, 1), literal.getValue());
+            case BooleanLiteral bool -> mix(mix(0, 2), bool.getValue() ? 1 : 0);
+            case Identifier identifier -> mix(hashReference(mix(0, 3), identifier, frames), identifier.getName());
+            case BinaryOp binaryOp -> mix(mix(0, 4), binaryOp.getOperator().getText());
+            case UnaryOp unaryOp -> mix(mix(0, 5), unaryOp.getOperator().getText());
+            case FunctionCall functionCall -> mix(mix(hashReference(mix(0, 6), functionCall, frames),
+                    functionCall.getFunctionName()), functionCall.getParameters().size());
+            case Block block -> mix(mix(0, 7), block.getExpressionList().size());
+            case ConditionalOp conditionalOp -> mix(mix(0, 8), conditionalOp.getElseBlock() != null ? 1 : 0);
+            case WhileOp whileOp -> mix(0, 9);
+            case VariableDef variableDef -> mix(mix(mix(mix(0, 10), variableDef.getName()),
+                    variableDef.getDefinedType().orElse("")), variableDef.getSlot());
+            case Return returnOp -> mix(mix(0, 11), returnOp.getValue() != null ? 1 : 0);
+            default -> mix(0, expression.getClass().getName());
+        };
+    }
+
+    private long hashReference(long hash, BoundExpression expression, Type[][] frames) {
+        if (expression.isGlobal()) {
+            return mix(hash, hashType(getType(expression, frames)));
+        }
+        if (expression.getDepth() < frames.length - 1) {
+            return mix(hash, hashType(frames[expression.getDepth()][expression.getSlot()]));
+        }
+        return mix(hash, expression.getSlot());
+    }
+
+    private static long hashType(Type type) {
+        return switch (type) {
+            case null -> 0;
+            case FunctionType functionType -> {
+                long hash = mix(mix(1, functionType.getFunctionName()), hashType(functionType.getReturnType()));
+                for (Type parameterType : functionType.getParameterTypes()) {
+                    hash = mix(hash, hashType(parameterType));
+                }
+                yield hash;
+            }
+            case ReturnType returnType -> mix(2, hashType(returnType.getActualReturnType()));
+            default -> mix(3, type.getTypeStr());
+        };
+    }
+
+    private static void pushAll(Deque<Expression> stack, List<Expression> expressions) {
+        for (int i = expressions.size() - 1; i >= 0; i--) {
+            stack.push(expressions.get(i));
+        }
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = mix(hash, value.charAt(i));
+        }
+        return mix(hash, value.length());
+    }
+
+    /*
+        One step of the 64 bit MurmurHash3.
+     */
+    private static long mix(long hash, long value) {
+        value *= 0x87C37B91114253D5L;
+        value = Long.rotateLeft(value, 31);
+        value *= 0x4CF5AD432745937FL;
+        hash ^= value;
+        return Long.rotateLeft(hash, 27) * 5 + 0x52DCE729;
+    }
+
+    private Type[][] resolve(Expression expression) throws TypeCheckerException {
+        Resolver resolver = new Resolver();
+        try {
+            if (diagnostics != null) {
+                resolver.resolveWithRecovery(expression);
+                diagnostics.addAll(resolver.getDiagnostics());
+            } else {
+                resolver.resolve(expression);
+            }
+        } catch (ResolverException e) {
+            throw new TypeCheckerException(e.getMessage());
+        }
+        globals = new Type[resolver.getGlobals().size()];
+        globals[0] = types.function("print_int", Types.UNIT, Types.INT);
+        globals[1] = types.function("print_bool", Types.UNIT, Types.BOOLEAN);
+        globals[2] = types.function("read_int", Types.INT);
+        return new Type[][]{new Type[resolver.getFrameSize()]};
+    }
+
+    private Type getType(BoundExpression expression, Type[][] frames) {
+        if (expression.isGlobal() && expression.getSlot() == BoundExpression.UNRESOLVED) {
+            return Types.ERROR;
+        }
+        return expression.isGlobal() ? globals[expression.getSlot()] : frames[expression.getDepth()][expression.getSlot()];
+    }
+
+    private record FunctionBody(FunctionDefinition definition, Type[][] frames, Type returnType) {
+    }
+
+    private static class Frame {
+        private final Expression expression;
+        private final Type[][] frames;
+        private int state;
+        private int index;
+        private Optional<Type> leftType;
+        private Type expectedType;
+        private FunctionType functionType;
+        private List<Type> paramTypes;
+        private Optional<Type> type;
+
+        Frame(Expression expression, Type[][] frames) {
+            this.expression = expression;
+            this.frames = frames;
+        }
+
+        Frame visit(int nextState, Expression child, Type[][] childFrames) {
+            state = nextState;
+            return new Frame(child, childFrames);
+        }
+
+        Frame done(Optional<Type> type) {
+            this.type = type;
+            return null;
+        }
     }
 }
@@ -0,0 +1,417 @@
+package fi.helsinki.compiler.vm;
+
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.ResolverException;
+import fi.helsinki.compiler.exceptions.VirtualMachineException;
+import fi.helsinki.compiler.resolver.Resolver;
+
+import java.util.*;
+
+import static fi.helsinki.compiler.vm.Opcodes.*;
+
+/*
+    Compiles a type checked program to bytecode for the VirtualMachine. Every expression leaves exactly one value on
+    the stack, the unit value for the expressions without one, so the height of the stack is known at each
+    instruction. The variables live in the frame of the function they are declared in, in the slots the Resolver
+    bound them to, and the functions are compiled after the top level code.
+ */
+public class BytecodeCompiler {
+
+    private static final int[] BUILT_IN_OPCODES = {PRINT_INT, PRINT_BOOL, READ_INT};
+
+    private int[] code;
+    private int size;
+    private List<Long> constants;
+    private Map<Long, Integer> constantIndexes;
+    private Deque<Loop> loops;
+    private int unit;
+    // The height of the stack above the frame of the function being compiled
+    private int depth;
+    private int maxDepth;
+
+    public Program compile(Expression expression) throws VirtualMachineException {
+        Resolver resolver = new Resolver();
+        try {
+            resolver.resolve(expression);
+        } catch (ResolverException e) {
+            throw new VirtualMachineException(e.getMessage());
+        }
+        code = new int[256];
+        size = 0;
+        constants = new ArrayList<>();
+        constantIndexes = new HashMap<>();
+        loops = new ArrayDeque<>();
+        unit = constant(0);
+        depth = 0;
+        maxDepth = 0;
+
+        Type resultType = compileCode(expression);
+        emit(HALT);
+        int topMaxStack = maxDepth;
+        Program.Function[] functions = new Program.Function[resolver.getGlobals().size()];
+        if (expression instanceof Block block) {
+            for (Expression topLevel : block.getExpressionList()) {
+                if (topLevel instanceof FunctionDefinition definition) {
+                    depth = 0;
+                    maxDepth = 0;
+                    int entry = size;
+                    compileCode(definition.getBlock());
+                    emit(RETURN);
+                    functions[definition.getSlot()] = new Program.Function(definition.getFunctionName(), entry,
+                            definition.getArguments().size(), definition.getFrameSize(), maxDepth);
+                }
+            }
+        }
+        long[] constantPool = new long[constants.size()];
+        for (int i = 0; i < constantPool.length; i++) {
+            constantPool[i] = constants.get(i);
+        }
+        return new Program(Arrays.copyOf(code, size), constantPool, functions, resolver.getFrameSize(),
+                topMaxStack, resultType);
+    }
+
+    /*
+        Compiles the expression with an explicit stack of frames instead of recursion, so that the nesting depth of the
+        program is not limited by the Java stack. Each frame keeps the state of one node: the step it has reached and
+        the jumps waiting for their target. Returns the type of the value the code leaves on the stack.
+     */
+    private Type compileCode(Expression expression) throws VirtualMachineException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression));
+        Type childType = null;
+        while (true) {
+            Frame frame = stack.peek();
+            Frame next = step(frame, childType);
+            if (next != null) {
+                stack.push(next);
+                childType = null;
+            } else {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frame.type;
+                }
+                childType = frame.type;
+            }
+        }
+    }
+
+    /*
+        Advances the frame by one step. Returns the frame of a child to compile next, or null once the code of the
+        frame has been emitted.
+     */
+    private Frame step(Frame frame, Type childType) throws VirtualMachineException {
+        switch (frame.expression) {
+            case IntLiteral intLiteral: {
+                emit(CONST, constant(intLiteral.getValue()));
+                return frame.done(Types.INT);
+            }
+            case BooleanLiteral bool: {
+                emit(CONST, constant(bool.getValue() ? 1 : 0));
+                return frame.done(Types.BOOLEAN);
+            }
+            case Unit unitExpression: {
+                emit(CONST, unit);
+                return frame.done(Types.UNIT);
+            }
+            case Identifier identifier: {
+                if (identifier.isGlobal()) {
+                    throw new VirtualMachineException("Functions can only be called: " + identifier.getName());
+                }
+                emit(identifier.getDepth() == 0 ? LOAD_TOP : LOAD, identifier.getSlot());
+                return frame.done(identifier.getType());
+            }
+            case VariableDef variableDef: {
+                if (frame.state == 0) {
+                    return frame.visit(1, variableDef.getValue());
+                }
+                emitStore(variableDef);
+                emit(CONST, unit);
+                return frame.done(Types.UNIT);
+            }
+            case UnaryOp unaryOp: {
+                if (frame.state == 0) {
+                    return frame.visit(1, unaryOp.getExpression());
+                }
+                if (unaryOp.getOperator().getText().equals("-")) {
+                    emit(NEG);
+                    return frame.done(Types.INT);
+                }
+                emit(NOT);
+                return frame.done(Types.BOOLEAN);
+            }
+            case BinaryOp binaryOp: {
+                String operator = binaryOp.getOperator().getText();
+                if (operator.equals("=")) {
+                    if (!(binaryOp.getLeft() instanceof Identifier identifier)) {
+                        throw new VirtualMachineException("Expected an identifier: " + binaryOp.getLeft());
+                    }
+                    if (frame.state == 0) {
+                        return frame.visit(1, binaryOp.getRight());
+                    }
+                    // The value of the assignment is the assigned value
+                    emit(DUP);
+                    emitStore(identifier);
+                    return frame.done(childType);
+                }
+                if (operator.equals("and") || operator.equals("or")) {
+                    switch (frame.state) {
+                        case 0:
+                            return frame.visit(1, binaryOp.getLeft());
+                        case 1:
+                            // The left value is the result if it decides it, otherwise it is replaced by the right one
+                            emit(DUP);
+                            frame.jump = emitJump(operator.equals("and") ? JUMP_IF_FALSE : JUMP_IF_TRUE);
+                            emit(POP);
+                            return frame.visit(2, binaryOp.getRight());
+                        default:
+                            patch(frame.jump);
+                            return frame.done(Types.BOOLEAN);
+                    }
+                }
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, binaryOp.getLeft());
+                    case 1:
+                        return frame.visit(2, binaryOp.getRight());
+                    default:
+                        int opcode = switch (operator) {
+                            case "+" -> ADD;
+                            case "-" -> SUB;
+                            case "*" -> MUL;
+                            case "/" -> DIV;
+                            case "%" -> MOD;
+                            case "<" -> LT;
+                            case "<=" -> LE;
+                            case ">" -> GT;
+                            case ">=" -> GE;
+                            case "==" -> EQ;
+                            case "!=" -> NE;
+                            default -> throw new VirtualMachineException("Invalid operator found: " + operator);
+                        };
+                        emit(opcode);
+                        return frame.done(opcode <= MOD ? Types.INT : Types.BOOLEAN);
+                }
+            }
+            case ConditionalOp conditionalOp: {
+                switch (frame.state) {
+                    case 0:
+                        return frame.visit(1, conditionalOp.getCondition());
+                    case 1:
+                        frame.jump = emitJump(JUMP_IF_FALSE);
+                        return frame.visit(2, conditionalOp.getThenBlock());
+                    case 2:
+                        if (conditionalOp.getElseBlock() == null) {
+                            emit(POP);
+                            patch(frame.jump);
+                            emit(CONST, unit);
+                            return frame.done(Types.UNIT);
+                        }
+                        frame.thenType = childType;
+                        int endJump = emitJump(JUMP);
+                        patch(frame.jump);
+                        frame.jump = endJump;
+                        // The value of the then block is not on the stack when the else block starts
+                        depth -= 1;
+                        return frame.visit(3, conditionalOp.getElseBlock());
+                    default:
+                        patch(frame.jump);
+                        return frame.done(frame.thenType);
+                }
+            }
+            case WhileOp whileOp: {
+                switch (frame.state) {
+                    case 0:
+                        frame.loop = new Loop(size, depth);
+                        loops.push(frame.loop);
+                        return frame.visit(1, whileOp.getCondition());
+                    case 1:
+                        frame.jump = emitJump(JUMP_IF_FALSE);
+                        return frame.visit(2, whileOp.getBody());
+                    default:
+                        emit(POP);
+                        emit(JUMP, frame.loop.start);
+                        patch(frame.jump);
+                        for (int breakJump : frame.loop.breaks) {
+                            patch(breakJump);
+                        }
+                        loops.pop();
+                        emit(CONST, unit);
+                        return frame.done(Types.UNIT);
+                }
+            }
+            case Break breakOp: {
+                int before = depth;
+                exitToLoop("break").breaks.add(emitJump(JUMP));
+                afterJump(before);
+                return frame.done(Types.UNIT);
+            }
+            case Continue continueOp: {
+                int before = depth;
+                emit(JUMP, exitToLoop("continue").start);
+                afterJump(before);
+                return frame.done(Types.UNIT);
+            }
+            case Block block: {
+                List<Expression> expressionList = block.getExpressionList();
+                if (frame.state == 1) {
+                    if (frame.index == expressionList.size()) {
+                        return frame.done(childType);
+                    }
+                    emit(POP);
+                }
+                while (frame.index < expressionList.size()) {
+                    Expression next = expressionList.get(frame.index++);
+                    if (!(next instanceof FunctionDefinition)) {
+                        return frame.visit(1, next);
+                    }
+                    // Functions are compiled after the top level code
+                }
+                emit(CONST, unit);
+                return frame.done(Types.UNIT);
+            }
+            case FunctionCall functionCall: {
+                List<Expression> parameters = functionCall.getParameters();
+                if (frame.index < parameters.size()) {
+                    return frame.visit(1, parameters.get(frame.index++));
+                }
+                if (!functionCall.isGlobal()) {
+                    throw new VirtualMachineException("Not a function: " + functionCall.getFunctionName());
+                }
+                int slot = functionCall.getSlot();
+                if (slot < BUILT_IN_OPCODES.length) {
+                    emit(BUILT_IN_OPCODES[slot]);
+                } else {
+                    emit(CALL, slot);
+                    // The arguments become the first slots of the frame of the function, replaced by its value
+                    depth += 1 - parameters.size();
+                }
+                return frame.done(functionCall.getType());
+            }
+            case Return returnOp: {
+                if (frame.state == 0 && returnOp.getValue() != null) {
+                    return frame.visit(1, returnOp.getValue());
+                }
+                if (returnOp.getValue() == null) {
+                    emit(CONST, unit);
+                    childType = Types.UNIT;
+                }
+                emit(RETURN);
+                // The code after the return is unreachable, but is compiled as if the return left a value
+                afterJump(depth);
+                return frame.done(childType);
+            }
+            default: {
+                throw new VirtualMachineException("Invalid expression found: " + frame.expression.getLocation());
+            }
+        }
+    }
+
+    /*
+        Pops the values the enclosing expressions have pushed since the start of the innermost loop, so that the
+        stack is as high as it was at the start of the loop after the jump.
+     */
+    private Loop exitToLoop(String keyword) throws VirtualMachineException {
+        if (loops.isEmpty()) {
+            throw new VirtualMachineException("Found " + keyword + " outside of a loop");
+        }
+        Loop loop = loops.peek();
+        if (depth > loop.depth) {
+            emit(POPN, depth - loop.depth);
+        }
+        return loop;
+    }
+
+    /*
+        The code after a break or continue is unreachable, but is compiled as if the break or continue left a unit
+        value on top of what the enclosing expressions have pushed.
+     */
+    private void afterJump(int before) {
+        depth = before + 1;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void emitStore(BoundExpression expression) {
+        emit(expression.getDepth() == 0 ? STORE_TOP : STORE, expression.getSlot());
+    }
+
+    private int emitJump(int opcode) {
+        emit(opcode, -1);
+        return size - 1;
+    }
+
+    /*
+        Sets the target of the jump whose operand is at the index to the next instruction.
+     */
+    private void patch(int operandIndex) {
+        code[operandIndex] = size;
+    }
+
+    private void emit(int opcode) {
+        append(opcode);
+        depth += stackEffect(opcode);
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void emit(int opcode, int operand) {
+        emit(opcode);
+        append(operand);
+        if (opcode == POPN) {
+            depth -= operand;
+        }
+    }
+
+    private void append(int value) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = value;
+    }
+
+    private int constant(long value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private static class Loop {
+        private final int start;
+        // The height of the stack before the condition
+        private final int depth;
+        private final List<Integer> breaks = new ArrayList<>();
+
+        Loop(int start, int depth) {
+            this.start = start;
+            this.depth = depth;
+        }
+    }
+
+    private static class Frame {
+        private final Expression expression;
+        private int state;
+        private int index;
+        private int jump;
+        private Loop loop;
+        private Type thenType;
+        private Type type;
+
+        Frame(Expression expression) {
+            this.expression = expression;
+        }
+
+        Frame visit(int nextState, Expression child) {
+            state = nextState;
+            return new Frame(child);
+        }
+
+        Frame done(Type type) {
+            this.type = type;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package fi.helsinki.compiler.vm;
+
+/*
+    The instructions of the bytecode. Each instruction is an opcode followed by at most one operand in the int array
+    of the program. Values are longs on the stack, with true being 1, false 0 and the unit value 0.
+ */
+public final class Opcodes {
+
+    // Pushes the constant at the index of the operand in the constant pool
+    public static final int CONST = 0;
+    // Push or pop the slot of the operand in the frame of the current function
+    public static final int LOAD = 1;
+    public static final int STORE = 2;
+    // Push or pop the slot of the operand in the frame of the top level code
+    public static final int LOAD_TOP = 3;
+    public static final int STORE_TOP = 4;
+    public static final int POP = 5;
+    // Pops the number of values given by the operand
+    public static final int POPN = 6;
+    public static final int DUP = 7;
+    public static final int ADD = 8;
+    public static final int SUB = 9;
+    public static final int MUL = 10;
+    public static final int DIV = 11;
+    public static final int MOD = 12;
+    public static final int NEG = 13;
+    public static final int LT = 14;
+    public static final int LE = 15;
+    public static final int GT = 16;
+    public static final int GE = 17;
+    public static final int EQ = 18;
+    public static final int NE = 19;
+    public static final int NOT = 20;
+    // Jump to the instruction at the index of the operand, the conditional ones popping the condition
+    public static final int JUMP = 21;
+    public static final int JUMP_IF_FALSE = 22;
+    public static final int JUMP_IF_TRUE = 23;
+    // Calls the function with the global index of the operand, its arguments being on top of the stack
+    public static final int CALL = 24;
+    public static final int RETURN = 25;
+    public static final int PRINT_INT = 26;
+    public static final int PRINT_BOOL = 27;
+    public static final int READ_INT = 28;
+    // Ends the program, the value of the program being on top of the stack
+    public static final int HALT = 29;
+
+    static final String[] NAMES = {"CONST", "LOAD", "STORE", "LOAD_TOP", "STORE_TOP", "POP", "POPN", "DUP", "ADD",
+            "SUB", "MUL", "DIV", "MOD", "NEG", "LT", "LE", "GT", "GE", "EQ", "NE", "NOT", "JUMP", "JUMP_IF_FALSE",
+            "JUMP_IF_TRUE", "CALL", "RETURN", "PRINT_INT", "PRINT_BOOL", "READ_INT", "HALT"};
+
+    private Opcodes() {
+    }
+
+    static boolean hasOperand(int opcode) {
+        return switch (opcode) {
+            case CONST, LOAD, STORE, LOAD_TOP, STORE_TOP, POPN, JUMP, JUMP_IF_FALSE, JUMP_IF_TRUE, CALL -> true;
+            default -> false;
+        };
+    }
+
+    /*
+        How much the instruction changes the height of the stack. The effect of POPN and CALL depends on the operand,
+        and the compiler accounts for it itself.
+     */
+    static int stackEffect(int opcode) {
+        return switch (opcode) {
+            case CONST, LOAD, LOAD_TOP, DUP, READ_INT -> 1;
+            case STORE, STORE_TOP, POP, ADD, SUB, MUL, DIV, MOD, LT, LE, GT, GE, EQ, NE, JUMP_IF_FALSE, JUMP_IF_TRUE,
+                 RETURN, HALT -> -1;
+            default -> 0;
+        };
+    }
+}
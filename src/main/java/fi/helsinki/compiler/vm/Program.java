@@ -0,0 +1,87 @@
+package fi.helsinki.compiler.vm;
+
+import fi.helsinki.compiler.common.types.Type;
+
+/*
+    A program compiled to bytecode. The code of the top level starts at index 0 and ends with HALT, followed by the
+    code of the functions. Functions are indexed by their global index from the Resolver, so the entries of the
+    built-in functions, which have instructions of their own, are null.
+ */
+public class Program {
+
+    private final int[] code;
+    private final long[] constants;
+    private final Function[] functions;
+    private final int frameSize;
+    private final int maxStack;
+    private final Type resultType;
+
+    Program(int[] code, long[] constants, Function[] functions, int frameSize, int maxStack, Type resultType) {
+        this.code = code;
+        this.constants = constants;
+        this.functions = functions;
+        this.frameSize = frameSize;
+        this.maxStack = maxStack;
+        this.resultType = resultType;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public long[] getConstants() {
+        return constants;
+    }
+
+    Function[] getFunctions() {
+        return functions;
+    }
+
+    /*
+        Number of slots the frame of the top level code needs.
+     */
+    int getFrameSize() {
+        return frameSize;
+    }
+
+    /*
+        The most values the top level code keeps on the stack above its frame at once.
+     */
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    public Type getResultType() {
+        return resultType;
+    }
+
+    /*
+        Lists the instructions, one per line with their index.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            builder.append(pc).append(": ").append(Opcodes.NAMES[opcode]);
+            if (Opcodes.hasOperand(opcode)) {
+                builder.append(' ').append(code[pc + 1]);
+                if (opcode == Opcodes.CONST) {
+                    builder.append(" (").append(constants[code[pc + 1]]).append(')');
+                }
+                pc += 1;
+            }
+            builder.append('\n');
+            pc += 1;
+        }
+        return builder.toString();
+    }
+
+    /*
+        Where the code of a function starts, how many of the slots of its frame are taken by its arguments, and how
+        many values it keeps on the stack above its frame at most.
+     */
+    record Function(String name, int entry, int argumentCount, int frameSize, int maxStack) {
+    }
+}
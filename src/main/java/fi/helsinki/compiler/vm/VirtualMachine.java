@@ -0,0 +1,191 @@
+package fi.helsinki.compiler.vm;
+
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.VirtualMachineException;
+import fi.helsinki.compiler.interpreter.BooleanValue;
+import fi.helsinki.compiler.interpreter.InputReader;
+import fi.helsinki.compiler.interpreter.IntValue;
+import fi.helsinki.compiler.interpreter.Value;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static fi.helsinki.compiler.vm.Opcodes.*;
+
+/*
+    Runs the bytecode of a Program in a single dispatch loop. The frames of the functions and the values being
+    computed share one long array: a call turns its arguments on top of the stack into the first slots of the frame of
+    the function, and a return replaces the frame with the returned value. The return addresses are kept in arrays of
+    their own, so neither deep recursion nor deep nesting uses the Java stack.
+ */
+public class VirtualMachine {
+
+    private final PrintStream out;
+    private InputReader input;
+
+    /*
+        A machine printing to the System.out of the time it runs a program.
+     */
+    public VirtualMachine() {
+        this(null);
+    }
+
+    public VirtualMachine(PrintStream out) {
+        this.out = out;
+    }
+
+    /*
+        Runs the program and returns its value, or null if it has none.
+     */
+    public Value run(Program program) throws VirtualMachineException {
+        PrintStream out = this.out != null ? this.out : System.out;
+        input = null;
+        int[] code = program.getCode();
+        long[] constants = program.getConstants();
+        Program.Function[] functions = program.getFunctions();
+        long[] stack = new long[Math.max(256, program.getFrameSize() + program.getMaxStack())];
+        int[] returnAddresses = new int[64];
+        int[] savedFramePointers = new int[64];
+        int calls = 0;
+        int pc = 0;
+        int fp = 0;
+        int sp = program.getFrameSize();
+        while (true) {
+            switch (code[pc++]) {
+                case CONST -> stack[sp++] = constants[code[pc++]];
+                case LOAD -> stack[sp++] = stack[fp + code[pc++]];
+                case STORE -> stack[fp + code[pc++]] = stack[--sp];
+                case LOAD_TOP -> stack[sp++] = stack[code[pc++]];
+                case STORE_TOP -> stack[code[pc++]] = stack[--sp];
+                case POP -> sp -= 1;
+                case POPN -> sp -= code[pc++];
+                case DUP -> {
+                    stack[sp] = stack[sp - 1];
+                    sp += 1;
+                }
+                case ADD -> {
+                    sp -= 1;
+                    stack[sp - 1] += stack[sp];
+                }
+                case SUB -> {
+                    sp -= 1;
+                    stack[sp - 1] -= stack[sp];
+                }
+                case MUL -> {
+                    sp -= 1;
+                    stack[sp - 1] *= stack[sp];
+                }
+                case DIV -> {
+                    sp -= 1;
+                    stack[sp - 1] /= divisor(stack[sp]);
+                }
+                case MOD -> {
+                    sp -= 1;
+                    stack[sp - 1] %= divisor(stack[sp]);
+                }
+                case NEG -> stack[sp - 1] = -stack[sp - 1];
+                case LT -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                }
+                case LE -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                }
+                case GT -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                }
+                case GE -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                }
+                case EQ -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                }
+                case NE -> {
+                    sp -= 1;
+                    stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+                }
+                case NOT -> stack[sp - 1] ^= 1;
+                case JUMP -> pc = code[pc];
+                case JUMP_IF_FALSE -> pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+                case JUMP_IF_TRUE -> pc = stack[--sp] != 0 ? code[pc] : pc + 1;
+                case CALL -> {
+                    Program.Function function = functions[code[pc++]];
+                    if (calls == returnAddresses.length) {
+                        returnAddresses = Arrays.copyOf(returnAddresses, calls * 2);
+                        savedFramePointers = Arrays.copyOf(savedFramePointers, calls * 2);
+                    }
+                    returnAddresses[calls] = pc;
+                    savedFramePointers[calls] = fp;
+                    calls += 1;
+                    fp = sp - function.argumentCount();
+                    sp = fp + function.frameSize();
+                    if (sp + function.maxStack() > stack.length) {
+                        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + function.maxStack()));
+                    }
+                    pc = function.entry();
+                }
+                case RETURN -> {
+                    long value = stack[--sp];
+                    if (calls == 0) {
+                        // A return in the top level code ends the program
+                        return toValue(program, value);
+                    }
+                    calls -= 1;
+                    sp = fp;
+                    fp = savedFramePointers[calls];
+                    pc = returnAddresses[calls];
+                    stack[sp++] = value;
+                }
+                case PRINT_INT -> {
+                    out.println(stack[sp - 1]);
+                    stack[sp - 1] = 0;
+                }
+                case PRINT_BOOL -> {
+                    out.println(stack[sp - 1] != 0);
+                    stack[sp - 1] = 0;
+                }
+                case READ_INT -> stack[sp++] = readInt();
+                case HALT -> {
+                    return toValue(program, stack[sp - 1]);
+                }
+                default -> throw new VirtualMachineException("Invalid opcode " + code[pc - 1] + " at " + (pc - 1));
+            }
+        }
+    }
+
+    private static long divisor(long value) throws VirtualMachineException {
+        if (value == 0) {
+            throw new VirtualMachineException("Division by zero");
+        }
+        return value;
+    }
+
+    /*
+        Reads as the read_int of the generated assembly does, with one buffered reader for the whole run.
+     */
+    private long readInt() throws VirtualMachineException {
+        try {
+            if (input == null) {
+                input = new InputReader(System.in);
+            }
+            return input.readInt();
+        } catch (InterpreterException e) {
+            throw new VirtualMachineException(e.getMessage());
+        }
+    }
+
+    private static Value toValue(Program program, long value) {
+        if (program.getResultType() == Types.INT) {
+            return new IntValue(value);
+        }
+        if (program.getResultType() == Types.BOOLEAN) {
+            return new BooleanValue(value != 0);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,136 @@
+package fi.helsinki.compiler;
+
+import fi.helsinki.compiler.common.CommonStatics;
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.common.types.BooleanType;
+import fi.helsinki.compiler.common.types.IntType;
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.interpreter.BooleanValue;
+import fi.helsinki.compiler.interpreter.IntValue;
+import fi.helsinki.compiler.interpreter.Interpreter;
+import fi.helsinki.compiler.interpreter.Value;
+import fi.helsinki.compiler.irgenerator.IRGenerator;
+import fi.helsinki.compiler.irgenerator.instructions.Instruction;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.typechecker.TypeChecker;
+import fi.helsinki.compiler.vm.BytecodeCompiler;
+import fi.helsinki.compiler.vm.VirtualMachine;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Runs programs nested 100 000 levels deep through the parser, the type checker, the interpreter, the bytecode
+    compiler and the IR generator on a thread with a small stack, which overflows unless every pass keeps its own stack on the heap.
+ */
+public class DeepNestingTests {
+
+    private static final int DEPTH = 100_000;
+    private static final long STACK_SIZE = 256 * 1024;
+
+    @Test
+    public void testNestedParentheses() throws Throwable {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < DEPTH; i++) {
+            builder.append("(1 + ");
+        }
+        builder.append("1").append(")".repeat(DEPTH));
+        Result result = runPasses(builder.toString());
+        assertTrue(result.type instanceof IntType);
+        assertEquals(DEPTH + 1, ((IntValue) result.value).getIntValue());
+        // DEPTH + 1 constants, DEPTH additions and the final print_int call
+        assertEquals(2 * DEPTH + 2, result.instructions.size());
+    }
+
+    @Test
+    public void testNestedBlocks() throws Throwable {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < DEPTH; i++) {
+            builder.append("{ ").append(i).append("; ");
+        }
+        builder.append("true").append(" }".repeat(DEPTH));
+        Result result = runPasses(builder.toString());
+        assertTrue(result.type instanceof BooleanType);
+        assertTrue(((BooleanValue) result.value).getValue());
+    }
+
+    @Test
+    public void testNamesInNestedBlocks() throws Throwable {
+        // Every block uses the variable of the outermost one, which is found without walking the enclosing scopes
+        StringBuilder builder = new StringBuilder("{ var x = 0; ");
+        for (int i = 0; i < DEPTH; i++) {
+            builder.append("{ var y = x; x = y + 1; ");
+        }
+        builder.append("x").append(" }".repeat(DEPTH + 1));
+        Result result = runPasses(builder.toString());
+        assertTrue(result.type instanceof IntType);
+        assertEquals(DEPTH, ((IntValue) result.value).getIntValue());
+    }
+
+    @Test
+    public void testUnaryChain() throws Throwable {
+        Result result = runPasses("- ".repeat(DEPTH) + "7");
+        assertTrue(result.type instanceof IntType);
+        assertEquals(7, ((IntValue) result.value).getIntValue());
+
+        result = runPasses("not ".repeat(DEPTH + 1) + "true");
+        assertTrue(result.type instanceof BooleanType);
+        assertFalse(((BooleanValue) result.value).getValue());
+    }
+
+    @Test
+    public void testNestedConditionals() throws Throwable {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < DEPTH; i++) {
+            builder.append("if true then { ");
+        }
+        builder.append("42").append(" } else { 0 }".repeat(DEPTH));
+        Result result = runPasses(builder.toString());
+        assertTrue(result.type instanceof IntType);
+        assertEquals(42, ((IntValue) result.value).getIntValue());
+    }
+
+    private Result runPasses(String sourceCode) throws Throwable {
+        AtomicReference<Result> result = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                Block block = new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+                Expression expression = block.getExpressionList().size() == 1
+                        ? block.getExpressionList().getFirst() : block;
+                Optional<Type> type = new TypeChecker().checkType(expression);
+                Value value = new Interpreter().interpretAST(expression);
+                Value vmValue = new VirtualMachine().run(new BytecodeCompiler().compile(expression));
+                assertEquals(describe(value), describe(vmValue));
+                List<Instruction> instructions = new IRGenerator(new CommonStatics()).generateIR(expression);
+                result.set(new Result(type.orElse(null), value, instructions));
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }, "deep-nesting", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return result.get();
+    }
+
+    private static String describe(Value value) {
+        return switch (value) {
+            case null -> "null";
+            case IntValue intValue -> "Int " + intValue.getIntValue();
+            case BooleanValue booleanValue -> "Boolean " + booleanValue.getValue();
+            default -> String.valueOf(value);
+        };
+    }
+
+    private record Result(Type type, Value value, List<Instruction> instructions) {
+    }
+}
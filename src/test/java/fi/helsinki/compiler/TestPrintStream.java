@@ -22,4 +22,8 @@ public class TestPrintStream extends PrintStream {
     public void println(String x) {
         this.output[0] = this.output[0] + x;
     }
+
+    public void write(byte[] buf, int off, int len) {
+        this.output[0] = this.output[0] + new String(buf, off, len);
+    }
 }
@@ -0,0 +1,113 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.exceptions.VirtualMachineException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.typechecker.TypeChecker;
+import fi.helsinki.compiler.vm.BytecodeCompiler;
+import fi.helsinki.compiler.vm.Program;
+import fi.helsinki.compiler.vm.VirtualMachine;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+    Coarse benchmarks of compiled programs against the other engines, comparing the best of several runs of each. Only
+    prints the timings, and is left out of the test task.
+ */
+@Tag("benchmark")
+public class ClosureCompilerBenchmarkTests {
+
+    @Test
+    public void testLoop() throws ParserException, InterpreterException {
+        Block block = parse("var i = 0; var sum = 0;\n" +
+                "while i < 200000 do {\n" +
+                "    if i % 3 == 0 then sum = sum + i else sum = sum - 1;\n" +
+                "    var j = 0;\n" +
+                "    while j < 3 do j = j + 1;\n" +
+                "    i = i + 1;\n" +
+                "}\n" +
+                "sum");
+        CompiledProgram program = new ClosureCompiler().compile(block);
+        long expected = ((IntValue) new Interpreter().interpretAST(block)).getIntValue();
+        assertEquals(expected, ((IntValue) program.run()).getIntValue());
+
+        long interpreterTime = Long.MAX_VALUE;
+        long compiledTime = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            new Interpreter().interpretAST(block);
+            interpreterTime = Math.min(interpreterTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            program.run();
+            compiledTime = Math.min(compiledTime, System.nanoTime() - start);
+        }
+        System.err.printf("Loop: interpreter %.2f ms, closures %.2f ms, %.1fx%n", interpreterTime / 1e6,
+                compiledTime / 1e6, (double) interpreterTime / compiledTime);
+    }
+
+    @Test
+    public void testFibonacci() throws ParserException, InterpreterException, TypeCheckerException,
+            VirtualMachineException {
+        String sourceCode = "fun fib(n: Int): Int {\n" +
+                "    if n < 2 then n else fib(n - 1) + fib(n - 2)\n" +
+                "}\n" +
+                "fib(30)";
+        CompiledProgram program = new ClosureCompiler().compile(parse(sourceCode));
+        Block block = parse(sourceCode);
+        new TypeChecker().checkType(block);
+        Program bytecode = new BytecodeCompiler().compile(block);
+        assertEquals(832040L, ((IntValue) program.run()).getIntValue());
+
+        long compiledTime = Long.MAX_VALUE;
+        long machineTime = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            program.run();
+            compiledTime = Math.min(compiledTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            new VirtualMachine().run(bytecode);
+            machineTime = Math.min(machineTime, System.nanoTime() - start);
+        }
+        System.err.printf("fib(30): closures %.2f ms, bytecode machine %.2f ms%n", compiledTime / 1e6,
+                machineTime / 1e6);
+    }
+
+    /*
+        A program summing a million integers from its input.
+     */
+    @Test
+    public void testReadInt() throws ParserException, InterpreterException {
+        StringBuilder input = new StringBuilder();
+        long expected = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            long value = (i % 2 == 0 ? -1 : 1) * (i * 7919L % 1_000_003);
+            input.append(value).append('\n');
+            expected += value;
+        }
+        byte[] bytes = input.toString().getBytes(StandardCharsets.US_ASCII);
+        CompiledProgram program = new ClosureCompiler().compile(parse(
+                "var i = 0; var sum = 0; while i < 1000000 do { sum = sum + read_int(); i = i + 1; } sum"));
+        long time = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            Value value = program.run(new ByteArrayInputStream(bytes), new ByteArrayOutputStream());
+            time = Math.min(time, System.nanoTime() - start);
+            assertEquals(expected, ((IntValue) value).getIntValue());
+        }
+        System.err.printf("read_int: %d integers in %.2f ms%n", 1_000_000, time / 1e6);
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
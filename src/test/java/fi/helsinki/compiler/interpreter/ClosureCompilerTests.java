@@ -0,0 +1,254 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.TestPrintStream;
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ClosureCompilerTests {
+
+    private static final String[] PROGRAMS = new String[]{
+            "1 + 2 * 3 - 10 / 3 % 2",
+            "var x = true; var y = false; print_bool(x and y); print_bool(x or y); print_bool(not y);",
+            "var x = 10; var y = 20; print_bool(y > x); print_bool(y >= x); print_bool(y <= x); y < x",
+            "var x = 1000; var y = 1000; print_bool(x == y); print_bool(true != false); x != y",
+            "var x = 239; print_int(-x);",
+            "var x = 5; var y = 12; if y > 12 then {x = x + 4} else {x = x - y}",
+            "var x = 5; var y = 11; if y > 12 then {x = x + 4}",
+            "var x = 4; while x < 10 do {x = x + 1; print_int(x);}",
+            "{ var x = 1; { var x = 2; var y = 3; print_int(x); print_int(y); } print_int(x); }",
+            "var a = 30; var b = 2; var c = -2; var d = 2; var e = 221; while a > 2 do {\n" +
+                    "    if b <= 14 then { while c - 2 < 3 do { d = d * 3; c = c + 1; } } else e = e % 10;\n" +
+                    "    a = a - 1; b = b + 1;\n" +
+                    "}\n" +
+                    "print_int(a); print_int(b); print_int(c); print_int(d); print_int(e);",
+            "var evaluated_right_hand_side = false;\n" +
+                    "true or { evaluated_right_hand_side = true; true };\n" +
+                    "false and { evaluated_right_hand_side = true; true };\n" +
+                    "evaluated_right_hand_side",
+            "var x = read_int(); var y = x * 2; y"
+    };
+
+    static String[] stdOut = new String[1];
+
+    @BeforeAll
+    public static void executeBefore() throws FileNotFoundException {
+        System.setOut(new TestPrintStream(stdOut));
+    }
+
+    @Test
+    public void testSameResultsAsInterpreter() throws ParserException, InterpreterException {
+        for (String program : PROGRAMS) {
+            stdOut[0] = "";
+            System.setIn(new ByteArrayInputStream("21".getBytes()));
+            Value expected = new Interpreter().interpretAST(parse(program));
+            String expectedOutput = stdOut[0];
+
+            stdOut[0] = "";
+            System.setIn(new ByteArrayInputStream("21".getBytes()));
+            Value actual = new ClosureCompiler().compile(parse(program)).run();
+            assertEquals(expectedOutput, stdOut[0], program);
+            assertEquals(describe(expected), describe(actual), program);
+        }
+    }
+
+    @Test
+    public void testBreakAndContinue() throws ParserException, InterpreterException {
+        stdOut[0] = "";
+        new ClosureCompiler().compile(parse("var i = 0;\n" +
+                "while true do {\n" +
+                "    i = i + 1;\n" +
+                "    if i % 2 == 0 then continue;\n" +
+                "    if i > 7 then break;\n" +
+                "    var j = 0;\n" +
+                "    while true do { j = j + 1; if j == i then break; }\n" +
+                "    print_int(j);\n" +
+                "}")).run();
+        assertEquals("1\n3\n5\n7\n", stdOut[0]);
+    }
+
+    @Test
+    public void testFunctions() throws ParserException, InterpreterException {
+        stdOut[0] = "";
+        // Mutual recursion, a function called before its definition, and a top level variable read in a function
+        Value value = new ClosureCompiler().compile(parse("var base = 2;\n" +
+                "print_bool(is_even(10));\n" +
+                "fun is_even(n: Int): Bool { if n == 0 then true else is_odd(n - 1) }\n" +
+                "fun is_odd(n: Int): Bool { if n == 0 then false else is_even(n - 1) }\n" +
+                "fun power(n: Int): Int { var result = 1; while n > 0 do { result = result * base; n = n - 1; }" +
+                " return result; }\n" +
+                "print_bool(is_odd(10));\n" +
+                "power(4) + power(power(2))")).run();
+        assertEquals("true\nfalse\n", stdOut[0]);
+        assertEquals(32L, ((IntValue) value).getIntValue());
+        // A return from inside nested loops, and frames growing the stack past its initial size
+        value = new ClosureCompiler().compile(parse("fun find(limit: Int): Int {\n" +
+                "    var i = 0;\n" +
+                "    while true do {\n" +
+                "        var j = 0;\n" +
+                "        while j < 3 do { if i * j > limit then return i * 10 + j; j = j + 1; }\n" +
+                "        i = i + 1;\n" +
+                "    }\n" +
+                "    i\n" +
+                "}\n" +
+                "fun depth(n: Int, a: Int, b: Int): Int { if n == 0 then 0 else 1 + depth(n - 1, a + 1, b) }\n" +
+                "find(1 + 2) + depth(5000, 0, 0)")).run();
+        assertEquals(5022L, ((IntValue) value).getIntValue());
+    }
+
+    @Test
+    public void testSelfTailCalls() throws ParserException, InterpreterException {
+        // Each of these recurses a million times, far deeper than the Java stack would allow
+        assertEquals(1000000L, runInt("fun count(n: Int, total: Int): Int {\n" +
+                "    if n == 0 then total else count(n - 1, total + 1)\n" +
+                "}\n" +
+                "count(1000000, 0)"));
+        assertEquals(500000500000L, runInt("fun sum(n: Int, total: Int): Int {\n" +
+                "    if n == 0 then { return total; }\n" +
+                "    return sum(n - 1, total + n);\n" +
+                "}\n" +
+                "sum(1000000, 0)"));
+        // A return from inside a loop is a tail call as well, and the arguments are all evaluated before any of them
+        // replaces a parameter
+        assertEquals(42L, runInt("fun swap(n: Int, a: Int, b: Int): Int {\n" +
+                "    while true do { if n == 0 then return a - b; return swap(n - 1, b, a); }\n" +
+                "    0\n" +
+                "}\n" +
+                "swap(1000000, 50, 8)"));
+        // A call which is not in a tail position uses the stack of the thread running the program, which is far larger
+        // than the default one, but still runs out
+        assertEquals(100000L, runInt("fun depth(n: Int): Int { if n == 0 then 0 else 1 + depth(n - 1) }\n" +
+                "depth(100000)"));
+        InterpreterException exception = assertThrows(InterpreterException.class,
+                () -> runInt("fun depth(n: Int): Int { if n == 0 then 0 else 1 + depth(n - 1) }\n" +
+                        "depth(100000000)"));
+        assertEquals("Maximum recursion depth exceeded", exception.getMessage());
+    }
+
+    @Test
+    public void testProgramCanBeRunAgain() throws ParserException, InterpreterException {
+        CompiledProgram program = new ClosureCompiler().compile(parse("var x = 1; while x < 100 do x = x * 3; x"));
+        assertEquals(243L, ((IntValue) program.run()).getIntValue());
+        assertEquals(243L, ((IntValue) program.run()).getIntValue());
+    }
+
+    @Test
+    public void testErrors() throws ParserException {
+        InterpreterException exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var x = 1; if x then 1 else 2")).run());
+        assertEquals("Expected a conditional value.", exception.getMessage());
+        exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("{ var x = 1; } x")));
+        assertEquals("Name 'x' not found in the context", exception.getMessage());
+        exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var x = 0; 1 / x")).run());
+        assertEquals("Division by zero", exception.getMessage());
+        exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var x = 0; 1 % x")).run());
+        assertEquals("Division by zero", exception.getMessage());
+    }
+
+    @Test
+    public void testAssignmentKeepsType() throws ParserException, InterpreterException {
+        InterpreterException exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var x = true; x = 5; print_bool(x)")));
+        assertEquals("Expected a Boolean value. Instead found: Int", exception.getMessage());
+        exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var x = 1; x = true; x")));
+        assertEquals("Expected an Int value. Instead found: Boolean", exception.getMessage());
+        exception = assertThrows(InterpreterException.class, () -> new ClosureCompiler().compile(parse(
+                "fun f(a: Int): Int { a = 1 < 2; 0 } f(1)")));
+        assertEquals("Expected an Int value. Instead found: Boolean", exception.getMessage());
+        assertEquals(7L, runInt("var x = 1; x = x + 6; x"));
+    }
+
+    @Test
+    public void testBreakOutsideOfLoop() throws ParserException, InterpreterException {
+        InterpreterException exception = assertThrows(InterpreterException.class,
+                () -> new ClosureCompiler().compile(parse("var i = 0; break; i")));
+        assertEquals("Found break outside of a loop", exception.getMessage());
+        // A function called in a loop cannot leave the loop of its caller
+        exception = assertThrows(InterpreterException.class, () -> new ClosureCompiler().compile(parse(
+                "fun f(): Int { break; 1 } var i = 0; while i < 3 do { i = i + 1; f(); } i")));
+        assertEquals("Found break outside of a loop", exception.getMessage());
+        exception = assertThrows(InterpreterException.class, () -> new ClosureCompiler().compile(parse(
+                "fun f(): Int { continue; 1 } var i = 0; while i < 3 do { i = i + 1; f(); } i")));
+        assertEquals("Found continue outside of a loop", exception.getMessage());
+        assertEquals(2L, runInt("fun f(n: Int): Int { var i = 0; while true do { i = i + 1; if i == n then break; }" +
+                " i } var j = 0; while j < 3 do { j = j + 1; if f(j) == 2 then break; } j"));
+    }
+
+    @Test
+    public void testLoopDoesNotAllocate() throws ParserException, InterpreterException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        CompiledProgram program = new ClosureCompiler().compile(parse("var i = 0; var sum = 0;\n" +
+                "while i < 1000000 do {\n" +
+                "    if i % 3 == 0 or i > 500000 then sum = sum + i else sum = sum - 1;\n" +
+                "    i = i + 1;\n" +
+                "}\n" +
+                "sum"));
+        // Warm up so that the measurement does not include class loading
+        long expected = ((IntValue) program.run()).getIntValue();
+        long threadId = Thread.currentThread().threadId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        Value value = program.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        assertEquals(expected, ((IntValue) value).getIntValue());
+        // Only the stack, the context and the final value are allocated, not anything per iteration
+        assertTrue(allocated < 4096, "Allocated " + allocated + " bytes");
+    }
+
+    @Test
+    public void testCallsDoNotAllocate() throws ParserException, InterpreterException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        CompiledProgram program = new ClosureCompiler().compile(parse("fun fib(n: Int): Int {\n" +
+                "    if n < 2 then n else fib(n - 1) + fib(n - 2)\n" +
+                "}\n" +
+                "fib(25)"));
+        // Warm up so that the measurement does not include class loading
+        assertEquals(75025L, ((IntValue) program.run()).getIntValue());
+        long threadId = Thread.currentThread().threadId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        program.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Over two hundred thousand calls, and only the stack, the context and the final value allocated
+        assertTrue(allocated < 8192, "Allocated " + allocated + " bytes");
+    }
+
+    private long runInt(String sourceCode) throws ParserException, InterpreterException {
+        return ((IntValue) new ClosureCompiler().compile(parse(sourceCode)).run()).getIntValue();
+    }
+
+    private String describe(Value value) {
+        return switch (value) {
+            case null -> "null";
+            case IntValue intValue -> "Int " + intValue.getIntValue();
+            case BooleanValue booleanValue -> "Boolean " + booleanValue.getValue();
+            default -> value.getType();
+        };
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
@@ -0,0 +1,71 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InputReaderTests {
+
+    @Test
+    public void testAssemblyReadIntRules() throws InterpreterException {
+        // A tiny buffer makes the lines span several reads
+        InputReader reader = new InputReader(input("42\n-17\nx1y2z\n--5\n3-\n\n  7  \n99"), null, 3);
+        assertEquals(42, reader.readInt());
+        assertEquals(-17, reader.readInt());
+        // Anything but digits and minus signs is skipped, and each minus sign flips the sign
+        assertEquals(12, reader.readInt());
+        assertEquals(5, reader.readInt());
+        assertEquals(-3, reader.readInt());
+        // An empty line is a zero
+        assertEquals(0, reader.readInt());
+        assertEquals(7, reader.readInt());
+        // The last line does not need a newline
+        assertEquals(99, reader.readInt());
+        InterpreterException exception = assertThrows(InterpreterException.class, reader::readInt);
+        assertEquals("read_int() failed to read input", exception.getMessage());
+    }
+
+    @Test
+    public void testOutputIsFlushedBeforeWaitingForInput() throws InterpreterException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputSink output = new OutputSink(out);
+        InputStream in = new ByteArrayInputStream("5\n".getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                assertEquals("1\n", out.toString());
+                return super.read(b, off, len);
+            }
+        };
+        output.printInt(1);
+        assertEquals(5, new InputReader(in, output).readInt());
+    }
+
+    @Test
+    public void testProgramReadingManyIntegers() throws ParserException, InterpreterException {
+        StringBuilder input = new StringBuilder();
+        long expected = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long value = (i % 2 == 0 ? -1 : 1) * (i * 7919L % 1_000_003);
+            input.append(value).append('\n');
+            expected += value;
+        }
+        CompiledProgram program = new ClosureCompiler().compile(new Parser(new Tokenizer().tokenize(
+                "var i = 0; var sum = 0; while i < 100000 do { sum = sum + read_int(); i = i + 1; } sum",
+                "Testfile.dl")).parse());
+        Value value = program.run(input(input.toString()), new ByteArrayOutputStream());
+        assertEquals(expected, ((IntValue) value).getIntValue());
+    }
+
+    private InputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,127 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.expressions.BinaryOp;
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.common.expressions.WhileOp;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstrumentationTests {
+
+    private static final String LOOP = "var x = 0;\n" +
+            "while x < 10 do {\n" +
+            "    x = x + 1;\n" +
+            "    print_int(x);\n" +
+            "}\n" +
+            "print_bool(x == 10);\n" +
+            "x";
+
+    @Test
+    public void testCounts() throws ParserException, InterpreterException {
+        Block block = parse(LOOP);
+        Instrumentation instrumentation = new Instrumentation();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Value value = new Interpreter(null, out, instrumentation).interpretAST(block);
+        assertEquals(10L, ((IntValue) value).getIntValue());
+        assertEquals("1\n2\n3\n4\n5\n6\n7\n8\n9\n10\ntrue\n", out.toString());
+
+        WhileOp whileOp = (WhileOp) block.getExpressionList().get(1);
+        assertEquals(1, instrumentation.getNodeCount(block));
+        assertEquals(1, instrumentation.getNodeCount(whileOp));
+        // The condition is evaluated once more than the body
+        assertEquals(11, instrumentation.getNodeCount(whileOp.getCondition()));
+        assertEquals(10, instrumentation.getNodeCount(whileOp.getBody()));
+
+        assertEquals(10, instrumentation.getFunction("print_int").getCalls());
+        assertEquals(1, instrumentation.getFunction("print_bool").getCalls());
+        assertTrue(instrumentation.getFunction("print_int").getNanos() > 0);
+        assertNull(instrumentation.getFunction("read_int"));
+        assertEquals(List.of("print_int", "print_bool"),
+                instrumentation.getFunctions().stream().map(Instrumentation.FunctionProfile::getName).toList());
+    }
+
+    @Test
+    public void testHotNodes() throws ParserException, InterpreterException {
+        Block block = parse(LOOP);
+        Instrumentation instrumentation = new Instrumentation();
+        new Interpreter(null, new ByteArrayOutputStream(), instrumentation).interpretAST(block);
+        List<Instrumentation.NodeProfile> hotNodes = instrumentation.getHotNodes(3);
+        assertEquals(3, hotNodes.size());
+        // The identifier x is read in the condition, the addition and the call of every iteration
+        assertEquals(11, hotNodes.getFirst().getCount());
+        assertTrue(hotNodes.getFirst().getCount() >= hotNodes.get(1).getCount());
+        BinaryOp condition = (BinaryOp) ((WhileOp) block.getExpressionList().get(1)).getCondition();
+        String dump = instrumentation.dumpHotNodes(100);
+        assertTrue(dump.contains("11 BinaryOp at " + condition.getLocation() + "\n"), dump);
+        assertEquals(instrumentation.getHotNodes(100).size(), dump.lines().count());
+    }
+
+    @Test
+    public void testStepBudget() throws ParserException {
+        InterpreterException exception = assertThrows(InterpreterException.class,
+                () -> new Interpreter(null, new ByteArrayOutputStream(), new Instrumentation(10_000))
+                        .interpretAST(parse("var x = 0; while true do { x = x + 1; }")));
+        assertEquals("Step budget of 10000 exceeded", exception.getMessage());
+    }
+
+    @Test
+    public void testStepBudgetIsPerRun() throws ParserException, InterpreterException {
+        Block block = parse("var x = 0; while x < 100 do { x = x + 1; } x");
+        Instrumentation instrumentation = new Instrumentation(1_000);
+        for (int i = 0; i < 2; i++) {
+            Value value = new Interpreter(null, new ByteArrayOutputStream(), instrumentation).interpretAST(block);
+            assertEquals(100L, ((IntValue) value).getIntValue());
+        }
+        // Each run takes less than the budget, but both together take more
+        assertTrue(instrumentation.getSteps() > 1_000, "Steps: " + instrumentation.getSteps());
+        assertTrue(instrumentation.getSteps() <= 2_000, "Steps: " + instrumentation.getSteps());
+    }
+
+    @Test
+    public void testCountsAddUpOverRuns() throws ParserException, InterpreterException {
+        Block block = parse("var x = read_int(); x * 2");
+        Instrumentation instrumentation = new Instrumentation();
+        for (int i = 0; i < 3; i++) {
+            Value value = new Interpreter(new ByteArrayInputStream("21\n".getBytes()), new ByteArrayOutputStream(),
+                    instrumentation).interpretAST(block);
+            assertEquals(42L, ((IntValue) value).getIntValue());
+        }
+        assertEquals(3, instrumentation.getFunction("read_int").getCalls());
+        assertEquals(3, instrumentation.getNodeCount(block));
+        // The block, the definition, the call, the multiplication and its two operands
+        assertEquals(18, instrumentation.getSteps());
+    }
+
+    @Test
+    public void testCallTimeLeavesOutArguments() throws ParserException, InterpreterException {
+        // Reading the argument takes at least 50 ms, which is timed to read_int and not to the print_int around it
+        ByteArrayInputStream in = new ByteArrayInputStream("7\n".getBytes()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(b, off, len);
+            }
+        };
+        Instrumentation instrumentation = new Instrumentation();
+        new Interpreter(in, new ByteArrayOutputStream(), instrumentation).interpretAST(parse("print_int(read_int())"));
+        assertTrue(instrumentation.getFunction("read_int").getNanos() >= 50_000_000L);
+        assertTrue(instrumentation.getFunction("print_int").getNanos() < 50_000_000L);
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
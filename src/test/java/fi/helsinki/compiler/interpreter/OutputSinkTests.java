@@ -0,0 +1,88 @@
+package fi.helsinki.compiler.interpreter;
+
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.InterpreterException;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputSinkTests {
+
+    @Test
+    public void testFormatting() throws InterpreterException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputSink sink = new OutputSink(out);
+        for (long value : new long[]{0, 7, -7, 10, -100, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            sink.printInt(value);
+        }
+        sink.printBool(true);
+        sink.printBool(false);
+        assertEquals("", out.toString());
+        sink.flush();
+        assertEquals("0\n7\n-7\n10\n-100\n1234567890123\n9223372036854775807\n-9223372036854775808\ntrue\nfalse\n",
+                out.toString());
+    }
+
+    @Test
+    public void testWritesWhenFull() throws InterpreterException {
+        CountingStream out = new CountingStream();
+        OutputSink sink = new OutputSink(out, 64);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sink.printInt(i * 37L);
+            expected.append(i * 37L).append('\n');
+        }
+        sink.flush();
+        assertEquals(expected.toString(), out.bytes.toString());
+        // Each write fills most of the buffer
+        assertTrue(out.writes < expected.length() / 40, out.writes + " writes");
+    }
+
+    @Test
+    public void testProgramOutput() throws ParserException, InterpreterException {
+        String sourceCode = "var n = 27; var steps = 0;\n" +
+                "while n != 1 do {\n" +
+                "    print_int(n);\n" +
+                "    if n % 2 == 0 then n = n / 2 else n = 3 * n + 1;\n" +
+                "    steps = steps + 1;\n" +
+                "}\n" +
+                "print_bool(steps == 111);";
+        CountingStream interpreterOut = new CountingStream();
+        new Interpreter(interpreterOut).interpretAST(parse(sourceCode));
+        CountingStream compiledOut = new CountingStream();
+        new ClosureCompiler().compile(parse(sourceCode)).run(compiledOut);
+        assertTrue(interpreterOut.bytes.toString().startsWith("27\n82\n41\n124\n"));
+        assertTrue(interpreterOut.bytes.toString().endsWith("\n2\ntrue\n"));
+        assertEquals(interpreterOut.bytes.toString(), compiledOut.bytes.toString());
+        // The 112 lines are written at once when the program ends
+        assertEquals(1, interpreterOut.writes);
+        assertEquals(1, compiledOut.writes);
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+
+    private static class CountingStream extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int writes;
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+            writes += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+            writes += 1;
+        }
+    }
+}
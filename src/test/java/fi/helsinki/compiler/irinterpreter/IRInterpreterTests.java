@@ -0,0 +1,133 @@
+package fi.helsinki.compiler.irinterpreter;
+
+import fi.helsinki.compiler.common.CommonStatics;
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.IRInterpreterException;
+import fi.helsinki.compiler.interpreter.BooleanValue;
+import fi.helsinki.compiler.interpreter.IntValue;
+import fi.helsinki.compiler.interpreter.Value;
+import fi.helsinki.compiler.irgenerator.IRGenerator;
+import fi.helsinki.compiler.irgenerator.instructions.Instruction;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.typechecker.TypeChecker;
+import fi.helsinki.compiler.vm.BytecodeCompiler;
+import fi.helsinki.compiler.vm.VirtualMachine;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IRInterpreterTests {
+
+    private static final String[] PROGRAMS = new String[]{
+            "1 + 2 * 3 - 10 / 3 % 2",
+            "var x = true; var y = false; print_bool(x and y); print_bool(x or y); print_bool(not y);",
+            "var x = 10; var y = 20; print_bool(y > x); print_bool(y >= x); print_bool(y <= x); y < x",
+            "var x = 1000; var y = 1000; print_bool(x == y); print_bool(true != false); x != y",
+            "var x = 239; print_int(-x);",
+            "var x = 5; var y = 12; if y > 12 then {x = x + 4} else {x = x - y}",
+            "var x = 4; while x < 10 do {x = x + 1; print_int(x);}",
+            "{ var x = 1; { var x = 2; var y = 3; print_int(x); print_int(y); } print_int(x); }",
+            "var a = 30; var b = 2; var c = -2; var d = 2; var e = 221; while a > 2 do {\n" +
+                    "    if b <= 14 then { while c - 2 < 3 do { d = d * 3; c = c + 1; } } else { e = e % 10; }\n" +
+                    "    a = a - 1; b = b + 1;\n" +
+                    "}\n" +
+                    "print_int(a); print_int(b); print_int(c); print_int(d); print_int(e);",
+            "var evaluated_right_hand_side = false;\n" +
+                    "true or { evaluated_right_hand_side = true; true };\n" +
+                    "false and { evaluated_right_hand_side = true; true };\n" +
+                    "evaluated_right_hand_side",
+            "var x = read_int(); var y = x * 2; y",
+            "fun fib(n: Int): Int {\n" +
+                    "    return if n < 2 then n else fib(n - 1) + fib(n - 2);\n" +
+                    "}\n" +
+                    "fib(20)",
+            "fun is_even(n: Int): Bool { return if n == 0 then true else is_odd(n - 1); }\n" +
+                    "fun is_odd(n: Int): Bool { return if n == 0 then false else is_even(n - 1); }\n" +
+                    "print_bool(is_even(10)); is_odd(7)"
+    };
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Test
+    public void testSameOutputAsVirtualMachine() throws Exception {
+        for (String program : PROGRAMS) {
+            // The generated main prints the value of the program, which the machine returns instead
+            output.reset();
+            System.setIn(new ByteArrayInputStream("21\n".getBytes()));
+            Block block = parse(program);
+            new TypeChecker().checkType(block);
+            Value value = new VirtualMachine(new PrintStream(output, true)).run(new BytecodeCompiler().compile(block));
+            String expected = output + switch (value) {
+                case null -> "";
+                case IntValue intValue -> intValue.getIntValue() + "\n";
+                case BooleanValue booleanValue -> booleanValue.getValue() + "\n";
+                default -> value.getType();
+            };
+
+            output.reset();
+            System.setIn(new ByteArrayInputStream("21\n".getBytes()));
+            new IRInterpreter(new PrintStream(output, true)).run(generateInstructions(program));
+            assertEquals(expected, output.toString(), program);
+        }
+    }
+
+    @Test
+    public void testFunctions() throws Exception {
+        assertOutput("6\n1\n", "fun sum(a: Int, b: Int, c: Int): Int { return a + b + c; }\n" +
+                "print_int(sum(1, 2, 3));\n" +
+                "fun countdown(n: Int): Unit { while n > 0 do n = n - 1; }\n" +
+                "countdown(5);\n" +
+                "1");
+        // As in the generated assembly, a function without a return gives 0 whatever the value of its body
+        assertOutput("0\n", "fun seven(): Int { 7 }\n" +
+                "seven()");
+        // Deep recursion only uses the arrays of the interpreter
+        assertOutput("100000\n", "fun depth(n: Int): Int { return if n == 0 then 0 else 1 + depth(n - 1); }\n" +
+                "depth(100000)");
+    }
+
+    @Test
+    public void testBreakAndContinue() throws Exception {
+        assertOutput("1\n3\n5\n7\n", "var i = 0;\n" +
+                "while i < 10 do {\n" +
+                "    i = i + 1;\n" +
+                "    if i % 2 == 0 then continue;\n" +
+                "    if i > 7 then break;\n" +
+                "    print_int(i);\n" +
+                "}");
+    }
+
+    @Test
+    public void testMainReturnValue() throws Exception {
+        assertEquals(0L, new IRInterpreter(new PrintStream(output, true)).run(generateInstructions("1 + 2")));
+    }
+
+    @Test
+    public void testErrors() {
+        IRInterpreterException exception = assertThrows(IRInterpreterException.class,
+                () -> new IRInterpreter(new PrintStream(output, true)).run(generateInstructions("var x = 0; 10 / x")));
+        assertEquals("Division by zero", exception.getMessage());
+    }
+
+    private void assertOutput(String expectedOutput, String sourceCode) throws Exception {
+        output.reset();
+        new IRInterpreter(new PrintStream(output, true)).run(generateInstructions(sourceCode));
+        assertEquals(expectedOutput, output.toString(), sourceCode);
+    }
+
+    private List<Instruction> generateInstructions(String sourceCode) throws Exception {
+        Block block = parse(sourceCode);
+        new TypeChecker().checkType(block);
+        return new IRGenerator(new CommonStatics()).generateIR(block);
+    }
+
+    private Block parse(String sourceCode) throws Exception {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
@@ -0,0 +1,90 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.common.expressions.*;
+
+/*
+    Renders an AST with the location of every node, used to compare parsed trees with expected ones and with each
+    other.
+ */
+class AstPrinter {
+
+    static String print(Expression expression) {
+        StringBuilder builder = new StringBuilder();
+        print(expression, builder, true);
+        return builder.toString();
+    }
+
+    /*
+        Renders only the shape of the tree, for comparing trees parsed from differently laid out sources.
+     */
+    static String printWithoutLocations(Expression expression) {
+        StringBuilder builder = new StringBuilder();
+        print(expression, builder, false);
+        return builder.toString();
+    }
+
+    private static void print(Expression expression, StringBuilder builder, boolean locations) {
+        if (expression == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('(').append(expression.getClass().getSimpleName());
+        if (locations && expression.getLocation() != null) {
+            builder.append('@').append(expression.getLocation().getLine()).append(':')
+                    .append(expression.getLocation().getColumn());
+        }
+        if (expression instanceof BinaryOp binaryOp) {
+            builder.append(' ').append(binaryOp.getOperator().getText()).append(' ');
+            print(binaryOp.getLeft(), builder, locations);
+            builder.append(' ');
+            print(binaryOp.getRight(), builder, locations);
+        } else if (expression instanceof UnaryOp unaryOp) {
+            builder.append(' ').append(unaryOp.getOperator().getText()).append(' ');
+            print(unaryOp.getExpression(), builder, locations);
+        } else if (expression instanceof IntLiteral intLiteral) {
+            builder.append(' ').append(intLiteral.getValue());
+        } else if (expression instanceof BooleanLiteral booleanLiteral) {
+            builder.append(' ').append(booleanLiteral.getValue());
+        } else if (expression instanceof Identifier identifier) {
+            builder.append(' ').append(identifier.getName());
+        } else if (expression instanceof FunctionCall functionCall) {
+            builder.append(' ').append(functionCall.getFunctionName());
+            for (Expression parameter : functionCall.getParameters()) {
+                builder.append(' ');
+                print(parameter, builder, locations);
+            }
+        } else if (expression instanceof Block block) {
+            for (Expression child : block.getExpressionList()) {
+                builder.append(' ');
+                print(child, builder, locations);
+            }
+        } else if (expression instanceof ConditionalOp conditionalOp) {
+            builder.append(' ');
+            print(conditionalOp.getCondition(), builder, locations);
+            builder.append(' ');
+            print(conditionalOp.getThenBlock(), builder, locations);
+            builder.append(' ');
+            print(conditionalOp.getElseBlock(), builder, locations);
+        } else if (expression instanceof WhileOp whileOp) {
+            builder.append(' ');
+            print(whileOp.getCondition(), builder, locations);
+            builder.append(' ');
+            print(whileOp.getBody(), builder, locations);
+        } else if (expression instanceof VariableDef variableDef) {
+            builder.append(' ').append(variableDef.getName()).append(' ')
+                    .append(variableDef.getDefinedType().orElse("?")).append(' ');
+            print(variableDef.getValue(), builder, locations);
+        } else if (expression instanceof Return returnExpression) {
+            builder.append(' ');
+            print(returnExpression.getValue(), builder, locations);
+        } else if (expression instanceof FunctionDefinition functionDefinition) {
+            builder.append(' ').append(functionDefinition.getFunctionName());
+            for (FunctionArgumentDefinition argument : functionDefinition.getArguments()) {
+                builder.append(' ').append(argument.getName()).append(':').append(argument.getArgType());
+            }
+            builder.append(' ').append(functionDefinition.getReturnType()).append(' ');
+            print(functionDefinition.getBlock(), builder, locations);
+        }
+        builder.append(')');
+    }
+}
@@ -0,0 +1,154 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.expressions.BinaryOp;
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.common.expressions.FunctionCall;
+import fi.helsinki.compiler.common.expressions.FunctionDefinition;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TokenizeException;
+import fi.helsinki.compiler.tokenizer.TokenizedSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IncrementalParserTests {
+
+    private static final String PROGRAM = "fun square(x: Int): Int {\n" +
+            "    return x * x;\n" +
+            "}\n" +
+            "fun is_even(n: Int): Bool {\n" +
+            "    n % 2 == 0\n" +
+            "}\n" +
+            "var total = 0;\n" +
+            "var i = 1;\n" +
+            "while i <= 10 do {\n" +
+            "    if is_even(i) then total = total + square(i);\n" +
+            "    i = i + 1;\n" +
+            "}\n" +
+            "print_int(total);\n";
+
+    private static final String[] INSERTIONS = new String[]{"", "a", "1", " ", "\n", ";", "{", "}", "(", ")", "+ 2",
+            "= ", "if ", "then", "else", "fun f(): Int { 1 }\n", "var y = 3;", "while", "do", "#", "not ", "x, "};
+
+    @Test
+    public void testEditInsideFunction() throws ParserException {
+        IncrementalParser parser = new IncrementalParser(PROGRAM, "Testfile.dl");
+        assertEquals(6, parser.getReparsedItems());
+        List<Expression> before = List.copyOf(parser.getProgram().getExpressionList());
+
+        Block program = parser.edit(PROGRAM.indexOf("2 == 0"), 1, "3");
+        assertSameAsFullParse(parser);
+        assertEquals(1, parser.getReparsedItems());
+        List<Expression> after = program.getExpressionList();
+        assertSame(before.get(0), after.get(0));
+        assertNotSame(before.get(1), after.get(1));
+        // The program ends with a ';', so its last element is a Unit added after the items
+        for (int i = 2; i < before.size() - 1; i++) {
+            assertSame(before.get(i), after.get(i));
+        }
+    }
+
+    @Test
+    public void testEditChangingLines() throws ParserException {
+        IncrementalParser parser = new IncrementalParser(PROGRAM, "Testfile.dl");
+        List<Expression> before = List.copyOf(parser.getProgram().getExpressionList());
+        int line = before.get(3).getLocation().getLine();
+        int column = before.get(3).getLocation().getColumn();
+
+        // The ';' before the edit is scanned again, so the item ending at it is parsed again
+        parser.edit(PROGRAM.indexOf("var i"), 0, "\n\n");
+        assertSameAsFullParse(parser);
+        assertEquals(1, parser.getReparsedItems());
+        // Joins the second inserted line with the one of "var i", moving it to the right
+        parser.edit(PROGRAM.indexOf("var i") + 1, 1, "    ");
+        assertSameAsFullParse(parser);
+        assertEquals(1, parser.getReparsedItems());
+        List<Expression> after = parser.getProgram().getExpressionList();
+        for (int i = 0; i < before.size() - 1; i++) {
+            if (i != 2) {
+                assertSame(before.get(i), after.get(i));
+            }
+        }
+        assertEquals(line + 1, after.get(3).getLocation().getLine());
+        assertEquals(column + 4, after.get(3).getLocation().getColumn());
+        assertEquals(line + 2, after.get(4).getLocation().getLine());
+    }
+
+    @Test
+    public void testOperatorTokensAreMoved() throws ParserException {
+        String source = "var a = 1;\nprint_int(a + 2 * a);\n";
+        IncrementalParser parser = new IncrementalParser(source, "Testfile.dl");
+        parser.edit(0, 0, "var b = 2;\n");
+        Block expected = new Parser(parser.getSource().getTokens()).parse();
+        FunctionCall expectedCall = (FunctionCall) expected.getExpressionList().get(2);
+        FunctionCall actualCall = (FunctionCall) parser.getProgram().getExpressionList().get(2);
+        BinaryOp expectedSum = (BinaryOp) expectedCall.getParameters().getFirst();
+        BinaryOp actualSum = (BinaryOp) actualCall.getParameters().getFirst();
+        assertEquals(1, parser.getReparsedItems());
+        assertEquals(expectedSum.getOperator(), actualSum.getOperator());
+        assertEquals(((BinaryOp) expectedSum.getRight()).getOperator(), ((BinaryOp) actualSum.getRight()).getOperator());
+    }
+
+    @Test
+    public void testSyntaxErrorIsReparsed() throws ParserException {
+        IncrementalParser parser = new IncrementalParser(PROGRAM, "Testfile.dl");
+        parser.edit(PROGRAM.indexOf("n % 2"), 0, "+ ");
+        assertSameAsFullParse(parser);
+        assertFalse(parser.getDiagnostics().isEmpty());
+        assertTrue(parser.getProgram().getExpressionList().get(0) instanceof FunctionDefinition);
+
+        parser.edit(PROGRAM.indexOf("n % 2"), 2, "");
+        assertSameAsFullParse(parser);
+        assertTrue(parser.getDiagnostics().isEmpty());
+        assertEquals(PROGRAM, parser.getSource().getSource());
+    }
+
+    @Test
+    public void testFailedEditIsNotApplied() throws ParserException {
+        IncrementalParser parser = new IncrementalParser("print_int(1);", "Testfile.dl");
+        assertThrows(ParserException.class, () -> parser.edit(0, 13, " "));
+        assertThrows(TokenizeException.class, () -> parser.edit(0, 0, "@"));
+        assertEquals("print_int(1);", parser.getSource().getSource());
+        parser.edit(10, 1, "2");
+        assertSameAsFullParse(parser);
+    }
+
+    @Test
+    public void testRandomEdits() throws ParserException {
+        Random random = new Random(97531);
+        String source = PROGRAM.repeat(3);
+        IncrementalParser parser = new IncrementalParser(source, "Testfile.dl");
+        for (int i = 0; i < 3000; i++) {
+            source = parser.getSource().getSource();
+            int offset = random.nextInt(source.length() + 1);
+            int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(12, source.length() - offset) + 1) : 0;
+            String inserted = INSERTIONS[random.nextInt(INSERTIONS.length)];
+            try {
+                parser.edit(offset, removed, inserted);
+            } catch (ParserException | TokenizeException e) {
+                assertEquals(source, parser.getSource().getSource());
+                continue;
+            }
+            assertSameAsFullParse(parser);
+            if (parser.getDiagnostics().size() > 3) {
+                // Start over once the source has become too broken to be interesting
+                parser = new IncrementalParser(PROGRAM.repeat(3), "Testfile.dl");
+            }
+        }
+    }
+
+    private void assertSameAsFullParse(IncrementalParser incremental) throws ParserException {
+        TokenizedSource source = TokenizedSource.tokenize(incremental.getSource().getSource(), "Testfile.dl");
+        Parser parser = new Parser(source.getTokens());
+        Block expected = parser.parseWithRecovery();
+        String message = "Source: '" + source.getSource() + "'";
+        assertEquals(AstPrinter.print(expected), AstPrinter.print(incremental.getProgram()), message);
+        assertEquals(parser.getDiagnostics().stream().map(Diagnostic::toString).toList(),
+                incremental.getDiagnostics().stream().map(Diagnostic::toString).toList(), message);
+    }
+}
@@ -69,6 +69,10 @@ public class ParserNegativeTests {
     static Stream<Arguments> dataProvider() {
         return Stream.of(
             Arguments.of("{ a b }", "Parsing failed. Invalid tokens found. Expected ';', but found Text: b, Type: IDENTIFIER, Location: Testfile.dl: L->0, C->4"),
-            Arguments.of("{ if true then { a } b c }", "Parsing failed. Invalid tokens found. Expected ';', but found Text: c, Type: IDENTIFIER, Location: Testfile.dl: L->0, C->23"));
+            Arguments.of("{ if true then { a } b c }", "Parsing failed. Invalid tokens found. Expected ';', but found Text: c, Type: IDENTIFIER, Location: Testfile.dl: L->0, C->23"),
+            Arguments.of("{ } )", "Parsing failed. Unexpected token: Text: ), Type: PUNCTUATION, Location: Testfile.dl: L->0, C->4"),
+            Arguments.of("{ { } ) }", "Parsing failed. Unexpected token: Text: ), Type: PUNCTUATION, Location: Testfile.dl: L->0, C->6"),
+            Arguments.of("{ a", "Testfile.dl: L->0, C->2: expected one of: }"),
+            Arguments.of("fun f(): Int { 1 } + 2", "Parsing failed. Unexpected token: Text: +, Type: OPERATOR, Location: Testfile.dl: L->0, C->19"));
     }
 }
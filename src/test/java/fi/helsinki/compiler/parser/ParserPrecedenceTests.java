@@ -0,0 +1,200 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+    Checks the precedence and associativity of the operators. Fixed sources are compared with the trees the original
+    parser with one method per precedence level built for them. Random sources are written twice, once with only the
+    parentheses the precedence table below requires and once with every operation in parentheses, and both must
+    parse to the same tree.
+ */
+public class ParserPrecedenceTests {
+
+    private static final String[] BINARY_OPERATORS = new String[]{"=", "or", "and", "==", "!=", "<", "<=", ">", ">=",
+            "+", "-", "*", "/", "%"};
+    private static final int[] PRECEDENCES = new int[]{1, 2, 3, 4, 4, 5, 5, 5, 5, 6, 6, 7, 7, 7};
+    private static final int UNARY_PRECEDENCE = 8;
+    private static final int ATOM_PRECEDENCE = 9;
+
+    @ParameterizedTest
+    @MethodSource("sources")
+    void testPrecedence(String sourceCode, String expected) {
+        assertEquals(expected, parse(sourceCode, true), "Source: '" + sourceCode + "'");
+    }
+
+    @Test
+    public void testRandomExpressions() {
+        Random random = new Random(2468);
+        for (int i = 0; i < 3000; i++) {
+            assertSameTree(randomExpression(random, 5));
+        }
+    }
+
+    @Test
+    public void testRandomPrograms() {
+        Random random = new Random(1357);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder minimal = new StringBuilder();
+            StringBuilder full = new StringBuilder();
+            int statements = 1 + random.nextInt(5);
+            for (int j = 0; j < statements; j++) {
+                Source statement = randomStatement(random, 3);
+                minimal.append(statement.minimal()).append(";\n");
+                full.append(statement.full()).append(";\n");
+            }
+            assertSameTree(new Source(minimal.toString(), full.toString(), ATOM_PRECEDENCE));
+        }
+    }
+
+    static Stream<Arguments> sources() {
+        return Stream.of(
+                Arguments.of("1 + 2 * 3 - 4 / 5 % 6",
+                        "(Block@0:0 (BinaryOp@0:10 - (BinaryOp@0:2 + (IntLiteral@0:0 1) (BinaryOp@0:6 * " +
+                                "(IntLiteral@0:4 2) (IntLiteral@0:8 3))) (BinaryOp@0:18 % (BinaryOp@0:14 / " +
+                                "(IntLiteral@0:12 4) (IntLiteral@0:16 5)) (IntLiteral@0:20 6))))"),
+                Arguments.of("a = b = c or d and e == f != g < h <= i > j >= k + l - m * n / o % p",
+                        "(Block@0:0 (BinaryOp@0:2 = (Identifier@0:0 a) (BinaryOp@0:6 = (Identifier@0:4 b) " +
+                                "(BinaryOp@0:10 or (Identifier@0:8 c) (BinaryOp@0:15 and (Identifier@0:13 d) " +
+                                "(BinaryOp@0:26 != (BinaryOp@0:21 == (Identifier@0:19 e) (Identifier@0:24 f)) " +
+                                "(BinaryOp@0:44 >= (BinaryOp@0:40 > (BinaryOp@0:35 <= (BinaryOp@0:31 < " +
+                                "(Identifier@0:29 g) (Identifier@0:33 h)) (Identifier@0:38 i)) (Identifier@0:42 j)) " +
+                                "(BinaryOp@0:53 - (BinaryOp@0:49 + (Identifier@0:47 k) (Identifier@0:51 l)) " +
+                                "(BinaryOp@0:65 % (BinaryOp@0:61 / (BinaryOp@0:57 * (Identifier@0:55 m) " +
+                                "(Identifier@0:59 n)) (Identifier@0:63 o)) (Identifier@0:67 p))))))))))"),
+                Arguments.of("- - a * not b",
+                        "(Block@0:0 (BinaryOp@0:6 * (UnaryOp@0:0 - (UnaryOp@0:2 - (Identifier@0:4 a))) " +
+                                "(UnaryOp@0:8 not (Identifier@0:12 b))))"),
+                Arguments.of("not a == b and -c < d or e",
+                        "(Block@0:0 (BinaryOp@0:22 or (BinaryOp@0:11 and (BinaryOp@0:6 == (UnaryOp@0:0 not " +
+                                "(Identifier@0:4 a)) (Identifier@0:9 b)) (BinaryOp@0:18 < (UnaryOp@0:15 - " +
+                                "(Identifier@0:16 c)) (Identifier@0:20 d))) (Identifier@0:25 e)))"),
+                Arguments.of("x = f(1 + 2, g(y) * 3) - (4 - 5)",
+                        "(Block@0:0 (BinaryOp@0:2 = (Identifier@0:0 x) (BinaryOp@0:23 - (FunctionCall@0:4 f " +
+                                "(BinaryOp@0:8 + (IntLiteral@0:6 1) (IntLiteral@0:10 2)) (BinaryOp@0:18 * " +
+                                "(FunctionCall@0:13 g (Identifier@0:15 y)) (IntLiteral@0:20 3))) (BinaryOp@0:28 - " +
+                                "(IntLiteral@0:26 4) (IntLiteral@0:30 5)))))"),
+                Arguments.of("{ a } + 1",
+                        "(Block@0:0 (BinaryOp@0:0 + (Block@0:0 (Identifier@0:2 a)) (IntLiteral@0:8 1)))"),
+                Arguments.of("a + * b", "ParserException: Invalid token: *Testfile.dl: L->0, C->4: expected an " +
+                        "integer literal or an identifier"),
+                Arguments.of("1 2", "ParserException: Parsing failed. Invalid tokens found. Expected ';', but found " +
+                        "Text: 2, Type: INTEGER_LITERAL, Location: Testfile.dl: L->0, C->2"));
+    }
+
+    /*
+        A generated source with only the required parentheses, the same source with every operation in parentheses,
+        and the precedence of its outermost operation.
+     */
+    private record Source(String minimal, String full, int precedence) {
+    }
+
+    private Source randomStatement(Random random, int depth) {
+        switch (depth <= 0 ? 0 : random.nextInt(5)) {
+            case 1: {
+                String variable = "var v" + random.nextInt(3) + " = ";
+                Source value = randomExpression(random, 3);
+                return new Source(variable + value.minimal(), variable + value.full(), ATOM_PRECEDENCE);
+            }
+            case 2: {
+                Source condition = randomExpression(random, 2);
+                Source thenBranch = randomStatement(random, depth - 1);
+                Source elseBranch = random.nextBoolean() ? null : randomStatement(random, depth - 1);
+                return new Source("if " + condition.minimal() + " then " + thenBranch.minimal()
+                        + (elseBranch == null ? "" : " else " + elseBranch.minimal()),
+                        "if " + condition.full() + " then " + thenBranch.full()
+                                + (elseBranch == null ? "" : " else " + elseBranch.full()), ATOM_PRECEDENCE);
+            }
+            case 3: {
+                Source condition = randomExpression(random, 2);
+                Source body = randomStatement(random, depth - 1);
+                return new Source("while " + condition.minimal() + " do " + body.minimal(),
+                        "while " + condition.full() + " do " + body.full(), ATOM_PRECEDENCE);
+            }
+            case 4: {
+                Source first = randomStatement(random, depth - 1);
+                Source second = randomStatement(random, depth - 1);
+                return new Source("{ " + first.minimal() + "; " + second.minimal() + " }",
+                        "{ " + first.full() + "; " + second.full() + " }", ATOM_PRECEDENCE);
+            }
+            default: {
+                // The parser does not take a statement in a block starting with '(' so the expression is assigned
+                Source expression = randomExpression(random, 3);
+                return new Source("x0 = " + expression.minimal(), "x0 = " + expression.full(), ATOM_PRECEDENCE);
+            }
+        }
+    }
+
+    private Source randomExpression(Random random, int depth) {
+        if (depth <= 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(5)) {
+                case 0: return atom(Integer.toString(random.nextInt(100)));
+                case 1: return atom("true");
+                case 2: {
+                    Source argument = randomExpression(random, depth - 1);
+                    return new Source("f(" + argument.minimal() + ")", "f(" + argument.full() + ")",
+                            ATOM_PRECEDENCE);
+                }
+                default: return atom("x" + random.nextInt(3));
+            }
+        }
+        switch (random.nextInt(6)) {
+            case 0: {
+                Source inner = randomExpression(random, depth - 1);
+                return new Source("(" + inner.minimal() + ")", "(" + inner.full() + ")", ATOM_PRECEDENCE);
+            }
+            case 1: {
+                String operator = random.nextBoolean() ? "-" : "not ";
+                Source operand = randomExpression(random, depth - 1);
+                return new Source(operator + parenthesize(operand, operand.precedence() < UNARY_PRECEDENCE),
+                        "(" + operator + operand.full() + ")", UNARY_PRECEDENCE);
+            }
+            default: {
+                Source left = randomExpression(random, depth - 1);
+                int index = random.nextInt(BINARY_OPERATORS.length);
+                Source right = randomExpression(random, depth - 1);
+                String operator = BINARY_OPERATORS[index];
+                int precedence = PRECEDENCES[index];
+                // Assignment is right associative and the other operators are left associative
+                boolean rightAssociative = operator.equals("=");
+                boolean parenthesizeLeft = rightAssociative ? left.precedence() <= precedence
+                        : left.precedence() < precedence;
+                boolean parenthesizeRight = rightAssociative ? right.precedence() < precedence
+                        : right.precedence() <= precedence;
+                return new Source(parenthesize(left, parenthesizeLeft) + " " + operator + " "
+                        + parenthesize(right, parenthesizeRight),
+                        "(" + left.full() + " " + operator + " " + right.full() + ")", precedence);
+            }
+        }
+    }
+
+    private Source atom(String text) {
+        return new Source(text, text, ATOM_PRECEDENCE);
+    }
+
+    private String parenthesize(Source source, boolean parenthesize) {
+        return parenthesize ? "(" + source.minimal() + ")" : source.minimal();
+    }
+
+    private void assertSameTree(Source source) {
+        assertEquals(parse(source.full(), false), parse(source.minimal(), false),
+                "Source: '" + source.minimal() + "', parenthesized: '" + source.full() + "'");
+    }
+
+    private String parse(String sourceCode, boolean locations) {
+        try {
+            Parser parser = new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl"));
+            return locations ? AstPrinter.print(parser.parse()) : AstPrinter.printWithoutLocations(parser.parse());
+        } catch (Exception e) {
+            return e.getClass().getSimpleName() + (locations ? ": " + e.getMessage() : "");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package fi.helsinki.compiler.parser;
+
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.tokenizer.Token;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParserRecoveryTests {
+
+    private static final String[] FRAGMENTS = new String[]{
+            "if", "then", "else", "while", "do", "var", "x", "y", "f", "1", "true", "not", "-", "+", "*", "==", "=",
+            "and", "(", ")", "{", "}", "{", "}", ";", ";", ",", ":", "Int", "return", "break"};
+
+    @Test
+    public void testAllErrorsAreReported() throws ParserException {
+        Parser parser = parser("var x = ;\nvar y: Int 1;\nprint_int(x + );\nvar z = 3;");
+        Block block = parser.parseWithRecovery();
+        List<Diagnostic> diagnostics = parser.getDiagnostics();
+        assertEquals(3, diagnostics.size());
+        assertEquals(0, diagnostics.get(0).getLocation().getLine());
+        assertEquals(8, diagnostics.get(0).getLocation().getColumn());
+        assertEquals(1, diagnostics.get(1).getLocation().getLine());
+        assertEquals("Testfile.dl: L->1, C->11: expected one of: =", diagnostics.get(1).getMessage());
+        assertEquals(2, diagnostics.get(2).getLocation().getLine());
+
+        List<Expression> expressions = block.getExpressionList();
+        assertEquals(5, expressions.size());
+        assertInstanceOf(ErrorExpression.class, expressions.get(0));
+        assertInstanceOf(ErrorExpression.class, expressions.get(1));
+        assertInstanceOf(ErrorExpression.class, expressions.get(2));
+        assertEquals("z", ((VariableDef) expressions.get(3)).getName());
+        assertInstanceOf(Unit.class, expressions.get(4));
+    }
+
+    @Test
+    public void testErrorsInNestedBlocks() throws ParserException {
+        Parser parser = parser("{ a b; c }\nwhile true do { if x then { 1 + } else { 2 } }\nd e");
+        Block block = parser.parseWithRecovery();
+        List<Diagnostic> diagnostics = parser.getDiagnostics();
+        assertEquals(3, diagnostics.size());
+        assertEquals("Parsing failed. Invalid tokens found. Expected ';', but found Text: b, Type: IDENTIFIER, " +
+                "Location: Testfile.dl: L->0, C->4", diagnostics.get(0).getMessage());
+        assertEquals(1, diagnostics.get(1).getLocation().getLine());
+        assertEquals(32, diagnostics.get(1).getLocation().getColumn());
+        assertEquals(2, diagnostics.get(2).getLocation().getLine());
+
+        List<Expression> expressions = block.getExpressionList();
+        assertEquals(4, expressions.size());
+        Block first = (Block) expressions.get(0);
+        assertEquals(3, first.getExpressionList().size());
+        assertInstanceOf(Identifier.class, first.getExpressionList().get(0));
+        assertInstanceOf(ErrorExpression.class, first.getExpressionList().get(1));
+        assertInstanceOf(Identifier.class, first.getExpressionList().get(2));
+        // The error inside the then block leaves the rest of the while loop intact
+        WhileOp whileOp = (WhileOp) expressions.get(1);
+        ConditionalOp conditionalOp = (ConditionalOp) ((Block) whileOp.getBody()).getExpressionList().getFirst();
+        assertInstanceOf(ErrorExpression.class, ((Block) conditionalOp.getThenBlock()).getExpressionList().getFirst());
+        assertNotNull(conditionalOp.getElseBlock());
+        assertInstanceOf(Identifier.class, expressions.get(2));
+        assertInstanceOf(ErrorExpression.class, expressions.get(3));
+    }
+
+    @Test
+    public void testUnmatchedBraces() throws ParserException {
+        Parser parser = parser("{ } ) ; 1 }; 2");
+        Block block = parser.parseWithRecovery();
+        assertEquals(2, parser.getDiagnostics().size());
+        assertEquals("Parsing failed. Unexpected token: Text: ), Type: PUNCTUATION, Location: Testfile.dl: L->0, C->4",
+                parser.getDiagnostics().get(0).getMessage());
+        assertEquals(10, parser.getDiagnostics().get(1).getLocation().getColumn());
+        assertInstanceOf(IntLiteral.class, block.getExpressionList().getLast());
+
+        parser = parser("{ var a = 1; { a");
+        block = parser.parseWithRecovery();
+        assertEquals(1, parser.getDiagnostics().size());
+        assertEquals("Testfile.dl: L->0, C->15: expected one of: }", parser.getDiagnostics().getFirst().getMessage());
+        assertEquals(2, block.getExpressionList().size());
+        assertInstanceOf(Identifier.class, ((Block) block.getExpressionList().get(1)).getExpressionList().getFirst());
+    }
+
+    @Test
+    public void testValidProgramHasNoDiagnostics() throws ParserException {
+        String sourceCode = "var n: Int = read_int();\nwhile n > 1 do {\n    if n % 2 == 0 then { n = n / 2; } " +
+                "else { n = 3 * n + 1; }\n    print_int(n);\n}";
+        Parser parser = parser(sourceCode);
+        Block recovered = parser.parseWithRecovery();
+        assertTrue(parser.getDiagnostics().isEmpty());
+        assertEquals(AstPrinter.print(parser(sourceCode).parse()), AstPrinter.print(recovered));
+    }
+
+    @Test
+    public void testRandomTokensAlwaysRecover() {
+        Random random = new Random(97531);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int fragments = 1 + random.nextInt(30);
+            for (int j = 0; j < fragments; j++) {
+                builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]).append(' ');
+            }
+            String sourceCode = builder.toString();
+            String strictError = null;
+            String strictTree = null;
+            try {
+                strictTree = AstPrinter.print(parser(sourceCode).parse());
+            } catch (ParserException e) {
+                strictError = e.getMessage();
+            }
+            Parser parser = parser(sourceCode);
+            Block block = assertDoesNotThrow(parser::parseWithRecovery, sourceCode);
+            List<Diagnostic> diagnostics = parser.getDiagnostics();
+            if (strictError != null) {
+                assertFalse(diagnostics.isEmpty(), sourceCode);
+                assertEquals(strictError, diagnostics.getFirst().getMessage(), sourceCode);
+            } else if (diagnostics.isEmpty()) {
+                assertEquals(strictTree, AstPrinter.print(block), sourceCode);
+            }
+        }
+    }
+
+    private Parser parser(String sourceCode) {
+        List<Token> tokens = new Tokenizer().tokenize(sourceCode, "Testfile.dl");
+        return new Parser(tokens);
+    }
+}
@@ -0,0 +1,95 @@
+package fi.helsinki.compiler.resolver;
+
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.ResolverException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResolverTests {
+
+    @Test
+    public void testShadowingAndSlots() throws ParserException, ResolverException {
+        Block block = parse("var x = 1; { var x = x + 1; var y = 3; print_int(x); } { var z = 4; z } x");
+        Resolver resolver = new Resolver();
+        resolver.resolve(block);
+        List<Expression> expressions = block.getExpressionList();
+
+        VariableDef outerX = (VariableDef) expressions.get(0);
+        assertBinding(0, 0, outerX);
+        List<Expression> first = ((Block) expressions.get(1)).getExpressionList();
+        VariableDef innerX = (VariableDef) first.get(0);
+        assertBinding(0, 1, innerX);
+        // The value of the inner x is resolved before it is declared, so it refers to the outer one
+        assertBinding(0, 0, (Identifier) ((BinaryOp) innerX.getValue()).getLeft());
+        assertBinding(0, 2, (VariableDef) first.get(1));
+        FunctionCall print = (FunctionCall) first.get(2);
+        assertBinding(BoundExpression.GLOBAL, 0, print);
+        assertBinding(0, 1, (Identifier) print.getParameters().getFirst());
+
+        // The slots of the first block are free again in its sibling
+        List<Expression> second = ((Block) expressions.get(2)).getExpressionList();
+        assertBinding(0, 1, (VariableDef) second.get(0));
+        assertBinding(0, 1, (Identifier) second.get(1));
+        assertBinding(0, 0, (Identifier) expressions.get(3));
+        assertEquals(3, resolver.getFrameSize());
+    }
+
+    @Test
+    public void testFunctions() throws ParserException, ResolverException {
+        Block block = parse("var n = 2;\n" +
+                "fun twice(x: Int): Int { var y = x * 2; return y; }\n" +
+                "fun main_loop(a: Int, b: Bool): Int { if b then twice(a) + n else a }\n" +
+                "print_int(twice(read_int()));");
+        Resolver resolver = new Resolver();
+        resolver.resolve(block);
+        assertEquals(List.of("print_int", "print_bool", "read_int", "twice", "main_loop"), resolver.getGlobals());
+        assertEquals(1, resolver.getFrameSize());
+
+        FunctionDefinition twice = (FunctionDefinition) block.getExpressionList().get(1);
+        assertBinding(BoundExpression.GLOBAL, 3, twice);
+        assertBinding(1, 0, twice.getArguments().getFirst());
+        assertBinding(1, 1, (VariableDef) twice.getBlock().getExpressionList().getFirst());
+        assertEquals(2, twice.getFrameSize());
+
+        FunctionDefinition mainLoop = (FunctionDefinition) block.getExpressionList().get(2);
+        assertBinding(1, 1, mainLoop.getArguments().get(1));
+        assertEquals(2, mainLoop.getFrameSize());
+        ConditionalOp conditional = (ConditionalOp) mainLoop.getBlock().getExpressionList().getFirst();
+        BinaryOp sum = (BinaryOp) conditional.getThenBlock();
+        assertBinding(BoundExpression.GLOBAL, 3, (FunctionCall) sum.getLeft());
+        // Variables of the top level code declared before a function are visible in it
+        assertBinding(0, 0, (Identifier) sum.getRight());
+
+        FunctionCall print = (FunctionCall) block.getExpressionList().get(3);
+        FunctionCall call = (FunctionCall) print.getParameters().getFirst();
+        assertBinding(BoundExpression.GLOBAL, 3, call);
+        assertBinding(BoundExpression.GLOBAL, 2, (FunctionCall) call.getParameters().getFirst());
+    }
+
+    @Test
+    public void testErrors() throws ParserException {
+        ResolverException exception = assertThrows(ResolverException.class,
+                () -> new Resolver().resolve(parse("{ var x = 1; var x = 2; }")));
+        assertEquals("Variable already declared in this scope: x", exception.getMessage());
+        exception = assertThrows(ResolverException.class, () -> new Resolver().resolve(parse("{ var x = 1; } x")));
+        assertEquals("Name 'x' not found in the context", exception.getMessage());
+        exception = assertThrows(ResolverException.class,
+                () -> new Resolver().resolve(parse("fun f(a: Int): Int { a }\nprint_int(a)")));
+        assertEquals("Name 'a' not found in the context", exception.getMessage());
+    }
+
+    private void assertBinding(int depth, int slot, BoundExpression expression) {
+        assertEquals(depth, expression.getDepth(), expression.getName());
+        assertEquals(slot, expression.getSlot(), expression.getName());
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
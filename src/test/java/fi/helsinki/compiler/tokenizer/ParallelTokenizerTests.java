@@ -0,0 +1,128 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.exceptions.TokenizeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelTokenizerTests {
+
+    private static final String PROGRAM_CHUNK = "var n: Int = read_int();\n" +
+            "while n > 1 and not done do {\n" +
+            "    if n % 2 == 0 then { # checking if n is even\n" +
+            "        n = n / 2;\n" +
+            "    } else {\n" +
+            "        n = 3*n + 1; // odd\n" +
+            "    }\n" +
+            "    print_int(n);\n" +
+            "}\n";
+
+    private static final String[] FRAGMENTS = new String[]{
+            "if", "while", "var", "do", "then", "else", "break", "return", "true", "or", "and", "not", "x", "123",
+            "\"str\"", "==", "=", "!=", "<=", "+", "-", "{", "}", "(", ")", ";", " ", "\t", "\n", "\n", "\n",
+            "// comment", "# comment", "\r\n", "\r", "@"};
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Test
+    public void testSameTokensAsSequential() {
+        String sourceCode = PROGRAM_CHUNK.repeat(3_000);
+        List<Token> tokens = new ParallelTokenizer(pool).tokenize(sourceCode, "Testfile.dl", 16);
+        assertSameTokens(sequential(sourceCode), tokens);
+        assertEquals(3_000 * 9 - 1, tokens.getLast().getTokenLocation().getLine());
+    }
+
+    @Test
+    public void testLargeSourceIsTokenizedInParallel() {
+        String sourceCode = PROGRAM_CHUNK.repeat(Tokenizer.PARALLEL_THRESHOLD / PROGRAM_CHUNK.length() + 1);
+        assertTrue(ParallelTokenizer.splitPoints(sourceCode, 8).length > 2);
+        assertSameTokens(sequential(sourceCode), new Tokenizer().tokenize(sourceCode, "Testfile.dl"));
+    }
+
+    @Test
+    public void testCompileStream() {
+        String sourceCode = PROGRAM_CHUNK.repeat(Tokenizer.PARALLEL_THRESHOLD / PROGRAM_CHUNK.length() + 1);
+        List<Token> expected = sequential(sourceCode);
+        TokenStream stream = new Tokenizer().compileStream(sourceCode, "Testfile.dl");
+        List<Token> actual = new ArrayList<>();
+        while (!stream.isAtEnd()) {
+            actual.add(stream.advance());
+        }
+        assertSameTokens(expected, actual);
+        // A large source is tokenized before the stream is returned, a small one while it is read
+        assertThrows(TokenizeException.class, () -> new Tokenizer().compileStream(sourceCode + "@", "Testfile.dl"));
+        assertDoesNotThrow(() -> new Tokenizer().compileStream(PROGRAM_CHUNK + "@", "Testfile.dl"));
+    }
+
+    @Test
+    public void testSplitPoints() {
+        assertArrayEquals(new int[]{0, 4, 8}, ParallelTokenizer.splitPoints("abc\ndef\n", 2));
+        // A "\r\n" is never split, and a chunk is not created without a newline to split at
+        assertArrayEquals(new int[]{0, 9}, ParallelTokenizer.splitPoints("abc\r\ndef\n", 2));
+        assertArrayEquals(new int[]{0, 5}, ParallelTokenizer.splitPoints("abcde", 4));
+        assertArrayEquals(new int[]{0, 0}, ParallelTokenizer.splitPoints("", 4));
+    }
+
+    @Test
+    public void testFirstErrorIsReported() {
+        String sourceCode = PROGRAM_CHUNK.repeat(100) + "x @\n" + PROGRAM_CHUNK.repeat(100) + "y @\n";
+        TokenizeException expected = assertThrows(TokenizeException.class, () -> sequential(sourceCode));
+        TokenizeException actual = assertThrows(TokenizeException.class,
+                () -> new ParallelTokenizer(pool).tokenize(sourceCode, "Testfile.dl", 8));
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+
+    @Test
+    public void testRandomSources() {
+        Random random = new Random(98765);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int fragments = random.nextInt(40);
+            for (int j = 0; j < fragments; j++) {
+                builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            String sourceCode = builder.toString();
+            int chunkCount = 1 + random.nextInt(8);
+            List<Token> expected = null;
+            String expectedError = null;
+            try {
+                expected = sequential(sourceCode);
+            } catch (TokenizeException e) {
+                expectedError = e.getMessage();
+            }
+            List<Token> actual = null;
+            String actualError = null;
+            try {
+                actual = new ParallelTokenizer(pool).tokenize(sourceCode, "Testfile.dl", chunkCount);
+            } catch (TokenizeException e) {
+                actualError = e.getMessage();
+            }
+            assertEquals(expectedError, actualError, sourceCode);
+            if (expected != null) {
+                assertSameTokens(expected, actual);
+            }
+        }
+    }
+
+    private List<Token> sequential(String sourceCode) {
+        TokenScanner scanner = new TokenScanner(sourceCode, "Testfile.dl");
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        while ((token = scanner.nextToken()) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private void assertSameTokens(List<Token> expected, List<Token> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package fi.helsinki.compiler.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SourceInputTests {
+
+    private static final String SOURCE_CODE = "var n: Int = read_int();\nprint_int(n);\n" +
+            "while n > 1 do { # loop\n    n = n / 2;\n}\n";
+
+    @Test
+    public void testMappedFileGivesSameTokens() throws IOException {
+        Path file = Files.createTempFile("source", ".dl");
+        try {
+            Files.writeString(file, SOURCE_CODE);
+            SourceInput sourceInput = SourceInput.fromFile(file);
+            assertEquals(SOURCE_CODE.length(), sourceInput.size());
+            assertSameTokens(SOURCE_CODE, new Tokenizer().tokenize(sourceInput, "Testfile.dl"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testStreamIsReadFully() throws IOException {
+        // A stream returning a few bytes at a time, larger than the initial buffer
+        String sourceCode = SOURCE_CODE.repeat(500);
+        InputStream inputStream = new ByteArrayInputStream(sourceCode.getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] bytes, int offset, int length) {
+                return super.read(bytes, offset, Math.min(length, 7));
+            }
+        };
+        SourceInput sourceInput = SourceInput.fromStream(inputStream);
+        assertEquals(sourceCode.length(), sourceInput.size());
+        assertEquals(sourceCode, sourceInput.asCharSequence().toString());
+        assertSameTokens(sourceCode, new Tokenizer().tokenize(sourceInput, "Testfile.dl"));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        SourceInput sourceInput = SourceInput.fromStream(new ByteArrayInputStream(new byte[0]));
+        assertEquals(0, sourceInput.size());
+        assertTrue(new Tokenizer().tokenize(sourceInput, "Testfile.dl").isEmpty());
+    }
+
+    @Test
+    public void testAsciiIsViewedInPlace() {
+        CharSequence characters = SourceInput.of("a = \"xy\"".getBytes(StandardCharsets.US_ASCII)).asCharSequence();
+        assertFalse(characters instanceof String);
+        assertEquals("xy\"", characters.subSequence(5, 8).toString());
+        assertEquals('y', characters.subSequence(5, 8).charAt(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> characters.charAt(8));
+    }
+
+    @Test
+    public void testNonAsciiIsDecoded() {
+        String sourceCode = "var s = \"äö\"; s";
+        SourceInput sourceInput = SourceInput.of(sourceCode.getBytes(StandardCharsets.UTF_8));
+        assertEquals(sourceCode, sourceInput.asCharSequence().toString());
+        assertSameTokens(sourceCode, new Tokenizer().tokenize(sourceInput, "Testfile.dl"));
+    }
+
+    private void assertSameTokens(String sourceCode, List<Token> actual) {
+        List<Token> expected = new Tokenizer().tokenize(sourceCode, "Testfile.dl");
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+}
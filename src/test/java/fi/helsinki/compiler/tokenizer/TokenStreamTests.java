@@ -0,0 +1,97 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenStreamTests {
+
+    @Test
+    public void testPeekAndAdvance() {
+        TokenStream stream = new Tokenizer().stream("a + 1", "Testfile.dl");
+        assertEquals("a", stream.peek().getText());
+        assertEquals("+", stream.peek(1).getText());
+        assertEquals(TokenType.START, stream.lookBack().getTokenType());
+        assertEquals("a", stream.advance().getText());
+        assertEquals("a", stream.lookBack().getText());
+        assertEquals("+", stream.advance().getText());
+        assertEquals("1", stream.peek().getText());
+        assertEquals(TokenType.END, stream.peek(1).getTokenType());
+        assertEquals("1", stream.advance().getText());
+        assertTrue(stream.isAtEnd());
+        Token endToken = stream.advance();
+        assertEquals(TokenType.END, endToken.getTokenType());
+        assertEquals(4, endToken.getTokenLocation().getColumn());
+        assertEquals("1", stream.lookBack().getText());
+    }
+
+    @Test
+    public void testEmptyStream() {
+        TokenStream stream = new Tokenizer().stream("  // only a comment", "Testfile.dl");
+        assertTrue(stream.isEmpty());
+        assertTrue(stream.isAtEnd());
+    }
+
+    @Test
+    public void testTokensArePulledOnDemand() {
+        CountingSource source = new CountingSource(new TokenScanner("x = 1; y = 2; z = 3", "Testfile.dl"));
+        TokenStream stream = new TokenStream(source);
+        assertEquals(0, source.pulled);
+        stream.peek();
+        assertEquals(1, source.pulled);
+        stream.advance();
+        stream.advance();
+        assertEquals(2, source.pulled);
+        stream.peek(1);
+        assertEquals(4, source.pulled);
+        List<Token> remaining = stream.remainingTokens();
+        assertEquals(9, remaining.size());
+        assertEquals("1", remaining.getFirst().getText());
+    }
+
+    @Test
+    public void testParserReadsLazily() throws ParserException {
+        // The tokenizer error at the end is only reached once the parser has consumed everything before it
+        CountingSource source = new CountingSource(new TokenScanner("var x = 1; x = x + 1; x @", "Testfile.dl"));
+        Parser parser = new Parser(new TokenStream(source));
+        assertThrows(RuntimeException.class, parser::parse);
+        assertEquals(12, source.pulled);
+    }
+
+    @Test
+    public void testSameTreeAsTokenList() throws ParserException {
+        String sourceCode = "fun square(x: Int): Int {\n    return x * x;\n}\n" +
+                "var a = 3; while a > 0 do { a = a - 1; print_int(square(a)); }\nif a == 0 then 1 else 2";
+        Block fromList = new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+        Block fromStream = new Parser(new Tokenizer().stream(sourceCode, "Testfile.dl")).parse();
+        assertEquals(fromList.getExpressionList().size(), fromStream.getExpressionList().size());
+        for (int i = 0; i < fromList.getExpressionList().size(); i++) {
+            assertEquals(fromList.getExpressionList().get(i).getClass(), fromStream.getExpressionList().get(i).getClass());
+            assertEquals(fromList.getExpressionList().get(i).getLocation(),
+                    fromStream.getExpressionList().get(i).getLocation());
+        }
+    }
+
+    private static class CountingSource implements TokenSource {
+        private final TokenSource source;
+        private int pulled;
+
+        CountingSource(TokenSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public Token nextToken() {
+            Token token = source.nextToken();
+            if (token != null) {
+                pulled += 1;
+            }
+            return token;
+        }
+    }
+}
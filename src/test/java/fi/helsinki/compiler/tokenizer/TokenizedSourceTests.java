@@ -0,0 +1,141 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.exceptions.TokenizeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenizedSourceTests {
+
+    private static final String PROGRAM_CHUNK = "var n: Int = read_int();\n" +
+            "while n > 1 and not done do {\n" +
+            "    if n % 2 == 0 then { # checking if n is even\n" +
+            "        n = n / 2;\n" +
+            "    } else {\n" +
+            "        n = 3*n + 1; // odd\n" +
+            "    }\n" +
+            "    print_int(n);\n" +
+            "}\n";
+
+    private static final String[] INSERTIONS = new String[]{"", "a", "1", " ", "\n", "\"", "#", "//", "=", "!", "or ",
+            "if", "true", "}", "\r", "\r\n", "\t", "var", "x y", "return", "@"};
+
+    @Test
+    public void testSingleCharacterEdit() {
+        TokenizedSource tokenized = TokenizedSource.tokenize("if a <= bee then print_int(123)", "Testfile.dl");
+        TokenizedSource edited = tokenized.edit(5, 1, "=");
+        assertEquals("if a == bee then print_int(123)", edited.getSource());
+        assertSameAsFullTokenization(edited);
+        assertEquals(2, edited.getRescannedTokens());
+    }
+
+    @Test
+    public void testEditChangingLines() {
+        TokenizedSource tokenized = TokenizedSource.tokenize(PROGRAM_CHUNK, "Testfile.dl");
+        TokenizedSource edited = tokenized.edit(PROGRAM_CHUNK.indexOf("n > 1"), 1, "m\n\n");
+        assertSameAsFullTokenization(edited);
+        assertEquals(tokenized.getTokens().getLast().getTokenLocation().getLine() + 2,
+                edited.getTokens().getLast().getTokenLocation().getLine());
+    }
+
+    @Test
+    public void testEditInsideComment() {
+        TokenizedSource tokenized = TokenizedSource.tokenize(PROGRAM_CHUNK, "Testfile.dl");
+        TokenizedSource edited = tokenized.edit(PROGRAM_CHUNK.indexOf("checking"), 0, "\n");
+        assertSameAsFullTokenization(edited);
+    }
+
+    @Test
+    public void testInvalidEdit() {
+        TokenizedSource tokenized = TokenizedSource.tokenize("a = 1", "Testfile.dl");
+        assertThrows(TokenizeException.class, () -> tokenized.edit(2, 0, "@"));
+        assertThrows(IndexOutOfBoundsException.class, () -> tokenized.edit(3, 5, ""));
+    }
+
+    @Test
+    public void testLargeSourceRescansLocally() {
+        String sourceCode = PROGRAM_CHUNK.repeat(1_200);
+        TokenizedSource tokenized = TokenizedSource.tokenize(sourceCode, "Testfile.dl");
+        int offset = sourceCode.length() / 2;
+        TokenizedSource edited = tokenized.edit(offset, 1, "x");
+        assertTrue(edited.getRescannedTokens() <= 3, "Rescanned " + edited.getRescannedTokens() + " tokens");
+        assertSameAsFullTokenization(edited);
+        edited = edited.edit(offset, 0, "\n");
+        assertTrue(edited.getRescannedTokens() <= 3, "Rescanned " + edited.getRescannedTokens() + " tokens");
+        assertSameAsFullTokenization(edited);
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(4321);
+        TokenizedSource tokenized = TokenizedSource.tokenize(PROGRAM_CHUNK, "Testfile.dl");
+        for (int i = 0; i < 3000; i++) {
+            String source = tokenized.getSource();
+            int offset = random.nextInt(source.length() + 1);
+            int removedLength = random.nextInt(Math.min(4, source.length() - offset) + 1);
+            String insertion = INSERTIONS[random.nextInt(INSERTIONS.length)];
+            String editedSource = source.substring(0, offset) + insertion + source.substring(offset + removedLength);
+            TokenizedSource edited;
+            try {
+                edited = tokenized.edit(offset, removedLength, insertion);
+            } catch (TokenizeException e) {
+                TokenizeException expected = assertThrows(TokenizeException.class,
+                        () -> new Tokenizer().tokenize(editedSource, "Testfile.dl"));
+                assertEquals(expected.getMessage(), e.getMessage());
+                continue;
+            }
+            assertEquals(editedSource, edited.getSource());
+            assertSameAsFullTokenization(edited);
+            tokenized = edited;
+        }
+    }
+
+    @Test
+    public void testRandomEditsAcrossBlocks() {
+        Random random = new Random(8765);
+        TokenizedSource tokenized = TokenizedSource.tokenize(PROGRAM_CHUNK.repeat(30), "Testfile.dl");
+        for (int i = 0; i < 500; i++) {
+            String source = tokenized.getSource();
+            int offset = random.nextInt(source.length() + 1);
+            int removedLength = random.nextInt(Math.min(random.nextBoolean() ? 4 : 400, source.length() - offset) + 1);
+            String insertion = random.nextInt(10) == 0 ? PROGRAM_CHUNK.repeat(1 + random.nextInt(10))
+                    : INSERTIONS[random.nextInt(INSERTIONS.length)];
+            try {
+                tokenized = tokenized.edit(offset, removedLength, insertion);
+            } catch (TokenizeException e) {
+                continue;
+            }
+            assertEquals(source.substring(0, offset) + insertion + source.substring(offset + removedLength),
+                    tokenized.getSource());
+            assertSameAsFullTokenization(tokenized);
+        }
+    }
+
+    @Test
+    public void testEditKeepsTokensOfOtherBlocks() {
+        String sourceCode = PROGRAM_CHUNK.repeat(1_200);
+        TokenizedSource tokenized = TokenizedSource.tokenize(sourceCode, "Testfile.dl");
+        Token first = tokenized.getTokens().getFirst();
+        Token last = tokenized.getTokens().getLast();
+        // The edit does not change the length of the line, so the blocks after it stay in place
+        TokenizedSource edited = tokenized.edit(sourceCode.length() / 2, 1, "x");
+        assertSame(first, edited.getTokens().getFirst());
+        assertSame(last, edited.getTokens().getLast());
+        assertSameAsFullTokenization(edited);
+    }
+
+    private void assertSameAsFullTokenization(TokenizedSource tokenized) {
+        TokenizedSource expected = TokenizedSource.tokenize(tokenized.getSource(), "Testfile.dl");
+        List<Token> expectedTokens = expected.getTokens();
+        List<Token> actualTokens = tokenized.getTokens();
+        String description = "Source: '" + tokenized.getSource().replace("\n", "\\n") + "'";
+        assertEquals(expectedTokens.size(), actualTokens.size(), description);
+        for (int i = 0; i < expectedTokens.size(); i++) {
+            assertEquals(expectedTokens.get(i).toString(), actualTokens.get(i).toString(), description);
+            assertEquals(expected.getOffset(i), tokenized.getOffset(i), description);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.common.Location;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/*
+    Checks that tokens with a fixed text do not allocate their own strings or locations, and that a location given
+    to a token is kept as it is.
+ */
+public class TokenizerAllocationTests {
+
+    private static final String FIXED_TOKENS = "while true do { if not false then break; } else { return; }\n";
+
+    @Test
+    public void testFixedTokensShareText() {
+        List<Token> tokens = new Tokenizer().tokenize("{ x = y; } { z = w; }", "Testfile.dl");
+        assertSame(tokens.get(0).getText(), tokens.get(6).getText());
+        assertSame(tokens.get(2).getText(), tokens.get(8).getText());
+        assertEquals(TokenKind.LEFT_BRACE, tokens.get(0).getKind());
+        assertEquals(TokenKind.ASSIGN, tokens.get(2).getKind());
+        assertNull(tokens.get(1).getKind());
+    }
+
+    @Test
+    public void testTokenLocationIsUnpacked() {
+        Token token = new Tokenizer().tokenize("a\n  b", "Testfile.dl").get(1);
+        assertEquals(1, token.getTokenLocation().getLine());
+        assertEquals(2, token.getTokenLocation().getColumn());
+        assertEquals("Testfile.dl", token.getTokenLocation().getFile());
+    }
+
+    @Test
+    public void testGivenLocationIsKept() {
+        Location location = new NullLocation();
+        Token token = new Token("x", TokenType.IDENTIFIER, location);
+        assertSame(location, token.getTokenLocation());
+        assertSame(location, Token.marker(TokenType.END, token).getTokenLocation());
+        assertNull(new Token("x", TokenType.IDENTIFIER, null).getTokenLocation());
+    }
+
+    @Test
+    public void testFixedTokensAllocateLittle() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        String sourceCode = FIXED_TOKENS.repeat(10_000);
+        // Warm up so that the measurement does not include class loading
+        int tokenCount = scan(sourceCode);
+        long threadId = Thread.currentThread().threadId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        scan(sourceCode);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        double bytesPerToken = (double) allocated / tokenCount;
+        // A token object is around 40 bytes, a separate string and location would more than double that
+        assertTrue(bytesPerToken < 64, "Allocated " + bytesPerToken + " bytes per token");
+    }
+
+    private int scan(String sourceCode) {
+        TokenScanner scanner = new TokenScanner(sourceCode, "Testfile.dl");
+        int count = 0;
+        while (scanner.nextToken() != null) {
+            count += 1;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,56 @@
+package fi.helsinki.compiler.tokenizer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+    Coarse benchmark checking that tokenizing time grows linearly with the input size. Timings depend on the load of
+    the machine, so it is only run by the benchmark task and not by test.
+ */
+@Tag("benchmark")
+public class TokenizerBenchmarkTests {
+
+    private static final String PROGRAM_CHUNK = "var n: Int = read_int();\n" +
+            "print_int(n);\n" +
+            "// This is a while loop\n" +
+            "while n > 1 and not done do {\n" +
+            "    if n % 2 == 0 then { # checking if n is even\n" +
+            "        n = n / 2;\n" +
+            "    } else {\n" +
+            "        n = 3*n + 1;\n" +
+            "    }\n" +
+            "    print_int(n);\n" +
+            "}\n";
+
+    @Test
+    public void testLinearScaling() {
+        String smallProgram = PROGRAM_CHUNK.repeat(2_000);
+        String largeProgram = PROGRAM_CHUNK.repeat(16_000);
+        int tokensPerChunk = new Tokenizer().tokenize(PROGRAM_CHUNK, "Testfile.dl").size();
+        assertEquals(tokensPerChunk * 16_000, new Tokenizer().tokenize(largeProgram, "Testfile.dl").size());
+
+        long smallTime = bestTime(smallProgram);
+        long largeTime = bestTime(largeProgram);
+        System.err.printf("Tokenizer: %d chars in %.2f ms, %d chars in %.2f ms%n", smallProgram.length(),
+                smallTime / 1e6, largeProgram.length(), largeTime / 1e6);
+        // 8x the input should take roughly 8x the time. A quadratic tokenizer would take around 64x.
+        assertTrue(largeTime < smallTime * 24, "Tokenizing does not scale linearly: " + smallTime + "ns vs "
+                + largeTime + "ns");
+    }
+
+    private long bestTime(String sourceCode) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            TokenScanner scanner = new TokenScanner(sourceCode, "Testfile.dl");
+            while (scanner.nextToken() != null) {
+                // Tokens are dropped right away so that the measurement is not dominated by the garbage collector
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,148 @@
+package fi.helsinki.compiler.tokenizer;
+
+import fi.helsinki.compiler.common.Location;
+import fi.helsinki.compiler.exceptions.TokenizeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+    Pins down how the Tokenizer treats unusual input, as the original regex based tokenizer did, and checks that
+    random input is either rejected or split into tokens covering everything but whitespace and comments.
+ */
+public class TokenizerEdgeCaseTests {
+
+    private static final String[] FRAGMENTS = new String[]{
+            "if", "while", "function", "fun", "var", "do", "then", "else", "Unit", "break", "continue", "return",
+            "true", "false", "trueish", "falsey", "or", "and", "not", "orange", "android", "var1", "var_x", "variable",
+            "x", "_y", "a|b", "print_int", "123", "0", "42abc", "\"str ing\"", "\"unterminated", "==", "=", "!=", "!",
+            "<=", ">=", "<", ">", "+", "-", "*", "/", "%", "{", "}", "(", ")", ",", ";", ":", " ", "  ", "\t", "\n",
+            "\n", "// comment", "# comment", "//", "#", "@", "\r", "\r\n", "$", "."};
+
+    @ParameterizedTest
+    @MethodSource("sources")
+    void testEdgeCases(String sourceCode, String expected) {
+        String actual;
+        try {
+            actual = render(new Tokenizer().tokenize(sourceCode, "Testfile.dl"));
+        } catch (TokenizeException e) {
+            actual = "error: " + e.getMessage();
+        }
+        assertEquals(expected, actual, "Source: '" + sourceCode.replace("\n", "\\n").replace("\r", "\\r") + "'");
+    }
+
+    @Test
+    public void testRandomSources() {
+        Random random = new Random(1234);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int fragments = random.nextInt(12);
+            for (int j = 0; j < fragments; j++) {
+                builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertCoversSource(builder.toString());
+        }
+    }
+
+    static Stream<Arguments> sources() {
+        return Stream.of(
+                Arguments.of("", ""),
+                Arguments.of("return-1", "KEYWORD return 0:0; OPERATOR - 0:6; INTEGER_LITERAL 1 0:7"),
+                Arguments.of("return(1)",
+                        "IDENTIFIER return 0:0; PUNCTUATION ( 0:6; INTEGER_LITERAL 1 0:7; PUNCTUATION ) 0:8"),
+                Arguments.of("break}", "KEYWORD break 0:0; PUNCTUATION } 0:5"),
+                Arguments.of("var", "KEYWORD var 0:0"),
+                Arguments.of("var(", "error: Found invalid token: 'v' at line: 0 and column: 0"),
+                Arguments.of("var\tx", "error: Found invalid token: 'v' at line: 0 and column: 0"),
+                Arguments.of("or", "IDENTIFIER or 0:0"),
+                Arguments.of("or\n", "IDENTIFIER or 0:0"),
+                Arguments.of("and x", "OPERATOR and 0:0; IDENTIFIER x 0:4"),
+                Arguments.of("if(x)", "IDENTIFIER if 0:0; PUNCTUATION ( 0:2; IDENTIFIER x 0:3; PUNCTUATION ) 0:4"),
+                Arguments.of("trueish falsely",
+                        "BOOLEAN_LITERAL true 0:0; IDENTIFIER ish 0:4; BOOLEAN_LITERAL false 0:8; IDENTIFIER ly 0:13"),
+                Arguments.of("42abc", "INTEGER_LITERAL 42 0:0; IDENTIFIER abc 0:2"),
+                Arguments.of("a|b", "IDENTIFIER a|b 0:0"),
+                Arguments.of("a||b", "IDENTIFIER a||b 0:0"),
+                Arguments.of("1 != 2", "INTEGER_LITERAL 1 0:0; OPERATOR != 0:2; INTEGER_LITERAL 2 0:5"),
+                Arguments.of("x // trailing", "IDENTIFIER x 0:0"),
+                Arguments.of("x # trailing\r", "error: Found invalid token: '\r' at line: 1 and column: 0"),
+                Arguments.of("x // bad\r\ny", "error: Found invalid token: '\r' at line: 0 and column: 8"),
+                Arguments.of("# bad\ry", "error: Found invalid token: '#' at line: 0 and column: 0"),
+                Arguments.of("\"a\nb\"", "error: Found invalid token: '\"' at line: 0 and column: 0"),
+                Arguments.of("\"unterminated", "error: Found invalid token: '\"' at line: 0 and column: 0"),
+                Arguments.of("if\r", "error: Found invalid token: '\r' at line: 0 and column: 2"),
+                Arguments.of("if\r\n", "error: Found invalid token: '\r' at line: 0 and column: 2"),
+                Arguments.of("a\r\n", "error: Found invalid token: '\r' at line: 0 and column: 1"),
+                Arguments.of("!x", "error: Found invalid token: '!' at line: 0 and column: 0"),
+                Arguments.of("x $ y", "error: Found invalid token: '$' at line: 0 and column: 2"),
+                Arguments.of("1.5", "error: Found invalid token: '.' at line: 0 and column: 1"),
+                Arguments.of("x\u2028", "error: Found invalid token: '\u2028' at line: 0 and column: 1"),
+                Arguments.of("\u00e4", "error: Found invalid token: '\u00e4' at line: 0 and column: 0"));
+    }
+
+    private String render(List<Token> tokens) {
+        StringBuilder builder = new StringBuilder();
+        for (Token token : tokens) {
+            if (!builder.isEmpty()) {
+                builder.append("; ");
+            }
+            Location location = token.getTokenLocation();
+            builder.append(token.getTokenType()).append(' ').append(token.getText()).append(' ')
+                    .append(location.getLine()).append(':').append(location.getColumn());
+        }
+        return builder.toString();
+    }
+
+    /*
+        Checks that every token is found at its location in the source, in order, and that only whitespace and
+        comments are left between them.
+     */
+    private void assertCoversSource(String sourceCode) {
+        List<Token> tokens;
+        try {
+            tokens = new Tokenizer().tokenize(sourceCode, "Testfile.dl");
+        } catch (TokenizeException e) {
+            return;
+        }
+        String description = "Source: '" + sourceCode.replace("\n", "\\n").replace("\r", "\\r") + "'";
+        List<Integer> lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int i = 0; i < sourceCode.length(); i++) {
+            if (sourceCode.charAt(i) == '\n') {
+                lineStarts.add(i + 1);
+            }
+        }
+        int end = 0;
+        for (Token token : tokens) {
+            Location location = token.getTokenLocation();
+            int start = lineStarts.get(location.getLine()) + location.getColumn();
+            assertTrue(start >= end, description);
+            assertTrue(sourceCode.startsWith(token.getText(), start), description);
+            assertSkippable(sourceCode.substring(end, start), description);
+            end = start + token.getText().length();
+        }
+        assertSkippable(sourceCode.substring(end), description);
+    }
+
+    private void assertSkippable(String text, String description) {
+        int i = 0;
+        while (i < text.length()) {
+            if (text.startsWith("//", i) || text.charAt(i) == '#') {
+                while (i < text.length() && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else {
+                assertTrue(Character.isWhitespace(text.charAt(i)), description);
+                i++;
+            }
+        }
+    }
+}
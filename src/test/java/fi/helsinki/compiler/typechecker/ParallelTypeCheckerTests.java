@@ -0,0 +1,126 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelTypeCheckerTests {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @Test
+    public void testSameTypesAsSequential() throws ParserException, TypeCheckerException {
+        String sourceCode = module(1_000, -1, -1, -1);
+        Block sequential = parse(sourceCode);
+        Block parallel = parse(sourceCode);
+        // Both checks use one checker, so that their function types are interned in the same Types
+        TypeChecker typeChecker = new TypeChecker();
+        Optional<Type> expected = typeChecker.checkType(sequential);
+        assertEquals(expected, typeChecker.checkTypeParallel(parallel, pool));
+        assertSame(Types.BOOLEAN, expected.get());
+
+        List<Type> expectedTypes = nodeTypes(sequential);
+        List<Type> actualTypes = nodeTypes(parallel);
+        assertEquals(expectedTypes.size(), actualTypes.size());
+        for (int i = 0; i < expectedTypes.size(); i++) {
+            assertSame(expectedTypes.get(i), actualTypes.get(i), "Node " + i);
+        }
+    }
+
+    @Test
+    public void testFirstErrorIsReported() throws ParserException {
+        // A function body failing before a later function body and a later top level error
+        assertSameError(module(1_000, 300, 700, 900));
+        // The top level code failing before the only function body that fails
+        assertSameError(module(1_000, 800, -1, 200));
+        // Only later function bodies failing
+        assertSameError(module(1_000, -1, 999, -1));
+        assertSameError(module(10, 0, -1, -1));
+    }
+
+    @Test
+    public void testWithoutFunctions() throws ParserException, TypeCheckerException {
+        Block block = parse("var x = 1; { var y = x + 2; y * 3 }");
+        assertSame(Types.INT, new TypeChecker().checkTypeParallel(block, pool).get());
+        assertThrows(TypeCheckerException.class,
+                () -> new TypeChecker().checkTypeParallel(parse("var x = 1; x and true"), pool));
+    }
+
+    private void assertSameError(String sourceCode) throws ParserException {
+        TypeCheckerException expected = assertThrows(TypeCheckerException.class,
+                () -> new TypeChecker().checkType(parse(sourceCode)));
+        for (int i = 0; i < 5; i++) {
+            TypeCheckerException actual = assertThrows(TypeCheckerException.class,
+                    () -> new TypeChecker().checkTypeParallel(parse(sourceCode), pool));
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    /*
+        A module of functions each followed by a top level variable using it. The function with index badBody
+        adds a Boolean, the one with index badReturn returns a Boolean from an Int function, and the top level
+        code after the function with index badTopLevel uses an Int as a condition.
+     */
+    private String module(int functions, int badBody, int badReturn, int badTopLevel) {
+        StringBuilder builder = new StringBuilder("var base = 3;\n");
+        for (int i = 0; i < functions; i++) {
+            builder.append("fun f").append(i).append("(a: Int, b: Bool): Int {\n")
+                    .append("    var c = a * ").append(i == badBody ? "true" : "2").append(" + base;\n")
+                    .append("    while c > 100 do c = c / 2;\n")
+                    .append("    if b and c > 3 then ").append(i == badReturn ? "c > 2" : "c").append(" else -c\n")
+                    .append("}\n")
+                    .append("var v").append(i).append(" = f").append(i).append("(").append(i).append(", ")
+                    .append(i == badTopLevel ? "1" : "true").append(");\n");
+        }
+        return builder.append("v0 == 1").toString();
+    }
+
+    private List<Type> nodeTypes(Expression root) {
+        List<Type> types = new ArrayList<>();
+        Deque<Expression> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Expression expression = stack.pop();
+            types.add(expression.getType());
+            List<Expression> children = new ArrayList<>();
+            switch (expression) {
+                case Block block -> children.addAll(block.getExpressionList());
+                case FunctionDefinition definition -> children.add(definition.getBlock());
+                case BinaryOp binaryOp -> children.addAll(List.of(binaryOp.getLeft(), binaryOp.getRight()));
+                case UnaryOp unaryOp -> children.add(unaryOp.getExpression());
+                case VariableDef variableDef -> children.add(variableDef.getValue());
+                case FunctionCall functionCall -> children.addAll(functionCall.getParameters());
+                case WhileOp whileOp -> children.addAll(List.of(whileOp.getCondition(), whileOp.getBody()));
+                case ConditionalOp conditionalOp -> {
+                    children.add(conditionalOp.getCondition());
+                    children.add(conditionalOp.getThenBlock());
+                    if (conditionalOp.getElseBlock() != null) {
+                        children.add(conditionalOp.getElseBlock());
+                    }
+                }
+                default -> {
+                }
+            }
+            children.forEach(stack::push);
+        }
+        return types;
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
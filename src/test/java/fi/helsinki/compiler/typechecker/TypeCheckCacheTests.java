@@ -0,0 +1,198 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.types.ReturnType;
+import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypeCheckCacheTests {
+
+    private static final String PROGRAM = "var limit = 10;\n" +
+            "fun square(x: Int): Int {\n" +
+            "    return x * x;\n" +
+            "}\n" +
+            "fun is_small(n: Int): Bool {\n" +
+            "    var s = square(n);\n" +
+            "    s < limit\n" +
+            "}\n" +
+            "fun count(): Int {\n" +
+            "    var i = 0;\n" +
+            "    while is_small(i) do i = i + 1;\n" +
+            "    i\n" +
+            "}\n" +
+            "print_int(count());\n";
+
+    @Test
+    public void testUnchangedBodiesAreSkipped() throws ParserException, TypeCheckerException {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        new TypeChecker(cache).checkType(parse(PROGRAM));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+
+        Block cached = parse(PROGRAM);
+        new TypeChecker(cache).checkType(cached);
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        Block expected = parse(PROGRAM);
+        new TypeChecker().checkType(expected);
+        for (int i = 1; i <= 3; i++) {
+            Block expectedBody = ((FunctionDefinition) expected.getExpressionList().get(i)).getBlock();
+            Block cachedBody = ((FunctionDefinition) cached.getExpressionList().get(i)).getBlock();
+            assertSameTypes(expectedBody, cachedBody);
+        }
+    }
+
+    @Test
+    public void testChangesInvalidateTheBodiesDependingOnThem() throws ParserException, TypeCheckerException {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        new TypeChecker(cache).checkType(parse(PROGRAM));
+
+        // Only the edited body is checked again
+        new TypeChecker(cache).checkType(parse(PROGRAM.replace("x * x", "x * x + 1")));
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // A changed signature is checked again with the bodies calling it
+        new TypeChecker(cache).checkType(parse(PROGRAM.replace("(x: Int): Int", "(x: Bool): Int")
+                .replace("x * x", "if x then 1 else 0").replace("square(n)", "square(n > 2)")));
+        assertEquals(3, cache.getHits());
+        assertEquals(6, cache.getMisses());
+
+        // The type of a top level variable used in a body
+        new TypeChecker(cache).checkType(parse(PROGRAM.replace("var limit = 10", "var limit = true")
+                .replace("s < limit", "limit")));
+        assertEquals(5, cache.getHits());
+        assertEquals(7, cache.getMisses());
+    }
+
+    @Test
+    public void testCachedTypesAreInternedAgain() throws ParserException, TypeCheckerException {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        String program = "fun a(c: Bool): Int { if c then return 1 else return 2 }\n" +
+                "fun b(c: Bool): Int { if c then return 3 else return 4 }\n";
+        new TypeChecker(cache).checkType(parse(program));
+        // The body of a is found in the cache and the body of b is checked again
+        Block changed = parse(program.replace("return 4", "return 5"));
+        new TypeChecker(cache).checkType(changed);
+        assertEquals(1, cache.getHits());
+        Type cachedType = ((FunctionDefinition) changed.getExpressionList().get(0)).getBlock().getExpressionList()
+                .getFirst().getType();
+        Type checkedType = ((FunctionDefinition) changed.getExpressionList().get(1)).getBlock().getExpressionList()
+                .getFirst().getType();
+        assertInstanceOf(ReturnType.class, checkedType);
+        assertSame(checkedType, cachedType);
+    }
+
+    @Test
+    public void testErrorsAreNotCached() throws ParserException {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        String invalid = PROGRAM.replace("s < limit", "s + limit");
+        for (int i = 0; i < 2; i++) {
+            assertThrows(TypeCheckerException.class, () -> new TypeChecker(cache).checkType(parse(invalid)));
+        }
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws ParserException, TypeCheckerException {
+        TypeCheckCache cache = new TypeCheckCache(2);
+        cache.put(1, new long[0], new Type[0]);
+        cache.put(2, new long[0], new Type[0]);
+        assertNotNull(cache.get(1, new long[0]));
+        cache.put(3, new long[0], new Type[0]);
+        assertNull(cache.get(2, new long[0]));
+        assertNotNull(cache.get(1, new long[0]));
+        assertNotNull(cache.get(3, new long[0]));
+        assertEquals(2, cache.size());
+
+        cache = new TypeCheckCache(2);
+        new TypeChecker(cache).checkType(parse(PROGRAM));
+        new TypeChecker(cache).checkType(parse(PROGRAM));
+        // Each body evicts the one checked two bodies before it, so none of them is found
+        assertEquals(0, cache.getHits());
+        assertEquals(6, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCollidingBodiesAreCheckedAgain() throws ParserException, TypeCheckerException {
+        // Every body gets the same key, so each one finds the body checked before it
+        TypeCheckCache cache = new TypeCheckCache(16, hash -> 0);
+        new TypeChecker(cache).checkType(parse(PROGRAM));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getCollisions());
+
+        // The same kinds of nodes, but a comparison instead of a sum
+        String compare = "fun f(x: Int): Int { var y = x + x; y }\nfun g(x: Int): Bool { var y = x < x; y }\n";
+        Block checked = parse(compare);
+        new TypeChecker(cache).checkType(checked);
+        assertEquals(0, cache.getHits());
+        assertEquals(4, cache.getCollisions());
+        Block expected = parse(compare);
+        new TypeChecker().checkType(expected);
+        for (int i = 0; i < 2; i++) {
+            assertSameTypes(((FunctionDefinition) expected.getExpressionList().get(i)).getBlock(),
+                    ((FunctionDefinition) checked.getExpressionList().get(i)).getBlock());
+        }
+
+        // The last body put is still found when it is checked again
+        new TypeChecker(cache).checkType(parse("fun g(x: Int): Bool { var y = x < x; y }"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testTypesMustMatchTheShape() {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        assertThrows(IllegalArgumentException.class, () -> cache.put(1, new long[]{1, 2}, new Type[1]));
+        cache.put(1, new long[]{1, 2}, new Type[2]);
+        assertNull(cache.get(1, new long[]{1}));
+        assertNull(cache.get(1, new long[]{1, 3}));
+        assertNotNull(cache.get(1, new long[]{1, 2}));
+        assertEquals(2, cache.getCollisions());
+    }
+
+    @Test
+    public void testParallelCheckUsesCache() throws ParserException, TypeCheckerException {
+        TypeCheckCache cache = new TypeCheckCache(16);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Block first = parse(PROGRAM);
+        assertSame(Types.UNIT, new TypeChecker(cache).checkTypeParallel(first, pool).get());
+        Block second = parse(PROGRAM);
+        assertSame(Types.UNIT, new TypeChecker(cache).checkTypeParallel(second, pool).get());
+        assertEquals(3, cache.getHits());
+        assertSameTypes(((FunctionDefinition) first.getExpressionList().get(2)).getBlock(),
+                ((FunctionDefinition) second.getExpressionList().get(2)).getBlock());
+    }
+
+    private void assertSameTypes(Block expected, Block actual) {
+        List<Expression> expectedList = expected.getExpressionList();
+        List<Expression> actualList = actual.getExpressionList();
+        assertEquals(expectedList.size(), actualList.size());
+        for (int i = 0; i < expectedList.size(); i++) {
+            Type expectedType = expectedList.get(i).getType();
+            assertSame(expectedType, actualList.get(i).getType());
+            if (expectedList.get(i) instanceof VariableDef variableDef) {
+                assertSame(variableDef.getValue().getType(), ((VariableDef) actualList.get(i)).getValue().getType());
+            }
+        }
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
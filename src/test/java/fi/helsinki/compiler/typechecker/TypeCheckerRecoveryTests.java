@@ -0,0 +1,120 @@
+package fi.helsinki.compiler.typechecker;
+
+import fi.helsinki.compiler.common.Diagnostic;
+import fi.helsinki.compiler.common.expressions.*;
+import fi.helsinki.compiler.common.types.Types;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TypeCheckerRecoveryTests {
+
+    @Test
+    public void testAllErrorsAreReported() throws ParserException, TypeCheckerException {
+        TypeChecker typeChecker = new TypeChecker();
+        typeChecker.checkTypeWithRecovery(parse("var x = 1 + true;\n" +
+                "var n = 1; if 3 then print_int(n);\n" +
+                "var y: Bool = 5;\n" +
+                "print_bool(n);\n" +
+                "z = 2;\n" +
+                "while n do {\n" +
+                "    var w = not 1; print_int(x); }"));
+        List<Diagnostic> diagnostics = typeChecker.getDiagnostics();
+        assertEquals(List.of(
+                "Expected an Int type for '+' operator. Instead found Optional[Int], Optional[Boolean]",
+                "Expected a Boolean type for the conditional type.",
+                "Mismatching types found: Boolean, Optional[Int]",
+                "Expected type of Boolean. Instead found Int",
+                "Name 'z' not found in the context",
+                "Expected a Boolean type for the conditional type.",
+                "Invalid unary operation"), diagnostics.stream().map(Diagnostic::getMessage).toList());
+        for (int i = 0; i < diagnostics.size(); i++) {
+            assertEquals(i, diagnostics.get(i).getLocation().getLine(), diagnostics.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testErrorsAreNotRepeated() throws ParserException, TypeCheckerException {
+        TypeChecker typeChecker = new TypeChecker();
+        Block block = parse("var x = true + 1;\n" +
+                "var y = x * 2 - unknown;\n" +
+                "if y > 3 then y else -y");
+        assertSame(Types.ERROR, typeChecker.checkTypeWithRecovery(block).get());
+        assertEquals(2, typeChecker.getDiagnostics().size());
+        assertSame(Types.ERROR, ((VariableDef) block.getExpressionList().get(1)).getType());
+
+        // A declared type is kept for the variable even if its value is invalid
+        typeChecker.checkTypeWithRecovery(parse("var x: Int = true + 1; var y = x * 2; y > 3"));
+        assertEquals(1, typeChecker.getDiagnostics().size());
+    }
+
+    @Test
+    public void testFunctions() throws ParserException, TypeCheckerException {
+        TypeChecker typeChecker = new TypeChecker();
+        typeChecker.checkTypeWithRecovery(parse("fun f(a: Int, b: Bool): Int {\n" +
+                "    if b then a else b\n" +
+                "}\n" +
+                "fun g(): Bool { 1 }\n" +
+                "var x = 1;\n" +
+                "f(true, 1) + x(2) + f(1) + g()"));
+        // The sum is not reported, since x(2) has the error type
+        assertEquals(List.of(
+                "Types does not match in the conditional blocks: Int ,Boolean",
+                "Type mismatch for function, return type: Boolean, actual return type: Optional[Int]",
+                "Expected type of Int. Instead found Boolean",
+                "Expected type of Boolean. Instead found Int",
+                "Not a function: x",
+                "Mismatching parameters provided to the functionf"),
+                typeChecker.getDiagnostics().stream().map(Diagnostic::getMessage).toList());
+    }
+
+    @Test
+    public void testAssignmentValueIsCheckedOnce() throws ParserException, TypeCheckerException {
+        TypeChecker typeChecker = new TypeChecker();
+        Block block = parse("var x = 1; x = true and 2; x = 3");
+        typeChecker.checkTypeWithRecovery(block);
+        assertEquals(List.of("Expected a Boolean type for 'and' operator. Instead found Optional[Boolean], Optional[Int]"),
+                typeChecker.getDiagnostics().stream().map(Diagnostic::getMessage).toList());
+        BinaryOp assignment = (BinaryOp) block.getExpressionList().get(2);
+        assertSame(Types.INT, assignment.getLeft().getType());
+        assertSame(Types.INT, assignment.getType());
+
+        typeChecker.checkTypeWithRecovery(parse("var x = 1; x = false; 1 = 2"));
+        assertEquals(List.of("Expected type Int", "Only identifiers are allowed"),
+                typeChecker.getDiagnostics().stream().map(Diagnostic::getMessage).toList());
+    }
+
+    @Test
+    public void testSyntaxErrorsAreSkipped() throws ParserException, TypeCheckerException {
+        Parser parser = new Parser(new Tokenizer().tokenize("var x = ;\nprint_int(x + 1);\nvar y = 1 + true;",
+                "Testfile.dl"));
+        Block block = parser.parseWithRecovery();
+        assertEquals(1, parser.getDiagnostics().size());
+        TypeChecker typeChecker = new TypeChecker();
+        typeChecker.checkTypeWithRecovery(block);
+        // Only the error of the last line, since x is not declared and its use was reported by the Resolver
+        assertEquals(2, typeChecker.getDiagnostics().size());
+        assertEquals("Name 'x' not found in the context", typeChecker.getDiagnostics().get(0).getMessage());
+        assertEquals(2, typeChecker.getDiagnostics().get(1).getLocation().getLine());
+        // The same program still fails at once without recovery
+        assertThrows(TypeCheckerException.class, () -> new TypeChecker().checkType(block));
+    }
+
+    @Test
+    public void testValidProgram() throws ParserException, TypeCheckerException {
+        TypeChecker typeChecker = new TypeChecker(new TypeCheckCache(4));
+        Block block = parse("fun f(a: Int): Bool { a > 2 } var x = 3; print_bool(f(x)); x");
+        assertSame(Types.INT, typeChecker.checkTypeWithRecovery(block).get());
+        assertTrue(typeChecker.getDiagnostics().isEmpty());
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}
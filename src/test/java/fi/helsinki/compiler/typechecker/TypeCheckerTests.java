@@ -1,20 +1,26 @@
 package fi.helsinki.compiler.typechecker;
 
-import fi.helsinki.compiler.common.expressions.Expression;
+import fi.helsinki.compiler.common.expressions.*;
 import fi.helsinki.compiler.exceptions.ParserException;
 import fi.helsinki.compiler.exceptions.TypeCheckerException;
-import fi.helsinki.compiler.common.expressions.BinaryOp;
-import fi.helsinki.compiler.common.expressions.IntLiteral;
 import fi.helsinki.compiler.parser.Parser;
 import fi.helsinki.compiler.tokenizer.Token;
 import fi.helsinki.compiler.tokenizer.TokenType;
 import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.common.types.FunctionType;
 import fi.helsinki.compiler.common.types.IntType;
 import fi.helsinki.compiler.common.types.Type;
+import fi.helsinki.compiler.common.types.Types;
 import fi.helsinki.compiler.common.types.UnitType;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -126,4 +132,120 @@ public class TypeCheckerTests {
         Optional<Type> type = typeChecker.checkType(expression);
         assertTrue(type.get() instanceof IntType);
     }
+
+    @Test
+    public void testTypesAreCanonical() throws ParserException, TypeCheckerException {
+        Tokenizer tokenizer = new Tokenizer();
+        Parser parser = new Parser(tokenizer.tokenize("fun f(a: Int, b: Bool): Int {\n" +
+                        "  if b then return a;\n" +
+                        "  -a\n" +
+                        "}\n" +
+                        "var x = f(1, true) + 2;\n" +
+                        "x == 3",
+                "Testfile.dl"));
+        Block program = (Block) parser.parse();
+        Optional<Type> type = new TypeChecker().checkType(program);
+        assertSame(Types.BOOLEAN, type.get());
+        assertSame(Types.INT, program.getExpressionList().get(1).getType());
+        FunctionType functionType = (FunctionType) program.getExpressionList().get(0).getType();
+        assertSame(Types.INT, functionType.getReturnType());
+        assertSame(Types.BOOLEAN, functionType.getParameterTypes().get(1));
+        BinaryOp sum = (BinaryOp) ((VariableDef) program.getExpressionList().get(1)).getValue();
+        assertSame(Types.INT, sum.getLeft().getType());
+    }
+
+    @Test
+    public void testFunctionTypesAreInternedPerInstance() {
+        Types types = new Types();
+        assertSame(types.function("f", Types.INT, Types.INT, Types.BOOLEAN),
+                types.function("f", Types.canonical(new IntType()), Types.INT, Types.BOOLEAN));
+        assertNotSame(types.function("f", Types.INT, Types.INT), types.function("f", Types.INT, Types.BOOLEAN));
+        assertSame(types.returning(Types.INT), types.returning(Types.INT));
+        // Another compilation has its own instances, which are still equal by their type string
+        Types otherTypes = new Types();
+        assertNotSame(types.function("f", Types.INT, Types.INT), otherTypes.function("f", Types.INT, Types.INT));
+        assertEquals(types.function("f", Types.INT, Types.INT), otherTypes.function("f", Types.INT, Types.INT));
+    }
+
+    /*
+        The types of every node in pre-order, as the type checker gave them before the canonical types and the
+        Resolver were introduced.
+     */
+    @ParameterizedTest
+    @MethodSource("nodeTypeSources")
+    void testNodeTypes(String sourceCode, String expected) throws ParserException {
+        Expression expression = new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+        String actual;
+        try {
+            new TypeChecker().checkType(expression);
+            StringBuilder builder = new StringBuilder();
+            renderTypes(expression, builder);
+            actual = builder.toString();
+        } catch (TypeCheckerException e) {
+            actual = "error: " + e.getMessage();
+        }
+        assertEquals(expected, actual);
+    }
+
+    static Stream<Arguments> nodeTypeSources() {
+        return Stream.of(
+                Arguments.of("var x = 1 + 2 * 3; var y: Bool = x < 4 or not true; if y then x else -x",
+                        "Block:Unit VariableDef:Int BinaryOp:Int IntLiteral:Int BinaryOp:Int IntLiteral:Int " +
+                                "IntLiteral:Int VariableDef:Boolean BinaryOp:Boolean BinaryOp:Boolean Identifier:Int " +
+                                "IntLiteral:Int UnaryOp:Boolean BooleanLiteral:Boolean ConditionalOp:Int " +
+                                "Identifier:Boolean Identifier:Int UnaryOp:Int Identifier:Int"),
+                Arguments.of("fun f(a: Int, b: Bool): Int {\n  if b then return a;\n  -a\n}\n" +
+                                "var v = f(1, true) % 7;\nprint_int(v);\nv == 1",
+                        "Block:Unit FunctionDefinition:f Block:Unit ConditionalOp:Unit Identifier:Boolean Return:Int " +
+                                "Identifier:Int UnaryOp:Unit Identifier:Unit VariableDef:Int BinaryOp:Int " +
+                                "FunctionCall:Int IntLiteral:Int BooleanLiteral:Boolean IntLiteral:Int " +
+                                "FunctionCall:Unit Identifier:Int BinaryOp:Boolean Identifier:Int IntLiteral:Int"),
+                Arguments.of("var i = 0; while i < 10 do { i = i + 1; print_bool(i >= 5 and i != 7) }",
+                        "Block:Unit VariableDef:Int IntLiteral:Int WhileOp:Unit BinaryOp:Boolean Identifier:Int " +
+                                "IntLiteral:Int Block:Unit BinaryOp:Int Identifier:Int BinaryOp:Int Identifier:Int " +
+                                "IntLiteral:Int FunctionCall:Unit BinaryOp:Boolean BinaryOp:Boolean Identifier:Int " +
+                                "IntLiteral:Int BinaryOp:Boolean Identifier:Int IntLiteral:Int"),
+                Arguments.of("{ var x = read_int(); { var x = true; x } ; x / 2 }",
+                        "Block:Unit VariableDef:Int FunctionCall:Int Block:Unit VariableDef:Boolean " +
+                                "BooleanLiteral:Boolean Identifier:Boolean BinaryOp:Int Identifier:Int IntLiteral:Int"),
+                Arguments.of("fun g(): Bool { return 1 < 2; } g()",
+                        "Block:Unit FunctionDefinition:g Block:Unit Return:Boolean BinaryOp:Boolean IntLiteral:Int " +
+                                "IntLiteral:Int Unit:Unit FunctionCall:Boolean"),
+                Arguments.of("var x = 1; x and true", "error: Expected a Boolean type for 'and' operator. " +
+                        "Instead found Optional[Int], Optional[Boolean]"));
+    }
+
+    private void renderTypes(Expression expression, StringBuilder builder) {
+        if (!builder.isEmpty()) {
+            builder.append(' ');
+        }
+        builder.append(expression.getClass().getSimpleName()).append(':').append(expression.getType());
+        List<Expression> children = new ArrayList<>();
+        switch (expression) {
+            case Block block -> children.addAll(block.getExpressionList());
+            case FunctionDefinition definition -> children.add(definition.getBlock());
+            case BinaryOp binaryOp -> children.addAll(List.of(binaryOp.getLeft(), binaryOp.getRight()));
+            case UnaryOp unaryOp -> children.add(unaryOp.getExpression());
+            case VariableDef variableDef -> children.add(variableDef.getValue());
+            case FunctionCall functionCall -> children.addAll(functionCall.getParameters());
+            case WhileOp whileOp -> children.addAll(List.of(whileOp.getCondition(), whileOp.getBody()));
+            case Return returnOp -> {
+                if (returnOp.getValue() != null) {
+                    children.add(returnOp.getValue());
+                }
+            }
+            case ConditionalOp conditionalOp -> {
+                children.add(conditionalOp.getCondition());
+                children.add(conditionalOp.getThenBlock());
+                if (conditionalOp.getElseBlock() != null) {
+                    children.add(conditionalOp.getElseBlock());
+                }
+            }
+            default -> {
+            }
+        }
+        for (Expression child : children) {
+            renderTypes(child, builder);
+        }
+    }
 }
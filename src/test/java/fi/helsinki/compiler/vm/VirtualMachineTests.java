@@ -0,0 +1,168 @@
+package fi.helsinki.compiler.vm;
+
+import fi.helsinki.compiler.common.expressions.Block;
+import fi.helsinki.compiler.exceptions.ParserException;
+import fi.helsinki.compiler.exceptions.TypeCheckerException;
+import fi.helsinki.compiler.exceptions.VirtualMachineException;
+import fi.helsinki.compiler.interpreter.BooleanValue;
+import fi.helsinki.compiler.interpreter.IntValue;
+import fi.helsinki.compiler.interpreter.Value;
+import fi.helsinki.compiler.parser.Parser;
+import fi.helsinki.compiler.tokenizer.Tokenizer;
+import fi.helsinki.compiler.typechecker.TypeChecker;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualMachineTests {
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Test
+    public void testInterpreterTestPrograms() throws Exception {
+        // The programs of InterpreterTests with the values and output expected there, the else block of the nested
+        // loops given the type of its then block
+        assertResult(3L, "", "1 + 2");
+        assertResult(-1L, "", "1 - 2");
+        assertResult(12000L, "", "100 * 120");
+        assertResult(20L, "", "140 / 7");
+        assertResult(3L, "", "143 % 7");
+        assertResult(null, "true\nfalse\n", "var x = true; var y = true; print_bool(x and y);" +
+                "var z = false; print_bool(x and z);");
+        assertResult(null, "true\nfalse\n", "var x = false; var y = true; print_bool(x or y);" +
+                "var z = false; print_bool(x or z);");
+        assertResult(true, "", "var x = 10; var y = 20; y >= x");
+        assertResult(true, "", "var x = 20; var y = 20; y <= x");
+        assertResult(false, "", "var x = 10; var y = 20; y < x");
+        assertResult(true, "", "var x = 10; var y = 20; y != x");
+        assertResult(false, "", "var x = 10; var y = 20; y == x");
+        assertResult(null, "false\n-239\n", "var x = true; print_bool(not x); var y = 239; print_int(-y);");
+        assertResult(null, "9\n", "var x = 5; x = x + 4; print_int(x);");
+        assertResult(-7L, "", "var x = 5; var y = 12; if y > 12 then {x = x + 4} else {x = x - y}");
+        assertResult(9L, "", "var x = 5; var y = 13; if y > 12 then {x = x + 4} else {x = x - y}");
+        assertResult(null, "5\n6\n7\n8\n9\n10\n", "var x = 4; while x < 10 do {x = x + 1; print_int(x);}");
+        assertResult(null, "2\n3\n1\n", "{ var x = 1; { var x = 2; var y = 3; print_int(x); print_int(y); }" +
+                " print_int(x); }");
+        assertResult(null, "2\n30\n5\n4374\n1\n", "var a = 30; var b = 2; var c = -2; var d = 2; var e = 221;" +
+                "while a > 2 do {\n" +
+                "    if b <= 14 then { while c - 2 < 3 do { d = d * 3; c = c + 1; } } else { e = e % 10; }\n" +
+                "    a = a - 1; b = b + 1;\n" +
+                "}\n" +
+                "print_int(a); print_int(b); print_int(c); print_int(d); print_int(e);");
+        assertResult(false, "", "var evaluated_right_hand_side = false;\n" +
+                "true or { evaluated_right_hand_side = true; true };\n" +
+                "evaluated_right_hand_side");
+    }
+
+    @Test
+    public void testReadInt() throws Exception {
+        System.setIn(new ByteArrayInputStream("4\n-2\n".getBytes()));
+        assertResult(null, "5\n6\n7\n8\n9\n10\n-2\n",
+                "var x = read_int(); while x < 10 do {x = x + 1; print_int(x);} print_int(read_int());");
+    }
+
+    @Test
+    public void testFunctions() throws Exception {
+        assertResult(832040L, "", "fun fib(n: Int): Int {\n" +
+                "    if n < 2 then n else fib(n - 1) + fib(n - 2)\n" +
+                "}\n" +
+                "fib(30)");
+        // Mutual recursion, a function called before its definition, and a top level variable read in a function
+        assertResult(null, "true\nfalse\n16\n", "var base = 2;\n" +
+                "print_bool(is_even(10));\n" +
+                "fun is_even(n: Int): Bool { if n == 0 then true else is_odd(n - 1) }\n" +
+                "fun is_odd(n: Int): Bool { if n == 0 then false else is_even(n - 1) }\n" +
+                "fun power(n: Int): Int { var result = 1; while n > 0 do { result = result * base; n = n - 1; }" +
+                " return result; }\n" +
+                "print_bool(is_odd(10));\n" +
+                "print_int(power(4));");
+        // Deep recursion only uses the stack array of the machine
+        assertResult(100000L, "", "fun depth(n: Int): Int { if n == 0 then 0 else 1 + depth(n - 1) }\n" +
+                "depth(100000)");
+    }
+
+    @Test
+    public void testReturn() throws Exception {
+        assertResult(22L, "1\n2\n", "fun find(limit: Int): Int {\n" +
+                "    var i = 0;\n" +
+                "    while true do {\n" +
+                "        var j = 0;\n" +
+                "        while j < 3 do { if i * j > limit then return i * 10 + j; j = j + 1; }\n" +
+                "        i = i + 1;\n" +
+                "        print_int(i);\n" +
+                "    }\n" +
+                "    i\n" +
+                "}\n" +
+                "find(1 + 2)");
+    }
+
+    @Test
+    public void testBreakAndContinue() throws Exception {
+        assertResult(null, "1\n3\n5\n7\n", "var i = 0;\n" +
+                "while true do {\n" +
+                "    i = i + 1;\n" +
+                "    if i % 2 == 0 then continue;\n" +
+                "    if i > 7 then break;\n" +
+                "    var j = 0;\n" +
+                "    while true do { j = j + 1; if j == i then break; }\n" +
+                "    print_int(j);\n" +
+                "}");
+        // A break in the middle of an expression drops the values computed for it so far
+        assertResult(6L, "", "var i = 0; var sum = 0;\n" +
+                "while i < 10 do { i = i + 1; sum = sum + 1 * { if i > 3 then break; i }; }\n" +
+                "sum");
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        VirtualMachineException exception = assertThrows(VirtualMachineException.class,
+                () -> run("var x = 0; 10 / x"));
+        assertEquals("Division by zero", exception.getMessage());
+        exception = assertThrows(VirtualMachineException.class, () -> run("break"));
+        assertEquals("Found break outside of a loop", exception.getMessage());
+    }
+
+    @Test
+    public void testBytecode() throws Exception {
+        Block block = parse("var x = 2; x * 21");
+        new TypeChecker().checkType(block);
+        Program program = new BytecodeCompiler().compile(block);
+        assertEquals("0: CONST 1 (2)\n" +
+                "2: STORE_TOP 0\n" +
+                "4: CONST 0 (0)\n" +
+                "6: POP\n" +
+                "7: LOAD_TOP 0\n" +
+                "9: CONST 2 (21)\n" +
+                "11: MUL\n" +
+                "12: HALT\n", program.toString());
+        assertEquals(42L, ((IntValue) new VirtualMachine().run(program)).getIntValue());
+    }
+
+    private void assertResult(Object expectedValue, String expectedOutput, String sourceCode) throws Exception {
+        output.reset();
+        Value value = run(sourceCode);
+        assertEquals(expectedOutput, output.toString(), sourceCode);
+        Object actualValue = switch (value) {
+            case null -> null;
+            case IntValue intValue -> intValue.getIntValue();
+            case BooleanValue booleanValue -> booleanValue.getValue();
+            default -> value;
+        };
+        assertEquals(expectedValue, actualValue, sourceCode);
+    }
+
+    private Value run(String sourceCode) throws ParserException, TypeCheckerException, VirtualMachineException {
+        Block block = parse(sourceCode);
+        new TypeChecker().checkType(block);
+        Program program = new BytecodeCompiler().compile(block);
+        return new VirtualMachine(new PrintStream(output, true)).run(program);
+    }
+
+    private Block parse(String sourceCode) throws ParserException {
+        return new Parser(new Tokenizer().tokenize(sourceCode, "Testfile.dl")).parse();
+    }
+}